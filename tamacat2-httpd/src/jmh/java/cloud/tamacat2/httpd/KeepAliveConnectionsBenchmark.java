@@ -0,0 +1,190 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.impl.bootstrap.CustomServerBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpServer;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.io.CloseMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Throughput and memory of the classic HttpServer holding the concurrent keep-alive connections,
+ * served on the platform worker threads or on the virtual threads. ({@link cloud.tamacat2.httpd.config.HttpConfig#virtualThreads(boolean)})
+ * <p>The connections are opened in the setup and stay open, the requests are sent round-robin over them.
+ * The heap, the number of the platform threads and the committed memory of the threads (Native Memory Tracking)
+ * are printed after the connections are established.
+ * <pre>ulimit -n 32768
+ * mvn -Pjmh -pl tamacat2-httpd install exec:exec -Djmh.args="KeepAliveConnectionsBenchmark -jvmArgs -XX:NativeMemoryTracking=summary"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Threads(32)
+@Fork(1)
+public class KeepAliveConnectionsBenchmark {
+
+	static final byte[] REQUEST = "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	@Param({"false", "true"})
+	boolean virtualThreads;
+
+	@Param({"10000"})
+	int connections;
+
+	HttpServer server;
+	Connection[] clients;
+	final AtomicInteger threadIndex = new AtomicInteger();
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		server = CustomServerBootstrap.bootstrap()
+			.setLocalAddress(InetAddress.getLoopbackAddress())
+			.setVirtualThreads(virtualThreads)
+			.register("*", (request, response, context) ->
+				response.setEntity(new StringEntity("OK", ContentType.TEXT_PLAIN)))
+			.create();
+		server.start();
+		clients = new Connection[connections];
+		for (int i = 0; i < connections; i++) {
+			clients[i] = new Connection(new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+			clients[i].request(); //a worker holds the connection.
+		}
+		System.gc();
+		final Runtime runtime = Runtime.getRuntime();
+		System.out.println();
+		System.out.println("virtualThreads=" + virtualThreads + ", connections=" + connections
+			+ ", heap used=" + ((runtime.totalMemory() - runtime.freeMemory()) >> 20) + "MB"
+			+ ", platform threads=" + ManagementFactory.getThreadMXBean().getThreadCount());
+		try {
+			//Thread: committed stack memory of the platform threads.
+			final String summary = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+				new ObjectName("com.sun.management:type=DiagnosticCommand"),
+				"vmNativeMemory", new Object[] {new String[] {"summary"}}, new String[] {String[].class.getName()});
+			for (final String line : summary.split("\n")) {
+				if (line.contains("Thread (") || line.contains("Total:")) {
+					System.out.println(line.trim());
+				}
+			}
+		} catch (Exception e) {
+			System.out.println("Native Memory Tracking is disabled: " + e.getMessage());
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws IOException {
+		for (final Connection client : clients) {
+			if (client != null) {
+				client.socket.close();
+			}
+		}
+		server.close(CloseMode.IMMEDIATE);
+	}
+
+	/**
+	 * The connections of a benchmark thread. (each thread owns a slice of the connections)
+	 */
+	@State(Scope.Thread)
+	public static class Slice {
+		int start;
+		int end;
+		int next;
+
+		@Setup(Level.Trial)
+		public void setup(final KeepAliveConnectionsBenchmark benchmark, final BenchmarkParams params) {
+			final int threads = params.getThreads();
+			final int index = benchmark.threadIndex.getAndIncrement() % threads;
+			final int size = benchmark.connections / threads;
+			start = index * size;
+			end = start + size;
+			next = start;
+		}
+	}
+
+	@Benchmark
+	public int request(final Slice slice) throws IOException {
+		final Connection client = clients[slice.next];
+		if (++slice.next == slice.end) {
+			slice.next = slice.start;
+		}
+		return client.request();
+	}
+
+	static class Connection {
+		final Socket socket;
+		final OutputStream out;
+		final InputStream in;
+
+		Connection(final Socket socket) throws IOException {
+			this.socket = socket;
+			this.out = socket.getOutputStream();
+			this.in = new BufferedInputStream(socket.getInputStream());
+		}
+
+		/**
+		 * Send a request and read the response. ("Content-Length: 2" body)
+		 * @return status code.
+		 */
+		int request() throws IOException {
+			out.write(REQUEST);
+			out.flush();
+			int status = 0;
+			int position = 0;
+			int c;
+			int crlf = 0;
+			//status line and headers
+			while (crlf < 4 && (c = in.read()) != -1) {
+				if (position >= 9 && position < 12) {
+					status = status * 10 + (c - '0');
+				}
+				position++;
+				crlf = (c == '\r' || c == '\n') ? crlf + 1 : 0;
+			}
+			in.skipNBytes(2);
+			return status;
+		}
+	}
+}
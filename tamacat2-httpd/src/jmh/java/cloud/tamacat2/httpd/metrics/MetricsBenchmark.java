@@ -0,0 +1,85 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Recording overhead of the {@link MeteredRequestHandler} per request, compared with the handler without the metrics.
+ * (4 threads recording to the {@link RequestMetrics} of the same route)
+ * <pre>mvn -Pjmh -pl tamacat2-httpd install exec:exec -Djmh.args=MetricsBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class MetricsBenchmark {
+
+	final HttpRequestHandler handler = (request, response, context) -> response.setCode(HttpStatus.SC_OK);
+	final MetricsRegistry registry = new MetricsRegistry();
+	final MeteredRequestHandler metered = new MeteredRequestHandler(handler, registry.getRequestMetrics("/"));
+	final LatencyHistogram histogram = new LatencyHistogram();
+
+	@State(Scope.Thread)
+	public static class Exchange {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/index.html");
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		final HttpContext context = HttpCoreContext.create();
+		long value;
+	}
+
+	@Benchmark
+	public BasicClassicHttpResponse handler(final Exchange exchange) throws Exception {
+		handler.handle(exchange.request, exchange.response, exchange.context);
+		return exchange.response;
+	}
+
+	@Benchmark
+	public BasicClassicHttpResponse meteredHandler(final Exchange exchange) throws Exception {
+		metered.handle(exchange.request, exchange.response, exchange.context);
+		return exchange.response;
+	}
+
+	@Benchmark
+	public void histogram(final Exchange exchange) {
+		histogram.record((exchange.value++ & 0xffff) * 1000L);
+	}
+
+	@Benchmark
+	public String scrape() {
+		return registry.scrape();
+	}
+}
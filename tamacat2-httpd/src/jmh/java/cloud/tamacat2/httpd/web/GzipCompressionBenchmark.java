@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-response cost of the gzip compression of the JSON response,
+ * the new GZIPOutputStream per response (the former GzipCompressingEntity) and the {@link GzipContentEncodingInterceptor}
+ * with the pooled Deflaters. (the compression level and the minimum size)
+ * <pre>mvn -Pjmh -pl tamacat2-httpd install exec:exec -Djmh.args=GzipCompressionBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GzipCompressionBenchmark {
+
+	@Param({"200", "2048", "65536"})
+	int size;
+
+	@Param({"-1", "1"})
+	int level;
+
+	byte[] json;
+	GzipContentEncodingInterceptor interceptor;
+	final CountingOutputStream out = new CountingOutputStream();
+
+	@Setup
+	public void setup() {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; sb.length() < size; i++) {
+			sb.append("{\"id\":").append(i).append(",\"name\":\"user").append(i * 7919 % 1000).append("\",\"active\":true},");
+		}
+		json = sb.substring(0, size).getBytes(StandardCharsets.UTF_8);
+		interceptor = new GzipContentEncodingInterceptor().level(level);
+	}
+
+	@Benchmark
+	public long gzipOutputStream() throws IOException {
+		final GZIPOutputStream gzip = new GZIPOutputStream(out);
+		gzip.write(json);
+		gzip.finish();
+		return out.count;
+	}
+
+	@Benchmark
+	public long interceptor() throws Exception {
+		final HttpContext context = HttpCoreContext.create();
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/api");
+		request.setVersion(HttpVersion.HTTP_1_1);
+		request.setHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+		interceptor.process(request, null, context);
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		final ByteArrayEntity entity = new ByteArrayEntity(json, ContentType.APPLICATION_JSON);
+		response.setEntity(entity);
+		response.setHeader(HttpHeaders.CONTENT_TYPE, entity.getContentType());
+		interceptor.process(response, entity, context);
+		final HttpEntity result = response.getEntity();
+		result.writeTo(out);
+		return out.count;
+	}
+
+	static class CountingOutputStream extends OutputStream {
+		long count;
+
+		@Override
+		public void write(final int b) {
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) {
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hc.core5.http.impl.bootstrap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.impl.routing.RequestRouter;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.protocol.UriPatternType;
+import org.apache.hc.core5.net.URIAuthority;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-request cost of the routing by {@link CompiledRequestRouter} and by {@link RequestRouter}.
+ * <p>The routes are 10 paths of each virtual host ("host{n}.example.com/app{m}/*"),
+ * the requests are the random paths under the routes with the mixed case host names.
+ * <pre>mvn -Pjmh -pl tamacat2-httpd install exec:exec -Djmh.args=RequestRouterBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RequestRouterBenchmark {
+
+	static final int PATHS_PER_HOST = 10;
+
+	@Param({"10", "1000", "10000"})
+	int routes;
+
+	CompiledRequestRouter<String> compiledRouter;
+	RequestRouter<String> requestRouter;
+	HttpRequest[] requests;
+	int index;
+
+	@Setup
+	public void setup() {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		final int hosts = Math.max(routes / PATHS_PER_HOST, 1);
+		for (int i = 0; i < routes; i++) {
+			final String host = "host" + (i % hosts) + ".example.com";
+			final String path = "/app" + (i / hosts) + "/";
+			entries.add(new RequestRouter.Entry<>(host, path + "*", host + path));
+		}
+		compiledRouter = CompiledRequestRouter.create("localhost", entries, null);
+		requestRouter = RequestRouter.create(new URIAuthority("localhost"), UriPatternType.URI_PATTERN,
+			entries, RequestRouter.IGNORE_PORT_AUTHORITY_RESOLVER, null);
+
+		final Random random = new Random(0);
+		requests = new HttpRequest[1024];
+		for (int i = 0; i < requests.length; i++) {
+			final RequestRouter.Entry<String> entry = entries.get(random.nextInt(entries.size()));
+			final String path = entry.route.pattern.replace("*", "servlet/index.jsp?id=" + i);
+			final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", path);
+			request.setAuthority(new URIAuthority("Host" + entry.uriAuthority.getHostName().substring(4), 8080));
+			requests[i] = request;
+		}
+	}
+
+	@Benchmark
+	public String compiledRequestRouter() throws HttpException {
+		return compiledRouter.resolve(requests[index++ & (requests.length - 1)], null);
+	}
+
+	@Benchmark
+	public String requestRouter() throws HttpException {
+		return requestRouter.resolve(requests[index++ & (requests.length - 1)], null);
+	}
+}
@@ -15,36 +15,71 @@
  */
 package cloud.tamacat2.httpd;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import javax.net.ssl.SSLContext;
 
+import org.apache.hc.core5.concurrent.DefaultThreadFactory;
+import org.apache.hc.core5.function.Supplier;
 import org.apache.hc.core5.http.HttpRequestInterceptor;
 import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.URIScheme;
 import org.apache.hc.core5.http.impl.HttpProcessors;
+import org.apache.hc.core5.http.impl.bootstrap.CustomHttpServer;
 import org.apache.hc.core5.http.impl.bootstrap.CustomServerBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
 import org.apache.hc.core5.http.impl.bootstrap.HttpServer;
 import org.apache.hc.core5.http.impl.bootstrap.ServerBootstrap;
 import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.HttpServerRequestHandler;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.nio.AsyncServerExchangeHandler;
+import org.apache.hc.core5.http.nio.support.classic.ClassicToAsyncServerExchangeHandler;
 import org.apache.hc.core5.http.protocol.HttpProcessorBuilder;
 import org.apache.hc.core5.http.ssl.TLS;
 import org.apache.hc.core5.http.ssl.TlsCiphers;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.http2.impl.H2Processors;
+import org.apache.hc.core5.http2.impl.nio.bootstrap.H2ServerBootstrap;
+import org.apache.hc.core5.http2.ssl.H2ServerTlsStrategy;
 import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.reactor.IOReactorConfig;
 import org.apache.hc.core5.util.TimeValue;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.cache.CompressedContentCache;
+import cloud.tamacat2.httpd.cache.FileContentCache;
 import cloud.tamacat2.httpd.config.HttpConfig;
 import cloud.tamacat2.httpd.config.HttpsConfig;
 import cloud.tamacat2.httpd.config.UrlConfig;
 import cloud.tamacat2.httpd.filter.TraceExceptionListener;
 import cloud.tamacat2.httpd.filter.TraceHttp1StreamListener;
+import cloud.tamacat2.httpd.http2.Http2ServerRequestHandler;
+import cloud.tamacat2.httpd.io.ServerSocketChannelFactory;
+import cloud.tamacat2.httpd.io.ZeroCopyHttpServerConnectionFactory;
+import cloud.tamacat2.httpd.log.AccessLogFormat;
+import cloud.tamacat2.httpd.log.AccessLogWriter;
+import cloud.tamacat2.httpd.metrics.MeteredRequestHandler;
+import cloud.tamacat2.httpd.metrics.MetricsHandler;
+import cloud.tamacat2.httpd.metrics.MetricsRegistry;
 import cloud.tamacat2.httpd.plugin.PluginServer;
 import cloud.tamacat2.httpd.ssl.SSLContextCreator;
+import cloud.tamacat2.httpd.util.ServerUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
+import cloud.tamacat2.httpd.web.AdaptiveCompressionPolicy;
 import cloud.tamacat2.httpd.web.GzipContentEncodingInterceptor;
 import cloud.tamacat2.httpd.web.WebServerDirectoryFileListHandler;
 import cloud.tamacat2.httpd.web.WebServerHandler;
@@ -62,7 +97,23 @@ public class WebServer {
 
 	protected final Collection<PluginServer> pluginServers = new ArrayList<>();
 	
+	//Resources owned by the registered handlers. (ex. backend connection pools)
+	protected final Collection<Closeable> resources = new ArrayList<>();
+	
+	//In-memory cache of the small static files, shared by the UrlConfigs.
+	protected FileContentCache contentCache;
+	
+	//Asynchronous access log writer, shared by the UrlConfigs.
+	protected AccessLogWriter accessLog;
+	
+	//Metrics of the server, null if disabled.
+	protected MetricsRegistry metrics;
+	
 	public void startup(final HttpConfig config) {
+		if (config.useHttp2()) {
+			startupHttp2(config);
+			return;
+		}
 		final int port = config.getPort();
 		final HttpServer server = createHttpServer(config);
 
@@ -73,18 +124,46 @@ public class WebServer {
 			public void run() {
 				LOG.info(config.getServerName() + ":" + port + " shutting down");
 				server.close(CloseMode.GRACEFUL);
+				closeResources();
 			}
 		});
 
 		try {
 			server.start();
-			LOG.info("Listening on port " + port);
+			final int acceptors = server instanceof CustomHttpServer ? ((CustomHttpServer)server).getAcceptors() : 1;
+			LOG.info("Listening on port " + port + (config.useVirtualThreads() ? " (virtual threads)" : "")
+				+ (acceptors > 1 ? " (" + acceptors + " acceptors)" : ""));
 			server.awaitTermination(TimeValue.MAX_VALUE);
 		} catch (IOException | InterruptedException e) {
 			throw new RuntimeException(e);
 		}
 	}
 	
+	protected void startupHttp2(final HttpConfig config) {
+		final int port = config.getPort();
+		final HttpAsyncServer server = createHttp2Server(config);
+
+		startPluginServers();
+		
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				LOG.info(config.getServerName() + ":" + port + " shutting down");
+				server.close(CloseMode.GRACEFUL);
+				closeResources();
+			}
+		});
+
+		try {
+			server.start();
+			server.listen(new InetSocketAddress(port), config.useHttps() ? URIScheme.HTTPS : URIScheme.HTTP).get();
+			LOG.info("Listening on port " + port + " (HTTP/2)");
+			server.awaitShutdown(TimeValue.MAX_VALUE);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
 	public WebServer addPluginServer(final PluginServer pluginServer) {
 		pluginServers.add(pluginServer);
 		return this;
@@ -96,6 +175,17 @@ public class WebServer {
 		}
 	}
 	
+	protected void closeResources() {
+		for (final Closeable resource : resources) {
+			try {
+				resource.close();
+			} catch (Exception e) {
+				LOG.warn(e.getMessage());
+			}
+		}
+		resources.clear();
+	}
+	
 	
 	protected ServerBootstrap serverBootstrap(final HttpConfig config) {
 		final ServerBootstrap bootstrap = ServerBootstrap.bootstrap()
@@ -103,11 +193,7 @@ public class WebServer {
 				.setCanonicalHostName(config.getCanonicalHostName()) //Not authoritative
 				.setListenerPort(config.getPort())
 				//.setStreamListener(new TraceHttp1StreamListener("client<-httpd"))
-				//.setSocketConfig(SocketConfig.custom()
-				//.setSoKeepAlive(config.keepAlive())
-				//.setSoReuseAddress(config.soReuseAddress())
-				//.setSoTimeout(config.getSoTimeout(), TimeUnit.SECONDS).build()
-				;
+				.setSocketConfig(socketConfig(config));
 		return bootstrap;
 	}
 	
@@ -116,18 +202,51 @@ public class WebServer {
 				.setHttpProcessor(HttpProcessors.customServer(config.getServerName()).build())
 				.setCanonicalHostName(config.getCanonicalHostName()) //Not authoritative
 				.setListenerPort(config.getPort())
+				.setVirtualThreads(config.useVirtualThreads())
+				.setAcceptors(config.getAcceptors())
+				.setConnectionStats(StringUtils.isNotEmpty(config.getMetrics()))
 				//.setStreamListener(new TraceHttp1StreamListener("client<-httpd"))
-				//.setSocketConfig(SocketConfig.custom()
-				//.setSoKeepAlive(config.keepAlive())
-				//.setSoReuseAddress(config.soReuseAddress())
-				//.setSoTimeout(config.getSoTimeout(), TimeUnit.SECONDS).build()
-				;
+				.setSocketConfig(socketConfig(config));
+		//sendfile needs the SocketChannel. (not supported over TLS)
+		if (config.useZeroCopy() && config.useHttps() == false) {
+			bootstrap.setServerSocketFactory(ServerSocketChannelFactory.INSTANCE)
+					 .setConnectionFactory(new ZeroCopyHttpServerConnectionFactory());
+		}
 		return bootstrap;
 	}
 	
+	/**
+	 * Socket options of the listener socket and the connections of the classic HttpServer.
+	 */
+	protected SocketConfig socketConfig(final HttpConfig config) {
+		return SocketConfig.custom()
+				.setSoKeepAlive(config.isSoKeepAlive())
+				.setSoReuseAddress(config.isSoReuseAddress())
+				.setSoTimeout(config.getSoTimeout(), TimeUnit.SECONDS)
+				.setTcpNoDelay(config.isTcpNoDelay())
+				.setBacklogSize(config.getBacklogSize())
+				.setRcvBufSize(config.getRcvBufSize())
+				.setSndBufSize(config.getSndBufSize())
+				.build();
+	}
+	
+	/**
+	 * Socket options of the I/O reactor. (HTTP/2 and the async server)
+	 * <p>The I/O reactor has one listener, so {@link HttpConfig#reusePort(boolean)} is not applied.
+	 */
+	protected IOReactorConfig ioReactorConfig(final HttpConfig config) {
+		return IOReactorConfig.custom()
+				.setSoTimeout(config.getSoTimeout(), TimeUnit.SECONDS)
+				.setSoKeepAlive(config.isSoKeepAlive())
+				.setSoReuseAddress(config.isSoReuseAddress())
+				.setTcpNoDelay(config.isTcpNoDelay())
+				.setBacklogSize(config.getBacklogSize())
+				.setRcvBufSize(config.getRcvBufSize())
+				.setSndBufSize(config.getSndBufSize())
+				.build();
+	}
+	
 	public HttpServer createHttpServer(final HttpConfig config) {
-		final Collection<UrlConfig> configs = config.getUrlConfigs();
-
 		final CustomServerBootstrap bootstrap = bootstrap(config);
 		//final ServerBootstrap bootstrap = serverBootstrap(config);
 		
@@ -145,7 +264,83 @@ public class WebServer {
 			bootstrap.setSslContext(sslContext);
 		}
 
-		for (final UrlConfig urlConfig : configs) {
+		registerUrlConfigs(config, bootstrap);
+		
+		final HttpProcessorBuilder httpProcessorBuilder = HttpProcessors.customServer(config.getServerName());
+		httpRequestInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+		httpResponseInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+		
+		bootstrap.setHttpProcessor(httpProcessorBuilder.build());
+		bootstrap.setStreamListener(new TraceHttp1StreamListener())
+				 .setExceptionListener(new TraceExceptionListener());
+
+		final HttpServer server = bootstrap.create();
+		if (metrics != null && server instanceof CustomHttpServer) {
+			final CustomHttpServer httpServer = (CustomHttpServer) server;
+			metrics.register(writer -> {
+				writer.gauge("tamacat2_http_connections_active", "Number of the client connections being served.",
+					httpServer.getActiveConnections());
+				writer.counter("tamacat2_http_connections_total", "Number of the accepted client connections.",
+					httpServer.getConnections());
+			});
+		}
+		return server;
+	}
+	
+	/**
+	 * <p>HTTP/2 server using non-blocking I/O. ({@link H2ServerBootstrap})<br>
+	 * The routes and HttpFilters of the {@link UrlConfig}s and the interceptors are the same as the classic server,
+	 * the classic handlers are run on the worker threads (or the virtual threads) for each request.
+	 * @see Http2ServerRequestHandler
+	 */
+	public HttpAsyncServer createHttp2Server(final HttpConfig config) {
+		if (config.useReusePort()) {
+			LOG.warn("reusePort is not supported by the HTTP/2 server (one listener socket)");
+		}
+		final CustomServerBootstrap bootstrap = bootstrap(config);
+		registerUrlConfigs(config, bootstrap);
+		
+		final HttpProcessorBuilder httpProcessorBuilder = HttpProcessorBuilder.create();
+		httpRequestInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+		httpResponseInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+		final HttpServerRequestHandler requestHandler = new Http2ServerRequestHandler(
+				bootstrap.createRequestHandler(), httpProcessorBuilder.build());
+		
+		final ExecutorService executor = config.useVirtualThreads() ? Executors.newVirtualThreadPerTaskExecutor()
+				: Executors.newCachedThreadPool(new DefaultThreadFactory("HTTP2-worker", true));
+		resources.add(() -> executor.shutdownNow());
+		final Supplier<AsyncServerExchangeHandler> exchangeHandler = () -> new ClassicToAsyncServerExchangeHandler(
+				executor, requestHandler, e -> LOG.debug(e.getMessage()));
+		
+		final H2ServerBootstrap h2Bootstrap = H2ServerBootstrap.bootstrap()
+				.setCanonicalHostName(config.getCanonicalHostName()) //Not authoritative
+				.setIOReactorConfig(ioReactorConfig(config))
+				//HTTPS: h2 or http/1.1 with ALPN, HTTP: h2c with prior knowledge.
+				.setVersionPolicy(config.useHttps() ? HttpVersionPolicy.NEGOTIATE : HttpVersionPolicy.FORCE_HTTP_2)
+				.setHttpProcessor(H2Processors.server(config.getServerName()))
+				//routed by the request handler of the CustomServerBootstrap.
+				.setRequestRouter((request, context) -> exchangeHandler)
+				.setStreamListener(new TraceHttp1StreamListener())
+				.setExceptionCallback(e -> LOG.debug(e.getMessage()));
+		
+		// HTTPS
+		if (config.useHttps()) {
+			final HttpsConfig https = config.getHttpsConfig();
+			final SSLContext sslContext = new SSLContextCreator(https).getSSLContext();
+			h2Bootstrap.setTlsStrategy(new H2ServerTlsStrategy(sslContext, (endpoint, sslEngine) -> {
+				sslEngine.setEnabledProtocols(TLS.excludeWeak(sslEngine.getEnabledProtocols()));
+				sslEngine.setEnabledCipherSuites(TlsCiphers.excludeWeak(sslEngine.getEnabledCipherSuites()));
+				if (https.useClientAuth()) {
+					sslEngine.setNeedClientAuth(true);
+				}
+			}, null));
+		}
+		return h2Bootstrap.create();
+	}
+	
+	protected void registerUrlConfigs(final HttpConfig config, final CustomServerBootstrap bootstrap) {
+		getMetrics(config);
+		for (final UrlConfig urlConfig : config.getUrlConfigs()) {
 			register(urlConfig.httpConfig(config), bootstrap);
 			
 			//add HttpFilters
@@ -157,20 +352,22 @@ public class WebServer {
 		
 		//support Content-Encoding: gzip
 		if ("gzip".equalsIgnoreCase(config.getContentEncoding())) {
-			addHttpRequestInterceptor(new GzipContentEncodingInterceptor());
-			addHttpResponseInterceptor(new GzipContentEncodingInterceptor());
+			final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor()
+				.level(config.getCompressionLevel()).minSize(config.getCompressionMinSize());
+			if (config.useAdaptiveCompression()) {
+				gzip.policy(new AdaptiveCompressionPolicy());
+			}
+			if (config.getCompressedCacheBytes() > 0) {
+				final CompressedContentCache compressedCache = new CompressedContentCache(
+					config.getCompressedCacheBytes(), config.getCompressedCacheMaxEntryBytes());
+				resources.add(compressedCache);
+				gzip.contentCache(compressedCache);
+			}
+			registerMetrics(gzip);
+			addHttpRequestInterceptor(gzip);
+			addHttpResponseInterceptor(gzip);
 		}
-		
-		final HttpProcessorBuilder httpProcessorBuilder = HttpProcessors.customServer(config.getServerName());
-		httpRequestInterceptors.forEach(i-> httpProcessorBuilder.add(i));
-		httpResponseInterceptors.forEach(i-> httpProcessorBuilder.add(i));
-		
-		bootstrap.setHttpProcessor(httpProcessorBuilder.build());
-		bootstrap.setStreamListener(new TraceHttp1StreamListener())
-				 .setExceptionListener(new TraceExceptionListener());
-
-		final HttpServer server = bootstrap.create();
-		return server;
+		registerMetrics(config, bootstrap);
 	}
 	
 	protected void register(final UrlConfig urlConfig, final CustomServerBootstrap bootstrap) {
@@ -178,14 +375,137 @@ public class WebServer {
 	}
 
 	protected void registerWebServer(final UrlConfig urlConfig, final CustomServerBootstrap bootstrap) {
-		if (urlConfig.useDirectoryListing()) {
-			register(urlConfig, bootstrap, new WebServerDirectoryFileListHandler(urlConfig));
-		} else {
-			register(urlConfig, bootstrap, new WebServerHandler(urlConfig));
+		final WebServerHandler handler = urlConfig.useDirectoryListing()
+				? new WebServerDirectoryFileListHandler(urlConfig) : new WebServerHandler(urlConfig);
+		handler.setContentCache(getContentCache(urlConfig.getHttpConfig()));
+		handler.setAccessLog(getAccessLog(urlConfig.getHttpConfig()));
+		register(urlConfig, bootstrap, handler);
+	}
+	
+	/**
+	 * @return null if the content cache is disabled. ({@link HttpConfig#contentCache(long)})
+	 */
+	protected FileContentCache getContentCache(final HttpConfig config) {
+		if (contentCache == null && config != null && config.getContentCacheBytes() > 0) {
+			contentCache = new FileContentCache(config.getContentCacheBytes(), config.getContentCacheMaxFileBytes());
+			resources.add(contentCache);
+		}
+		return contentCache;
+	}
+
+	/**
+	 * @return null if the access log is written by the "Access" logger. ({@link HttpConfig#accessLog(String)})
+	 */
+	protected AccessLogWriter getAccessLog(final HttpConfig config) {
+		if (accessLog == null && config != null && StringUtils.isNotEmpty(config.getAccessLog())) {
+			final Path file = Paths.get(ServerUtils.getServerDocsRoot(config.getAccessLog()));
+			try {
+				accessLog = new AccessLogWriter(file, AccessLogFormat.of(config.getAccessLogFormat()),
+					config.getAccessLogBufferSize()).start();
+				resources.add(accessLog);
+				LOG.info("access log: " + accessLog.getFile() + " (" + accessLog.getFormat() + ")");
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
 		}
+		return accessLog;
 	}
 
-	protected void register(final UrlConfig urlConfig, final CustomServerBootstrap bootstrap, final HttpRequestHandler handler) {
+	/**
+	 * @return null if the metrics are disabled. ({@link HttpConfig#metrics(String)})
+	 */
+	protected MetricsRegistry getMetrics(final HttpConfig config) {
+		if (metrics == null && config != null && StringUtils.isNotEmpty(config.getMetrics())) {
+			metrics = new MetricsRegistry();
+		}
+		return metrics;
+	}
+	
+	/**
+	 * Register the metrics route and the collectors of the shared resources.
+	 */
+	protected void registerMetrics(final HttpConfig config, final CustomServerBootstrap bootstrap) {
+		if (metrics == null) {
+			return;
+		}
+		registerMetricsCollectors();
+		LOG.info("register: path=" + config.getMetrics() + " Metrics");
+		bootstrap.register(config.getMetrics(), new MetricsHandler(metrics));
+	}
+	
+	/**
+	 * Register the collectors of the shared content cache and access log. (after the UrlConfigs are registered)
+	 */
+	protected void registerMetricsCollectors() {
+		if (contentCache != null) {
+			final FileContentCache cache = contentCache;
+			metrics.register(writer -> {
+				writer.counter("tamacat2_content_cache_hits_total", "Hits of the static file content cache.", cache.getHits());
+				writer.counter("tamacat2_content_cache_misses_total", "Misses of the static file content cache.", cache.getMisses());
+				writer.counter("tamacat2_content_cache_evictions_total", "Evictions of the static file content cache.", cache.getEvictions());
+				writer.gauge("tamacat2_content_cache_bytes", "Bytes of the static file content cache.", cache.getTotalBytes());
+			});
+		}
+		if (accessLog != null) {
+			final AccessLogWriter log = accessLog;
+			metrics.register(writer -> {
+				writer.counter("tamacat2_access_log_written_total", "Written access log records.", log.getWritten());
+				writer.counter("tamacat2_access_log_dropped_total", "Dropped access log records. (buffer full)", log.getDropped());
+				writer.counter("tamacat2_access_log_backpressure_total", "Waits of the request threads for the access log writer.", log.getBackpressure());
+				writer.gauge("tamacat2_access_log_pending", "Access log records in the buffer.", log.getPending());
+			});
+		}
+	}
+	
+	/**
+	 * Register the collector of the gzip compression. (compressed cache and adaptive compression)
+	 */
+	protected void registerMetrics(final GzipContentEncodingInterceptor gzip) {
+		if (metrics == null) {
+			return;
+		}
+		final CompressedContentCache cache = gzip.getContentCache();
+		if (cache != null) {
+			metrics.register(writer -> {
+				writer.counter("tamacat2_compressed_cache_hits_total", "Hits of the compressed content cache.", cache.getHits());
+				writer.counter("tamacat2_compressed_cache_misses_total", "Misses of the compressed content cache.", cache.getMisses());
+				writer.counter("tamacat2_compressed_cache_coalesced_total", "Misses sharing the compression of a concurrent miss.", cache.getCoalesced());
+				writer.counter("tamacat2_compressed_cache_evictions_total", "Evictions of the compressed content cache.", cache.getEvictions());
+				writer.gauge("tamacat2_compressed_cache_bytes", "Bytes of the compressed content cache.", cache.getTotalBytes());
+			});
+		}
+		final AdaptiveCompressionPolicy policy = gzip.getPolicy();
+		if (policy != null) {
+			metrics.register(writer -> {
+				for (final AdaptiveCompressionPolicy.Mode mode : AdaptiveCompressionPolicy.Mode.values()) {
+					writer.counter("tamacat2_compression_responses_total", "Compressed responses by the compression mode.",
+						policy.getCompressed(mode), "mode", mode.name().toLowerCase());
+				}
+				writer.counter("tamacat2_compression_cached_total", "Responses sent from the compressed content cache.", policy.getCached());
+				writer.counter("tamacat2_compression_skipped_total", "Responses not compressed under load.", policy.getSkipped());
+				writer.gauge("tamacat2_compression_cpu_load", "CPU load seen by the adaptive compression.", policy.getCpuLoad());
+				final AdaptiveCompressionPolicy.Mode current = policy.getCurrentMode();
+				for (final AdaptiveCompressionPolicy.Mode mode : AdaptiveCompressionPolicy.Mode.values()) {
+					writer.gauge("tamacat2_compression_mode", "Current mode of the adaptive compression. (1: current)",
+						mode == current ? 1 : 0, "mode", mode.name().toLowerCase());
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Label of the route in the metrics. ("hostname/path" with the virtual host)
+	 */
+	protected String getRouteName(final UrlConfig urlConfig) {
+		return StringUtils.isNotEmpty(urlConfig.getHostname()) ? urlConfig.getHostname() + urlConfig.getPath() : urlConfig.getPath();
+	}
+	
+	protected void register(final UrlConfig urlConfig, final CustomServerBootstrap bootstrap, final HttpRequestHandler requestHandler) {
+		if (requestHandler instanceof Closeable) {
+			resources.add((Closeable)requestHandler);
+		}
+		final HttpRequestHandler handler = metrics != null
+			? new MeteredRequestHandler(requestHandler, metrics.getRequestMetrics(getRouteName(urlConfig))) : requestHandler;
 		try {
 			if (StringUtils.isNotEmpty(urlConfig.getHostname())) {
 				LOG.info("register: VirtualHost="+getVirtualHost(urlConfig)+", path="+urlConfig.getPath() +"* WebServer");
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * <p>Bounded concurrent map with the CLOCK (second chance) eviction, an approximate LRU.<br>
+ * The lookups do not lock, a hit sets the reference bit of the entry. The entries are queued in the insertion order,
+ * and the eviction clears the reference bit and requeues the referenced entries once,
+ * so the entries used since the last pass survive as with the access-ordered LinkedHashMap.
+ * <p>The capacity is the total weight of the entries. (the number of the entries by default)
+ * The thread putting the entry evicts the entries until the total weight fits in the capacity.
+ */
+public class ClockCache<K, V> {
+
+	protected final long capacity;
+	protected final ToLongFunction<V> weigher;
+	protected final Consumer<V> removalListener;
+	protected final ConcurrentHashMap<K, Node<K, V>> entries = new ConcurrentHashMap<>();
+	protected final ConcurrentLinkedQueue<Node<K, V>> clock = new ConcurrentLinkedQueue<>();
+	protected final AtomicLong weight = new AtomicLong();
+
+	//removed entries still in the clock queue. (approximate, swept when it exceeds the entries)
+	protected final AtomicInteger removed = new AtomicInteger();
+	protected final LongAdder evictions = new LongAdder();
+
+	/**
+	 * @param capacity maximum number of the entries.
+	 */
+	public ClockCache(final long capacity) {
+		this(capacity, null, null);
+	}
+
+	/**
+	 * @param capacity maximum total weight of the entries.
+	 * @param weigher weight of the value, null: 1 for each entry.
+	 * @param removalListener called once for the value evicted, replaced or removed. (nullable)
+	 */
+	public ClockCache(final long capacity, final ToLongFunction<V> weigher, final Consumer<V> removalListener) {
+		this.capacity = capacity;
+		this.weigher = weigher;
+		this.removalListener = removalListener;
+	}
+
+	/**
+	 * @return the value, null if not cached.
+	 */
+	public V get(final K key) {
+		final Node<K, V> node = entries.get(key);
+		if (node == null) {
+			return null;
+		}
+		//no write on the hot entries already referenced.
+		if (!node.referenced) {
+			node.referenced = true;
+		}
+		return node.value;
+	}
+
+	/**
+	 * Put or replace the value, and evict the entries until the total weight fits in the capacity.
+	 */
+	public void put(final K key, final V value) {
+		final Node<K, V> node = new Node<>(key, value, weigher != null ? weigher.applyAsLong(value) : 1L);
+		weight.addAndGet(node.weight);
+		final Node<K, V> old = entries.put(key, node);
+		if (old != null) {
+			unlink(old, true);
+		}
+		//queued after the eviction, the new entry is not evicted before it is used.
+		evict();
+		clock.offer(node);
+	}
+
+	/**
+	 * Remove the entry of the key.
+	 */
+	public void remove(final K key) {
+		final Node<K, V> node = entries.remove(key);
+		if (node != null) {
+			unlink(node, true);
+		}
+	}
+
+	/**
+	 * Remove the entry only if the key is mapped to the value. (identity)
+	 * @return true if removed.
+	 */
+	public boolean remove(final K key, final V value) {
+		final Node<K, V> node = entries.get(key);
+		if (node != null && node.value == value && entries.remove(key, node)) {
+			unlink(node, true);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remove the entries of the keys matching the filter.
+	 */
+	public void removeIf(final Predicate<? super K> filter) {
+		for (final Node<K, V> node : entries.values()) {
+			if (filter.test(node.key) && entries.remove(node.key, node)) {
+				unlink(node, true);
+			}
+		}
+	}
+
+	public void clear() {
+		removeIf(key -> true);
+	}
+
+	protected void evict() {
+		//the second chance for each entry, then the referenced entries are evicted too.
+		int chances = entries.size();
+		while (weight.get() > capacity) {
+			final Node<K, V> node = clock.poll();
+			if (node == null) {
+				return;
+			}
+			if (node.removed) {
+				removed.decrementAndGet();
+			} else if (node.referenced && chances-- > 0) {
+				node.referenced = false;
+				clock.offer(node);
+			} else if (entries.remove(node.key, node)) {
+				evictions.increment();
+				unlink(node, false);
+			}
+		}
+	}
+
+	/**
+	 * @param queued the node is still in the clock queue.
+	 */
+	protected void unlink(final Node<K, V> node, final boolean queued) {
+		node.removed = true;
+		weight.addAndGet(-node.weight);
+		if (queued && removed.incrementAndGet() > entries.size() + 16) {
+			removed.set(0);
+			clock.removeIf(n -> n.removed);
+		}
+		if (removalListener != null) {
+			removalListener.accept(node.value);
+		}
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * @return total weight of the entries.
+	 */
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public long getCapacity() {
+		return capacity;
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	static final class Node<K, V> {
+		final K key;
+		final V value;
+		final long weight;
+		volatile boolean referenced;
+		volatile boolean removed;
+
+		Node(final K key, final V value, final long weight) {
+			this.key = key;
+			this.value = value;
+			this.weight = weight;
+		}
+	}
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.io.DirectBufferEntity;
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
+
+/**
+ * <p>In-memory cache of the compressed representations with the byte budget.<br>
+ * The compressed contents are held in the off-heap memory segments ({@link OffHeapBuffer}), keyed on the identity
+ * of the content, the content coding and the compression level ({@link cloud.tamacat2.httpd.io.IdentifiableEntity}),
+ * and the contents not recently used are evicted until the new content fits in the budget. ({@link ClockCache})
+ * <p>The evicted content is freed when the last response sending it is closed, not by the garbage collection.
+ * <p>The identity includes the validator of the content, the representation of the changed content is not used
+ * and evicted in time.
+ * <p>The lookups do not lock. The concurrent misses of a key are compressed once by the first thread (single-flight),
+ * the other threads wait for it and share the compressed content.
+ */
+public class CompressedContentCache implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(CompressedContentCache.class);
+
+	protected final long maxBytes;
+	protected final long maxEntryBytes;
+	protected final ClockCache<String, OffHeapBuffer> entries;
+	protected final ConcurrentHashMap<String, CompletableFuture<OffHeapBuffer>> flights = new ConcurrentHashMap<>();
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder coalesced = new LongAdder();
+
+	/**
+	 * Compress the content to the output.
+	 */
+	@FunctionalInterface
+	public interface Compressor {
+		void compress(OutputStream out) throws IOException;
+	}
+
+	/**
+	 * @param maxBytes total size of the compressed contents.
+	 * @param maxEntryBytes maximum size of the content (before compression) to compress and cache.
+	 */
+	public CompressedContentCache(final long maxBytes, final long maxEntryBytes) {
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = maxEntryBytes;
+		this.entries = new ClockCache<>(maxBytes, OffHeapBuffer::size, OffHeapBuffer::release);
+	}
+
+	/**
+	 * @param key identity of the content, the content coding and the level.
+	 * @return retained compressed content, null if not cached.
+	 * The reference is released by the {@link DirectBufferEntity}, or {@link OffHeapBuffer#release()}.
+	 */
+	public OffHeapBuffer get(final String key) {
+		final OffHeapBuffer cached = entries.get(key);
+		//not retained if freed by the eviction after the lookup.
+		if (cached != null && cached.retain()) {
+			hits.increment();
+			return cached;
+		}
+		return null;
+	}
+
+	/**
+	 * Compress the content of the missed key and cache it.
+	 * The concurrent calls of the key wait for the first one, and share the compressed content.
+	 * @param initialSize initial size of the buffer of the compression.
+	 * @return retained compressed content, null if the content cannot be shared or allocated. (compress it while sending)
+	 */
+	public OffHeapBuffer compress(final String key, final int initialSize, final Compressor compressor) throws IOException {
+		final CompletableFuture<OffHeapBuffer> flight = new CompletableFuture<>();
+		final CompletableFuture<OffHeapBuffer> leader = flights.putIfAbsent(key, flight);
+		if (leader != null) {
+			final OffHeapBuffer shared = leader.join();
+			//the leader failed, or freed by the eviction.
+			if (shared != null && shared.retain()) {
+				coalesced.increment();
+				return shared;
+			}
+			return null;
+		}
+		misses.increment();
+		OffHeapBuffer content = null;
+		try {
+			final CompressedBuffer buffer = new CompressedBuffer(initialSize);
+			compressor.compress(buffer);
+			content = put(key, buffer.bytes(), buffer.size());
+			return content;
+		} finally {
+			flights.remove(key, flight);
+			//the followers retain it while the leader holds the reference.
+			flight.complete(content);
+		}
+	}
+
+	/**
+	 * Copy the compressed content into the off-heap memory segment and cache it.
+	 * @return retained compressed content (not cached if larger than the budget), null if the native memory is exhausted.
+	 */
+	public OffHeapBuffer put(final String key, final byte[] compressed, final int length) {
+		final OffHeapBuffer content;
+		try {
+			content = OffHeapBuffer.copyOf(compressed, 0, length);
+		} catch (OutOfMemoryError e) {
+			LOG.warn(e.getMessage() + " (compressedCache=" + maxBytes + ")");
+			return null;
+		}
+		if (length > maxBytes) {
+			return content; //the only reference of the caller.
+		}
+		//the reference of the caller, before the cache can evict it.
+		content.retain();
+		entries.put(key, content);
+		return content;
+	}
+
+	/**
+	 * @return maximum size of the content (before compression) to compress and cache.
+	 */
+	public long getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	/**
+	 * @return number of the compressions of the missed keys.
+	 */
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * @return number of the misses that shared the compression of the concurrent miss.
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	public long getEvictions() {
+		return entries.getEvictions();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getTotalBytes() {
+		return entries.getWeight();
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+	@Override
+	public String toString() {
+		return "CompressedContentCache [entries=" + size() + ", bytes=" + getTotalBytes() + "/" + maxBytes
+			+ ", hits=" + getHits() + ", misses=" + getMisses() + ", coalesced=" + getCoalesced()
+			+ ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * Output of the compression without the copy of the buffer.
+	 */
+	static class CompressedBuffer extends ByteArrayOutputStream {
+		CompressedBuffer(final int size) {
+			super(size);
+		}
+
+		byte[] bytes() {
+			return buf;
+		}
+	}
+}
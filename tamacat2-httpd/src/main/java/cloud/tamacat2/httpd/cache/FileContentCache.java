@@ -0,0 +1,178 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.io.DirectBufferEntity;
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
+
+/**
+ * <p>In-memory cache of the small static files with the byte budget.<br>
+ * The contents are held in the off-heap memory segments ({@link OffHeapBuffer}), keyed on the absolute path of the file,
+ * and the contents not recently used are evicted until the new content fits in the budget. ({@link ClockCache})
+ * <p>The evicted content is freed when the last response sending it is closed, not by the garbage collection,
+ * so the budget bounds the native memory except for the contents being sent.
+ * <p>The content is valid while the size and the last modified time equal the {@link FileMetadata}
+ * (the metadata is invalidated by the {@link FileMetadataCache}), the changed file is read again.
+ * <p>The lookups do not lock, the file is read by the thread of the miss.
+ */
+public class FileContentCache implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(FileContentCache.class);
+
+	protected final long maxBytes;
+	protected final int maxFileBytes;
+	protected final ClockCache<String, Content> entries;
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+
+	/**
+	 * @param maxBytes total size of the contents.
+	 * @param maxFileBytes maximum size of a file to cache.
+	 */
+	public FileContentCache(final long maxBytes, final int maxFileBytes) {
+		this.maxBytes = maxBytes;
+		this.maxFileBytes = maxFileBytes;
+		this.entries = new ClockCache<>(maxBytes, Content::size, Content::release);
+	}
+
+	/**
+	 * Get the content of the file, read the file when the content is not cached or changed.
+	 * @return retained content (position 0 and limit is the file size), null if the file is not cacheable.
+	 * The reference is released by the {@link DirectBufferEntity}, or {@link OffHeapBuffer#release()}.
+	 */
+	public OffHeapBuffer get(final FileMetadata metadata) {
+		if (!metadata.exists() || metadata.isDirectory() || !metadata.canRead()
+				|| metadata.getLength() > maxFileBytes || metadata.getLength() > maxBytes) {
+			return null;
+		}
+		final String key = metadata.getFile().getPath();
+		final Content cached = entries.get(key);
+		//not retained if freed by the eviction after the lookup.
+		if (cached != null && cached.isValid(metadata) && cached.buffer.retain()) {
+			hits.increment();
+			return cached.buffer;
+		}
+		misses.increment();
+		final OffHeapBuffer buffer = read(metadata);
+		if (buffer == null) {
+			return null;
+		}
+		//the reference of the caller, before the cache can evict it.
+		buffer.retain();
+		entries.put(key, new Content(buffer, metadata.getLastModified()));
+		return buffer;
+	}
+
+	/**
+	 * Read the file into the off-heap memory segment.
+	 * @return null if the file was changed after the metadata was read.
+	 */
+	protected OffHeapBuffer read(final FileMetadata metadata) {
+		final Path path = metadata.getFile().toPath();
+		try (final FileChannel in = FileChannel.open(path, StandardOpenOption.READ)) {
+			if (in.size() != metadata.getLength()) {
+				return null;
+			}
+			final OffHeapBuffer buffer = OffHeapBuffer.read(in, (int) metadata.getLength());
+			//modified while reading.
+			if (buffer != null && (in.size() != metadata.getLength()
+					|| Files.getLastModifiedTime(path).toMillis() != metadata.getLastModified())) {
+				buffer.release();
+				return null;
+			}
+			return buffer;
+		} catch (IOException e) {
+			LOG.debug("Cannot read " + path + ". " + e.getMessage());
+			return null;
+		} catch (OutOfMemoryError e) {
+			//the native memory is exhausted, send from the file.
+			LOG.warn(e.getMessage() + " (contentCache=" + maxBytes + ")");
+			return null;
+		}
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return entries.getEvictions();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	public long getTotalBytes() {
+		return entries.getWeight();
+	}
+
+	@Override
+	public void close() {
+		clear();
+	}
+
+	@Override
+	public String toString() {
+		return "FileContentCache [entries=" + size() + ", bytes=" + getTotalBytes() + "/" + maxBytes
+			+ ", hits=" + getHits() + ", misses=" + getMisses() + ", evictions=" + getEvictions() + "]";
+	}
+
+	static class Content {
+		final OffHeapBuffer buffer;
+		final long lastModified;
+
+		Content(final OffHeapBuffer buffer, final long lastModified) {
+			this.buffer = buffer;
+			this.lastModified = lastModified;
+		}
+
+		boolean isValid(final FileMetadata metadata) {
+			return lastModified == metadata.getLastModified() && buffer.size() == metadata.getLength();
+		}
+
+		long size() {
+			return buffer.size();
+		}
+
+		/**
+		 * Release the reference of the cache. (evicted, replaced or cleared)
+		 */
+		void release() {
+			buffer.release();
+		}
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.apache.hc.core5.http.ContentType;
+
+import cloud.tamacat2.httpd.util.DateUtils;
+import cloud.tamacat2.httpd.util.MimeUtils;
+
+/**
+ * Metadata of the file in the docsRoot. (immutable)
+ */
+public class FileMetadata {
+
+	protected final String key;
+	protected final File file;
+	protected final boolean exists;
+	protected final boolean readable;
+	protected final boolean directory;
+	protected final long length;
+	protected final long lastModified;
+	protected final ContentType contentType;
+	protected final String etag;
+	protected final String lastModifiedDate;
+	protected final long expires;
+
+	protected FileMetadata(final String key, final File file, final boolean exists, final boolean readable,
+			final boolean directory, final long length, final long lastModified, final ContentType contentType,
+			final long expires) {
+		this.key = key;
+		this.file = file;
+		this.exists = exists;
+		this.readable = readable;
+		this.directory = directory;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.contentType = contentType;
+		this.etag = exists ? getETag(length, lastModified) : null;
+		this.lastModifiedDate = exists ? DateUtils.formatHttpDate(lastModified) : null;
+		this.expires = expires;
+	}
+
+	protected FileMetadata(final FileMetadata metadata, final ContentType contentType) {
+		this.key = metadata.key;
+		this.file = metadata.file;
+		this.exists = metadata.exists;
+		this.readable = metadata.readable;
+		this.directory = metadata.directory;
+		this.length = metadata.length;
+		this.lastModified = metadata.lastModified;
+		this.contentType = contentType;
+		this.etag = metadata.etag;
+		this.lastModifiedDate = metadata.lastModifiedDate;
+		this.expires = metadata.expires;
+	}
+
+	/**
+	 * Read the attributes of the file. (stat and access)
+	 * @param docsRoot normalized absolute path.
+	 * @param key decoded path in the docsRoot, begins with "/".
+	 * @param expires System.nanoTime() of the expiration.
+	 * @return not exists if the file is outside of the docsRoot.
+	 */
+	public static FileMetadata load(final Path docsRoot, final String key, final long expires) {
+		final Path path = docsRoot.getFileSystem().getPath(docsRoot.toString(), key).normalize();
+		if (!path.startsWith(docsRoot)) {
+			return new FileMetadata(key, path.toFile(), false, false, false, 0, 0, null, expires);
+		}
+		try {
+			final BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class);
+			final ContentType contentType = attrs.isDirectory() ? null : getContentType(key);
+			return new FileMetadata(key, path.toFile(), true, Files.isReadable(path), attrs.isDirectory(),
+				attrs.size(), attrs.lastModifiedTime().toMillis(), contentType, expires);
+		} catch (IOException e) {
+			//NoSuchFileException, NotDirectoryException or AccessDeniedException. (same as File.exists())
+			return new FileMetadata(key, path.toFile(), false, false, false, 0, 0, null, expires);
+		}
+	}
+
+	/**
+	 * Strong entity tag of the file. ("size-mtime" in hex)
+	 */
+	static String getETag(final long length, final long lastModified) {
+		return "\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	static ContentType getContentType(final String path) {
+		final String mime = MimeUtils.getContentType(path);
+		return mime != null ? ContentType.parse(mime) : ContentType.DEFAULT_BINARY;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public boolean exists() {
+		return exists;
+	}
+
+	public boolean canRead() {
+		return readable;
+	}
+
+	public boolean isDirectory() {
+		return directory;
+	}
+
+	/**
+	 * @return file size in bytes.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	public ContentType getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return quoted ETag, null if not exists.
+	 */
+	public String getETag() {
+		return etag;
+	}
+
+	/**
+	 * @return value of the Last-Modified header (HTTP-date), null if not exists.
+	 */
+	public String getLastModifiedDate() {
+		return lastModifiedDate;
+	}
+
+	/**
+	 * Copy of the metadata with the Content-Type. ex. the precompressed file (style.css.gz) as text/css.
+	 */
+	public FileMetadata withContentType(final ContentType contentType) {
+		return new FileMetadata(this, contentType);
+	}
+
+	public boolean isExpired(final long nanoTime) {
+		return nanoTime - expires >= 0;
+	}
+
+	@Override
+	public String toString() {
+		return "FileMetadata [file=" + file + ", exists=" + exists + ", readable=" + readable
+			+ ", directory=" + directory + ", length=" + length + ", lastModified=" + lastModified
+			+ ", contentType=" + contentType + "]";
+	}
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.NotDirectoryException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.config.FileCacheConfig;
+
+/**
+ * <p>Cache of the {@link FileMetadata} in the docsRoot, keyed on the decoded request path.<br>
+ * The metadata of the existing files and the paths not found are stored in the separate {@link ClockCache},
+ * so the 404 floods (ex. the bots probing "/wp-admin/") do not evict the hot files and do not touch the disk.
+ * <p>The directory of the file (or the nearest existing parent for the paths not found) is registered to
+ * the {@link WatchService} before the file is read, and the events invalidate the entries.
+ * The entries expire after the TTL for the changes which are not notified.
+ * <p>The lookups do not lock, the hits on the worker (or virtual) threads do not contend on a monitor.
+ */
+public class FileMetadataCache implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(FileMetadataCache.class);
+
+	protected final Path docsRoot;
+	protected final int maxEntries;
+	protected final int maxNotFoundEntries;
+	protected final long ttlNanos;
+	protected final ClockCache<String, FileMetadata> entries;
+	protected final ClockCache<String, FileMetadata> notFound;
+
+	//incremented by the invalidation, the metadata read before the invalidation is not stored.
+	protected final AtomicLong generation = new AtomicLong();
+
+	protected final Set<Path> watchedDirs = ConcurrentHashMap.newKeySet();
+	protected WatchService watchService;
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder invalidations = new LongAdder();
+
+	/**
+	 * @param docsRoot normalized absolute path.
+	 */
+	public FileMetadataCache(final Path docsRoot, final FileCacheConfig config) {
+		this.docsRoot = docsRoot;
+		this.maxEntries = config.getMaxEntries();
+		this.maxNotFoundEntries = config.getMaxNotFoundEntries();
+		this.entries = new ClockCache<>(maxEntries);
+		this.notFound = new ClockCache<>(maxNotFoundEntries);
+		this.ttlNanos = config.getTtl().toNanoseconds();
+		if (config.useWatchService()) {
+			try {
+				watchService = docsRoot.getFileSystem().newWatchService();
+				final Thread watcher = new Thread(this::processEvents, "FileWatcher-" + docsRoot.getFileName());
+				watcher.setDaemon(true);
+				watcher.start();
+			} catch (IOException | UnsupportedOperationException e) {
+				LOG.warn("WatchService is not available, the file metadata expires after the TTL. " + e.getMessage());
+				watchService = null;
+			}
+		}
+	}
+
+	public Path getDocsRoot() {
+		return docsRoot;
+	}
+
+	/**
+	 * Get the metadata of the file, read the file when the entry is not cached or expired.
+	 * @param key decoded path in the docsRoot, begins with "/". (ex. "/css/style.css")
+	 */
+	public FileMetadata get(final String key) {
+		final long now = System.nanoTime();
+		final long generation = this.generation.get();
+		FileMetadata metadata = entries.get(key);
+		if (metadata == null) {
+			metadata = notFound.get(key);
+		}
+		if (metadata != null && !metadata.isExpired(now)) {
+			hits.increment();
+			return metadata;
+		}
+		misses.increment();
+		final Path path = docsRoot.getFileSystem().getPath(docsRoot.toString(), key).normalize();
+		//"//a.html" and "/./a.html" are not cached, the events invalidate the normalized key only.
+		final boolean cacheable = path.startsWith(docsRoot) && key.equals(getKey(path));
+		if (cacheable && watchService != null) {
+			watch(path.getParent());
+		}
+		metadata = FileMetadata.load(docsRoot, key, now + ttlNanos);
+		if (cacheable) {
+			put(key, metadata, generation);
+		}
+		return metadata;
+	}
+
+	protected void put(final String key, final FileMetadata metadata, final long generation) {
+		if (generation != this.generation.get()) {
+			return;
+		}
+		final ClockCache<String, FileMetadata> map = metadata.exists() ? entries : notFound;
+		(metadata.exists() ? notFound : entries).remove(key);
+		map.put(key, metadata);
+		//invalidated while putting, the invalidation may have run before the put.
+		if (generation != this.generation.get()) {
+			map.remove(key, metadata);
+		}
+	}
+
+	/**
+	 * Remove the entry of the file.
+	 * @param path absolute path in the docsRoot.
+	 * @param tree also remove the entries under the directory.
+	 */
+	public void invalidate(final Path path, final boolean tree) {
+		if (!path.startsWith(docsRoot)) {
+			return;
+		}
+		final String key = getKey(path);
+		final String prefix = key.endsWith("/") ? key : key + "/";
+		generation.incrementAndGet();
+		for (final ClockCache<String, FileMetadata> map : List.of(entries, notFound)) {
+			map.remove(key);
+			if (tree) {
+				map.removeIf(k -> k.startsWith(prefix));
+			}
+		}
+		invalidations.increment();
+	}
+
+	public void clear() {
+		generation.incrementAndGet();
+		entries.clear();
+		notFound.clear();
+	}
+
+	/**
+	 * Register the directory, or the nearest existing parent in the docsRoot.
+	 */
+	protected void watch(Path dir) {
+		while (dir != null && dir.startsWith(docsRoot)) {
+			if (watchedDirs.contains(dir)) {
+				return;
+			}
+			try {
+				dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+				watchedDirs.add(dir);
+				return;
+			} catch (NoSuchFileException | NotDirectoryException e) {
+				dir = dir.getParent();
+			} catch (IOException | ClosedWatchServiceException e) {
+				//ex. the limit of inotify watches. The entries expire after the TTL.
+				LOG.debug("Cannot watch " + dir + ". " + e.getMessage());
+				return;
+			}
+		}
+	}
+
+	protected void processEvents() {
+		try {
+			for (;;) {
+				final WatchKey key = watchService.take();
+				final Path dir = (Path) key.watchable();
+				for (final WatchEvent<?> event : key.pollEvents()) {
+					if (event.kind() == OVERFLOW) {
+						clear();
+					} else {
+						//the created or deleted file may be a directory.
+						invalidate(dir.resolve((Path) event.context()), event.kind() != ENTRY_MODIFY);
+					}
+				}
+				if (!key.reset()) {
+					//the directory was deleted.
+					watchedDirs.remove(dir);
+					invalidate(dir, true);
+				}
+			}
+		} catch (InterruptedException | ClosedWatchServiceException e) {
+			//closed.
+		} catch (Exception e) {
+			LOG.warn("FileWatcher stopped. " + e.getMessage());
+		}
+	}
+
+	/**
+	 * @return "/" + relative path of the docsRoot.
+	 */
+	protected String getKey(final Path path) {
+		final String relative = docsRoot.relativize(path).toString();
+		return "/" + (File.separatorChar == '/' ? relative : relative.replace(File.separatorChar, '/'));
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getInvalidations() {
+		return invalidations.sum();
+	}
+
+	public int size() {
+		return entries.size() + notFound.size();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (watchService != null) {
+			watchService.close();
+		}
+		clear();
+	}
+
+	@Override
+	public String toString() {
+		return "FileMetadataCache [docsRoot=" + docsRoot + ", entries=" + size() + ", hits=" + getHits()
+			+ ", misses=" + getMisses() + ", invalidations=" + getInvalidations() + "]";
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.config;
+
+import org.apache.hc.core5.util.TimeValue;
+
+/**
+ * <p>Cache of the file metadata (existence, size, last modified, readability and Content-Type) in the docsRoot.<br>
+ * The entries are invalidated by the WatchService when the files are changed, and expire after the TTL.
+ * <pre>{@code
+ * UrlConfig.create().path("/").docsRoot("${server.home}/htdocs/")
+ *     .fileCache(FileCacheConfig.create().maxEntries(50000).ttl(TimeValue.ofSeconds(30)));
+ * }</pre>
+ */
+public class FileCacheConfig {
+
+	protected int maxEntries = 10000;
+	protected int maxNotFoundEntries = 10000;
+	protected TimeValue ttl = TimeValue.ofSeconds(10L);
+	protected boolean useWatchService = true;
+
+	public static FileCacheConfig create() {
+		return new FileCacheConfig();
+	}
+
+	/**
+	 * Number of the cached metadata of the existing files.
+	 * @param maxEntries default 10000.
+	 */
+	public FileCacheConfig maxEntries(final int maxEntries) {
+		if (maxEntries > 0) {
+			this.maxEntries = maxEntries;
+		}
+		return this;
+	}
+
+	public int getMaxEntries() {
+		return maxEntries;
+	}
+
+	/**
+	 * Number of the cached paths that do not exist. (negative lookup)
+	 * The 404 floods evict only these entries.
+	 * @param maxNotFoundEntries default 10000.
+	 */
+	public FileCacheConfig maxNotFoundEntries(final int maxNotFoundEntries) {
+		if (maxNotFoundEntries > 0) {
+			this.maxNotFoundEntries = maxNotFoundEntries;
+		}
+		return this;
+	}
+
+	public int getMaxNotFoundEntries() {
+		return maxNotFoundEntries;
+	}
+
+	/**
+	 * Time to live of the entry. The files are checked again after the TTL,
+	 * for the changes which the WatchService cannot notify. (ex. network file systems)
+	 * @param ttl default 10 seconds.
+	 */
+	public FileCacheConfig ttl(final TimeValue ttl) {
+		if (ttl != null && ttl.toMilliseconds() > 0) {
+			this.ttl = ttl;
+		}
+		return this;
+	}
+
+	public TimeValue getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * Invalidate the entries by the {@link java.nio.file.WatchService}.
+	 * @param useWatchService default true.
+	 */
+	public FileCacheConfig watchService(final boolean useWatchService) {
+		this.useWatchService = useWatchService;
+		return this;
+	}
+
+	public boolean useWatchService() {
+		return useWatchService;
+	}
+}
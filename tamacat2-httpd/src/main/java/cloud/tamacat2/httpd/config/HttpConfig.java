@@ -31,7 +31,29 @@ public class HttpConfig {
 	protected int maxTotal = 100;
 	protected int maxParRoute = 20;
 	protected int soTimeout = 60;
+	protected boolean soKeepAlive;
+	protected boolean soReuseAddress;
+	protected boolean tcpNoDelay = true;
+	protected int backlogSize;
+	protected int rcvBufSize;
+	protected int sndBufSize;
+	protected boolean reusePort;
+	protected int acceptors = Runtime.getRuntime().availableProcessors();
 	protected String contentEncoding;
+	protected int compressionLevel = -1;
+	protected long compressionMinSize = 1024;
+	protected boolean adaptiveCompression;
+	protected long compressedCacheBytes;
+	protected long compressedCacheMaxEntryBytes = 1024 * 1024;
+	protected boolean virtualThreads;
+	protected boolean http2;
+	protected boolean zeroCopy = true;
+	protected long contentCacheBytes;
+	protected int contentCacheMaxFileBytes = 64 * 1024;
+	protected String accessLog;
+	protected String accessLogFormat = "combined";
+	protected int accessLogBufferSize = 8192;
+	protected String metrics;
 	
 	protected Collection<UrlConfig> urlConfigs = new ArrayList<>();
 	
@@ -115,10 +137,127 @@ public class HttpConfig {
 		return maxParRoute;
 	}
 	
+	/**
+	 * Socket timeout (SO_TIMEOUT) of the connections.
+	 * <p>Applied to the classic HttpServer connections as well as the I/O reactor, so an idle
+	 * keep-alive connection or a slow client is closed after this timeout.
+	 * (the classic connections previously used the SocketConfig default of 3 minutes)
+	 * @param soTimeout seconds. default 60.
+	 */
+	public HttpConfig soTimeout(final int soTimeout) {
+		this.soTimeout = soTimeout;
+		return this;
+	}
+	
 	public int getSoTimeout() {
 		return soTimeout;
 	}
 	
+	/**
+	 * @param soKeepAlive SO_KEEPALIVE of the connections. default false.
+	 */
+	public HttpConfig soKeepAlive(final boolean soKeepAlive) {
+		this.soKeepAlive = soKeepAlive;
+		return this;
+	}
+	
+	public boolean isSoKeepAlive() {
+		return soKeepAlive;
+	}
+	
+	/**
+	 * @param soReuseAddress SO_REUSEADDR of the listener socket. default false.
+	 */
+	public HttpConfig soReuseAddress(final boolean soReuseAddress) {
+		this.soReuseAddress = soReuseAddress;
+		return this;
+	}
+	
+	public boolean isSoReuseAddress() {
+		return soReuseAddress;
+	}
+	
+	/**
+	 * @param tcpNoDelay TCP_NODELAY of the connections. default true.
+	 */
+	public HttpConfig tcpNoDelay(final boolean tcpNoDelay) {
+		this.tcpNoDelay = tcpNoDelay;
+		return this;
+	}
+	
+	public boolean isTcpNoDelay() {
+		return tcpNoDelay;
+	}
+	
+	/**
+	 * Maximum queue length of the incoming connections of the listener socket.
+	 * @param backlogSize default 0. (system default)
+	 */
+	public HttpConfig backlogSize(final int backlogSize) {
+		this.backlogSize = backlogSize;
+		return this;
+	}
+	
+	public int getBacklogSize() {
+		return backlogSize;
+	}
+	
+	/**
+	 * @param rcvBufSize SO_RCVBUF bytes. default 0. (system default)
+	 */
+	public HttpConfig rcvBufSize(final int rcvBufSize) {
+		this.rcvBufSize = rcvBufSize;
+		return this;
+	}
+	
+	public int getRcvBufSize() {
+		return rcvBufSize;
+	}
+	
+	/**
+	 * @param sndBufSize SO_SNDBUF bytes. default 0. (system default)
+	 */
+	public HttpConfig sndBufSize(final int sndBufSize) {
+		this.sndBufSize = sndBufSize;
+		return this;
+	}
+	
+	public int getSndBufSize() {
+		return sndBufSize;
+	}
+	
+	/**
+	 * Open the listener sockets of the {@link #acceptors(int)} on the same port with SO_REUSEPORT. (Linux)
+	 * The kernel distributes the incoming connections, and each socket has its own accept loop and worker pool.
+	 * <p>Any process of the same user can bind the port with SO_REUSEPORT.
+	 * @param reusePort default false. (one listener socket)
+	 */
+	public HttpConfig reusePort(final boolean reusePort) {
+		this.reusePort = reusePort;
+		return this;
+	}
+	
+	public boolean useReusePort() {
+		return reusePort;
+	}
+	
+	/**
+	 * @param acceptors number of the listener sockets with {@link #reusePort(boolean)}. default available processors.
+	 */
+	public HttpConfig acceptors(final int acceptors) {
+		if (acceptors > 0) {
+			this.acceptors = acceptors;
+		}
+		return this;
+	}
+	
+	/**
+	 * @return number of the listener sockets. (1 if SO_REUSEPORT is not used)
+	 */
+	public int getAcceptors() {
+		return reusePort ? acceptors : 1;
+	}
+	
 	public HttpConfig contentEncoding(final String contentEncoding) {
 		this.contentEncoding = contentEncoding;
 		return this;
@@ -127,4 +266,204 @@ public class HttpConfig {
 	public String getContentEncoding() {
 		return contentEncoding;
 	}
+	
+	/**
+	 * @param compressionLevel gzip compression level (1-9), default -1. (zlib default: 6)
+	 */
+	public HttpConfig compressionLevel(final int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+		return this;
+	}
+	
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+	
+	/**
+	 * @param compressionMinSize the response smaller than the Content-Length is not compressed. default 1024 bytes.
+	 */
+	public HttpConfig compressionMinSize(final long compressionMinSize) {
+		this.compressionMinSize = compressionMinSize;
+		return this;
+	}
+	
+	public long getCompressionMinSize() {
+		return compressionMinSize;
+	}
+	
+	/**
+	 * Lower the compression level or skip the compression under the CPU load and the latency.
+	 * @param adaptiveCompression default false.
+	 * @see cloud.tamacat2.httpd.web.AdaptiveCompressionPolicy
+	 */
+	public HttpConfig adaptiveCompression(final boolean adaptiveCompression) {
+		this.adaptiveCompression = adaptiveCompression;
+		return this;
+	}
+	
+	public boolean useAdaptiveCompression() {
+		return adaptiveCompression;
+	}
+	
+	/**
+	 * Cache of the gzip compressed representations of the static files (and the entities with the identity),
+	 * sent with the Content-Length. The contents are held in the direct (off-heap) ByteBuffers.
+	 * @param compressedCacheBytes default 0. (disabled)
+	 * @see cloud.tamacat2.httpd.cache.CompressedContentCache
+	 */
+	public HttpConfig compressedCache(final long compressedCacheBytes) {
+		this.compressedCacheBytes = compressedCacheBytes;
+		return this;
+	}
+	
+	public long getCompressedCacheBytes() {
+		return compressedCacheBytes;
+	}
+	
+	/**
+	 * Maximum size of the content (before compression) in the compressed cache. The larger contents are compressed on the fly.
+	 * @param compressedCacheMaxEntryBytes default 1MB.
+	 */
+	public HttpConfig compressedCacheMaxEntryBytes(final long compressedCacheMaxEntryBytes) {
+		if (compressedCacheMaxEntryBytes > 0) {
+			this.compressedCacheMaxEntryBytes = compressedCacheMaxEntryBytes;
+		}
+		return this;
+	}
+	
+	public long getCompressedCacheMaxEntryBytes() {
+		return compressedCacheMaxEntryBytes;
+	}
+	
+	/**
+	 * Serve the connections on virtual threads instead of the platform worker threads.
+	 * The keep-alive connections and the slow clients do not hold an OS thread each.
+	 * @param virtualThreads default false.
+	 */
+	public HttpConfig virtualThreads(final boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+		return this;
+	}
+	
+	public boolean useVirtualThreads() {
+		return virtualThreads;
+	}
+	
+	/**
+	 * Serve HTTP/2 on the listener port.
+	 * <ul>
+	 *   <li>HTTPS: h2 or http/1.1 is negotiated with ALPN.</li>
+	 *   <li>HTTP: h2c with prior knowledge only. (The HTTP/1.1 clients use the HTTPS listener.)</li>
+	 * </ul>
+	 * @param http2 default false. (HTTP/1.1 only)
+	 */
+	public HttpConfig http2(final boolean http2) {
+		this.http2 = http2;
+		return this;
+	}
+	
+	public boolean useHttp2() {
+		return http2;
+	}
+	
+	/**
+	 * Send the static files with FileChannel.transferTo (sendfile) on the plain HTTP.
+	 * (HTTPS and HTTP/2 read the files with the pooled buffers.)
+	 * @param zeroCopy default true.
+	 */
+	public HttpConfig zeroCopy(final boolean zeroCopy) {
+		this.zeroCopy = zeroCopy;
+		return this;
+	}
+	
+	public boolean useZeroCopy() {
+		return zeroCopy;
+	}
+	
+	/**
+	 * In-memory cache of the small static files. The contents are held in the direct (off-heap) ByteBuffers,
+	 * and the budget is shared by the UrlConfigs of the server. (less than -XX:MaxDirectMemorySize)
+	 * @param contentCacheBytes default 0. (disabled)
+	 */
+	public HttpConfig contentCache(final long contentCacheBytes) {
+		this.contentCacheBytes = contentCacheBytes;
+		return this;
+	}
+	
+	public long getContentCacheBytes() {
+		return contentCacheBytes;
+	}
+	
+	/**
+	 * Maximum size of a file in the content cache. The larger files are sent from the file.
+	 * @param contentCacheMaxFileBytes default 64KB.
+	 */
+	public HttpConfig contentCacheMaxFileBytes(final int contentCacheMaxFileBytes) {
+		if (contentCacheMaxFileBytes > 0) {
+			this.contentCacheMaxFileBytes = contentCacheMaxFileBytes;
+		}
+		return this;
+	}
+	
+	public int getContentCacheMaxFileBytes() {
+		return contentCacheMaxFileBytes;
+	}
+	
+	/**
+	 * Write the access log to the file asynchronously. (batched by the writer thread, rotated daily and by the size)
+	 * <p>${server.home} is the variable of the server home directory.
+	 * @param accessLog path of the file, default null. (the "Access" logger of SLF4J)
+	 * @see cloud.tamacat2.httpd.log.AccessLogWriter
+	 */
+	public HttpConfig accessLog(final String accessLog) {
+		this.accessLog = accessLog;
+		return this;
+	}
+	
+	public String getAccessLog() {
+		return accessLog;
+	}
+	
+	/**
+	 * @param accessLogFormat "combined", "json" or "binary". default "combined".
+	 */
+	public HttpConfig accessLogFormat(final String accessLogFormat) {
+		this.accessLogFormat = accessLogFormat;
+		return this;
+	}
+	
+	public String getAccessLogFormat() {
+		return accessLogFormat;
+	}
+	
+	/**
+	 * Number of the records in the ring buffer of the access log.
+	 * The request thread waits for the writer (or the record is dropped) when the buffer is full.
+	 * @param accessLogBufferSize default 8192.
+	 */
+	public HttpConfig accessLogBufferSize(final int accessLogBufferSize) {
+		if (accessLogBufferSize > 0) {
+			this.accessLogBufferSize = accessLogBufferSize;
+		}
+		return this;
+	}
+	
+	public int getAccessLogBufferSize() {
+		return accessLogBufferSize;
+	}
+	
+	/**
+	 * Serve the metrics of the server in the Prometheus text format.
+	 * (requests, latency percentiles and bytes of the routes, connections, caches and the backends of the reverse proxy)
+	 * @param metrics path of the route, ex. "/metrics". default null. (not recorded)
+	 * @see cloud.tamacat2.httpd.metrics.MetricsRegistry
+	 */
+	public HttpConfig metrics(final String metrics) {
+		this.metrics = metrics;
+		return this;
+	}
+	
+	public String getMetrics() {
+		return metrics;
+	}
 }
@@ -38,6 +38,8 @@ public class UrlConfig {
 	protected HttpConfig httpConfig;
 	protected String serverHome;
 	protected boolean useDirectoryListing = false;
+	protected FileCacheConfig fileCacheConfig = FileCacheConfig.create();
+	protected String precompressed;
 
 	final protected Collection<HttpFilter> httpFilters = new ArrayList<>();
 	
@@ -68,6 +70,7 @@ public class UrlConfig {
 	
 	/**
 	 * Configure Virtual Host
+	 * <p>The wildcard "*.example.com" matches the subdomains of example.com.
 	 * @param host
 	 */
 	public UrlConfig host(final String host) {
@@ -134,4 +137,36 @@ public class UrlConfig {
 	public boolean useDirectoryListing() {
 		return useDirectoryListing;
 	}
+
+	/**
+	 * Cache of the file metadata in the docsRoot. (default enabled)
+	 * @param fileCacheConfig null to read the file attributes on every request.
+	 */
+	public UrlConfig fileCache(final FileCacheConfig fileCacheConfig) {
+		this.fileCacheConfig = fileCacheConfig;
+		return this;
+	}
+
+	public FileCacheConfig getFileCacheConfig() {
+		return fileCacheConfig;
+	}
+
+	/**
+	 * Serve the precompressed sibling files (ex. style.css.br, style.css.gz) with the Content-Encoding.
+	 * <p>Examples: {@code precompressed="br,gzip"} (in the order of preference)
+	 * <ul>
+	 *   <li>br: *.br</li>
+	 *   <li>zstd: *.zst</li>
+	 *   <li>gzip: *.gz</li>
+	 * </ul>
+	 * @param precompressed Comma Separated Value of the content codings, null to disable. (default)
+	 */
+	public UrlConfig precompressed(final String precompressed) {
+		this.precompressed = precompressed;
+		return this;
+	}
+
+	public String getPrecompressed() {
+		return precompressed;
+	}
 }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.http2;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.ProtocolVersion;
+import org.apache.hc.core5.http.io.HttpServerRequestHandler;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+import org.apache.hc.core5.http.message.MessageSupport;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpProcessor;
+
+/**
+ * <p>Run the classic request handler (routes and HttpFilters) and the request/response interceptors
+ * on the HTTP/2 server, in the same order as the classic HttpService.
+ * <ul>
+ *   <li>The request interceptors are applied before the handler.</li>
+ *   <li>The response interceptors are applied before the response is sent, and may replace the entity. (ex. gzip)</li>
+ *   <li>The message framing (Content-Length, Transfer-Encoding) is generated by the HTTP/1.1 or HTTP/2 codec,
+ *   and the connection-specific headers are removed for HTTP/2. (RFC 9113 Section 8.2.2)</li>
+ *   <li>The output stream is closed after the entity is written, to end the HTTP/2 stream.</li>
+ * </ul>
+ */
+public class Http2ServerRequestHandler implements HttpServerRequestHandler {
+
+	static final String[] CONNECTION_SPECIFIC_HEADERS = {
+		HttpHeaders.CONNECTION, HttpHeaders.KEEP_ALIVE, HttpHeaders.PROXY_CONNECTION, HttpHeaders.UPGRADE
+	};
+
+	protected final HttpServerRequestHandler handler;
+	protected final HttpProcessor httpProcessor;
+
+	/**
+	 * @param handler classic request handler. (ex. CustomServerBootstrap#createRequestHandler())
+	 * @param httpProcessor request/response interceptors of the server.
+	 */
+	public Http2ServerRequestHandler(final HttpServerRequestHandler handler, final HttpProcessor httpProcessor) {
+		this.handler = handler;
+		this.httpProcessor = httpProcessor;
+	}
+
+	@Override
+	public void handle(final ClassicHttpRequest request, final ResponseTrigger responseTrigger, final HttpContext context)
+			throws HttpException, IOException {
+		httpProcessor.process(request, request.getEntity(), context);
+		handler.handle(request, new ResponseTrigger() {
+
+			@Override
+			public void sendInformation(final ClassicHttpResponse response) throws HttpException, IOException {
+				responseTrigger.sendInformation(response);
+			}
+
+			@Override
+			public void submitResponse(final ClassicHttpResponse response) throws HttpException, IOException {
+				//the response interceptors see the Content-Type of the entity like the classic server.
+				MessageSupport.addContentTypeHeader(response, response.getEntity());
+				MessageSupport.addContentEncodingHeader(response, response.getEntity());
+				httpProcessor.process(response, response.getEntity(), context);
+				removeFramingHeaders(response, context.getProtocolVersion());
+				if (response.getEntity() != null) {
+					response.setEntity(new EndOfStreamEntity(response.getEntity()));
+				}
+				responseTrigger.submitResponse(response);
+			}
+		}, context);
+	}
+
+	protected void removeFramingHeaders(final ClassicHttpResponse response, final ProtocolVersion version) {
+		final HttpEntity entity = response.getEntity();
+		if (entity != null) {
+			response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+		}
+		response.removeHeaders(HttpHeaders.TRANSFER_ENCODING);
+		if (version != null && version.greaterEquals(HttpVersion.HTTP_2)) {
+			for (final String name : CONNECTION_SPECIFIC_HEADERS) {
+				response.removeHeaders(name);
+			}
+		}
+	}
+
+	/**
+	 * Close the output stream of the async bridge after writing the entity.
+	 * (The end of stream is not propagated until the output stream is closed.)
+	 * <p>The bridge does not close the response, the entity is closed after writing. (ex. the off-heap content is released)
+	 */
+	static class EndOfStreamEntity extends HttpEntityWrapper {
+
+		EndOfStreamEntity(final HttpEntity entity) {
+			super(entity);
+		}
+
+		@Override
+		public void writeTo(final OutputStream outStream) throws IOException {
+			try {
+				super.writeTo(outStream);
+				outStream.close();
+			} finally {
+				close();
+			}
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Satisfiable byte range of the representation. (RFC 9110 Section 14.1.2)
+ */
+public class ByteRange {
+
+	/** The Range header with more overlapping ranges is ignored. */
+	static final int MAX_OVERLAPS = 2;
+
+	protected final long first;
+	protected final long last;
+
+	public ByteRange(final long first, final long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parse the Range header.
+	 * <ul>
+	 *   <li>"bytes=0-499", "bytes=500-" and "bytes=-500" (the last 500 bytes)</li>
+	 *   <li>The last position larger than the representation is the last byte.</li>
+	 *   <li>The overlapping or adjacent ranges are coalesced. ({@link #coalesce(List, long)})</li>
+	 * </ul>
+	 * @param range value of the Range header.
+	 * @param length size of the representation.
+	 * @param maxRanges the Range header with more ranges is ignored. (ex. many small ranges)
+	 * @return null if the Range header is ignored (invalid, not bytes, too many ranges or overlapping),
+	 *   or empty if no range is satisfiable. (416 Range Not Satisfiable)
+	 */
+	public static List<ByteRange> parse(final String range, final long length, final int maxRanges) {
+		if (range == null) {
+			return null;
+		}
+		final String value = range.trim();
+		if (!value.regionMatches(true, 0, "bytes=", 0, 6)) {
+			return null;
+		}
+		final List<ByteRange> ranges = new ArrayList<>();
+		int count = 0;
+		for (final String spec : value.substring(6).split(",")) {
+			final String s = spec.trim();
+			if (s.isEmpty()) {
+				continue;
+			}
+			if (++count > maxRanges) {
+				return null;
+			}
+			final int dash = s.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+			if (dash == 0) {
+				//suffix-range
+				final long suffix = parseLong(s.substring(1));
+				if (suffix < 0) {
+					return null;
+				} else if (suffix > 0 && length > 0) {
+					ranges.add(new ByteRange(Math.max(0, length - suffix), length - 1));
+				}
+			} else {
+				final long first = parseLong(s.substring(0, dash));
+				final long last = dash == s.length() - 1 ? Long.MAX_VALUE : parseLong(s.substring(dash + 1));
+				if (first < 0 || last < first) {
+					return null;
+				} else if (first < length) {
+					ranges.add(new ByteRange(first, Math.min(last, length - 1)));
+				}
+			}
+		}
+		return count > 0 ? coalesce(ranges, length) : null;
+	}
+
+	/**
+	 * Coalesce the overlapping or adjacent ranges. (RFC 9110 Section 14.2)
+	 * <p>The ranges are sorted in ascending order if coalesced, otherwise kept in the requested order.
+	 * @param length size of the representation.
+	 * @return null if the ranges overlap more than {@value #MAX_OVERLAPS} times
+	 *   or the total length exceeds the representation. (ex. "bytes=0-,0-,0-" sends the representation repeatedly)
+	 */
+	static List<ByteRange> coalesce(final List<ByteRange> ranges, final long length) {
+		if (ranges.size() <= 1) {
+			return ranges;
+		}
+		long total = 0;
+		for (final ByteRange range : ranges) {
+			total += range.getLength();
+		}
+		if (total > length) {
+			return null;
+		}
+		final List<ByteRange> sorted = new ArrayList<>(ranges);
+		sorted.sort(Comparator.comparingLong(ByteRange::getFirst));
+		final List<ByteRange> coalesced = new ArrayList<>();
+		int overlaps = 0;
+		ByteRange current = sorted.get(0);
+		for (final ByteRange next : sorted.subList(1, sorted.size())) {
+			if (next.first <= current.last) {
+				if (++overlaps > MAX_OVERLAPS) {
+					return null;
+				}
+			} else if (next.first > current.last + 1) {
+				coalesced.add(current);
+				current = next;
+				continue;
+			}
+			if (next.last > current.last) {
+				current = new ByteRange(current.first, next.last);
+			}
+		}
+		coalesced.add(current);
+		return coalesced.size() == ranges.size() ? ranges : coalesced;
+	}
+
+	/**
+	 * @return -1 if not digits, Long.MAX_VALUE if overflow.
+	 */
+	static long parseLong(final String digits) {
+		if (digits.isEmpty()) {
+			return -1L;
+		}
+		long value = 0;
+		for (int i = 0; i < digits.length(); i++) {
+			final char c = digits.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1L;
+			}
+			value = value > (Long.MAX_VALUE - 9) / 10 ? Long.MAX_VALUE : value * 10 + (c - '0');
+		}
+		return value;
+	}
+
+	public long getFirst() {
+		return first;
+	}
+
+	public long getLast() {
+		return last;
+	}
+
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * @return value of the Content-Range header. ex. "bytes 0-499/1234"
+	 */
+	public String getContentRange(final long completeLength) {
+		return "bytes " + first + "-" + last + "/" + completeLength;
+	}
+
+	@Override
+	public String toString() {
+		return first + "-" + last;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.http.message.BasicNameValuePair;
+import org.apache.hc.core5.util.Args;
+
+/**
+ * Entity of the multiple ranges of the file. (multipart/byteranges, RFC 9110 Section 14.6)
+ * <p>Each part is read with the positioned reads of one file channel, the Content-Length is computed from the part headers.
+ */
+public class ByteRangesEntity extends AbstractHttpEntity {
+
+	protected final File file;
+	protected final List<ByteRange> ranges;
+	protected final List<byte[]> partHeaders = new ArrayList<>();
+	protected final byte[] trailer;
+	protected final long contentLength;
+
+	/**
+	 * @param length size of the file. (complete length of Content-Range)
+	 * @param contentType Content-Type of the parts.
+	 */
+	public ByteRangesEntity(final File file, final long length, final List<ByteRange> ranges,
+			final ContentType contentType) {
+		this(file, length, ranges, contentType, createBoundary());
+	}
+
+	public ByteRangesEntity(final File file, final long length, final List<ByteRange> ranges,
+			final ContentType contentType, final String boundary) {
+		super(ContentType.create("multipart/byteranges", new BasicNameValuePair("boundary", boundary)), null);
+		this.file = Args.notNull(file, "File");
+		this.ranges = Args.notEmpty(ranges, "Ranges");
+		long contentLength = 0;
+		for (final ByteRange range : ranges) {
+			final byte[] header = ((partHeaders.isEmpty() ? "" : "\r\n") + "--" + boundary + "\r\n"
+				+ (contentType != null ? "Content-Type: " + contentType + "\r\n" : "")
+				+ "Content-Range: " + range.getContentRange(length) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+			partHeaders.add(header);
+			contentLength += header.length + range.getLength();
+		}
+		this.trailer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		this.contentLength = contentLength + trailer.length;
+	}
+
+	static String createBoundary() {
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		return Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+	}
+
+	public List<ByteRange> getRanges() {
+		return ranges;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return contentLength;
+	}
+
+	/**
+	 * The parts are read in sequence from one file channel, closed with the returned stream.
+	 */
+	@Override
+	public InputStream getContent() throws IOException {
+		final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		final List<InputStream> streams = new ArrayList<>();
+		for (int i = 0; i < ranges.size(); i++) {
+			final ByteRange range = ranges.get(i);
+			streams.add(new ByteArrayInputStream(partHeaders.get(i)));
+			streams.add(new FileChannelEntity.RegionInputStream(channel, range.getFirst(), range.getLength(), false));
+		}
+		streams.add(new ByteArrayInputStream(trailer));
+		return new SequenceInputStream(Collections.enumeration(streams)) {
+			@Override
+			public void close() throws IOException {
+				try {
+					super.close();
+				} finally {
+					channel.close();
+				}
+			}
+		};
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		Args.notNull(out, "Output stream");
+		final byte[] pooled = FileChannelEntity.BUFFERS.poll();
+		final byte[] buffer = pooled != null ? pooled : new byte[FileChannelEntity.BUFFER_SIZE];
+		try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			for (int i = 0; i < ranges.size(); i++) {
+				final ByteRange range = ranges.get(i);
+				out.write(partHeaders.get(i));
+				FileChannelEntity.writeTo(in, range.getFirst(), range.getLength(), buffer, out);
+			}
+			out.write(trailer);
+		} catch (EOFException e) {
+			throw new IOException("File truncated: " + file);
+		} finally {
+			FileChannelEntity.BUFFERS.offer(buffer);
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.Closeable;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Pool of the raw (nowrap) Deflaters of the compression level.<br>
+ * A Deflater holds the native zlib memory (about 256KB for the default level), the Deflaters are reused
+ * instead of the new Deflater per response. (GZIPOutputStream)
+ * <p>The pool is shared by the worker threads and the virtual threads. (not ThreadLocal)
+ * The Deflater is created when the pool is empty, and ended when the pool is full.
+ */
+public class DeflaterPool implements Closeable {
+
+	protected final int level;
+	protected final ArrayBlockingQueue<Deflater> deflaters;
+
+	/**
+	 * @param level compression level (0-9), or Deflater.DEFAULT_COMPRESSION (-1).
+	 * @param maxIdle maximum number of the pooled Deflaters.
+	 */
+	public DeflaterPool(final int level, final int maxIdle) {
+		if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level: " + level);
+		}
+		this.level = level;
+		this.deflaters = new ArrayBlockingQueue<>(Math.max(1, maxIdle));
+	}
+
+	public DeflaterPool(final int level) {
+		this(level, Runtime.getRuntime().availableProcessors() * 4);
+	}
+
+	public Deflater acquire() {
+		final Deflater deflater = deflaters.poll();
+		return deflater != null ? deflater : new Deflater(level, true);
+	}
+
+	/**
+	 * Reset and return the Deflater to the pool.
+	 */
+	public void release(final Deflater deflater) {
+		deflater.reset();
+		if (!deflaters.offer(deflater)) {
+			deflater.end();
+		}
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * @return number of the idle Deflaters.
+	 */
+	public int size() {
+		return deflaters.size();
+	}
+
+	@Override
+	public void close() {
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.util.Args;
+
+/**
+ * Repeatable entity of the shared (direct) ByteBuffer. ex. the content of {@link cloud.tamacat2.httpd.cache.FileContentCache}
+ * and {@link cloud.tamacat2.httpd.cache.CompressedContentCache}
+ * <p>The buffer is not consumed, each write reads a duplicate of the buffer.
+ * (org.apache.hc.core5.http.io.entity.ByteBufferEntity consumes the buffer.)
+ * The {@link ZeroCopyHttpServerConnection} writes the buffer to the socket channel,
+ * the OutputStream (HTTPS, HTTP/2 and gzip) is written with the pooled heap buffers.
+ * <p>The reference of the {@link OffHeapBuffer} is released by {@link #close()}. (the response is closed after it is sent)
+ */
+public class DirectBufferEntity extends AbstractHttpEntity implements IdentifiableEntity, TransferableEntity {
+
+	protected final ByteBuffer buffer;
+	protected final OffHeapBuffer content;
+	protected final AtomicBoolean closed = new AtomicBoolean();
+	protected String identity;
+
+	/**
+	 * @param buffer the content between the position and the limit.
+	 */
+	public DirectBufferEntity(final ByteBuffer buffer, final ContentType contentType) {
+		this(buffer, contentType, null);
+	}
+
+	/**
+	 * @param contentEncoding ex. "gzip" of {@link cloud.tamacat2.httpd.cache.CompressedContentCache}
+	 */
+	public DirectBufferEntity(final ByteBuffer buffer, final ContentType contentType, final String contentEncoding) {
+		super(contentType, contentEncoding);
+		this.buffer = Args.notNull(buffer, "Buffer").duplicate();
+		this.content = null;
+	}
+
+	/**
+	 * @param content retained off-heap content, the reference is owned by the entity.
+	 */
+	public DirectBufferEntity(final OffHeapBuffer content, final ContentType contentType) {
+		this(content, contentType, null);
+	}
+
+	/**
+	 * @param content retained off-heap content, the reference is owned by the entity.
+	 */
+	public DirectBufferEntity(final OffHeapBuffer content, final ContentType contentType, final String contentEncoding) {
+		super(contentType, contentEncoding);
+		this.content = Args.notNull(content, "Content");
+		this.buffer = content.buffer();
+	}
+
+	/**
+	 * @param identity same as the {@link FileChannelEntity} of the file.
+	 */
+	public DirectBufferEntity identity(final String identity) {
+		this.identity = identity;
+		return this;
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return buffer.remaining();
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		final ByteBuffer content = buffer.duplicate();
+		return new InputStream() {
+			@Override
+			public int read() throws IOException {
+				return content.hasRemaining() ? content.get() & 0xff : -1;
+			}
+
+			@Override
+			public int read(final byte[] b, final int off, final int len) throws IOException {
+				if (!content.hasRemaining()) {
+					return -1;
+				}
+				final int n = Math.min(len, content.remaining());
+				content.get(b, off, n);
+				return n;
+			}
+
+			@Override
+			public int available() throws IOException {
+				return content.remaining();
+			}
+		};
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		Args.notNull(out, "Output stream");
+		final ByteBuffer content = buffer.duplicate();
+		final byte[] pooled = FileChannelEntity.BUFFERS.poll();
+		final byte[] bytes = pooled != null ? pooled : new byte[FileChannelEntity.BUFFER_SIZE];
+		try {
+			while (content.hasRemaining()) {
+				final int n = Math.min(bytes.length, content.remaining());
+				content.get(bytes, 0, n);
+				out.write(bytes, 0, n);
+			}
+		} finally {
+			FileChannelEntity.BUFFERS.offer(bytes);
+		}
+	}
+
+	/**
+	 * Write the buffer to the channel. (blocking, or waits until the socket is writable on the virtual threads)
+	 */
+	@Override
+	public long transferTo(final WritableByteChannel channel) throws IOException {
+		Args.notNull(channel, "Channel");
+		final ByteBuffer content = buffer.duplicate();
+		while (content.hasRemaining()) {
+			channel.write(content);
+		}
+		return buffer.remaining();
+	}
+
+	/**
+	 * Release the reference of the off-heap content. (once)
+	 */
+	@Override
+	public void close() throws IOException {
+		if (content != null && closed.compareAndSet(false, true)) {
+			content.release();
+		}
+	}
+}
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.AbstractHttpEntity;
+import org.apache.hc.core5.util.Args;
+
+/**
+ * File entity sent by {@link FileChannel#transferTo(long, long, WritableByteChannel)}.
+ * <ul>
+ *   <li>Plain HTTP: {@link ZeroCopyHttpServerConnection} transfers the file to the socket channel. (sendfile)
+ *   The pooled direct buffers are used while the socket is not writable on the virtual threads.</li>
+ *   <li>HTTPS, HTTP/2 and gzip: {@link #writeTo(OutputStream)} reads the file with the pooled buffers.</li>
+ * </ul>
+ * <p>The Content-Length is the file size at the creation of the entity, or the length of the region. (Range)
+ * The region is read with the positioned reads, the prefix of the file is not read.
+ */
+public class FileChannelEntity extends AbstractHttpEntity implements IdentifiableEntity, TransferableEntity {
+
+	static final int BUFFER_SIZE = 64 * 1024;
+
+	//The buffers are shared by the worker threads and the virtual threads. (not ThreadLocal)
+	static final ArrayBlockingQueue<byte[]> BUFFERS = new ArrayBlockingQueue<>(
+		Runtime.getRuntime().availableProcessors() * 4);
+	static final ArrayBlockingQueue<ByteBuffer> DIRECT_BUFFERS = new ArrayBlockingQueue<>(
+		Runtime.getRuntime().availableProcessors() * 4);
+
+	protected final File file;
+	protected final long position;
+	protected final long length;
+	protected String identity;
+
+	public FileChannelEntity(final File file, final ContentType contentType) {
+		this(file, file.length(), contentType);
+	}
+
+	/**
+	 * @param length file size of the cached metadata. (without stat)
+	 */
+	public FileChannelEntity(final File file, final long length, final ContentType contentType) {
+		this(file, 0, length, contentType);
+	}
+
+	/**
+	 * Region of the file. (206 Partial Content)
+	 * @param position offset of the region.
+	 * @param length length of the region.
+	 */
+	public FileChannelEntity(final File file, final long position, final long length, final ContentType contentType) {
+		super(contentType, null);
+		this.file = Args.notNull(file, "File");
+		this.position = Args.notNegative(position, "Position");
+		this.length = Args.notNegative(length, "Length");
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * @param identity identity of the content, ex. the file path and the ETag. (the compressed representation is cached)
+	 */
+	public FileChannelEntity identity(final String identity) {
+		this.identity = identity;
+		return this;
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+
+	@Override
+	public boolean isRepeatable() {
+		return true;
+	}
+
+	@Override
+	public long getContentLength() {
+		return length;
+	}
+
+	@Override
+	public InputStream getContent() throws IOException {
+		//bounded by the Content-Length.
+		return new RegionInputStream(file, position, length);
+	}
+
+	@Override
+	public boolean isStreaming() {
+		return false;
+	}
+
+	/**
+	 * Transfer the file to the channel without copying into the heap.
+	 * <p>When transferTo sends nothing (the socket of the virtual thread is non-blocking and the send buffer is full),
+	 * the next chunk is written with the pooled direct buffer, which waits until the socket is writable.
+	 * @return transferred bytes.
+	 * @throws IOException the file is truncated after the creation of the entity.
+	 */
+	@Override
+	public long transferTo(final WritableByteChannel channel) throws IOException {
+		Args.notNull(channel, "Channel");
+		ByteBuffer buffer = null;
+		try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			final long end = this.position + length;
+			long position = this.position;
+			while (position < end) {
+				long transferred = in.transferTo(position, end - position, channel);
+				if (transferred <= 0) {
+					if (buffer == null) {
+						final ByteBuffer pooled = DIRECT_BUFFERS.poll();
+						buffer = pooled != null ? pooled : ByteBuffer.allocateDirect(BUFFER_SIZE);
+					}
+					buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+					transferred = in.read(buffer, position);
+					if (transferred < 0) {
+						throw new IOException("File truncated: " + file);
+					}
+					buffer.flip();
+					while (buffer.hasRemaining()) {
+						channel.write(buffer);
+					}
+				}
+				position += transferred;
+			}
+			return length;
+		} finally {
+			if (buffer != null) {
+				DIRECT_BUFFERS.offer(buffer);
+			}
+		}
+	}
+
+	@Override
+	public void writeTo(final OutputStream out) throws IOException {
+		Args.notNull(out, "Output stream");
+		final byte[] pooled = BUFFERS.poll();
+		final byte[] buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+		try (final FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			writeTo(in, position, length, buffer, out);
+		} catch (EOFException e) {
+			throw new IOException("File truncated: " + file);
+		} finally {
+			BUFFERS.offer(buffer);
+		}
+	}
+
+	/**
+	 * Write the region of the file with the positioned reads.
+	 * @throws EOFException the file is shorter than the region.
+	 */
+	static void writeTo(final FileChannel in, final long position, final long length, final byte[] buffer,
+			final OutputStream out) throws IOException {
+		final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer);
+		long offset = position;
+		long remaining = length;
+		while (remaining > 0) {
+			byteBuffer.clear().limit((int) Math.min(buffer.length, remaining));
+			final int n = in.read(byteBuffer, offset);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			out.write(buffer, 0, n);
+			offset += n;
+			remaining -= n;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+	}
+
+	/**
+	 * InputStream of the file (or the region) with the positioned reads.
+	 */
+	static class RegionInputStream extends InputStream {
+		final FileChannel channel;
+		final boolean ownChannel;
+		long position;
+		long remaining;
+
+		RegionInputStream(final File file, final long position, final long length) throws IOException {
+			this(FileChannel.open(file.toPath(), StandardOpenOption.READ), position, length, true);
+		}
+
+		/**
+		 * @param ownChannel close the channel with this stream, false: the channel is shared with the other regions.
+		 */
+		RegionInputStream(final FileChannel channel, final long position, final long length, final boolean ownChannel) {
+			this.channel = channel;
+			this.ownChannel = ownChannel;
+			this.position = position;
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] b = new byte[1];
+			return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (remaining <= 0) {
+				return -1;
+			}
+			final int n = channel.read(ByteBuffer.wrap(b, off, (int) Math.min(len, remaining)), position);
+			if (n < 0) {
+				throw new EOFException();
+			}
+			position += n;
+			remaining -= n;
+			return n;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (ownChannel) {
+				channel.close();
+			}
+		}
+	}
+}
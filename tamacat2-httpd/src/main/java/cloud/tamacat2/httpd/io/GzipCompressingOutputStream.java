@@ -0,0 +1,156 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>GZIP (RFC 1952) output stream with the Deflater of the {@link DeflaterPool}.
+ * <ul>
+ *   <li>The compressed data is written in the pooled 64KB buffer, not per write of the content.</li>
+ *   <li>{@link #flush()} is the flush point (SYNC_FLUSH) of the streaming content, the writes are not flushed.</li>
+ *   <li>{@link #close()} writes the trailer, returns the Deflater to the pool and closes the output stream.</li>
+ * </ul>
+ */
+public class GzipCompressingOutputStream extends OutputStream {
+
+	static final byte[] HEADER = {
+		0x1f, (byte) 0x8b, //magic
+		Deflater.DEFLATED, //CM
+		0, //FLG
+		0, 0, 0, 0, //MTIME
+		0, //XFL
+		(byte) 0xff //OS: unknown
+	};
+
+	protected final OutputStream out;
+	protected final DeflaterPool pool;
+	protected final CRC32 crc = new CRC32();
+	protected Deflater deflater;
+	protected byte[] buffer;
+	protected boolean closed;
+	protected long compressNanos;
+
+	public GzipCompressingOutputStream(final OutputStream out, final DeflaterPool pool) throws IOException {
+		this.out = out;
+		this.pool = pool;
+		this.deflater = pool.acquire();
+		final byte[] pooled = FileChannelEntity.BUFFERS.poll();
+		this.buffer = pooled != null ? pooled : new byte[FileChannelEntity.BUFFER_SIZE];
+		out.write(HEADER);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (len <= 0) {
+			return;
+		}
+		final long start = System.nanoTime();
+		crc.update(b, off, len);
+		compressNanos += System.nanoTime() - start;
+		deflater.setInput(b, off, len);
+		while (!deflater.needsInput()) {
+			deflate(Deflater.NO_FLUSH);
+		}
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (!closed) {
+			//the remaining input is compressed and written.
+			while (deflate(Deflater.SYNC_FLUSH) == buffer.length) {
+			}
+		}
+		out.flush();
+	}
+
+	/**
+	 * Write the remaining compressed data and the trailer (CRC32 and size), and release the Deflater.
+	 */
+	public void finish() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			deflater.finish();
+			while (!deflater.finished()) {
+				deflate(Deflater.NO_FLUSH);
+			}
+			writeInt((int) crc.getValue(), 0);
+			writeInt((int) deflater.getBytesRead(), 4);
+			out.write(buffer, 0, 8);
+		} finally {
+			release();
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			finish();
+		} finally {
+			out.close();
+		}
+	}
+
+	protected int deflate(final int flush) throws IOException {
+		final long start = System.nanoTime();
+		final int n = deflater.deflate(buffer, 0, buffer.length, flush);
+		compressNanos += System.nanoTime() - start;
+		if (n > 0) {
+			out.write(buffer, 0, n);
+		}
+		return n;
+	}
+
+	/**
+	 * @return time spent in the Deflater and CRC32, not in the writes to the output stream. (nanoseconds)
+	 */
+	public long getCompressNanos() {
+		return compressNanos;
+	}
+
+	//little endian
+	void writeInt(final int value, final int off) {
+		buffer[off] = (byte) value;
+		buffer[off + 1] = (byte) (value >> 8);
+		buffer[off + 2] = (byte) (value >> 16);
+		buffer[off + 3] = (byte) (value >> 24);
+	}
+
+	protected void release() {
+		if (deflater != null) {
+			pool.release(deflater);
+			deflater = null;
+		}
+		if (buffer != null) {
+			FileChannelEntity.BUFFERS.offer(buffer);
+			buffer = null;
+		}
+	}
+}
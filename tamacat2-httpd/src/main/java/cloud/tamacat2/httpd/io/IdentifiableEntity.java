@@ -0,0 +1,30 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+/**
+ * Entity with the stable identity of the content.
+ * <p>The entities of the same identity have the same content, ex. the file path and the validator ("size-mtime"),
+ * or the URI and the strong ETag of the origin. The compressed representations are cached by the identity.
+ * ({@link cloud.tamacat2.httpd.cache.CompressedContentCache})
+ */
+public interface IdentifiableEntity {
+
+	/**
+	 * @return identity of the content, null if the content is not stable.
+	 */
+	String getIdentity();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
+
+/**
+ * Wrapper of the entity with the identity. ex. the cached response of the origin with the strong ETag.
+ */
+public class IdentifiableEntityWrapper extends HttpEntityWrapper implements IdentifiableEntity {
+
+	protected final String identity;
+
+	public IdentifiableEntityWrapper(final HttpEntity entity, final String identity) {
+		super(entity);
+		this.identity = identity;
+	}
+
+	@Override
+	public String getIdentity() {
+		return identity;
+	}
+}
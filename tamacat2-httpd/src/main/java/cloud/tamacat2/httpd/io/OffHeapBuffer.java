@@ -0,0 +1,123 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.lang.foreign.Arena;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Read-only content in the off-heap memory segment of its own shared {@link Arena}, freed by the reference count.<br>
+ * The owner (ex. {@link cloud.tamacat2.httpd.cache.FileContentCache}) holds the first reference, each reader
+ * {@link #retain() retains} a reference until it is closed ({@link DirectBufferEntity#close()}),
+ * and the segment is freed when the last reference is {@link #release() released}, not by the garbage collection.
+ * <p>The segments are not the direct buffers, -XX:MaxDirectMemorySize does not apply.
+ * The native memory is the budget of the cache and the evicted contents still being sent.
+ * <p>Closing a shared arena is a handshake with the threads, so the contents are freed on the eviction only.
+ */
+public final class OffHeapBuffer {
+
+	private final Arena arena;
+	private final ByteBuffer buffer;
+	private final AtomicInteger references = new AtomicInteger(1);
+
+	private OffHeapBuffer(final Arena arena, final ByteBuffer buffer) {
+		this.arena = arena;
+		this.buffer = buffer.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Read the channel into the new segment.
+	 * @param size bytes to read.
+	 * @return null if the channel ends before the size.
+	 * @throws OutOfMemoryError the native memory cannot be allocated.
+	 */
+	public static OffHeapBuffer read(final ReadableByteChannel in, final int size) throws IOException {
+		final Arena arena = Arena.ofShared();
+		try {
+			final ByteBuffer buffer = arena.allocate(size).asByteBuffer();
+			while (buffer.hasRemaining()) {
+				if (in.read(buffer) < 0) {
+					arena.close();
+					return null;
+				}
+			}
+			return new OffHeapBuffer(arena, buffer.flip());
+		} catch (IOException | RuntimeException | Error e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Copy the bytes into the new segment.
+	 * @throws OutOfMemoryError the native memory cannot be allocated.
+	 */
+	public static OffHeapBuffer copyOf(final byte[] bytes, final int offset, final int length) {
+		final Arena arena = Arena.ofShared();
+		try {
+			return new OffHeapBuffer(arena, arena.allocate(length).asByteBuffer().put(bytes, offset, length).flip());
+		} catch (RuntimeException | Error e) {
+			arena.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * @return read-only duplicate of the content, valid until the reference is released.
+	 */
+	public ByteBuffer buffer() {
+		return buffer.duplicate();
+	}
+
+	public int size() {
+		return buffer.capacity();
+	}
+
+	/**
+	 * Add a reference of the reader.
+	 * @return false if the segment is already freed.
+	 */
+	public boolean retain() {
+		for (;;) {
+			final int count = references.get();
+			if (count <= 0) {
+				return false;
+			}
+			if (references.compareAndSet(count, count + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Release the reference, the segment is freed by the last one.
+	 */
+	public void release() {
+		if (references.decrementAndGet() == 0) {
+			arena.close();
+		}
+	}
+
+	/**
+	 * @return true if the segment is freed.
+	 */
+	public boolean isReleased() {
+		return references.get() <= 0;
+	}
+}
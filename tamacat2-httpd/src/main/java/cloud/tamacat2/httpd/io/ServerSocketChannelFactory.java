@@ -0,0 +1,64 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.channels.ServerSocketChannel;
+
+import javax.net.ServerSocketFactory;
+
+/**
+ * ServerSocketFactory of the blocking {@link ServerSocketChannel}.
+ * The accepted sockets have the {@link java.nio.channels.SocketChannel} for FileChannel.transferTo.
+ * ({@link ServerSocket#accept()} of the default ServerSocketFactory returns the socket without the channel.)
+ */
+public class ServerSocketChannelFactory extends ServerSocketFactory {
+
+	public static final ServerSocketChannelFactory INSTANCE = new ServerSocketChannelFactory();
+
+	/**
+	 * @return unbound server socket.
+	 */
+	@Override
+	public ServerSocket createServerSocket() throws IOException {
+		return ServerSocketChannel.open().socket();
+	}
+
+	@Override
+	public ServerSocket createServerSocket(final int port) throws IOException {
+		return createServerSocket(port, 0, null);
+	}
+
+	@Override
+	public ServerSocket createServerSocket(final int port, final int backlog) throws IOException {
+		return createServerSocket(port, backlog, null);
+	}
+
+	@Override
+	public ServerSocket createServerSocket(final int port, final int backlog, final InetAddress ifAddress) throws IOException {
+		final ServerSocket serverSocket = createServerSocket();
+		try {
+			serverSocket.bind(new InetSocketAddress(ifAddress, port), backlog);
+			return serverSocket;
+		} catch (final IOException e) {
+			serverSocket.close();
+			throw e;
+		}
+	}
+}
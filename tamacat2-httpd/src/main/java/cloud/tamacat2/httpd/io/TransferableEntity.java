@@ -0,0 +1,31 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Entity written to the socket channel without copying into the heap. ({@link ZeroCopyHttpServerConnection})
+ */
+public interface TransferableEntity {
+
+	/**
+	 * Write the whole content (Content-Length) to the channel.
+	 * @return transferred bytes.
+	 */
+	long transferTo(WritableByteChannel channel) throws IOException;
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.http.impl.DefaultContentLengthStrategy;
+import org.apache.hc.core5.http.impl.io.DefaultBHttpServerConnection;
+import org.apache.hc.core5.http.impl.io.SocketHolder;
+
+/**
+ * HTTP/1.1 server connection sending the {@link FileChannelEntity} with FileChannel.transferTo (sendfile).
+ * <p>The response header is flushed, then the file is transferred from the page cache to the socket by the kernel.
+ * The off-heap content of the {@link DirectBufferEntity} is written to the socket channel directly.
+ * The socket must be a {@link SocketChannel} ({@link ServerSocketChannelFactory}).
+ * Over TLS or with the chunked coding, the entity is written to the OutputStream as usual.
+ */
+public class ZeroCopyHttpServerConnection extends DefaultBHttpServerConnection {
+
+	public ZeroCopyHttpServerConnection(final String scheme, final Http1Config http1Config,
+			final CharsetDecoder charDecoder, final CharsetEncoder charEncoder) {
+		super(scheme, http1Config, charDecoder, charEncoder);
+	}
+
+	@Override
+	public void sendResponseEntity(final ClassicHttpResponse response) throws HttpException, IOException {
+		final HttpEntity entity = response.getEntity();
+		if (entity instanceof TransferableEntity
+				&& DefaultContentLengthStrategy.INSTANCE.determineLength(response) == entity.getContentLength()) {
+			final SocketChannel channel = getSocketChannel();
+			if (channel != null) {
+				flush(); //response header in the session buffer
+				((TransferableEntity) entity).transferTo(channel);
+				return;
+			}
+		}
+		super.sendResponseEntity(response);
+	}
+
+	/**
+	 * @return null if the connection is TLS or the socket has no channel.
+	 */
+	protected SocketChannel getSocketChannel() throws IOException {
+		final SocketHolder socketHolder = ensureOpen();
+		return socketHolder.getSSLSocket() == null ? socketHolder.getSocket().getChannel() : null;
+	}
+}
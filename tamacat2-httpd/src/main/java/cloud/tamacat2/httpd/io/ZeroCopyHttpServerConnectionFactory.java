@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import java.io.IOException;
+import java.net.Socket;
+
+import javax.net.ssl.SSLSocket;
+
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.config.CharCodingConfig;
+import org.apache.hc.core5.http.config.Http1Config;
+import org.apache.hc.core5.http.impl.CharCodingSupport;
+import org.apache.hc.core5.http.io.HttpConnectionFactory;
+
+/**
+ * Factory of the {@link ZeroCopyHttpServerConnection}.
+ * Use with the {@link ServerSocketChannelFactory}.
+ */
+public class ZeroCopyHttpServerConnectionFactory implements HttpConnectionFactory<ZeroCopyHttpServerConnection> {
+
+	private final Http1Config http1Config;
+	private final CharCodingConfig charCodingConfig;
+
+	public ZeroCopyHttpServerConnectionFactory(final Http1Config http1Config, final CharCodingConfig charCodingConfig) {
+		this.http1Config = http1Config != null ? http1Config : Http1Config.DEFAULT;
+		this.charCodingConfig = charCodingConfig != null ? charCodingConfig : CharCodingConfig.DEFAULT;
+	}
+
+	public ZeroCopyHttpServerConnectionFactory() {
+		this(null, null);
+	}
+
+	@Override
+	public ZeroCopyHttpServerConnection createConnection(final Socket socket) throws IOException {
+		final ZeroCopyHttpServerConnection conn = createDetached(URIScheme.HTTP.id);
+		conn.bind(socket);
+		return conn;
+	}
+
+	@Override
+	public ZeroCopyHttpServerConnection createConnection(final SSLSocket sslSocket, final Socket socket) throws IOException {
+		final ZeroCopyHttpServerConnection conn = createDetached(URIScheme.HTTPS.id);
+		conn.bind(sslSocket, socket);
+		return conn;
+	}
+
+	protected ZeroCopyHttpServerConnection createDetached(final String scheme) {
+		return new ZeroCopyHttpServerConnection(scheme, http1Config,
+			CharCodingSupport.createDecoder(charCodingConfig),
+			CharCodingSupport.createEncoder(charCodingConfig));
+	}
+}
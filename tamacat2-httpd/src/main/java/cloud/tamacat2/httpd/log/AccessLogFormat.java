@@ -0,0 +1,244 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.log;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+
+/**
+ * Format of the access log file. ({@link AccessLogWriter})
+ * <ul>
+ *   <li>COMBINED: NCSA Combined Log Format.
+ *   {@code 127.0.0.1 - - [10/Oct/2000:13:55:36 -0700] "GET /index.html HTTP/1.1" 200 2326 "-" "Mozilla/5.0"}</li>
+ *   <li>JSON: a JSON object per line with the response time in milliseconds.</li>
+ *   <li>BINARY: length-prefixed records, read by {@link #read(DataInputStream)}.</li>
+ * </ul>
+ */
+public enum AccessLogFormat {
+
+	COMBINED {
+		@Override
+		public void write(final AccessLogRecord record, final DataOutputStream out) throws IOException {
+			final StringBuilder line = new StringBuilder(256);
+			line.append(orDash(record.getRemoteHost())).append(" - - [")
+				.append(COMBINED_DATE.format(Instant.ofEpochMilli(record.getTime()))).append("] \"");
+			escape(line, record.getMethod()).append(' ');
+			escape(line, record.getUri()).append(' ');
+			escape(line, orDash(record.getProtocol())).append("\" ").append(record.getStatus()).append(' ');
+			if (record.getBytes() > 0) {
+				line.append(record.getBytes());
+			} else {
+				line.append('-');
+			}
+			line.append(" \"");
+			escape(line, orDash(record.getReferer())).append("\" \"");
+			escape(line, orDash(record.getUserAgent())).append("\"\n");
+			out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	},
+
+	JSON {
+		@Override
+		public void write(final AccessLogRecord record, final DataOutputStream out) throws IOException {
+			final StringBuilder line = new StringBuilder(256);
+			line.append("{\"time\":\"").append(JSON_DATE.format(Instant.ofEpochMilli(record.getTime()))).append('"');
+			appendJson(line.append(",\"remote\":"), record.getRemoteHost());
+			appendJson(line.append(",\"method\":"), record.getMethod());
+			appendJson(line.append(",\"uri\":"), record.getUri());
+			appendJson(line.append(",\"protocol\":"), record.getProtocol());
+			line.append(",\"status\":").append(record.getStatus());
+			line.append(",\"bytes\":").append(record.getBytes());
+			appendJson(line.append(",\"referer\":"), record.getReferer());
+			appendJson(line.append(",\"userAgent\":"), record.getUserAgent());
+			line.append(",\"responseTime\":").append(record.getResponseTime()).append("}\n");
+			out.write(line.toString().getBytes(StandardCharsets.UTF_8));
+		}
+	},
+
+	/**
+	 * <pre>
+	 * int    length of the following fields
+	 * long   time (milliseconds since the epoch)
+	 * int    status
+	 * long   bytes (-1 unknown)
+	 * long   response time (milliseconds)
+	 * string remote host, method, uri, protocol, referer, user agent
+	 * </pre>
+	 * The string is the unsigned short length and the UTF-8 bytes (truncated to 65534 bytes), 65535 is null.
+	 */
+	BINARY {
+		@Override
+		public void write(final AccessLogRecord record, final DataOutputStream out) throws IOException {
+			final byte[][] values = {
+				bytes(record.getRemoteHost()), bytes(record.getMethod()), bytes(record.getUri()),
+				bytes(record.getProtocol()), bytes(record.getReferer()), bytes(record.getUserAgent())
+			};
+			int length = 8 + 4 + 8 + 8;
+			for (final byte[] value : values) {
+				length += 2 + (value != null ? value.length : 0);
+			}
+			out.writeInt(length);
+			out.writeLong(record.getTime());
+			out.writeInt(record.getStatus());
+			out.writeLong(record.getBytes());
+			out.writeLong(record.getResponseTime());
+			for (final byte[] value : values) {
+				if (value == null) {
+					out.writeShort(NULL_LENGTH);
+				} else {
+					out.writeShort(value.length);
+					out.write(value);
+				}
+			}
+		}
+	};
+
+	static final int NULL_LENGTH = 0xFFFF;
+
+	static final DateTimeFormatter COMBINED_DATE = DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH)
+		.withZone(ZoneId.systemDefault());
+	static final DateTimeFormatter JSON_DATE = DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSSXXX", Locale.ENGLISH)
+		.withZone(ZoneId.systemDefault());
+
+	/**
+	 * Write the record. (called by the writer thread)
+	 */
+	public abstract void write(AccessLogRecord record, DataOutputStream out) throws IOException;
+
+	/**
+	 * @param format "combined", "json" or "binary". (case insensitive)
+	 * @return COMBINED if the format is null.
+	 * @throws IllegalArgumentException unknown format.
+	 */
+	public static AccessLogFormat of(final String format) {
+		return format != null ? valueOf(format.trim().toUpperCase(Locale.ENGLISH)) : COMBINED;
+	}
+
+	/**
+	 * Read the record of the BINARY format.
+	 * @return null at the end of the stream.
+	 */
+	public static AccessLogRecord read(final DataInputStream in) throws IOException {
+		final int length;
+		try {
+			length = in.readInt();
+		} catch (EOFException e) {
+			return null;
+		}
+		if (length < 28) {
+			throw new IOException("Invalid record length: " + length);
+		}
+		final long time = in.readLong();
+		final int status = in.readInt();
+		final long bytes = in.readLong();
+		final long responseTime = in.readLong();
+		final String remoteHost = readString(in);
+		final String method = readString(in);
+		final String uri = readString(in);
+		final String protocol = readString(in);
+		final String referer = readString(in);
+		final String userAgent = readString(in);
+		return new AccessLogRecord().set(time, remoteHost, method, uri, protocol, status, bytes, referer, userAgent, responseTime);
+	}
+
+	static String readString(final DataInputStream in) throws IOException {
+		final int length = in.readUnsignedShort();
+		if (length == NULL_LENGTH) {
+			return null;
+		}
+		final byte[] value = new byte[length];
+		in.readFully(value);
+		return new String(value, StandardCharsets.UTF_8);
+	}
+
+	static byte[] bytes(final String value) {
+		if (value == null) {
+			return null;
+		}
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length >= NULL_LENGTH) {
+			final byte[] truncated = new byte[NULL_LENGTH - 1];
+			System.arraycopy(bytes, 0, truncated, 0, truncated.length);
+			return truncated;
+		}
+		return bytes;
+	}
+
+	static String orDash(final String value) {
+		return value != null && value.length() > 0 ? value : "-";
+	}
+
+	/**
+	 * Escape the double quote, the backslash and the control characters. (as Apache httpd)
+	 */
+	static StringBuilder escape(final StringBuilder line, final String value) {
+		if (value == null) {
+			return line;
+		}
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			if (c == '"' || c == '\\') {
+				line.append('\\').append(c);
+			} else if (c < 0x20 || c == 0x7f) {
+				line.append("\\x").append(Character.forDigit(c >> 4, 16)).append(Character.forDigit(c & 0xf, 16));
+			} else {
+				line.append(c);
+			}
+		}
+		return line;
+	}
+
+	static StringBuilder appendJson(final StringBuilder line, final String value) {
+		if (value == null) {
+			return line.append("null");
+		}
+		line.append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				line.append("\\\"");
+				break;
+			case '\\':
+				line.append("\\\\");
+				break;
+			case '\n':
+				line.append("\\n");
+				break;
+			case '\r':
+				line.append("\\r");
+				break;
+			case '\t':
+				line.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					line.append(String.format("\\u%04x", (int) c));
+				} else {
+					line.append(c);
+				}
+			}
+		}
+		return line.append('"');
+	}
+}
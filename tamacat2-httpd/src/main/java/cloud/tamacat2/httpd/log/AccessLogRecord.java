@@ -0,0 +1,174 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.log;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+
+import org.apache.hc.core5.http.EndpointDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpEntityContainer;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.ProtocolVersion;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+
+/**
+ * Fixed-layout slot of the {@link AccessLogRingBuffer}. (reused, not thread safe)
+ * <p>The request thread copies the references of the request and the response into the slot,
+ * the text (address, date and escaping) is formatted by the writer thread. ({@link AccessLogFormat})
+ */
+public class AccessLogRecord {
+
+	protected long time;
+	protected SocketAddress remoteAddress;
+	protected String method;
+	protected String uri;
+	protected ProtocolVersion version;
+	protected String protocol;
+	protected int status;
+	protected long bytes;
+	protected String referer;
+	protected String userAgent;
+	protected long responseTime;
+
+	/**
+	 * @param responseTime milliseconds.
+	 */
+	public AccessLogRecord set(final HttpRequest request, final HttpResponse response, final HttpContext context,
+			final long responseTime) {
+		this.time = System.currentTimeMillis();
+		final EndpointDetails endpoint = context != null ? HttpCoreContext.cast(context).getEndpointDetails() : null;
+		this.remoteAddress = endpoint != null ? endpoint.getRemoteAddress() : null;
+		this.method = request.getMethod();
+		this.uri = request.getRequestUri();
+		this.version = request.getVersion();
+		this.protocol = null;
+		this.status = response.getCode();
+		final HttpEntity entity = response instanceof HttpEntityContainer ? ((HttpEntityContainer)response).getEntity() : null;
+		this.bytes = entity != null ? entity.getContentLength() : 0;
+		this.referer = getHeader(request, HttpHeaders.REFERER);
+		this.userAgent = getHeader(request, HttpHeaders.USER_AGENT);
+		this.responseTime = responseTime;
+		return this;
+	}
+
+	/**
+	 * Set the values. (ex. the record read from the binary log)
+	 */
+	public AccessLogRecord set(final long time, final String remoteHost, final String method, final String uri,
+			final String protocol, final int status, final long bytes, final String referer, final String userAgent,
+			final long responseTime) {
+		this.time = time;
+		this.remoteAddress = remoteHost != null ? InetSocketAddress.createUnresolved(remoteHost, 0) : null;
+		this.method = method;
+		this.uri = uri;
+		this.version = null;
+		this.protocol = protocol;
+		this.status = status;
+		this.bytes = bytes;
+		this.referer = referer;
+		this.userAgent = userAgent;
+		this.responseTime = responseTime;
+		return this;
+	}
+
+	/**
+	 * Release the references of the request.
+	 */
+	public void clear() {
+		remoteAddress = null;
+		method = null;
+		uri = null;
+		version = null;
+		protocol = null;
+		referer = null;
+		userAgent = null;
+	}
+
+	static String getHeader(final HttpRequest request, final String name) {
+		final Header header = request.getFirstHeader(name);
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * @return milliseconds since the epoch.
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	/**
+	 * @return IP address of the client, null if unknown.
+	 */
+	public String getRemoteHost() {
+		if (remoteAddress instanceof InetSocketAddress) {
+			final InetSocketAddress address = (InetSocketAddress)remoteAddress;
+			return address.getAddress() != null ? address.getAddress().getHostAddress() : address.getHostString();
+		}
+		return remoteAddress != null ? remoteAddress.toString() : null;
+	}
+
+	public String getMethod() {
+		return method;
+	}
+
+	public String getUri() {
+		return uri;
+	}
+
+	/**
+	 * @return ex. "HTTP/1.1", null if unknown.
+	 */
+	public String getProtocol() {
+		return protocol != null ? protocol : version != null ? version.format() : null;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * @return Content-Length of the response entity (before the content coding), -1 if unknown. (chunked)
+	 */
+	public long getBytes() {
+		return bytes;
+	}
+
+	public String getReferer() {
+		return referer;
+	}
+
+	public String getUserAgent() {
+		return userAgent;
+	}
+
+	/**
+	 * @return milliseconds.
+	 */
+	public long getResponseTime() {
+		return responseTime;
+	}
+
+	@Override
+	public String toString() {
+		return "AccessLogRecord [time=" + time + ", remoteHost=" + getRemoteHost() + ", method=" + method + ", uri=" + uri
+			+ ", protocol=" + getProtocol() + ", status=" + status + ", bytes=" + bytes + ", responseTime=" + responseTime + "]";
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.log;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Bounded lock-free ring buffer of the preallocated {@link AccessLogRecord}s,
+ * with the multiple producers (request threads) and the single consumer (writer thread).
+ * <p>Each slot has a sequence number (D. Vyukov's bounded MPMC queue):
+ * <ul>
+ *   <li>Producer: claim the position with CAS when the sequence of the slot equals the position,
+ *   fill the record, and publish it with the sequence position+1.</li>
+ *   <li>Consumer: read the slot when the sequence is head+1, and release it with head+capacity for the next lap.</li>
+ * </ul>
+ * The producer does not wait when the buffer is full. ({@link #claim()} returns -1)
+ */
+public class AccessLogRingBuffer {
+
+	protected final AccessLogRecord[] records;
+	protected final AtomicLongArray sequences;
+	protected final int mask;
+	protected final AtomicLong tail = new AtomicLong();
+	protected volatile long head;
+
+	/**
+	 * @param capacity rounded up to the power of 2.
+	 */
+	public AccessLogRingBuffer(final int capacity) {
+		final int size = Integer.highestOneBit(Math.max(1, capacity - 1)) << 1;
+		this.records = new AccessLogRecord[size];
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++) {
+			records[i] = new AccessLogRecord();
+			sequences.set(i, i);
+		}
+		this.mask = size - 1;
+	}
+
+	/**
+	 * Claim the slot for the producer.
+	 * @return position of the slot, -1 if the buffer is full.
+	 */
+	public long claim() {
+		long position = tail.get();
+		for (;;) {
+			final long diff = sequences.getAcquire((int) (position & mask)) - position;
+			if (diff == 0) {
+				final long witness = tail.compareAndExchange(position, position + 1);
+				if (witness == position) {
+					return position;
+				}
+				position = witness;
+			} else if (diff < 0) {
+				return -1; //the consumer has not released the slot of the previous lap.
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * @param position claimed position.
+	 */
+	public AccessLogRecord get(final long position) {
+		return records[(int) (position & mask)];
+	}
+
+	/**
+	 * Make the filled record visible to the consumer.
+	 */
+	public void publish(final long position) {
+		sequences.setRelease((int) (position & mask), position + 1);
+	}
+
+	/**
+	 * Get the next record of the consumer. (single consumer)
+	 * @return null if empty, or the next record is not published yet.
+	 */
+	public AccessLogRecord peek() {
+		final long position = head;
+		if (sequences.getAcquire((int) (position & mask)) == position + 1) {
+			return records[(int) (position & mask)];
+		}
+		return null;
+	}
+
+	/**
+	 * Release the record of {@link #peek()} to the producers.
+	 */
+	public void release() {
+		final long position = head;
+		sequences.setRelease((int) (position & mask), position + records.length);
+		head = position + 1;
+	}
+
+	public int capacity() {
+		return records.length;
+	}
+
+	/**
+	 * @return claimed and not released records. (approximate)
+	 */
+	public int size() {
+		return (int) Math.max(0, tail.get() - head);
+	}
+}
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.log;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Stream;
+
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Asynchronous access log writer.
+ * <ul>
+ *   <li>The request threads append the records to the lock-free {@link AccessLogRingBuffer}, without the formatting
+ *   and the I/O.</li>
+ *   <li>The writer thread formats the records ({@link AccessLogFormat}) and writes them to the file in batches,
+ *   one write (flush) per batch.</li>
+ *   <li>The file is rotated daily and by the size: access.log -&gt; access.log.yyyy-MM-dd(.N),
+ *   the rotated files older than the {@link #maxHistory(int)} are deleted.</li>
+ * </ul>
+ * <p>When the buffer is full, the request thread waits for the writer up to {@link #maxWait(long)} (backpressure),
+ * and the record is dropped after the wait. The drops and the waits are counted. ({@link #getDropped()}, {@link #getBackpressure()})
+ */
+public class AccessLogWriter implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(AccessLogWriter.class);
+
+	public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+	protected final Path file;
+	protected final AccessLogFormat format;
+	protected final AccessLogRingBuffer buffer;
+	protected int batchSize = 1024;
+	protected long maxFileBytes = 100L * 1024 * 1024;
+	protected int maxHistory = 7;
+	protected long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(1);
+	protected long flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(10);
+
+	protected final LongAdder written = new LongAdder();
+	protected final LongAdder dropped = new LongAdder();
+	protected final LongAdder backpressure = new LongAdder();
+	protected final LongAdder batches = new LongAdder();
+
+	protected Thread thread;
+	protected volatile boolean running;
+
+	//the writer thread only.
+	protected CountingOutputStream counter;
+	protected DataOutputStream out;
+	protected LocalDate fileDate;
+	//records in the buffer of the stream, counted as written after the flush.
+	protected int unflushed;
+
+	public AccessLogWriter(final Path file, final AccessLogFormat format) {
+		this(file, format, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * @param bufferSize number of the records in the ring buffer. (rounded up to the power of 2)
+	 */
+	public AccessLogWriter(final Path file, final AccessLogFormat format, final int bufferSize) {
+		this.file = file.toAbsolutePath().normalize();
+		this.format = format != null ? format : AccessLogFormat.COMBINED;
+		this.buffer = new AccessLogRingBuffer(bufferSize);
+	}
+
+	/**
+	 * Open the file and start the writer thread.
+	 */
+	public synchronized AccessLogWriter start() throws IOException {
+		if (thread == null) {
+			open();
+			running = true;
+			thread = new Thread(this::run, "AccessLogWriter");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return this;
+	}
+
+	/**
+	 * Append the record. (called by the request threads)
+	 * @param responseTime milliseconds.
+	 */
+	public void log(final HttpRequest request, final HttpResponse response, final HttpContext context, final long responseTime) {
+		if (!running) {
+			dropped.increment();
+			return;
+		}
+		long position = buffer.claim();
+		if (position < 0) {
+			position = await();
+			if (position < 0) {
+				dropped.increment();
+				return;
+			}
+		}
+		buffer.get(position).set(request, response, context, responseTime);
+		buffer.publish(position);
+		//closed while appending, the writer may have stopped before the record.
+		if (!running) {
+			discard();
+		}
+	}
+
+	/**
+	 * Wait for the free slot of the full buffer.
+	 * @return position of the slot, -1 if timed out.
+	 */
+	protected long await() {
+		backpressure.increment();
+		final Thread writer = thread;
+		final long deadline = System.nanoTime() + maxWaitNanos;
+		long position;
+		while ((position = buffer.claim()) < 0 && running && deadline - System.nanoTime() > 0) {
+			LockSupport.unpark(writer);
+			LockSupport.parkNanos(10_000);
+		}
+		return position;
+	}
+
+	protected void run() {
+		for (;;) {
+			final boolean active = running;
+			int count;
+			try {
+				count = drain();
+				if (count > 0) {
+					out.flush();
+					written.add(unflushed);
+					unflushed = 0;
+					batches.increment();
+					rotateIfRequired();
+				}
+			} catch (IOException e) {
+				LOG.warn("Cannot write " + file + ". " + e.getMessage());
+				//the records not flushed to the file are lost.
+				dropped.add(unflushed);
+				unflushed = 0;
+				count = 0;
+				reopen();
+			}
+			if (count == 0) {
+				if (!active) {
+					break; //closed and drained.
+				}
+				LockSupport.parkNanos(this, flushIntervalNanos);
+			}
+		}
+		closeQuietly();
+	}
+
+	/**
+	 * Write the records of a batch to the buffer of the stream. ({@link #unflushed})
+	 * @return number of the records.
+	 */
+	protected int drain() throws IOException {
+		int count = 0;
+		AccessLogRecord record;
+		while (count < batchSize && (record = buffer.peek()) != null) {
+			try {
+				format.write(record, out);
+				unflushed++;
+			} catch (RuntimeException e) {
+				dropped.increment();
+				LOG.debug(e.getMessage() + " " + record);
+			} catch (IOException e) {
+				dropped.increment();
+				throw e;
+			} finally {
+				record.clear();
+				buffer.release();
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Count the records left in the buffer after the writer thread stopped as dropped.
+	 */
+	protected synchronized void discard() {
+		if (thread == null || thread.isAlive()) {
+			return; //not started, or the writer drains them.
+		}
+		AccessLogRecord record;
+		while ((record = buffer.peek()) != null) {
+			record.clear();
+			buffer.release();
+			dropped.increment();
+		}
+	}
+
+	protected void open() throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		final OutputStream stream = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+		counter = new CountingOutputStream(new BufferedOutputStream(stream, 64 * 1024), Files.size(file));
+		out = new DataOutputStream(counter);
+		fileDate = Files.size(file) > 0
+			? LocalDate.ofInstant(Files.getLastModifiedTime(file).toInstant(), AccessLogFormat.COMBINED_DATE.getZone())
+			: LocalDate.now(AccessLogFormat.COMBINED_DATE.getZone());
+	}
+
+	protected void reopen() {
+		closeQuietly();
+		try {
+			open();
+		} catch (IOException e) {
+			LOG.warn("Cannot open " + file + ". " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Rotate the file on the next day or when the file exceeds the maxFileBytes.
+	 */
+	protected void rotateIfRequired() throws IOException {
+		final LocalDate today = LocalDate.now(AccessLogFormat.COMBINED_DATE.getZone());
+		if (counter.count < maxFileBytes && today.equals(fileDate)) {
+			return;
+		}
+		out.close();
+		final String name = file.getFileName() + "." + fileDate;
+		Path rotated = file.resolveSibling(name);
+		for (int i = 1; Files.exists(rotated); i++) {
+			rotated = file.resolveSibling(name + "." + i);
+		}
+		Files.move(file, rotated);
+		deleteHistory();
+		open();
+	}
+
+	/**
+	 * Delete the oldest rotated files over the maxHistory.
+	 */
+	protected void deleteHistory() throws IOException {
+		final String prefix = file.getFileName() + ".";
+		final List<Path> rotated = new ArrayList<>();
+		try (final Stream<Path> files = Files.list(file.getParent())) {
+			files.filter(p -> p.getFileName().toString().startsWith(prefix)).forEach(rotated::add);
+		}
+		if (rotated.size() <= maxHistory) {
+			return;
+		}
+		rotated.sort((a, b) -> {
+			try {
+				return Files.getLastModifiedTime(a).compareTo(Files.getLastModifiedTime(b));
+			} catch (IOException e) {
+				return a.compareTo(b);
+			}
+		});
+		for (int i = 0; i < rotated.size() - maxHistory; i++) {
+			Files.deleteIfExists(rotated.get(i));
+		}
+	}
+
+	protected void closeQuietly() {
+		try {
+			if (out != null) {
+				out.close();
+			}
+		} catch (IOException e) {
+			LOG.warn("Cannot close " + file + ". " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Stop the writer thread after writing the appended records.
+	 */
+	@Override
+	public void close() {
+		final Thread writer;
+		synchronized (this) {
+			writer = thread;
+			running = false;
+		}
+		if (writer != null) {
+			LockSupport.unpark(writer);
+			try {
+				writer.join(TimeUnit.SECONDS.toMillis(10));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			//appended after the last drain of the writer.
+			discard();
+		}
+	}
+
+	/**
+	 * @param batchSize maximum records of a write, default 1024.
+	 */
+	public AccessLogWriter batchSize(final int batchSize) {
+		if (batchSize > 0) {
+			this.batchSize = batchSize;
+		}
+		return this;
+	}
+
+	/**
+	 * @param maxFileBytes rotate the file larger than the size, default 100MB.
+	 */
+	public AccessLogWriter maxFileBytes(final long maxFileBytes) {
+		this.maxFileBytes = maxFileBytes;
+		return this;
+	}
+
+	/**
+	 * @param maxHistory number of the rotated files to keep, default 7.
+	 */
+	public AccessLogWriter maxHistory(final int maxHistory) {
+		this.maxHistory = maxHistory;
+		return this;
+	}
+
+	/**
+	 * @param maxWait milliseconds to wait for the writer when the buffer is full, default 1ms. (0: drop immediately)
+	 */
+	public AccessLogWriter maxWait(final long maxWait) {
+		this.maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWait);
+		return this;
+	}
+
+	/**
+	 * @param flushInterval milliseconds to wait for the records when the buffer is empty, default 10ms.
+	 */
+	public AccessLogWriter flushInterval(final long flushInterval) {
+		this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, flushInterval));
+		return this;
+	}
+
+	public Path getFile() {
+		return file;
+	}
+
+	public AccessLogFormat getFormat() {
+		return format;
+	}
+
+	/**
+	 * @return records written (flushed) to the file.
+	 */
+	public long getWritten() {
+		return written.sum();
+	}
+
+	/**
+	 * @return records dropped. (the buffer was full after the wait, closed, or the write failed)
+	 */
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * @return records waited for the writer. (the buffer was full)
+	 */
+	public long getBackpressure() {
+		return backpressure.sum();
+	}
+
+	/**
+	 * @return writes (flushes) of the batches.
+	 */
+	public long getBatches() {
+		return batches.sum();
+	}
+
+	/**
+	 * @return records in the buffer.
+	 */
+	public int getPending() {
+		return buffer.size();
+	}
+
+	@Override
+	public String toString() {
+		return "AccessLogWriter [file=" + file + ", format=" + format + ", written=" + getWritten()
+			+ ", dropped=" + getDropped() + ", backpressure=" + getBackpressure() + ", batches=" + getBatches()
+			+ ", pending=" + getPending() + "/" + buffer.capacity() + "]";
+	}
+
+	/**
+	 * Size of the file for the rotation.
+	 */
+	static class CountingOutputStream extends FilterOutputStream {
+		long count;
+
+		CountingOutputStream(final OutputStream out, final long count) {
+			super(out);
+			this.count = count;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+	}
+}
@@ -0,0 +1,68 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.io.IOException;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Message;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncRequestConsumer;
+import org.apache.hc.core5.http.nio.AsyncServerRequestHandler;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.entity.DiscardingEntityConsumer;
+import org.apache.hc.core5.http.nio.support.BasicRequestConsumer;
+import org.apache.hc.core5.http.nio.support.BasicResponseProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+/**
+ * Serve the {@link MetricsRegistry} on the non-blocking I/O server. ({@link MetricsHandler} of the HttpAsyncServer)
+ */
+public class AsyncMetricsHandler implements AsyncServerRequestHandler<Message<HttpRequest, Void>> {
+
+	protected final MetricsRegistry registry;
+
+	public AsyncMetricsHandler(final MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public AsyncRequestConsumer<Message<HttpRequest, Void>> prepare(final HttpRequest request,
+			final EntityDetails entityDetails, final HttpContext context) throws HttpException {
+		return new BasicRequestConsumer<>(() -> new DiscardingEntityConsumer<>());
+	}
+
+	@Override
+	public void handle(final Message<HttpRequest, Void> message, final ResponseTrigger responseTrigger,
+			final HttpContext context) throws HttpException, IOException {
+		final HttpRequest request = message.getHead();
+		if (!Method.GET.isSame(request.getMethod()) && !Method.HEAD.isSame(request.getMethod())) {
+			final BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_METHOD_NOT_ALLOWED);
+			response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+			responseTrigger.submitResponse(new BasicResponseProducer(response), context);
+			return;
+		}
+		final BasicHttpResponse response = new BasicHttpResponse(HttpStatus.SC_OK);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+		responseTrigger.submitResponse(new BasicResponseProducer(response,
+			AsyncEntityProducers.create(registry.scrape(), MetricsHandler.CONTENT_TYPE)), context);
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>Lock-free log-linear histogram of the latency. (nanoseconds)<br>
+ * Each power of two is divided into 8 linear sub-buckets, so the value of a percentile is
+ * within 12.5% of the recorded value. The values under 16ns are counted exactly.
+ * <p>{@link #record(long)} is one atomic increment of the bucket and one LongAdder,
+ * no allocation and no lock. The buckets and the percentiles are calculated from a {@link Snapshot} on the scrape.
+ */
+public class LatencyHistogram {
+
+	static final int SUB_BUCKET_BITS = 3;
+	static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+	//covers 0 to Long.MAX_VALUE. (488 buckets)
+	static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+	protected final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	protected final LongAdder sum = new LongAdder();
+
+	/**
+	 * @param latencyNanos elapsed time in nanoseconds. (the negative value is recorded as 0)
+	 */
+	public void record(final long latencyNanos) {
+		final long value = latencyNanos > 0 ? latencyNanos : 0;
+		counts.incrementAndGet(index(value));
+		sum.add(value);
+	}
+
+	/**
+	 * Index of the bucket of the value.
+	 */
+	static int index(final long value) {
+		if (value < (SUB_BUCKETS << 1)) {
+			return (int) value;
+		}
+		final int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(value);
+		return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS)
+			+ (int) ((value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * The lowest value of the bucket. (inclusive)
+	 */
+	static long lowerBound(final int index) {
+		if (index < (SUB_BUCKETS << 1)) {
+			return index;
+		}
+		final int exponent = (index >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+		return (long) ((index & (SUB_BUCKETS - 1)) | SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+	}
+
+	/**
+	 * The highest value of the bucket. (inclusive)
+	 */
+	static long upperBound(final int index) {
+		return index < BUCKETS - 1 ? lowerBound(index + 1) - 1 : Long.MAX_VALUE;
+	}
+
+	/**
+	 * Copy of the counts. (The records during the copy may be partially included)
+	 */
+	public Snapshot snapshot() {
+		final long[] copy = new long[BUCKETS];
+		long count = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			copy[i] = counts.get(i);
+			count += copy[i];
+		}
+		return new Snapshot(copy, count, sum.sum());
+	}
+
+	/**
+	 * Immutable copy of the {@link LatencyHistogram}.
+	 */
+	public static class Snapshot {
+
+		protected final long[] counts;
+		protected final long count;
+		protected final long sum;
+
+		protected Snapshot(final long[] counts, final long count, final long sum) {
+			this.counts = counts;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		/**
+		 * Number of the recorded values.
+		 */
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Total of the recorded values. (nanoseconds)
+		 */
+		public long getSum() {
+			return sum;
+		}
+
+		/**
+		 * Estimated value of the quantile, the middle of the bucket. (nanoseconds)
+		 * @param quantile 0.0 to 1.0 (ex. 0.99 is the 99th percentile)
+		 * @return -1 if no value was recorded.
+		 */
+		public long getValue(final double quantile) {
+			if (count == 0) {
+				return -1;
+			}
+			final long rank = Math.max(1, (long) Math.ceil(Math.min(1d, Math.max(0d, quantile)) * count));
+			long seen = 0;
+			for (int i = 0; i < counts.length; i++) {
+				seen += counts[i];
+				if (seen >= rank) {
+					final long lower = lowerBound(i);
+					return lower + ((upperBound(i) - lower) >>> 1);
+				}
+			}
+			return upperBound(counts.length - 1);
+		}
+
+		/**
+		 * Number of the values less than the bound. (nanoseconds)
+		 * @param bound exact for the power of two, otherwise the bucket of the bound is not counted.
+		 */
+		public long getCountBelow(final long bound) {
+			long below = 0;
+			for (int i = 0; i < counts.length && upperBound(i) < bound; i++) {
+				below += counts[i];
+			}
+			return below;
+		}
+
+		/**
+		 * Upper bound of the highest non-empty bucket. (nanoseconds)
+		 * @return -1 if no value was recorded.
+		 */
+		public long getMax() {
+			for (int i = counts.length - 1; i >= 0; i--) {
+				if (counts[i] > 0) {
+					return upperBound(i);
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.io.IOException;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+/**
+ * Serve the {@link MetricsRegistry} in the Prometheus text format. (GET and HEAD)
+ * @see cloud.tamacat2.httpd.config.HttpConfig#metrics(String)
+ */
+public class MetricsHandler implements HttpRequestHandler {
+
+	public static final ContentType CONTENT_TYPE = ContentType.parse("text/plain; version=0.0.4; charset=utf-8");
+
+	protected final MetricsRegistry registry;
+
+	public MetricsHandler(final MetricsRegistry registry) {
+		this.registry = registry;
+	}
+
+	@Override
+	public void handle(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context)
+			throws HttpException, IOException {
+		if (!Method.GET.isSame(request.getMethod()) && !Method.HEAD.isSame(request.getMethod())) {
+			response.setCode(HttpStatus.SC_METHOD_NOT_ALLOWED);
+			response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+			return;
+		}
+		response.setCode(HttpStatus.SC_OK);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, "no-store");
+		response.setEntity(new StringEntity(registry.scrape(), CONTENT_TYPE));
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Registry of the metrics of the server, no external dependencies.<br>
+ * The request threads only update the counters of the {@link RequestMetrics},
+ * the other values are read by the {@link MetricsCollector}s on the scrape.
+ * <pre>
+ * final MetricsRegistry registry = new MetricsRegistry();
+ * final RequestMetrics metrics = registry.getRequestMetrics("/app/");
+ * registry.register(writer -&gt; writer.gauge("queue_size", "Size of the queue.", queue.size()));
+ * registry.scrape(); //Prometheus text format
+ * </pre>
+ */
+public class MetricsRegistry {
+
+	protected final Map<String, RequestMetrics> requestMetrics = new ConcurrentHashMap<>();
+	protected final Collection<MetricsCollector> collectors = new CopyOnWriteArrayList<>();
+	protected final long startTime = System.currentTimeMillis();
+
+	/**
+	 * Get (or create) the request metrics of the route.
+	 * @param route label of the route. ex. "/app/" or "example.com/app/"
+	 */
+	public RequestMetrics getRequestMetrics(final String route) {
+		return requestMetrics.computeIfAbsent(route, key -> {
+			final RequestMetrics metrics = new RequestMetrics(key);
+			collectors.add(metrics);
+			return metrics;
+		});
+	}
+
+	public MetricsRegistry register(final MetricsCollector collector) {
+		collectors.add(collector);
+		return this;
+	}
+
+	/**
+	 * Collect the values of the registered collectors and the JVM.
+	 */
+	public void collect(final MetricsWriter writer) {
+		for (final MetricsCollector collector : collectors) {
+			collector.collect(writer);
+		}
+		collectJvm(writer);
+	}
+
+	protected void collectJvm(final MetricsWriter writer) {
+		final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		writer.gauge("tamacat2_jvm_memory_used_bytes", "Used bytes of the JVM memory.",
+			memory.getHeapMemoryUsage().getUsed(), "area", "heap");
+		writer.gauge("tamacat2_jvm_memory_used_bytes", "Used bytes of the JVM memory.",
+			memory.getNonHeapMemoryUsage().getUsed(), "area", "nonheap");
+		writer.gauge("tamacat2_jvm_threads", "Number of the live platform threads.",
+			ManagementFactory.getThreadMXBean().getThreadCount());
+		writer.gauge("tamacat2_uptime_seconds", "Seconds since the registry was created.",
+			(System.currentTimeMillis() - startTime) / 1000d);
+	}
+
+	/**
+	 * @return all metrics in the Prometheus text format.
+	 */
+	public String scrape() {
+		final MetricsWriter writer = new MetricsWriter();
+		collect(writer);
+		return writer.toString();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * <p>Writer of the Prometheus text exposition format. (version 0.0.4)<br>
+ * The samples are grouped by the metric name, so the collectors of the routes can add the samples
+ * of the same metric with the different labels.
+ * <pre>
+ * # HELP tamacat2_http_requests_total Number of the HTTP requests.
+ * # TYPE tamacat2_http_requests_total counter
+ * tamacat2_http_requests_total{route="/",status="2xx"} 1027
+ * </pre>
+ * The labels are the pairs of the name and the value. ex. {@code counter(name, help, value, "route", "/", "status", "2xx")}
+ */
+public class MetricsWriter {
+
+	//upper bounds of the histogram buckets, the powers of two nanoseconds. (about 1us to 34s)
+	static final int MIN_BUCKET_EXPONENT = 10;
+	static final int MAX_BUCKET_EXPONENT = 35;
+
+	protected final Map<String, StringBuilder> families = new LinkedHashMap<>();
+
+	public MetricsWriter counter(final String name, final String help, final long value, final String... labels) {
+		sample(family(name, help, "counter"), name, labels, null, null).append(value).append('\n');
+		return this;
+	}
+
+	public MetricsWriter gauge(final String name, final String help, final long value, final String... labels) {
+		sample(family(name, help, "gauge"), name, labels, null, null).append(value).append('\n');
+		return this;
+	}
+
+	public MetricsWriter gauge(final String name, final String help, final double value, final String... labels) {
+		sample(family(name, help, "gauge"), name, labels, null, null).append(format(value)).append('\n');
+		return this;
+	}
+
+	/**
+	 * Write the cumulative buckets, the sum and the count of the {@link LatencyHistogram} in seconds.
+	 * <p>The log-linear buckets are merged to the powers of two nanoseconds, the bounds of the buckets are exact
+	 * and fixed, so the quantiles of the recent requests are calculated by the server.
+	 * ex. {@code histogram_quantile(0.99, rate(name_bucket[5m]))}
+	 */
+	public MetricsWriter histogram(final String name, final String help, final LatencyHistogram.Snapshot snapshot,
+			final String... labels) {
+		final StringBuilder family = family(name, help, "histogram");
+		for (int exponent = MIN_BUCKET_EXPONENT; exponent <= MAX_BUCKET_EXPONENT; exponent++) {
+			final long bound = 1L << exponent;
+			sample(family, name + "_bucket", labels, "le", format(bound / 1e9))
+				.append(snapshot.getCountBelow(bound)).append('\n');
+		}
+		sample(family, name + "_bucket", labels, "le", "+Inf").append(snapshot.getCount()).append('\n');
+		sample(family, name + "_sum", labels, null, null).append(format(snapshot.getSum() / 1e9)).append('\n');
+		sample(family, name + "_count", labels, null, null).append(snapshot.getCount()).append('\n');
+		return this;
+	}
+
+	protected StringBuilder family(final String name, final String help, final String type) {
+		StringBuilder family = families.get(name);
+		if (family == null) {
+			family = new StringBuilder();
+			family.append("# HELP ").append(name).append(' ').append(help).append('\n');
+			family.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+			families.put(name, family);
+		}
+		return family;
+	}
+
+	protected StringBuilder sample(final StringBuilder family, final String name, final String[] labels,
+			final String extraName, final String extraValue) {
+		family.append(name);
+		if (labels.length > 1 || extraName != null) {
+			family.append('{');
+			boolean first = true;
+			for (int i = 0; i + 1 < labels.length; i += 2) {
+				if (!first) {
+					family.append(',');
+				}
+				appendLabel(family, labels[i], labels[i + 1]);
+				first = false;
+			}
+			if (extraName != null) {
+				if (!first) {
+					family.append(',');
+				}
+				appendLabel(family, extraName, extraValue);
+			}
+			family.append('}');
+		}
+		return family.append(' ');
+	}
+
+	protected static void appendLabel(final StringBuilder sb, final String name, final String value) {
+		sb.append(name).append("=\"");
+		final String v = value != null ? value : "";
+		for (int i = 0; i < v.length(); i++) {
+			final char c = v.charAt(i);
+			switch (c) {
+			case '\\': sb.append("\\\\"); break;
+			case '"': sb.append("\\\""); break;
+			case '\n': sb.append("\\n"); break;
+			default: sb.append(c);
+			}
+		}
+		sb.append('"');
+	}
+
+	static String format(final double value) {
+		if (Double.isNaN(value)) {
+			return "NaN";
+		} else if (Double.isInfinite(value)) {
+			return value > 0 ? "+Inf" : "-Inf";
+		} else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+			return Long.toString((long) value);
+		}
+		return Double.toString(value);
+	}
+
+	public void writeTo(final Appendable out) throws IOException {
+		for (final StringBuilder family : families.values()) {
+			out.append(family);
+		}
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		try {
+			writeTo(sb);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpEntityContainer;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpMessage;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+
+import cloud.tamacat2.httpd.util.HeaderUtils;
+
+/**
+ * <p>Request metrics of a route. (UrlConfig)<br>
+ * The counters are striped {@link LongAdder}s and the latency is a {@link LatencyHistogram},
+ * so the request threads do not contend on one cache line.
+ * <ul>
+ *   <li>requests by the status class (1xx-5xx)</li>
+ *   <li>in-flight requests</li>
+ *   <li>latency histogram (until the handler returns the response, the body may be streamed after)</li>
+ *   <li>bytes of the request and response body with the known Content-Length
+ *   (before the Content-Encoding, the chunked body is not counted)</li>
+ * </ul>
+ */
+public class RequestMetrics implements MetricsCollector {
+
+	static final String[] STATUS_CLASSES = {"1xx", "2xx", "3xx", "4xx", "5xx"};
+
+	protected final String route;
+	protected final LongAdder[] statusClasses = new LongAdder[STATUS_CLASSES.length];
+	//in-flight requests are the started requests minus the completed requests. (one add per request)
+	protected final LongAdder started = new LongAdder();
+	protected final LongAdder bytesIn = new LongAdder();
+	protected final LongAdder bytesOut = new LongAdder();
+	protected final LatencyHistogram latency = new LatencyHistogram();
+
+	public RequestMetrics(final String route) {
+		this.route = route;
+		for (int i = 0; i < statusClasses.length; i++) {
+			statusClasses[i] = new LongAdder();
+		}
+	}
+
+	/**
+	 * Notify the start of the request.
+	 */
+	public void begin() {
+		started.increment();
+	}
+
+	/**
+	 * Notify the end of the request that was started by {@link #begin()}.
+	 * @param response null if the handler failed. (counted as 5xx)
+	 */
+	public void end(final HttpRequest request, final HttpResponse response, final long latencyNanos) {
+		statusClasses[statusClass(response != null ? response.getCode() : 500)].increment();
+		latency.record(latencyNanos);
+		final long requestBytes = getContentLength(request);
+		if (requestBytes > 0) {
+			bytesIn.add(requestBytes);
+		}
+		final long responseBytes = getContentLength(response);
+		if (responseBytes > 0) {
+			bytesOut.add(responseBytes);
+		}
+	}
+
+	static int statusClass(final int code) {
+		final int statusClass = code / 100 - 1;
+		return statusClass < 0 ? 0 : Math.min(statusClass, STATUS_CLASSES.length - 1);
+	}
+
+	/**
+	 * Length of the HttpEntity (classic) or the Content-Length header. (async)
+	 * @return -1 if unknown.
+	 */
+	static long getContentLength(final HttpMessage message) {
+		if (message == null) {
+			return -1;
+		} else if (message instanceof HttpEntityContainer) {
+			final HttpEntity entity = ((HttpEntityContainer) message).getEntity();
+			return entity != null ? entity.getContentLength() : -1;
+		}
+		final String contentLength = HeaderUtils.getHeader(message, HttpHeaders.CONTENT_LENGTH);
+		try {
+			return contentLength != null ? Long.parseLong(contentLength.trim()) : -1;
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	public String getRoute() {
+		return route;
+	}
+
+	public long getRequests() {
+		long requests = 0;
+		for (final LongAdder statusClass : statusClasses) {
+			requests += statusClass.sum();
+		}
+		return requests;
+	}
+
+	/**
+	 * @param statusClass 1 to 5 (ex. 2 is 2xx)
+	 */
+	public long getRequests(final int statusClass) {
+		return statusClasses[statusClass(statusClass * 100)].sum();
+	}
+
+	/**
+	 * Number of the in-flight requests. (approximate)
+	 */
+	public long getActive() {
+		final long completed = getRequests();
+		return Math.max(0, started.sum() - completed);
+	}
+
+	public long getBytesIn() {
+		return bytesIn.sum();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.sum();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	@Override
+	public void collect(final MetricsWriter writer) {
+		for (int i = 0; i < statusClasses.length; i++) {
+			writer.counter("tamacat2_http_requests_total", "Number of the HTTP requests.",
+				statusClasses[i].sum(), "route", route, "status", STATUS_CLASSES[i]);
+		}
+		writer.gauge("tamacat2_http_requests_active", "Number of the in-flight HTTP requests.",
+			getActive(), "route", route);
+		writer.histogram("tamacat2_http_request_duration_seconds", "Latency of the HTTP requests.",
+			latency.snapshot(), "route", route);
+		writer.counter("tamacat2_http_request_bytes_total", "Bytes of the request bodies with the Content-Length.",
+			bytesIn.sum(), "route", route);
+		writer.counter("tamacat2_http_response_bytes_total", "Bytes of the response bodies with the Content-Length.",
+			bytesOut.sum(), "route", route);
+	}
+}
@@ -22,16 +22,20 @@ import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpRequest;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.log.AccessLogWriter;
+
 public class AccessLogUtils {
 	
 	static final Logger ACCESS = LoggerFactory.getLogger("Access");
 
 	public static String getRemoteAddress(final HttpContext httpContext) {
-		EndpointDetails ip = (EndpointDetails) httpContext.getAttribute("http.connection-endpoint");
-		if (ip != null) {
+		//HttpCoreContext holds the endpoint in the field. (not the "http.connection-endpoint" attribute)
+		EndpointDetails ip = HttpCoreContext.cast(httpContext).getEndpointDetails();
+		if (ip != null && ip.getRemoteAddress() instanceof InetSocketAddress) {
 			return ((InetSocketAddress)ip.getRemoteAddress()).getAddress().getHostAddress();
 		} else {
 			return "";
@@ -42,6 +46,17 @@ public class AccessLogUtils {
 		ACCESS.info(format(req, resp, context, responseTime));
 	}
 	
+	/**
+	 * Append the access log to the writer, or the "Access" logger if the writer is null.
+	 */
+	public static void log(final AccessLogWriter writer, final HttpRequest req, final HttpResponse resp, final HttpContext context, final long responseTime) {
+		if (writer != null) {
+			writer.log(req, resp, context, responseTime);
+		} else {
+			ACCESS.info(format(req, resp, context, responseTime));
+		}
+	}
+	
 	public static void log(final Logger log, final HttpRequest req, final HttpResponse resp, final HttpContext context, final long responseTime) {
 		log.info(format(req, resp, context, responseTime));
 	}
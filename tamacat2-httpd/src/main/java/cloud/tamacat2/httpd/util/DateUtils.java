@@ -7,6 +7,14 @@ package cloud.tamacat2.httpd.util;
 
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoField;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
@@ -18,6 +26,26 @@ public abstract class DateUtils {
 
 	static final Locale currentLocale = Locale.getDefault();
 
+	//IMF-fixdate (RFC 9110 Section 5.6.7), DateTimeFormatter is thread-safe.
+	static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern(
+		"EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
+
+	//obsolete RFC 850 format. ex. "Sunday, 06-Nov-94 08:49:37 GMT"
+	//the two digit year more than 50 years in the future is the past year. (RFC 9110 Section 5.6.7)
+	static final DateTimeFormatter RFC_850_DATE = new DateTimeFormatterBuilder()
+		.appendPattern("EEEE, dd-MMM-")
+		.appendValueReduced(ChronoField.YEAR, 2, 2, LocalDate.now(ZoneOffset.UTC).minusYears(49))
+		.appendPattern(" HH:mm:ss 'GMT'")
+		.toFormatter(Locale.US).withZone(ZoneOffset.UTC);
+
+	//obsolete ANSI C's asctime() format. ex. "Sun Nov  6 08:49:37 1994"
+	static final DateTimeFormatter ASCTIME_DATE = DateTimeFormatter.ofPattern(
+		"EEE MMM ppd HH:mm:ss yyyy", Locale.US).withZone(ZoneOffset.UTC);
+
+	//the recipients accept the three formats. (RFC 9110 Section 5.6.7)
+	static final DateTimeFormatter[] HTTP_DATE_FORMATS = {
+		DateTimeFormatter.RFC_1123_DATE_TIME, RFC_850_DATE, ASCTIME_DATE };
+
 	public static String getTime(final Date date, final String pattern) {
 		return getTime(date, pattern, currentLocale);
 	}
@@ -63,4 +91,31 @@ public abstract class DateUtils {
 			return null;
 		}
 	}
+
+	/**
+	 * Format the HTTP-date. ex. "Sun, 06 Nov 1994 08:49:37 GMT"
+	 * @param millis milliseconds since the epoch.
+	 */
+	public static String formatHttpDate(final long millis) {
+		return HTTP_DATE.format(Instant.ofEpochMilli(millis));
+	}
+
+	/**
+	 * Parse the HTTP-date. (IMF-fixdate, or the obsolete RFC 850 and asctime formats)
+	 * @return milliseconds, or -1 if the date is invalid.
+	 */
+	public static long parseHttpDate(final String date) {
+		if (date == null) {
+			return -1L;
+		}
+		final String value = date.trim();
+		for (final DateTimeFormatter formatter : HTTP_DATE_FORMATS) {
+			try {
+				return ZonedDateTime.parse(value, formatter).toInstant().toEpochMilli();
+			} catch (DateTimeParseException e) {
+				//next format.
+			}
+		}
+		return -1L;
+	}
 }
@@ -227,6 +227,40 @@ public final class HeaderUtils {
 		return line != null && line.toLowerCase().startsWith("multipart/");
 	}
 	
+	/**
+	 * <p>Get the qvalue of the content coding in the Accept-Encoding header. (RFC 9110 Section 12.5.3)
+	 * <p>Examples: {@code getQValue("br;q=1.0, gzip;q=0.8, *;q=0.1", "gzip")} returns 0.8
+	 * @param acceptEncoding value of the Accept-Encoding header.
+	 * @param coding content coding. (case insensitive)
+	 * @return qvalue, 0 if not acceptable. ("*" matches the codings not listed)
+	 */
+	public static float getQValue(String acceptEncoding, String coding) {
+		if (StringUtils.isEmpty(acceptEncoding)) return 0f;
+		float any = 0f;
+		for (String value : acceptEncoding.split(",")) {
+			String[] params = value.split(";");
+			String name = params[0].trim();
+			float q = 1f;
+			for (int i=1; i<params.length; i++) {
+				String param = params[i].trim();
+				if (param.length() > 2 && (param.charAt(0) == 'q' || param.charAt(0) == 'Q') && param.charAt(1) == '=') {
+					try {
+						q = Float.parseFloat(param.substring(2));
+						q = q > 0f ? Math.min(1f, q) : 0f; //and NaN
+					} catch (NumberFormatException e) {
+						q = 0f;
+					}
+				}
+			}
+			if (name.equalsIgnoreCase(coding)) {
+				return q;
+			} else if ("*".equals(name)) {
+				any = q;
+			}
+		}
+		return any;
+	}
+
 	/**
 	 * delete CRLF
 	 * @param str
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Offline precompression of the static files in the docsRoot. (style.css -> style.css.gz)<br>
+ * The files are served by {@link cloud.tamacat2.httpd.config.UrlConfig#precompressed(String)} with "Content-Encoding: gzip".
+ * <ul>
+ *   <li>The gzip file is written with the best compression, and has the last modified time of the file.</li>
+ *   <li>The gzip file is not written when it is not smaller than the file.</li>
+ *   <li>The up-to-date gzip file (same last modified time) is skipped, the stale gzip file is replaced or removed.</li>
+ * </ul>
+ * <p>Brotli (*.br) and Zstandard (*.zst) have no encoder in the JDK, use the brotli and zstd commands.
+ * <pre>
+ * java -cp tamacat2-httpd.jar cloud.tamacat2.httpd.util.PrecompressUtils ./htdocs [html,css,javascript]
+ * </pre>
+ */
+public class PrecompressUtils {
+
+	static final Logger LOG = LoggerFactory.getLogger(PrecompressUtils.class);
+
+	public static final String DEFAULT_CONTENT_TYPES = "html,xml,css,javascript,json,plain,svg+xml";
+	public static final long DEFAULT_MIN_SIZE = 256;
+
+	static final String[] EXTENSIONS = { ".gz", ".br", ".zst" };
+
+	/** Cannot instantiate. */
+	PrecompressUtils() {}
+
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1) {
+			System.out.println("Usage: PrecompressUtils docsRoot [contentTypes (default: " + DEFAULT_CONTENT_TYPES + ")]");
+			return;
+		}
+		final int count = precompress(Paths.get(args[0]), args.length >= 2 ? args[1] : DEFAULT_CONTENT_TYPES, DEFAULT_MIN_SIZE);
+		System.out.println(count + " files compressed.");
+	}
+
+	/**
+	 * Write the gzip files in the docsRoot.
+	 * @param contentTypes Comma Separated Value of content-type or sub types. ex. "html,css,javascript"
+	 * @param minSize minimum size of the file to compress.
+	 * @return number of the written gzip files.
+	 */
+	public static int precompress(final Path docsRoot, final String contentTypes, final long minSize) throws IOException {
+		final Set<String> types = new HashSet<>();
+		for (final String type : StringUtils.split(contentTypes, ",")) {
+			types.add(type.toLowerCase());
+		}
+		final List<Path> files;
+		try (Stream<Path> stream = Files.walk(docsRoot)) {
+			files = stream.filter(Files::isRegularFile).collect(Collectors.toList());
+		}
+		int count = 0;
+		for (final Path file : files) {
+			if (isCompressible(file, types)) {
+				if (precompress(file, minSize)) {
+					count++;
+				}
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Write the gzip file of the file.
+	 * @return true if the gzip file is written.
+	 */
+	public static boolean precompress(final Path file, final long minSize) throws IOException {
+		final Path gz = file.resolveSibling(file.getFileName() + ".gz");
+		final FileTime lastModified = Files.getLastModifiedTime(file);
+		final boolean exists = Files.isRegularFile(gz);
+		if (Files.size(file) < minSize || (exists && Files.getLastModifiedTime(gz).equals(lastModified))) {
+			return false; //small or up-to-date
+		}
+		final Path tmp = Files.createTempFile(file.getParent(), ".precompress", ".tmp");
+		try {
+			try (OutputStream out = new BestCompressionGZIPOutputStream(Files.newOutputStream(tmp))) {
+				Files.copy(file, out);
+			}
+			if (Files.size(tmp) >= Files.size(file)) {
+				if (exists) {
+					Files.delete(gz); //stale
+				}
+				return false;
+			}
+			Files.setLastModifiedTime(tmp, lastModified);
+			try {
+				//the temporary file is owner only.
+				Files.setPosixFilePermissions(tmp, Files.getPosixFilePermissions(file));
+			} catch (UnsupportedOperationException e) {
+				//no POSIX attributes (ex. Windows), the default permissions of the file system.
+				LOG.debug("posix permissions not supported: " + gz);
+			}
+			Files.move(tmp, gz, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOG.debug("precompress " + gz);
+			return true;
+		} finally {
+			Files.deleteIfExists(tmp);
+		}
+	}
+
+	static boolean isCompressible(final Path file, final Set<String> types) {
+		final String name = file.getFileName().toString();
+		for (final String ext : EXTENSIONS) {
+			if (name.endsWith(ext)) {
+				return false;
+			}
+		}
+		final String contentType = MimeUtils.getContentType(name);
+		if (contentType == null) {
+			return false;
+		}
+		//Get the content sub type. (text/html; charset=UTF-8 -> html)
+		final String[] mime = contentType.split(";")[0].trim().toLowerCase().split("/");
+		return types.contains(mime[0] + (mime.length >= 2 ? "/" + mime[1] : ""))
+			|| (mime.length >= 2 && types.contains(mime[1]));
+	}
+
+	static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+		BestCompressionGZIPOutputStream(final OutputStream out) throws IOException {
+			super(out, 8192);
+			def.setLevel(Deflater.BEST_COMPRESSION);
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.util.StringUtils;
+
+/**
+ * <p>Adaptive compression policy of the {@link GzipContentEncodingInterceptor}, trades the bandwidth for the latency under load.<br>
+ * The process CPU load and the average latency of the responses (the handler and the compression, not the sending) are sampled
+ * at the interval (default 1 second) on the request path, without a thread.
+ * <ul>
+ *   <li>{@link Mode#NORMAL}: the configured compression level.</li>
+ *   <li>{@link Mode#REDUCED}: the fastest level (1), CPU load &gt;= 0.75 or latency &gt;= 500ms.</li>
+ *   <li>{@link Mode#MINIMAL}: the fastest level, and skip the large (or unknown length) and the low ratio content types,
+ *       CPU load &gt;= 0.9 or latency &gt;= 1000ms.</li>
+ * </ul>
+ * <p>The mode is raised at once, and restored one step per interval when CPU load &lt; 0.5 and latency &lt; 250ms. (hysteresis)
+ */
+public class AdaptiveCompressionPolicy {
+
+	static final Logger LOG = LoggerFactory.getLogger(AdaptiveCompressionPolicy.class);
+
+	public enum Mode {
+		NORMAL, REDUCED, MINIMAL
+	}
+
+	protected double highCpuLoad = 0.75;
+	protected double criticalCpuLoad = 0.9;
+	protected double lowCpuLoad = 0.5;
+	protected long highLatencyMillis = 500;
+	protected long maxSizeUnderLoad = 256 * 1024;
+	protected Set<String> lowRatioTypes = new HashSet<>();
+	protected long intervalNanos = 1_000_000_000L;
+
+	protected volatile Mode mode = Mode.NORMAL;
+	protected volatile double cpuLoad;
+	protected volatile double latencyMillis;
+	protected final AtomicLong nextSample = new AtomicLong(System.nanoTime());
+	protected final LongAdder latencySum = new LongAdder();
+	protected final LongAdder latencyCount = new LongAdder();
+
+	protected final LongAdder[] compressed = { new LongAdder(), new LongAdder(), new LongAdder() };
+	protected final LongAdder cached = new LongAdder();
+	protected final LongAdder skipped = new LongAdder();
+	protected final LongAdder modeChanges = new LongAdder();
+
+	protected final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+	public AdaptiveCompressionPolicy() {
+		//already compressed or the small gain
+		lowRatioTypes("woff,woff2,ico");
+	}
+
+	/**
+	 * @param highCpuLoad process CPU load (0.0-1.0) of {@link Mode#REDUCED}, default 0.75
+	 * @param criticalCpuLoad process CPU load of {@link Mode#MINIMAL}, default 0.9
+	 * @param lowCpuLoad process CPU load to restore the mode, default 0.5
+	 */
+	public AdaptiveCompressionPolicy cpuLoad(final double highCpuLoad, final double criticalCpuLoad, final double lowCpuLoad) {
+		this.highCpuLoad = highCpuLoad;
+		this.criticalCpuLoad = criticalCpuLoad;
+		this.lowCpuLoad = lowCpuLoad;
+		return this;
+	}
+
+	/**
+	 * @param highLatencyMillis average latency of {@link Mode#REDUCED}, twice of {@link Mode#MINIMAL}. default 500ms
+	 */
+	public AdaptiveCompressionPolicy highLatency(final long highLatencyMillis) {
+		this.highLatencyMillis = highLatencyMillis;
+		return this;
+	}
+
+	/**
+	 * @param maxSizeUnderLoad the larger Content-Length is not compressed in {@link Mode#MINIMAL}. default 256KB
+	 */
+	public AdaptiveCompressionPolicy maxSizeUnderLoad(final long maxSizeUnderLoad) {
+		this.maxSizeUnderLoad = maxSizeUnderLoad;
+		return this;
+	}
+
+	/**
+	 * @param lowRatioTypes Comma Separated Value of content-type or sub types not compressed in {@link Mode#MINIMAL}.
+	 */
+	public AdaptiveCompressionPolicy lowRatioTypes(final String lowRatioTypes) {
+		this.lowRatioTypes.clear();
+		for (final String type : StringUtils.split(lowRatioTypes, ",")) {
+			this.lowRatioTypes.add(type.toLowerCase());
+		}
+		return this;
+	}
+
+	public AdaptiveCompressionPolicy intervalMillis(final long intervalMillis) {
+		this.intervalNanos = intervalMillis * 1_000_000L;
+		return this;
+	}
+
+	/**
+	 * Record the latency of the response.
+	 * ({@link GzipContentEncodingInterceptor}: the request to the response interceptor, plus the time of the Deflater)
+	 */
+	public void record(final long latencyNanos) {
+		latencySum.add(latencyNanos);
+		latencyCount.increment();
+	}
+
+	/**
+	 * Get the current mode, sample the CPU load and the latency when the interval elapsed.
+	 */
+	public Mode getMode() {
+		final long now = System.nanoTime();
+		final long next = nextSample.get();
+		if (now - next >= 0 && nextSample.compareAndSet(next, now + intervalNanos)) {
+			sample();
+		}
+		return mode;
+	}
+
+	/**
+	 * Check the response under {@link Mode#MINIMAL}.
+	 * @param contentType value of the Content-Type header.
+	 * @param length Content-Length, -1 if unknown.
+	 * @return false if skip the compression.
+	 */
+	public boolean isCompressible(final String contentType, final long length) {
+		if (length < 0 || length > maxSizeUnderLoad) {
+			return false;
+		}
+		if (contentType != null) {
+			final String type = contentType.split(";")[0].trim().toLowerCase();
+			final int slash = type.indexOf('/');
+			if (lowRatioTypes.contains(type) || (slash >= 0 && lowRatioTypes.contains(type.substring(slash + 1)))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	protected void sample() {
+		final long count = latencyCount.sumThenReset();
+		final long sum = latencySum.sumThenReset();
+		latencyMillis = count > 0 ? sum / (double) count / 1_000_000d : 0d;
+		cpuLoad = getProcessCpuLoad();
+		final Mode next = next(mode, cpuLoad, latencyMillis);
+		if (next != mode) {
+			LOG.info("compression mode " + mode + " -> " + next + " (cpuLoad=" + String.format("%.2f", cpuLoad)
+				+ ", latency=" + String.format("%.1f", latencyMillis) + "ms)");
+			mode = next;
+			modeChanges.increment();
+		}
+	}
+
+	/**
+	 * Decide the next mode. (raised at once, restored one step)
+	 */
+	protected Mode next(final Mode current, final double cpuLoad, final double latencyMillis) {
+		final Mode pressure;
+		if (cpuLoad >= criticalCpuLoad || latencyMillis >= highLatencyMillis * 2) {
+			pressure = Mode.MINIMAL;
+		} else if (cpuLoad >= highCpuLoad || latencyMillis >= highLatencyMillis) {
+			pressure = Mode.REDUCED;
+		} else {
+			pressure = Mode.NORMAL;
+		}
+		if (pressure.ordinal() > current.ordinal()) {
+			return pressure;
+		} else if (current != Mode.NORMAL && cpuLoad < lowCpuLoad && latencyMillis < highLatencyMillis / 2d) {
+			return Mode.values()[current.ordinal() - 1];
+		}
+		return current;
+	}
+
+	/**
+	 * @return recent CPU usage of the JVM process (0.0-1.0), or the system load average per processor.
+	 */
+	protected double getProcessCpuLoad() {
+		if (os instanceof com.sun.management.OperatingSystemMXBean) {
+			final double load = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+			if (load >= 0) {
+				return load;
+			}
+		}
+		final double average = os.getSystemLoadAverage();
+		return average >= 0 ? average / os.getAvailableProcessors() : 0d;
+	}
+
+	void compressed(final Mode mode) {
+		compressed[mode.ordinal()].increment();
+	}
+
+	void cached() {
+		cached.increment();
+	}
+
+	void skipped() {
+		skipped.increment();
+	}
+
+	/**
+	 * @return mode of the last sample, without sampling.
+	 */
+	public Mode getCurrentMode() {
+		return mode;
+	}
+
+	/**
+	 * @return CPU load of the last sample.
+	 */
+	public double getCpuLoad() {
+		return cpuLoad;
+	}
+
+	/**
+	 * @return average latency of the last interval.
+	 */
+	public double getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	/**
+	 * @return number of the compressed responses in the mode.
+	 */
+	public long getCompressed(final Mode mode) {
+		return compressed[mode.ordinal()].sum();
+	}
+
+	/**
+	 * @return number of the responses sent from the compressed content cache, not compressed.
+	 */
+	public long getCached() {
+		return cached.sum();
+	}
+
+	/**
+	 * @return number of the responses not compressed in {@link Mode#MINIMAL}.
+	 */
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	public long getModeChanges() {
+		return modeChanges.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "AdaptiveCompressionPolicy [mode=" + mode + ", cpuLoad=" + cpuLoad + ", latencyMillis=" + latencyMillis
+			+ ", compressed=" + getCompressed(Mode.NORMAL) + "/" + getCompressed(Mode.REDUCED) + "/" + getCompressed(Mode.MINIMAL)
+			+ ", cached=" + getCached() + ", skipped=" + getSkipped() + ", modeChanges=" + getModeChanges() + "]";
+	}
+}
@@ -19,8 +19,9 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.EntityDetails;
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpEntity;
@@ -31,18 +32,34 @@ import org.apache.hc.core5.http.HttpRequest;
 import org.apache.hc.core5.http.HttpRequestInterceptor;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.HttpStatus;
 import org.apache.hc.core5.http.HttpVersion;
 import org.apache.hc.core5.http.io.entity.HttpEntityWrapper;
 import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.io.Closer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.cache.CompressedContentCache;
+import cloud.tamacat2.httpd.io.DeflaterPool;
+import cloud.tamacat2.httpd.io.DirectBufferEntity;
+import cloud.tamacat2.httpd.io.GzipCompressingOutputStream;
+import cloud.tamacat2.httpd.io.IdentifiableEntity;
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
 import cloud.tamacat2.httpd.util.HeaderUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
 
 /**
  * <p>Server-side interceptor to handle Gzip-encoded responses.<br>
  * The cord of the basis is Apache HttpComponents {@code ResponseGzipCompress.java}.</p>
+ * <ul>
+ *   <li>The response is compressed when the qvalue of gzip in the Accept-Encoding is not 0.</li>
+ *   <li>The response smaller than the {@link #minSize(long)} (known Content-Length) is not compressed.</li>
+ *   <li>"Vary: Accept-Encoding" is added to the response of the compressible content.</li>
+ *   <li>The Deflaters of the {@link #level(int)} are pooled. ({@link DeflaterPool})</li>
+ *   <li>The compression backs off under load with the {@link #policy(AdaptiveCompressionPolicy)}.</li>
+ *   <li>The compressed representations of the static files are cached with the {@link #contentCache(CompressedContentCache)}.</li>
+ * </ul>
  *
  * {@link http://svn.apache.org/repos/asf/httpcomponents/httpcore/trunk/contrib/src/main/java/org/apache/http/contrib/compress/ResponseGzipCompress.java}
  */
@@ -51,9 +68,16 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 	static final Logger LOG = LoggerFactory.getLogger(GzipContentEncodingInterceptor.class);
 	protected static final String GZIP_CODEC = "gzip";
 	protected static final String HEADER_ACCEPT_ENCODING = "GzipResponseInterceptor.Accept-Encoding";
+	protected static final String REQUEST_START_TIME = "GzipResponseInterceptor.startTime";
+	public static final long DEFAULT_MIN_SIZE = 1024;
 
 	protected Set<String> contentTypes = new HashSet<String>();
 	protected boolean useAll = true;
+	protected long minSize = DEFAULT_MIN_SIZE;
+	protected DeflaterPool deflaterPool = new DeflaterPool(Deflater.DEFAULT_COMPRESSION);
+	protected DeflaterPool fastDeflaterPool;
+	protected AdaptiveCompressionPolicy policy;
+	protected CompressedContentCache contentCache;
 
 	public GzipContentEncodingInterceptor() {
 		//default content-type
@@ -64,6 +88,9 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 	public void process(final HttpRequest req, final EntityDetails entity, final HttpContext context)
 			throws HttpException, IOException {
 		//Get the Accept-Encoding header for HTTP/1.1
+		if (policy != null) {
+			context.setAttribute(REQUEST_START_TIME, System.nanoTime());
+		}
 		final String acceptEncoding = HeaderUtils.getHeader(req, HttpHeaders.ACCEPT_ENCODING);
 		if (req != null && req.getVersion().greaterEquals(HttpVersion.HTTP_1_1)) {
 			String ua = HeaderUtils.getHeader(req, "User-Agent");
@@ -74,24 +101,166 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 		}
 	}
 	
+	/**
+	 * Compress the response entity.
+	 * <p>The latency of the {@link AdaptiveCompressionPolicy} is from the request interceptor to this response interceptor,
+	 * plus the time of the Deflater when compressed while sending. It is recorded after the compressed body is written
+	 * ({@link GzipCompressingEntity#writeTo(OutputStream)}), otherwise here.
+	 * The time to send the body is not included, a slow client does not back off the compression.
+	 */
 	@Override
 	public void process(final HttpResponse resp, final EntityDetails entity, final HttpContext context)
 			throws HttpException, IOException {
-		if (resp instanceof HttpEntityContainer == false || entity == null || entity instanceof HttpEntity == false) return;
+		final long startTime = policy != null && context != null && context.getAttribute(REQUEST_START_TIME) instanceof Long
+			? (Long) context.getAttribute(REQUEST_START_TIME) : 0L;
+		if (!encode(resp, entity, context, startTime) && startTime != 0L) {
+			policy.record(System.nanoTime() - startTime);
+		}
+	}
+
+	/**
+	 * @param startTime System.nanoTime() of the request, 0 if the latency is not recorded.
+	 * @return true if the latency is recorded by the {@link GzipCompressingEntity} after the compressed body is written.
+	 */
+	protected boolean encode(final HttpResponse resp, final EntityDetails entity, final HttpContext context, final long startTime)
+			throws IOException {
+		if (resp instanceof HttpEntityContainer == false || entity == null || entity instanceof HttpEntity == false) return false;
+		//the ranges are of the identity representation.
+		if (resp.getCode() == HttpStatus.SC_PARTIAL_CONTENT) return false;
+		//already encoded. (precompressed file)
+		if (resp.containsHeader(HttpHeaders.CONTENT_ENCODING)) return false;
 		if (context == null) {
 			throw new IllegalArgumentException("HTTP context may not be null");
 		}
 		//HttpRequest req = (HttpRequest) context.getAttribute(HttpCoreContext.HTTP_REQUEST);
 		final String codecs = (String) context.getAttribute(HEADER_ACCEPT_ENCODING);
-		if (StringUtils.isNotEmpty(codecs) && useCompress(resp.getFirstHeader(HttpHeaders.CONTENT_TYPE))) {
-			if (codecs != null && codecs.toLowerCase().contains(GZIP_CODEC)) {
-				final GzipCompressingEntity gzipEntity = new GzipCompressingEntity((HttpEntity)entity);
-				((HttpEntityContainer)resp).setEntity(gzipEntity);
+		if (!useCompress(resp.getFirstHeader(HttpHeaders.CONTENT_TYPE))) return false;
+		final long length = entity.getContentLength();
+		if (length >= 0 && length < minSize) return false; //not worth the gzip header and the CPU
+		addVary(resp);
+		boolean deferred = false;
+		if (StringUtils.isNotEmpty(codecs)) {
+			if (HeaderUtils.getQValue(codecs, GZIP_CODEC) > 0f) {
+				DeflaterPool pool = deflaterPool;
+				AdaptiveCompressionPolicy.Mode mode = AdaptiveCompressionPolicy.Mode.NORMAL;
+				if (policy != null) {
+					mode = policy.getMode();
+					if (mode != AdaptiveCompressionPolicy.Mode.NORMAL) {
+						pool = fastDeflaterPool;
+					}
+				}
+				OffHeapBuffer cached = getCached(entity, length, pool);
+				if (policy != null) {
+					//the cached representation costs no CPU.
+					if (cached == null && mode == AdaptiveCompressionPolicy.Mode.MINIMAL
+							&& !policy.isCompressible(HeaderUtils.getHeader(resp, HttpHeaders.CONTENT_TYPE), length)) {
+						policy.skipped();
+						return false;
+					}
+					if (cached != null) {
+						policy.cached();
+					} else {
+						policy.compressed(mode);
+					}
+				}
+				final String key = cached == null ? getCacheKey(entity, length, pool) : null;
+				if (key != null) {
+					cached = compress((HttpEntity)entity, key, pool);
+				}
+				if (cached != null) {
+					//replaced, the response does not close the entity. (ex. the off-heap content is released)
+					Closer.closeQuietly((HttpEntity)entity);
+					//exact Content-Length of the compressed representation.
+					((HttpEntityContainer)resp).setEntity(new DirectBufferEntity(cached, getContentType(entity), GZIP_CODEC));
+					resp.setHeader(HttpHeaders.CONTENT_LENGTH, Integer.toString(cached.size()));
+				} else {
+					final GzipCompressingEntity gzipEntity = new GzipCompressingEntity((HttpEntity)entity, pool);
+					if (startTime != 0L) {
+						gzipEntity.latency(policy, System.nanoTime() - startTime);
+						deferred = true;
+					}
+					((HttpEntityContainer)resp).setEntity(gzipEntity);
+					resp.setHeader(HttpHeaders.TRANSFER_ENCODING, "chunked"); //Transfer-Encoding:chunked
+					resp.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+				}
 				resp.setHeader(HttpHeaders.CONTENT_ENCODING, GZIP_CODEC); //Content-Encoding:gzip
-				resp.setHeader(HttpHeaders.TRANSFER_ENCODING, "chunked"); //Transfer-Encoding:chunked
-				resp.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+				//the compressed representation does not support the Range requests.
+				resp.removeHeaders(HttpHeaders.ACCEPT_RANGES);
+				//the strong ETag of the file is not the ETag of the compressed representation.
+				final Header etag = resp.getFirstHeader(HttpHeaders.ETAG);
+				if (etag != null) {
+					resp.setHeader(HttpHeaders.ETAG, getGzipETag(etag.getValue()));
+				}
 			}
 		}
+		return deferred;
+	}
+
+	/**
+	 * @return key of the {@link CompressedContentCache} with the level of the pool, null if the entity is not cacheable.
+	 */
+	protected String getCacheKey(final EntityDetails entity, final long length, final DeflaterPool pool) {
+		if (contentCache == null || entity instanceof IdentifiableEntity == false
+				|| length < 0 || length > contentCache.getMaxEntryBytes()) {
+			return null;
+		}
+		final String identity = ((IdentifiableEntity)entity).getIdentity();
+		return identity != null ? identity + ";" + GZIP_CODEC + ";" + pool.getLevel() : null;
+	}
+
+	/**
+	 * Get the cached representation of the level.
+	 * Under load (the fast level), the representation of the configured level is preferred. (the better ratio)
+	 * @return retained compressed content, null if not cached.
+	 */
+	protected OffHeapBuffer getCached(final EntityDetails entity, final long length, final DeflaterPool pool) {
+		if (pool != deflaterPool) {
+			final OffHeapBuffer cached = getCached(entity, length, deflaterPool);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		final String key = getCacheKey(entity, length, pool);
+		return key != null ? contentCache.get(key) : null;
+	}
+
+	/**
+	 * Compress the whole entity in memory and put it into the cache.
+	 * The concurrent misses of the key share one compression. ({@link CompressedContentCache#compress})
+	 * @return retained compressed content, null to compress while sending.
+	 */
+	protected OffHeapBuffer compress(final HttpEntity entity, final String key, final DeflaterPool pool) throws IOException {
+		return contentCache.compress(key, (int) Math.max(32, entity.getContentLength() / 4), out -> {
+			try (final GzipCompressingOutputStream gzip = new GzipCompressingOutputStream(out, pool)) {
+				entity.writeTo(gzip);
+			}
+		});
+	}
+
+	static ContentType getContentType(final EntityDetails entity) {
+		return entity.getContentType() != null ? ContentType.parse(entity.getContentType()) : null;
+	}
+
+	/**
+	 * Add "Accept-Encoding" to the Vary header.
+	 */
+	protected static void addVary(final HttpResponse resp) {
+		final String vary = HeaderUtils.getHeader(resp, HttpHeaders.VARY);
+		if (StringUtils.isEmpty(vary)) {
+			resp.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		} else if (!"*".equals(vary.trim()) && !vary.toLowerCase().contains("accept-encoding")) {
+			resp.setHeader(HttpHeaders.VARY, vary + ", " + HttpHeaders.ACCEPT_ENCODING);
+		}
+	}
+
+	/**
+	 * "size-mtime" -> "size-mtime-gzip"
+	 */
+	protected static String getGzipETag(final String etag) {
+		if (etag != null && etag.length() >= 2 && etag.endsWith("\"")) {
+			return etag.substring(0, etag.length() - 1) + "-" + GZIP_CODEC + "\"";
+		}
+		return etag;
 	}
 
 	/**
@@ -130,6 +299,55 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 		return this;
 	}
 
+	/**
+	 * @param level compression level (1-9), default is Deflater.DEFAULT_COMPRESSION. (6)
+	 */
+	public GzipContentEncodingInterceptor level(final int level) {
+		if (level != deflaterPool.getLevel()) {
+			deflaterPool.close();
+			deflaterPool = new DeflaterPool(level);
+		}
+		return this;
+	}
+
+	/**
+	 * Back off the compression under load. (the fastest level, or skip the large and low ratio contents)
+	 * @param policy null to always compress with the level. (default)
+	 */
+	public GzipContentEncodingInterceptor policy(final AdaptiveCompressionPolicy policy) {
+		this.policy = policy;
+		if (policy != null && fastDeflaterPool == null) {
+			fastDeflaterPool = new DeflaterPool(Deflater.BEST_SPEED);
+		}
+		return this;
+	}
+
+	public AdaptiveCompressionPolicy getPolicy() {
+		return policy;
+	}
+
+	/**
+	 * Cache the compressed representations of the {@link IdentifiableEntity}, ex. the static files.
+	 * The cached representation is sent with the Content-Length instead of the chunked encoding.
+	 * @param contentCache null to compress each response. (default)
+	 */
+	public GzipContentEncodingInterceptor contentCache(final CompressedContentCache contentCache) {
+		this.contentCache = contentCache;
+		return this;
+	}
+
+	public CompressedContentCache getContentCache() {
+		return contentCache;
+	}
+
+	/**
+	 * @param minSize minimum Content-Length to compress, default 1024 bytes. (The unknown length is compressed.)
+	 */
+	public GzipContentEncodingInterceptor minSize(final long minSize) {
+		this.minSize = minSize;
+		return this;
+	}
+
 	/**
 	 * <p>Check for use compress contents.
 	 * @param contentType
@@ -157,10 +375,23 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 	 */
 	static class GzipCompressingEntity extends HttpEntityWrapper {
 		HttpEntity wrappedEntity;
+		DeflaterPool deflaterPool;
+		AdaptiveCompressionPolicy policy;
+		long handlerNanos;
 		
-		public GzipCompressingEntity(final HttpEntity entity) {
+		public GzipCompressingEntity(final HttpEntity entity, final DeflaterPool deflaterPool) {
 			super(entity);
 			wrappedEntity = entity;
+			this.deflaterPool = deflaterPool;
+		}
+
+		/**
+		 * Record the latency of the handler and the compression, not the time to send the compressed body.
+		 * @param handlerNanos latency of the request to the response interceptor.
+		 */
+		void latency(final AdaptiveCompressionPolicy policy, final long handlerNanos) {
+			this.policy = policy;
+			this.handlerNanos = handlerNanos;
 		}
 
 		@Override
@@ -184,11 +415,15 @@ public class GzipContentEncodingInterceptor implements HttpRequestInterceptor, H
 			if (outstream == null) {
 				throw new IllegalArgumentException("Output stream may not be null");
 			}
-			final GZIPOutputStream gzip = new GZIPOutputStream(outstream);
+			final GzipCompressingOutputStream gzip = new GzipCompressingOutputStream(outstream, deflaterPool);
 			try {
 				wrappedEntity.writeTo(gzip);
 			} finally {
 				close(gzip);
+				if (policy != null) {
+					policy.record(handlerNanos + gzip.getCompressNanos());
+					policy = null; //once (the repeatable entity)
+				}
 			}
 		}
 		
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
+
+import cloud.tamacat2.httpd.cache.FileMetadata;
+import cloud.tamacat2.httpd.util.DateUtils;
+import cloud.tamacat2.httpd.util.HeaderUtils;
+
+/**
+ * <p>Evaluation of the conditional request on the static file. (RFC 9110 Section 13.2.2)<br>
+ * The validators are the strong ETag of the {@link FileMetadata} ("size-mtime"), the "-gzip" ETag of the
+ * compressed representation ({@link GzipContentEncodingInterceptor}) and the Last-Modified. (in seconds)
+ */
+public class Preconditions {
+
+	/**
+	 * Evaluate If-Match, If-Unmodified-Since, If-None-Match and If-Modified-Since in this order.
+	 * (If-Range is evaluated on the Range request, {@link #evaluateIfRange(HttpRequest, FileMetadata)})
+	 * @return 200 (OK), 304 (Not Modified) or 412 (Precondition Failed).
+	 */
+	public static int evaluate(final HttpRequest request, final FileMetadata metadata) {
+		final String ifMatch = HeaderUtils.getHeader(request, HttpHeaders.IF_MATCH);
+		if (ifMatch != null) {
+			if (matchETag(ifMatch, metadata, false) == null) {
+				return HttpStatus.SC_PRECONDITION_FAILED;
+			}
+		} else {
+			final long ifUnmodifiedSince = DateUtils.parseHttpDate(
+				HeaderUtils.getHeader(request, HttpHeaders.IF_UNMODIFIED_SINCE));
+			if (ifUnmodifiedSince >= 0 && seconds(metadata.getLastModified()) > seconds(ifUnmodifiedSince)) {
+				return HttpStatus.SC_PRECONDITION_FAILED;
+			}
+		}
+		final boolean getOrHead = Method.GET.isSame(request.getMethod()) || Method.HEAD.isSame(request.getMethod());
+		final String ifNoneMatch = HeaderUtils.getHeader(request, HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			if (matchETag(ifNoneMatch, metadata, true) != null) {
+				return getOrHead ? HttpStatus.SC_NOT_MODIFIED : HttpStatus.SC_PRECONDITION_FAILED;
+			}
+		} else if (getOrHead) {
+			final long ifModifiedSince = DateUtils.parseHttpDate(
+				HeaderUtils.getHeader(request, HttpHeaders.IF_MODIFIED_SINCE));
+			if (ifModifiedSince >= 0 && seconds(metadata.getLastModified()) <= seconds(ifModifiedSince)) {
+				return HttpStatus.SC_NOT_MODIFIED;
+			}
+		}
+		return HttpStatus.SC_OK;
+	}
+
+	/**
+	 * Get the ETag of the 304 (Not Modified) response, the representation selected by If-None-Match.
+	 */
+	public static String getNotModifiedETag(final HttpRequest request, final FileMetadata metadata) {
+		final String ifNoneMatch = HeaderUtils.getHeader(request, HttpHeaders.IF_NONE_MATCH);
+		final String etag = ifNoneMatch != null ? matchETag(ifNoneMatch, metadata, true) : null;
+		return etag != null ? etag : metadata.getETag();
+	}
+
+	/**
+	 * Evaluate If-Range. (RFC 9110 Section 13.1.5)
+	 * @return true if the Range header is applied, false if the whole file is sent. (the file was changed)
+	 */
+	public static boolean evaluateIfRange(final HttpRequest request, final FileMetadata metadata) {
+		final String ifRange = HeaderUtils.getHeader(request, HttpHeaders.IF_RANGE);
+		if (ifRange == null) {
+			return true;
+		}
+		final String value = ifRange.trim();
+		if (value.startsWith("\"") || value.startsWith("W/")) {
+			//strong comparison, the weak ETag never matches.
+			return value.equals(metadata.getETag());
+		}
+		final long date = DateUtils.parseHttpDate(value);
+		return date >= 0 && seconds(date) == seconds(metadata.getLastModified());
+	}
+
+	/**
+	 * @param header value of If-Match or If-None-Match.
+	 * @param weak weak comparison (If-None-Match) or strong comparison (If-Match). (RFC 9110 Section 8.8.3.2)
+	 * @return matched ETag of the file, null if not matched.
+	 */
+	public static String matchETag(final String header, final FileMetadata metadata, final boolean weak) {
+		final String etag = metadata.getETag();
+		if (etag == null) {
+			return null;
+		}
+		for (final String value : header.split(",")) {
+			String v = value.trim();
+			if ("*".equals(v)) {
+				return etag;
+			}
+			if (weak && v.startsWith("W/")) {
+				v = v.substring(2);
+			}
+			if (etag.equals(v) || GzipContentEncodingInterceptor.getGzipETag(etag).equals(v)) {
+				return v;
+			}
+		}
+		return null;
+	}
+
+	//HTTP-date has no fraction of the second.
+	static long seconds(final long millis) {
+		return millis / 1000L;
+	}
+}
@@ -29,18 +29,18 @@ import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.EndpointDetails;
 import org.apache.hc.core5.http.HttpException;
 import org.apache.hc.core5.http.HttpStatus;
-import org.apache.hc.core5.http.io.entity.FileEntity;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.cache.FileMetadata;
 import cloud.tamacat2.httpd.config.UrlConfig;
 import cloud.tamacat2.httpd.error.ForbiddenException;
 import cloud.tamacat2.httpd.error.HttpStatusException;
 import cloud.tamacat2.httpd.error.NotFoundException;
-import cloud.tamacat2.httpd.util.MimeUtils;
+import cloud.tamacat2.httpd.util.AccessLogUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
 
 /**
@@ -50,7 +50,6 @@ import cloud.tamacat2.httpd.util.StringUtils;
  */
 public class WebServerDirectoryFileListHandler extends WebServerHandler {
 
-	static final Logger ACCESS = LoggerFactory.getLogger("Access");
 	static final Logger LOG = LoggerFactory.getLogger(WebServerDirectoryFileListHandler.class);
 	
 	public WebServerDirectoryFileListHandler(final UrlConfig urlConfig) {
@@ -66,6 +65,7 @@ public class WebServerDirectoryFileListHandler extends WebServerHandler {
             final ClassicHttpRequest request,
             final ClassicHttpResponse response,
             final HttpContext context) throws HttpException, IOException {
+		final long startTime = System.currentTimeMillis();
 		ContentType contentType = ContentType.DEFAULT_BINARY;
 		try {
 			//If docsRoot is null then always return 404 Not Found.
@@ -81,18 +81,17 @@ public class WebServerDirectoryFileListHandler extends WebServerHandler {
 				throw new NotFoundException();
 			}
 			// Normalize the path and ensure it remains within docsRoot
-			final File file = docsRoot.resolve(
-					docsRoot.toAbsolutePath()+getDecodeUri(path).replace(urlConfig.getPath(), "/")
-				).normalize().toAbsolutePath().toFile();
-			if (!file.exists()) {
+			final FileMetadata metadata = getFileMetadata(path);
+			final File file = metadata.getFile();
+			if (!metadata.exists()) {
 				LOG.debug(endpoint + ": Not found. file=" + file.getPath());
 				throw new NotFoundException();
-			} else if (!file.canRead()) {
+			} else if (!metadata.canRead()) {
 				if (LOG.isTraceEnabled()) {
 					LOG.trace(endpoint + ": Forbidden. file=" + file.getPath());
 				}
 				throw new ForbiddenException();
-			} else if (file.isDirectory()) {
+			} else if (metadata.isDirectory()) {
 				final File[] listFiles = file.listFiles(new FileFilter() {
 					@Override
 					public boolean accept(File pathname) {
@@ -105,25 +104,20 @@ public class WebServerDirectoryFileListHandler extends WebServerHandler {
 				final String html = new DirectoryFileListHtmlGenerator().html(files);
 				setEntity(response, new StringEntity(html, ContentType.TEXT_HTML));
 				response.setCode(HttpStatus.SC_OK);
-				ACCESS.info(request+" 200 [OK]");
 				return;
 			}
-			
-			final String mime = MimeUtils.getContentType(path);
-			if (contentType != null) {
-				contentType = ContentType.parse(mime);
-			}
+			contentType = metadata.getContentType();
 			if (LOG.isTraceEnabled()) {
 				LOG.trace(endpoint + ": read file " + file.getAbsolutePath()+ ", Content-Type="+contentType);
 			}
-			setEntity(response, new FileEntity(file, contentType));
-			response.setCode(HttpStatus.SC_OK);
-			ACCESS.info(request+" 200 [OK]");
+			sendFile(request, response, metadata);
 		} catch (HttpStatusException e) {
 			handleException(request, response, context, e);
 		} catch (Exception e) {
 			e.printStackTrace();
 			handleException(request, response, context, defaultException);
+		} finally {
+			AccessLogUtils.log(accessLog, request, response, context, (System.currentTimeMillis() - startTime));
 		}
 	}
 	
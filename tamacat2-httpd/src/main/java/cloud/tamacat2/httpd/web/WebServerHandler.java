@@ -15,12 +15,15 @@
  */
 package cloud.tamacat2.httpd.web;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 
 import org.apache.hc.core5.http.ClassicHttpRequest;
@@ -34,31 +37,49 @@ import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpRequest;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
 import org.apache.hc.core5.http.io.HttpRequestHandler;
-import org.apache.hc.core5.http.io.entity.FileEntity;
 import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.http.protocol.HttpCoreContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.cache.FileContentCache;
+import cloud.tamacat2.httpd.cache.FileMetadata;
+import cloud.tamacat2.httpd.cache.FileMetadataCache;
 import cloud.tamacat2.httpd.config.UrlConfig;
 import cloud.tamacat2.httpd.error.ErrorPageTemplate;
 import cloud.tamacat2.httpd.error.ForbiddenException;
 import cloud.tamacat2.httpd.error.HttpStatusException;
 import cloud.tamacat2.httpd.error.NotFoundException;
+import cloud.tamacat2.httpd.error.PreconditionFailedException;
+import cloud.tamacat2.httpd.error.RangeNotSatisfiableException;
+import cloud.tamacat2.httpd.io.ByteRange;
+import cloud.tamacat2.httpd.io.ByteRangesEntity;
+import cloud.tamacat2.httpd.io.DirectBufferEntity;
+import cloud.tamacat2.httpd.io.FileChannelEntity;
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
+import cloud.tamacat2.httpd.log.AccessLogWriter;
 import cloud.tamacat2.httpd.util.AccessLogUtils;
 import cloud.tamacat2.httpd.util.ExceptionUtils;
 import cloud.tamacat2.httpd.util.HeaderUtils;
-import cloud.tamacat2.httpd.util.MimeUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
 
 /**
  * Embedded HTTP/1.1 file server using classic I/O.
+ * <p>The file is read without a synchronized block, and can be served on the virtual threads.
+ * <p>The file is sent by FileChannel.transferTo (sendfile) on the plain HTTP. ({@link FileChannelEntity})
+ * <p>The file metadata is cached and invalidated by the WatchService. ({@link FileMetadataCache})
+ * <p>The small files can be served from the off-heap content cache. ({@link FileContentCache})
+ * <p>The conditional requests (If-None-Match, If-Modified-Since, If-Match and If-Unmodified-Since)
+ * are evaluated with the ETag and Last-Modified of the file. ({@link Preconditions})
+ * <p>The Range requests (and If-Range) are answered with 206 (Partial Content). ({@link ByteRange})
+ * <p>The precompressed sibling files (*.br, *.zst and *.gz) can be served with the Content-Encoding. ({@link UrlConfig#precompressed(String)})
  * 
  * @see https://hc.apache.org/httpcomponents-core-5.0.x/httpcore5/examples/ClassicFileServerExample.java
  */
-public class WebServerHandler implements HttpRequestHandler {
+public class WebServerHandler implements HttpRequestHandler, Closeable {
 
 	static final Logger LOG = LoggerFactory.getLogger(WebServerHandler.class);
 
@@ -68,16 +89,27 @@ public class WebServerHandler implements HttpRequestHandler {
 
 	protected UrlConfig urlConfig;
 	protected Path docsRoot;
+	protected FileMetadataCache fileCache;
+	protected FileContentCache contentCache;
+	protected AccessLogWriter accessLog;
 	protected HttpStatusException defaultException = new NotFoundException();
+	protected int maxRanges = 32;
+	protected String[] precompressed;
 	
 	public WebServerHandler(final UrlConfig urlConfig) {
 		this(urlConfig.getDocsRoot());
 		this.urlConfig = urlConfig;
+		if (docsRoot != null && urlConfig.getFileCacheConfig() != null) {
+			this.fileCache = new FileMetadataCache(docsRoot, urlConfig.getFileCacheConfig());
+		}
+		if (StringUtils.isNotEmpty(urlConfig.getPrecompressed())) {
+			setPrecompressed(urlConfig.getPrecompressed());
+		}
 	}
 
 	public WebServerHandler(final String docsRoot) {
 		if (docsRoot != null) {
-			this.docsRoot = new File(docsRoot).toPath().normalize().toAbsolutePath();
+			this.docsRoot = new File(docsRoot).toPath().toAbsolutePath().normalize();
 		}
 	}
 	
@@ -103,37 +135,30 @@ public class WebServerHandler implements HttpRequestHandler {
 			if (path.endsWith("/")) {
 				path = path + welcomeFile;
 			}
-			final File file = docsRoot.resolve(
-					docsRoot.toAbsolutePath()+getDecodeUri(path).replace(urlConfig.getPath(), "/")
-				).normalize().toAbsolutePath().toFile();
-			if (!file.exists()) {
+			final FileMetadata metadata = getFileMetadata(path);
+			final File file = metadata.getFile();
+			if (!metadata.exists()) {
 				//if (LOG.isTraceEnabled()) {
 					LOG.debug(endpoint + ": Not found. file=" + file.getPath());
 				//}
 				throw new NotFoundException();
-			} else if (!file.canRead() || file.isDirectory()) {
+			} else if (!metadata.canRead() || metadata.isDirectory()) {
 				if (LOG.isTraceEnabled()) {
 					LOG.trace(endpoint + ": Forbidden. file=" + file.getPath());
 				}
 				throw new ForbiddenException();
 			}
-			ContentType contentType = ContentType.DEFAULT_BINARY;
-			final String mime = MimeUtils.getContentType(path);
-			if (contentType != null) {
-				contentType = ContentType.parse(mime);
-			}
 			if (LOG.isTraceEnabled()) {
-				LOG.trace(endpoint + ": read file " + file.getAbsolutePath()+ ", Content-Type="+contentType);
+				LOG.trace(endpoint + ": read file " + file.getAbsolutePath()+ ", Content-Type="+metadata.getContentType());
 			}
-			setEntity(response, new FileEntity(file, contentType));
-			response.setCode(HttpStatus.SC_OK);
+			sendFile(request, response, metadata);
 		} catch (HttpStatusException e) {
 			handleException(request, response, context, e);
 		} catch (Exception e) {
 			LOG.warn(ExceptionUtils.getStackTrace(e, 100));
 			handleException(request, response, context, defaultException);
 		} finally {
-			AccessLogUtils.log(request, response, context, (System.currentTimeMillis() - startTime));
+			AccessLogUtils.log(accessLog, request, response, context, (System.currentTimeMillis() - startTime));
 		}
 	}
 
@@ -154,6 +179,141 @@ public class WebServerHandler implements HttpRequestHandler {
 		}
 	}
 	
+	/**
+	 * Send the file with the validators (ETag and Last-Modified), or 304 (Not Modified) for the matched conditional request.
+	 * <p>The content is from the content cache, or the file sent by FileChannel.transferTo. (or the ranges of the file)
+	 * The file is not opened for HEAD. (Content-Length of the metadata)
+	 * @throws PreconditionFailedException If-Match or If-Unmodified-Since evaluated to false.
+	 * @throws RangeNotSatisfiableException the Range header has no satisfiable range.
+	 */
+	protected void sendFile(final HttpRequest request, final HttpResponse response, final FileMetadata file) {
+		final FileMetadata metadata = precompressed != null ? getPrecompressed(request, response, file) : file;
+		final int status = Preconditions.evaluate(request, metadata);
+		if (status == HttpStatus.SC_PRECONDITION_FAILED) {
+			throw new PreconditionFailedException();
+		}
+		response.setHeader(HttpHeaders.LAST_MODIFIED, metadata.getLastModifiedDate());
+		if (status == HttpStatus.SC_NOT_MODIFIED) {
+			response.setHeader(HttpHeaders.ETAG, Preconditions.getNotModifiedETag(request, metadata));
+			response.setCode(HttpStatus.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setHeader(HttpHeaders.ETAG, metadata.getETag());
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+		if (Method.GET.isSame(request.getMethod()) && request.containsHeader(HttpHeaders.RANGE)
+				&& Preconditions.evaluateIfRange(request, metadata)) {
+			final List<ByteRange> ranges = ByteRange.parse(
+				HeaderUtils.getHeader(request, HttpHeaders.RANGE), metadata.getLength(), maxRanges);
+			if (ranges != null) {
+				sendRanges(response, metadata, ranges);
+				return;
+			}
+		}
+		final OffHeapBuffer content = contentCache != null && !Method.HEAD.isSame(request.getMethod())
+			? contentCache.get(metadata) : null;
+		//the identity of the compressed representation cache. (not HEAD, the file is not read)
+		final String identity = Method.GET.isSame(request.getMethod())
+			? metadata.getFile().getPath() + metadata.getETag() : null;
+		if (content != null) {
+			setEntity(response, new DirectBufferEntity(content, metadata.getContentType()).identity(identity));
+		} else {
+			setEntity(response, new FileChannelEntity(metadata.getFile(), metadata.getLength(), metadata.getContentType())
+				.identity(identity));
+		}
+		response.setCode(HttpStatus.SC_OK);
+	}
+
+	/**
+	 * Select the precompressed sibling file (ex. style.css.br, style.css.gz) of the highest qvalue in the Accept-Encoding,
+	 * and set the Content-Encoding and "Vary: Accept-Encoding".
+	 * <p>The sibling file older than the file is not used. (stale)
+	 * @return metadata of the sibling file with the Content-Type of the file, or the file.
+	 */
+	protected FileMetadata getPrecompressed(final HttpRequest request, final HttpResponse response, final FileMetadata file) {
+		final String acceptEncoding = HeaderUtils.getHeader(request, HttpHeaders.ACCEPT_ENCODING);
+		boolean vary = false;
+		FileMetadata selected = null;
+		String selectedCoding = null;
+		float selectedQValue = 0f;
+		for (final String coding : precompressed) {
+			final FileMetadata sibling = loadFileMetadata(file.getKey() + getPrecompressedExtension(coding));
+			if (!sibling.exists() || !sibling.canRead() || sibling.isDirectory()
+					|| sibling.getLastModified() < file.getLastModified()) {
+				continue;
+			}
+			vary = true;
+			final float q = HeaderUtils.getQValue(acceptEncoding, coding);
+			if (q > selectedQValue) {
+				selected = sibling;
+				selectedCoding = coding;
+				selectedQValue = q;
+			}
+		}
+		if (vary) {
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		if (selected == null) {
+			return file;
+		}
+		response.setHeader(HttpHeaders.CONTENT_ENCODING, selectedCoding);
+		return selected.withContentType(file.getContentType());
+	}
+
+	/**
+	 * @param coding content coding. (br, zstd or gzip)
+	 * @return file extension of the precompressed file, null if unknown coding.
+	 */
+	protected static String getPrecompressedExtension(final String coding) {
+		switch (coding) {
+		case "gzip":
+			return ".gz";
+		case "br":
+			return ".br";
+		case "zstd":
+			return ".zst";
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Send the ranges of the file. (206 Partial Content)
+	 * <p>The single range is sent by FileChannel.transferTo from the position of the range,
+	 * the multiple ranges are sent as multipart/byteranges.
+	 * @throws RangeNotSatisfiableException no range is satisfiable.
+	 */
+	protected void sendRanges(final HttpResponse response, final FileMetadata metadata, final List<ByteRange> ranges) {
+		if (ranges.isEmpty()) {
+			response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + metadata.getLength());
+			throw new RangeNotSatisfiableException();
+		}
+		if (ranges.size() == 1) {
+			final ByteRange range = ranges.get(0);
+			response.setHeader(HttpHeaders.CONTENT_RANGE, range.getContentRange(metadata.getLength()));
+			setEntity(response, new FileChannelEntity(metadata.getFile(), range.getFirst(), range.getLength(),
+				metadata.getContentType()));
+		} else {
+			setEntity(response, new ByteRangesEntity(metadata.getFile(), metadata.getLength(), ranges,
+				metadata.getContentType()));
+		}
+		response.setCode(HttpStatus.SC_PARTIAL_CONTENT);
+	}
+
+	/**
+	 * Get the metadata of the file from the cache, or read the file attributes.
+	 * @param path request path. (not decoded)
+	 */
+	protected FileMetadata getFileMetadata(final String path) {
+		return loadFileMetadata(getDecodeUri(path).replace(urlConfig.getPath(), "/"));
+	}
+
+	/**
+	 * @param key decoded path in the docsRoot.
+	 */
+	protected FileMetadata loadFileMetadata(final String key) {
+		return fileCache != null ? fileCache.get(key) : FileMetadata.load(docsRoot, key, 0);
+	}
+
 	protected String getDecodeUri(final String uri) {
 		final String decoded = URLDecoder.decode(uri, StandardCharsets.UTF_8);
 		if (StringUtils.isEmpty(decoded) || decoded.contains("..")) {
@@ -162,6 +322,45 @@ public class WebServerHandler implements HttpRequestHandler {
 		return decoded;
 	}
 	
+	/**
+	 * Set the in-memory cache of the small files. (shared by the handlers of the server)
+	 */
+	public void setContentCache(final FileContentCache contentCache) {
+		this.contentCache = contentCache;
+	}
+
+	/**
+	 * Set the asynchronous access log writer. (shared by the handlers of the server)
+	 * @param accessLog null to log with the "Access" logger. (default)
+	 */
+	public void setAccessLog(final AccessLogWriter accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Set the maximum number of the ranges in the Range header, the Range header with more ranges is ignored. (default 32)
+	 */
+	public void setMaxRanges(final int maxRanges) {
+		this.maxRanges = maxRanges;
+	}
+
+	/**
+	 * Set the content codings of the precompressed files in the order of preference. ex. "br,gzip"
+	 * @see UrlConfig#precompressed(String)
+	 */
+	public void setPrecompressed(final String precompressed) {
+		final List<String> codings = new ArrayList<>();
+		for (final String value : StringUtils.split(precompressed, ",")) {
+			final String coding = value.trim().toLowerCase();
+			if (getPrecompressedExtension(coding) != null) {
+				codings.add(coding);
+			} else {
+				LOG.warn("Unknown content coding of the precompressed files: " + coding);
+			}
+		}
+		this.precompressed = codings.isEmpty() ? null : codings.toArray(new String[codings.size()]);
+	}
+
 	protected void setDefaultException(final HttpStatusException exception) {
 		this.defaultException = exception;
 	}
@@ -174,4 +373,11 @@ public class WebServerHandler implements HttpRequestHandler {
 	public ClassLoader getClassLoader() {
 		return loader != null ? loader : getClass().getClassLoader();
 	}
+
+	@Override
+	public void close() throws IOException {
+		if (fileCache != null) {
+			fileCache.close();
+		}
+	}
 }
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hc.core5.http.impl.bootstrap;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hc.core5.annotation.Contract;
+import org.apache.hc.core5.annotation.ThreadingBehavior;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpRequestMapper;
+import org.apache.hc.core5.http.MisdirectedRequestException;
+import org.apache.hc.core5.http.impl.routing.RequestRouter;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.UriPatternType;
+import org.apache.hc.core5.net.URIAuthority;
+import org.apache.hc.core5.util.TextUtils;
+
+/**
+ * {@link HttpRequestMapper} compiled from the route entries of the {@link CustomServerBootstrap}.
+ * <ul>
+ *   <li>The host names are held in a hash table. (case-insensitive, the port is ignored)<br>
+ *   The wildcard host "*.example.com" matches the subdomains of example.com, the exact host name and the longer wildcard win.</li>
+ *   <li>The paths of each host are held in a prefix tree.<br>
+ *   The pattern "/path/*" matches the longest prefix, the pattern without "*" matches the exact path.</li>
+ * </ul>
+ * <p>The request is resolved in O(length of the host and the path) without allocation.
+ * The routes are the same as {@link RequestRouter} with {@link UriPatternType#URI_PATTERN}
+ * and {@link RequestRouter#IGNORE_PORT_AUTHORITY_RESOLVER}:
+ * The routes without the host name are the routes of the canonical host name,
+ * the request without the authority or to an unknown host is resolved by the downstream mapper. (421 Misdirected Request if no downstream)
+ * <p>The suffix patterns ("*.html") are not supported. ({@link #isSupported(List)})
+ *
+ * @param <T> request handler type.
+ */
+@Contract(threading = ThreadingBehavior.IMMUTABLE)
+public final class CompiledRequestRouter<T> implements HttpRequestMapper<T> {
+
+	static final String LOCALHOST = "localhost";
+
+	private final HostTable<PathTree<T>> hosts;
+	private final HostTable<PathTree<T>> wildcardHosts;
+	private final HttpRequestMapper<T> downstream;
+
+	CompiledRequestRouter(final HostTable<PathTree<T>> hosts, final HostTable<PathTree<T>> wildcardHosts,
+			final HttpRequestMapper<T> downstream) {
+		this.hosts = hosts;
+		this.wildcardHosts = wildcardHosts;
+		this.downstream = downstream;
+	}
+
+	/**
+	 * Compile the route entries.
+	 *
+	 * @param canonicalHostName host name of the routes without the host name. (default "localhost")
+	 * @param entries route entries. The later entry of the same host and pattern wins.
+	 * @param downstream mapper of the request to an unknown host. (nullable)
+	 * @throws IllegalArgumentException the entries contain a suffix pattern.
+	 */
+	public static <T> CompiledRequestRouter<T> create(final String canonicalHostName,
+			final List<RequestRouter.Entry<T>> entries, final HttpRequestMapper<T> downstream) {
+		final String primary = TextUtils.toLowerCase(canonicalHostName != null ? canonicalHostName : LOCALHOST);
+		final Map<String, PathTree.Builder<T>> hostRoutes = new LinkedHashMap<>();
+		final Map<String, PathTree.Builder<T>> wildcardRoutes = new LinkedHashMap<>();
+		for (final RequestRouter.Entry<T> entry : entries) {
+			final String host = entry.uriAuthority != null
+				? TextUtils.toLowerCase(entry.uriAuthority.getHostName()) : primary;
+			final PathTree.Builder<T> builder = host.startsWith("*.")
+				? wildcardRoutes.computeIfAbsent(host.substring(1), k -> new PathTree.Builder<>()) //".example.com"
+				: hostRoutes.computeIfAbsent(host, k -> new PathTree.Builder<>());
+			builder.add(entry.route.pattern, entry.route.handler);
+		}
+		return new CompiledRequestRouter<>(compile(hostRoutes), compile(wildcardRoutes), downstream);
+	}
+
+	/**
+	 * @return true if all patterns are "*", the prefix "/path/*" or the exact path.
+	 */
+	public static <T> boolean isSupported(final List<RequestRouter.Entry<T>> entries) {
+		for (final RequestRouter.Entry<T> entry : entries) {
+			final String pattern = entry.route.pattern;
+			final int i = pattern.indexOf('*');
+			if (i != -1 && i != pattern.length() - 1) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static <T> HostTable<PathTree<T>> compile(final Map<String, PathTree.Builder<T>> routes) {
+		final Map<String, PathTree<T>> compiled = new LinkedHashMap<>();
+		routes.forEach((host, builder) -> compiled.put(host, builder.build()));
+		return new HostTable<>(compiled);
+	}
+
+	@Override
+	public T resolve(final HttpRequest request, final HttpContext context) throws HttpException {
+		final URIAuthority authority = request.getAuthority();
+		final PathTree<T> paths = authority != null ? lookupHost(authority.getHostName()) : null;
+		if (paths == null) {
+			if (downstream != null) {
+				return downstream.resolve(request, context);
+			}
+			throw new MisdirectedRequestException("Not authoritative");
+		}
+		return paths.lookup(request.getPath());
+	}
+
+	PathTree<T> lookupHost(final String hostname) {
+		final int length = hostname.length();
+		final PathTree<T> paths = hosts.get(hostname, 0, length);
+		if (paths != null || wildcardHosts.isEmpty()) {
+			return paths;
+		}
+		//The first dot is the longest wildcard. (a.b.example.com -> .b.example.com -> .example.com -> .com)
+		for (int i = 0; i < length; i++) {
+			if (hostname.charAt(i) == '.') {
+				final PathTree<T> wildcard = wildcardHosts.get(hostname, i, length);
+				if (wildcard != null) {
+					return wildcard;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Open addressing hash table of the lower case host names,
+	 * looked up by a region of the requested host name ignoring case.
+	 */
+	static final class HostTable<V> {
+
+		private final String[] keys;
+		private final Object[] values;
+		private final int mask;
+		private final int size;
+
+		HostTable(final Map<String, V> map) {
+			int capacity = 2;
+			while (capacity < map.size() * 2) {
+				capacity <<= 1;
+			}
+			this.keys = new String[capacity];
+			this.values = new Object[capacity];
+			this.mask = capacity - 1;
+			this.size = map.size();
+			map.forEach((key, value) -> {
+				int i = hash(key, 0, key.length()) & mask;
+				while (keys[i] != null) {
+					i = (i + 1) & mask;
+				}
+				keys[i] = key;
+				values[i] = value;
+			});
+		}
+
+		@SuppressWarnings("unchecked")
+		V get(final String s, final int from, final int to) {
+			final int length = to - from;
+			int i = hash(s, from, to) & mask;
+			for (String key; (key = keys[i]) != null; i = (i + 1) & mask) {
+				if (key.length() == length && key.regionMatches(true, 0, s, from, length)) {
+					return (V) values[i];
+				}
+			}
+			return null;
+		}
+
+		boolean isEmpty() {
+			return size == 0;
+		}
+
+		static int hash(final String s, final int from, final int to) {
+			int h = 0;
+			for (int i = from; i < to; i++) {
+				final char c = s.charAt(i);
+				h = 31 * h + (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+			}
+			return h ^ (h >>> 16);
+		}
+	}
+
+	/**
+	 * Radix tree of the path patterns of a host.
+	 * A node holds the handler of the exact path and the handler of the prefix pattern ending at the node.
+	 */
+	static final class PathTree<T> {
+
+		private final Node<T> root;
+
+		PathTree(final Node<T> root) {
+			this.root = root;
+		}
+
+		T lookup(final String path) {
+			final int query = path.indexOf('?');
+			final int end = query != -1 ? query : path.length();
+			Node<T> node = root;
+			T prefix = root.prefix;
+			int pos = 0;
+			while (pos < end) {
+				final Node<T> child = node.child(path.charAt(pos));
+				if (child == null) {
+					return prefix;
+				}
+				final String label = child.label;
+				if (end - pos < label.length() || !path.regionMatches(pos, label, 0, label.length())) {
+					return prefix;
+				}
+				pos += label.length();
+				node = child;
+				if (node.prefix != null) {
+					prefix = node.prefix;
+				}
+			}
+			return node.exact != null ? node.exact : prefix;
+		}
+
+		static final class Node<T> {
+			final String label;
+			final char[] firsts;
+			final Node<T>[] children;
+			final T prefix;
+			final T exact;
+
+			Node(final String label, final char[] firsts, final Node<T>[] children, final T prefix, final T exact) {
+				this.label = label;
+				this.firsts = firsts;
+				this.children = children;
+				this.prefix = prefix;
+				this.exact = exact;
+			}
+
+			Node<T> child(final char c) {
+				final int i = Arrays.binarySearch(firsts, c);
+				return i >= 0 ? children[i] : null;
+			}
+		}
+
+		/**
+		 * Character tree of the patterns, compressed into the radix tree by {@link #build()}.
+		 */
+		static final class Builder<T> {
+			final TreeMap<Character, Builder<T>> children = new TreeMap<>();
+			T prefix;
+			T exact;
+
+			void add(final String pattern, final T handler) {
+				final boolean isPrefix = pattern.endsWith("*");
+				final int length = isPrefix ? pattern.length() - 1 : pattern.length();
+				if (pattern.lastIndexOf('*', length - 1) != -1) {
+					throw new IllegalArgumentException("Unsupported pattern: " + pattern);
+				}
+				Builder<T> node = this;
+				for (int i = 0; i < length; i++) {
+					node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Builder<>());
+				}
+				if (isPrefix) {
+					node.prefix = handler;
+				} else {
+					node.exact = handler;
+				}
+			}
+
+			PathTree<T> build() {
+				return new PathTree<>(compile("", this));
+			}
+
+			@SuppressWarnings("unchecked")
+			static <T> Node<T> compile(final String label, final Builder<T> builder) {
+				final char[] firsts = new char[builder.children.size()];
+				final Node<T>[] children = new Node[firsts.length];
+				int i = 0;
+				for (final Map.Entry<Character, Builder<T>> entry : builder.children.entrySet()) {
+					//merge the chain of the nodes without the handlers into one edge.
+					final StringBuilder edge = new StringBuilder().append(entry.getKey().charValue());
+					Builder<T> child = entry.getValue();
+					while (child.prefix == null && child.exact == null && child.children.size() == 1) {
+						final Map.Entry<Character, Builder<T>> next = child.children.firstEntry();
+						edge.append(next.getKey().charValue());
+						child = next.getValue();
+					}
+					firsts[i] = entry.getKey();
+					children[i] = compile(edge.toString(), child);
+					i++;
+				}
+				return new Node<>(label, firsts, children, builder.prefix, builder.exact);
+			}
+		}
+	}
+}
@@ -0,0 +1,388 @@
+/*
+ * ====================================================================
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ * ====================================================================
+ *
+ * This software consists of voluntary contributions made by many
+ * individuals on behalf of the Apache Software Foundation.  For more
+ * information on the Apache Software Foundation, please see
+ * <http://www.apache.org/>.
+ *
+ */
+package org.apache.hc.core5.http.impl.bootstrap;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+import java.util.Set;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.net.ServerSocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocket;
+
+import org.apache.hc.core5.function.Callback;
+import org.apache.hc.core5.http.ExceptionListener;
+import org.apache.hc.core5.http.impl.io.DefaultBHttpServerConnection;
+import org.apache.hc.core5.http.impl.io.HttpService;
+import org.apache.hc.core5.http.io.HttpConnectionFactory;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.Args;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import jdk.net.ExtendedSocketOptions;
+
+/**
+ * Override httpcore5-5.5-beta2 org.apache.hc.core5.http.impl.bootstrap.HttpServer.java
+ * https://github.com/apache/httpcomponents-core/blob/master/httpcore5/src/main/java/org/apache/hc/core5/http/impl/bootstrap/HttpServer.java
+ * use the ThreadFactory of the listener and the connection workers. (ex. virtual threads)
+ * 
+ * <p>The classic {@link HttpServer} serves each connection on a worker thread until the connection is closed,
+ * so the keep-alive connections and the slow clients hold a thread each.
+ * With {@link #ofVirtual(int, HttpService, InetAddress, SocketConfig, ServerSocketFactory, HttpConnectionFactory, SSLContext, Callback, ExceptionListener)}
+ * the blocking reads and writes of the connections park a virtual thread instead of an OS thread.
+ *
+ * <p>With the multiple acceptors, the listener sockets are bound to the same port with SO_REUSEPORT,
+ * and the kernel distributes the incoming connections among them. (Linux)
+ * Each listener socket has its own accept loop and worker pool, so the accept loop is not a single bottleneck
+ * on a connection storm. If SO_REUSEPORT is not supported by the platform, one listener socket is opened.
+ *
+ * @see CustomServerBootstrap#setVirtualThreads(boolean)
+ * @see CustomServerBootstrap#setAcceptors(int)
+ */
+public class CustomHttpServer extends HttpServer {
+
+    enum Status { READY, ACTIVE, STOPPING }
+
+    private final int port;
+    private final InetAddress ifAddress;
+    private final SocketConfig socketConfig;
+    private final ServerSocketFactory serverSocketFactory;
+    private final HttpService httpService;
+    private final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory;
+    private final SSLContext sslContext;
+    private final Callback<SSLParameters> sslSetupHandler;
+    private final ExceptionListener exceptionListener;
+    private final int acceptors;
+    private final ThreadPoolExecutor listenerExecutorService;
+    private final WorkerPoolExecutor[] workerExecutorServices;
+    private final AtomicReference<Status> status;
+
+    private volatile ServerSocket[] serverSockets;
+    private volatile RequestListener[] requestListeners;
+
+    /**
+     * @param listenerThreadFactory ThreadFactory of the listener accepting the connections.
+     * @param workerThreadFactory ThreadFactory of the workers serving a connection each.
+     */
+    public CustomHttpServer(
+            final int port,
+            final HttpService httpService,
+            final InetAddress ifAddress,
+            final SocketConfig socketConfig,
+            final ServerSocketFactory serverSocketFactory,
+            final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory,
+            final SSLContext sslContext,
+            final Callback<SSLParameters> sslSetupHandler,
+            final ExceptionListener exceptionListener,
+            final ThreadFactory listenerThreadFactory,
+            final ThreadFactory workerThreadFactory) {
+        this(port, httpService, ifAddress, socketConfig, serverSocketFactory, connectionFactory,
+                sslContext, sslSetupHandler, exceptionListener, listenerThreadFactory, workerThreadFactory, 1);
+    }
+
+    /**
+     * @param listenerThreadFactory ThreadFactory of the listeners accepting the connections.
+     * @param workerThreadFactory ThreadFactory of the workers serving a connection each.
+     * @param acceptors number of the listener sockets bound with SO_REUSEPORT. (1: SO_REUSEPORT is not used)
+     */
+    public CustomHttpServer(
+            final int port,
+            final HttpService httpService,
+            final InetAddress ifAddress,
+            final SocketConfig socketConfig,
+            final ServerSocketFactory serverSocketFactory,
+            final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory,
+            final SSLContext sslContext,
+            final Callback<SSLParameters> sslSetupHandler,
+            final ExceptionListener exceptionListener,
+            final ThreadFactory listenerThreadFactory,
+            final ThreadFactory workerThreadFactory,
+            final int acceptors) {
+        //the executors of the super class are not started.
+        super(port, httpService, ifAddress, socketConfig, serverSocketFactory, connectionFactory,
+                sslContext, sslSetupHandler, exceptionListener);
+        this.port = Args.notNegative(port, "Port value is negative");
+        this.httpService = Args.notNull(httpService, "HTTP service");
+        this.ifAddress = ifAddress;
+        this.socketConfig = socketConfig != null ? socketConfig : SocketConfig.DEFAULT;
+        this.serverSocketFactory = serverSocketFactory != null ? serverSocketFactory : ServerSocketFactory.getDefault();
+        this.connectionFactory = Args.notNull(connectionFactory, "Connection factory");
+        this.sslContext = sslContext;
+        this.sslSetupHandler = sslSetupHandler;
+        this.exceptionListener = exceptionListener != null ? exceptionListener : ExceptionListener.NO_OP;
+        this.acceptors = Args.positive(acceptors, "Acceptors");
+        this.listenerExecutorService = new ThreadPoolExecutor(
+                acceptors, acceptors, 0L, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(),
+                Args.notNull(listenerThreadFactory, "Listener thread factory"));
+        Args.notNull(workerThreadFactory, "Worker thread factory");
+        this.workerExecutorServices = new WorkerPoolExecutor[acceptors];
+        for (int i = 0; i < acceptors; i++) {
+            this.workerExecutorServices[i] = new WorkerPoolExecutor(
+                    0, Integer.MAX_VALUE, 1L, TimeUnit.SECONDS,
+                    new SynchronousQueue<>(),
+                    workerThreadFactory);
+        }
+        this.status = new AtomicReference<>(Status.READY);
+    }
+
+    /**
+     * Create the HttpServer running the listener and the connection workers on virtual threads.
+     */
+    public static CustomHttpServer ofVirtual(
+            final int port,
+            final HttpService httpService,
+            final InetAddress ifAddress,
+            final SocketConfig socketConfig,
+            final ServerSocketFactory serverSocketFactory,
+            final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory,
+            final SSLContext sslContext,
+            final Callback<SSLParameters> sslSetupHandler,
+            final ExceptionListener exceptionListener) {
+        return ofVirtual(port, httpService, ifAddress, socketConfig, serverSocketFactory,
+                connectionFactory, sslContext, sslSetupHandler, exceptionListener, 1);
+    }
+
+    /**
+     * Create the HttpServer running the listeners and the connection workers on virtual threads.
+     * @param acceptors number of the listener sockets bound with SO_REUSEPORT.
+     */
+    public static CustomHttpServer ofVirtual(
+            final int port,
+            final HttpService httpService,
+            final InetAddress ifAddress,
+            final SocketConfig socketConfig,
+            final ServerSocketFactory serverSocketFactory,
+            final HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory,
+            final SSLContext sslContext,
+            final Callback<SSLParameters> sslSetupHandler,
+            final ExceptionListener exceptionListener,
+            final int acceptors) {
+        return new CustomHttpServer(port, httpService, ifAddress, socketConfig, serverSocketFactory,
+                connectionFactory, sslContext, sslSetupHandler, exceptionListener,
+                Thread.ofVirtual().name("HTTP-listener-" + port).factory(),
+                Thread.ofVirtual().name("HTTP-worker-", 1).factory(),
+                acceptors);
+    }
+
+    @Override
+    public InetAddress getInetAddress() {
+        final ServerSocket[] localSockets = this.serverSockets;
+        return localSockets != null ? localSockets[0].getInetAddress() : null;
+    }
+
+    @Override
+    public int getLocalPort() {
+        final ServerSocket[] localSockets = this.serverSockets;
+        return localSockets != null ? localSockets[0].getLocalPort() : -1;
+    }
+
+    /**
+     * Number of the listener sockets. (1 before start, or if SO_REUSEPORT is not supported)
+     */
+    public int getAcceptors() {
+        final ServerSocket[] localSockets = this.serverSockets;
+        return localSockets != null ? localSockets.length : 1;
+    }
+
+    /**
+     * Number of the connections being served by the workers. (approximate)
+     */
+    public int getActiveConnections() {
+        int active = 0;
+        for (final WorkerPoolExecutor workerExecutorService : this.workerExecutorServices) {
+            active += workerExecutorService.getActiveCount();
+        }
+        return active;
+    }
+
+    /**
+     * Number of the connections accepted since the start. (approximate)
+     */
+    public long getConnections() {
+        long connections = 0;
+        for (final WorkerPoolExecutor workerExecutorService : this.workerExecutorServices) {
+            connections += workerExecutorService.getTaskCount();
+        }
+        return connections;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (this.status.compareAndSet(Status.READY, Status.ACTIVE)) {
+            final ServerSocket first = createServerSocket(this.port, this.acceptors > 1);
+            final boolean reusePort = this.acceptors > 1
+                    && first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT);
+            final ServerSocket[] sockets = new ServerSocket[reusePort ? this.acceptors : 1];
+            final RequestListener[] listeners = new RequestListener[sockets.length];
+            sockets[0] = first;
+            try {
+                //the other sockets are bound to the same port. (ex. the ephemeral port)
+                for (int i = 1; i < sockets.length; i++) {
+                    sockets[i] = createServerSocket(first.getLocalPort(), true);
+                }
+            } catch (final IOException ex) {
+                for (final ServerSocket socket : sockets) {
+                    if (socket != null) {
+                        socket.close();
+                    }
+                }
+                throw ex;
+            }
+            for (int i = 0; i < sockets.length; i++) {
+                listeners[i] = new RequestListener(
+                        this.socketConfig,
+                        sockets[i],
+                        this.httpService,
+                        this.connectionFactory,
+                        this.sslContext != null ? this.sslContext.getSocketFactory() : null,
+                        this.sslSetupHandler,
+                        this.exceptionListener,
+                        this.workerExecutorServices[i]);
+            }
+            this.serverSockets = sockets;
+            this.requestListeners = listeners;
+            for (final RequestListener listener : listeners) {
+                this.listenerExecutorService.execute(listener);
+            }
+        }
+    }
+
+    /**
+     * Create the listener socket, and bind it to the port.
+     * (SO_REUSEPORT and the receive buffer size are set before bind)
+     */
+    private ServerSocket createServerSocket(final int localPort, final boolean reusePort) throws IOException {
+        final ServerSocket serverSocket = this.serverSocketFactory.createServerSocket();
+        try {
+            serverSocket.setReuseAddress(this.socketConfig.isSoReuseAddress());
+            final Set<SocketOption<?>> options = serverSocket.supportedOptions();
+            if (reusePort && options.contains(StandardSocketOptions.SO_REUSEPORT)) {
+                serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+            }
+            if (this.socketConfig.getRcvBufSize() > 0) {
+                serverSocket.setReceiveBufferSize(this.socketConfig.getRcvBufSize());
+            }
+            if (this.socketConfig.getTcpKeepIdle() > 0 && options.contains(ExtendedSocketOptions.TCP_KEEPIDLE)) {
+                serverSocket.setOption(ExtendedSocketOptions.TCP_KEEPIDLE, this.socketConfig.getTcpKeepIdle());
+            }
+            if (this.socketConfig.getTcpKeepInterval() > 0 && options.contains(ExtendedSocketOptions.TCP_KEEPINTERVAL)) {
+                serverSocket.setOption(ExtendedSocketOptions.TCP_KEEPINTERVAL, this.socketConfig.getTcpKeepInterval());
+            }
+            if (this.socketConfig.getTcpKeepCount() > 0 && options.contains(ExtendedSocketOptions.TCP_KEEPCOUNT)) {
+                serverSocket.setOption(ExtendedSocketOptions.TCP_KEEPCOUNT, this.socketConfig.getTcpKeepCount());
+            }
+            serverSocket.bind(new InetSocketAddress(this.ifAddress, localPort), this.socketConfig.getBacklogSize());
+            if (this.sslSetupHandler != null && serverSocket instanceof SSLServerSocket) {
+                final SSLServerSocket sslServerSocket = (SSLServerSocket) serverSocket;
+                final SSLParameters sslParameters = sslServerSocket.getSSLParameters();
+                this.sslSetupHandler.execute(sslParameters);
+                sslServerSocket.setSSLParameters(sslParameters);
+            }
+            return serverSocket;
+        } catch (final IOException ex) {
+            serverSocket.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Stop accepting the connections, and interrupt the workers.
+     * (The virtual threads do not belong to a ThreadGroup of this server, so the workers are interrupted by the executor.)
+     */
+    @Override
+    public void stop() {
+        if (this.status.compareAndSet(Status.ACTIVE, Status.STOPPING)) {
+            this.listenerExecutorService.shutdownNow();
+            final RequestListener[] local = this.requestListeners;
+            if (local != null) {
+                for (final RequestListener listener : local) {
+                    try {
+                        listener.terminate();
+                    } catch (final IOException ex) {
+                        this.exceptionListener.onError(ex);
+                    }
+                }
+            }
+            for (final WorkerPoolExecutor workerExecutorService : this.workerExecutorServices) {
+                workerExecutorService.shutdownNow();
+            }
+        }
+    }
+
+    @Override
+    public void initiateShutdown() {
+        stop();
+    }
+
+    @Override
+    public void awaitTermination(final TimeValue waitTime) throws InterruptedException {
+        Args.notNull(waitTime, "Wait time");
+        for (final WorkerPoolExecutor workerExecutorService : this.workerExecutorServices) {
+            workerExecutorService.awaitTermination(waitTime.getDuration(), waitTime.getTimeUnit());
+        }
+    }
+
+    @Override
+    public void close(final CloseMode closeMode) {
+        close(closeMode, Timeout.ofSeconds(5));
+    }
+
+    @Override
+    public void close(final CloseMode closeMode, final Timeout timeout) {
+        initiateShutdown();
+        if (closeMode == CloseMode.GRACEFUL) {
+            try {
+                awaitTermination(timeout);
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (final WorkerPoolExecutor workerExecutorService : this.workerExecutorServices) {
+            for (final Worker worker : workerExecutorService.getWorkers()) {
+                worker.getConnection().close(CloseMode.IMMEDIATE);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        close(CloseMode.GRACEFUL);
+    }
+}
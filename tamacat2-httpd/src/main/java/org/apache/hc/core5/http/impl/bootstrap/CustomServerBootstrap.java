@@ -35,6 +35,7 @@ import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocketFactory;
 
+import org.apache.hc.core5.concurrent.DefaultThreadFactory;
 import org.apache.hc.core5.function.Callback;
 import org.apache.hc.core5.http.ClassicHttpResponse;
 import org.apache.hc.core5.http.ConnectionReuseStrategy;
@@ -75,6 +76,7 @@ import org.apache.hc.core5.util.Args;
  * Override httpcore5-5.3-beta1 org.apache.hc.core5.http.impl.bootstrap.ServerBootstrap.java
  * https://github.com/apache/httpcomponents-core/blob/master/httpcore5/src/main/java/org/apache/hc/core5/http/impl/bootstrap/ServerBootstrap.java
  * use CustomRequestHandlerRegistry
+ * use CompiledRequestRouter (the suffix patterns are routed by RequestRouter)
  * 
  * {@link HttpServer} bootstrap.
  *
@@ -102,6 +104,9 @@ public class CustomServerBootstrap {
     private HttpConnectionFactory<? extends DefaultBHttpServerConnection> connectionFactory;
     private ExceptionListener exceptionListener;
     private Http1StreamListener streamListener;
+    private boolean virtualThreads;
+    private int acceptors = 1;
+    private boolean connectionStats;
 
     private CustomServerBootstrap() {
         this.routeEntries = new ArrayList<>();
@@ -298,6 +303,38 @@ public class CustomServerBootstrap {
         return this;
     }
 
+    /**
+     * Run the listener and the connection workers on virtual threads.
+     *
+     * @see CustomHttpServer
+     */
+    public final CustomServerBootstrap setVirtualThreads(final boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+        return this;
+    }
+
+    /**
+     * Open the listener sockets on the same port with SO_REUSEPORT,
+     * each with its own accept loop and worker pool.
+     *
+     * @param acceptors number of the listener sockets. (default 1: SO_REUSEPORT is not used)
+     * @see CustomHttpServer
+     */
+    public final CustomServerBootstrap setAcceptors(final int acceptors) {
+        this.acceptors = Args.positive(acceptors, "Acceptors");
+        return this;
+    }
+
+    /**
+     * Create the {@link CustomHttpServer} also with one acceptor, for the connection counts of the worker pools.
+     *
+     * @see CustomHttpServer#getActiveConnections()
+     */
+    public final CustomServerBootstrap setConnectionStats(final boolean connectionStats) {
+        this.connectionStats = connectionStats;
+        return this;
+    }
+
     /**
      * Adds the filter before the filter with the given name.
      */
@@ -350,7 +387,13 @@ public class CustomServerBootstrap {
         return this;
     }
 
-	public HttpServer create() {
+    /**
+     * Create the request handler of the registered routes and filters.
+     * (shared by the classic HttpServer and the HTTP/2 server)
+     * <p>The routes are compiled into the {@link CompiledRequestRouter},
+     * or {@link RequestRouter} if a suffix pattern ("*.html") is registered.
+     */
+    public HttpServerRequestHandler createRequestHandler() {
         //final String actualCanonicalHostName = canonicalHostName != null ? canonicalHostName : InetAddressUtils.getCanonicalLocalHostName();
         final HttpRequestMapper<HttpRequestHandler> requestRouterCopy;
 //        if (lookupRegistry != null && requestRouter == null) {
@@ -364,6 +407,8 @@ public class CustomServerBootstrap {
 //        } else {
             if (routeEntries.isEmpty()) {
                 requestRouterCopy = requestRouter;
+            } else if (CompiledRequestRouter.isSupported(routeEntries)) {
+                requestRouterCopy = CompiledRequestRouter.create(canonicalHostName, routeEntries, requestRouter);
             } else {
                 requestRouterCopy = RequestRouter.create(
                 		canonicalHostName != null ? new URIAuthority(canonicalHostName): null,
@@ -420,6 +465,11 @@ public class CustomServerBootstrap {
                     requestRouterCopy,
                     this.responseFactory != null ? this.responseFactory : DefaultClassicHttpResponseFactory.INSTANCE));
         }
+        return requestHandler;
+    }
+
+	public HttpServer create() {
+        final HttpServerRequestHandler requestHandler = createRequestHandler();
 
         final HttpService httpService = new HttpService(
                 this.httpProcessor != null ? this.httpProcessor : HttpProcessors.server(),
@@ -435,6 +485,34 @@ public class CustomServerBootstrap {
             connectionFactoryCopy = new DefaultBHttpServerConnectionFactory(scheme, this.http1Config, this.charCodingConfig);
         }
 
+        if (virtualThreads) {
+            return CustomHttpServer.ofVirtual(
+                    Math.max(this.listenerPort, 0),
+                    httpService,
+                    this.localAddress,
+                    this.socketConfig != null ? this.socketConfig : SocketConfig.DEFAULT,
+                    serverSocketFactory,
+                    connectionFactoryCopy,
+                    sslContext,
+                    sslSetupHandler != null ? sslSetupHandler : DefaultTlsSetupHandler.SERVER,
+                    this.exceptionListener != null ? this.exceptionListener : ExceptionListener.NO_OP,
+                    acceptors);
+        }
+        if (acceptors > 1 || connectionStats) {
+            return new CustomHttpServer(
+                    Math.max(this.listenerPort, 0),
+                    httpService,
+                    this.localAddress,
+                    this.socketConfig != null ? this.socketConfig : SocketConfig.DEFAULT,
+                    serverSocketFactory,
+                    connectionFactoryCopy,
+                    sslContext,
+                    sslSetupHandler != null ? sslSetupHandler : DefaultTlsSetupHandler.SERVER,
+                    this.exceptionListener != null ? this.exceptionListener : ExceptionListener.NO_OP,
+                    new DefaultThreadFactory("HTTP-listener-" + this.listenerPort),
+                    new DefaultThreadFactory("HTTP-worker", true),
+                    acceptors);
+        }
         return new HttpServer(
                 Math.max(this.listenerPort, 0),
                 httpService,
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.junit.jupiter.api.Test;
+
+public class ClockCacheTest {
+
+	@Test
+	public void testSecondChance() {
+		final ClockCache<String, String> cache = new ClockCache<>(2);
+		cache.put("0", "a");
+		cache.put("1", "b");
+		assertEquals("a", cache.get("0"));
+		cache.put("2", "c"); //evict 1
+		assertEquals(2, cache.size());
+		assertNull(cache.get("1"));
+		assertEquals("a", cache.get("0"));
+		assertEquals("c", cache.get("2"));
+		assertEquals(1, cache.getEvictions());
+
+		//all referenced: the oldest is evicted after the second chance, not the new entry.
+		cache.put("3", "d");
+		assertEquals(2, cache.size());
+		assertNull(cache.get("0"));
+		assertEquals("d", cache.get("3"));
+	}
+
+	@Test
+	public void testWeight() {
+		final List<String> removed = new ArrayList<>();
+		final ClockCache<String, String> cache = new ClockCache<>(10, String::length, removed::add);
+		cache.put("a", "12345");
+		cache.put("b", "1234");
+		assertEquals(9, cache.getWeight());
+		cache.put("b", "123");
+		assertEquals(8, cache.getWeight());
+		assertEquals(List.of("1234"), removed);
+
+		cache.put("c", "123456"); //evict a
+		assertEquals(9, cache.getWeight());
+		assertNull(cache.get("a"));
+		assertEquals(List.of("1234", "12345"), removed);
+
+		assertFalse(cache.remove("b", "other"));
+		assertTrue(cache.remove("b", "123"));
+		cache.removeIf(key -> key.startsWith("c"));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.getWeight());
+		assertEquals(List.of("1234", "12345", "123", "123456"), removed);
+	}
+
+	@Test
+	public void testConcurrent() throws Exception {
+		final LongAdder removed = new LongAdder();
+		final ClockCache<Integer, Integer> cache = new ClockCache<>(100, v -> 1L, v -> removed.increment());
+		final LongAdder puts = new LongAdder();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<?>> futures = new ArrayList<>();
+			for (int t = 0; t < 4; t++) {
+				futures.add(executor.submit(() -> {
+					for (int i = 0; i < 20000; i++) {
+						final int key = ThreadLocalRandom.current().nextInt(300);
+						if (cache.get(key) == null) {
+							cache.put(key, key);
+							puts.increment();
+						} else if (i % 50 == 0) {
+							cache.remove(key);
+						}
+					}
+				}));
+			}
+			for (final Future<?> future : futures) {
+				future.get();
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertTrue(cache.size() <= 100);
+		assertEquals(cache.size(), cache.getWeight());
+		assertEquals(puts.sum(), removed.sum() + cache.size());
+		//the removed entries do not pile up in the clock queue.
+		assertTrue(cache.clock.size() <= cache.size() * 2 + 64);
+	}
+}
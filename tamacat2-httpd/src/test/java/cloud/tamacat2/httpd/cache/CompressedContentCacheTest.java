@@ -0,0 +1,158 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
+
+public class CompressedContentCacheTest {
+
+	@Test
+	public void testGet() {
+		final CompressedContentCache cache = new CompressedContentCache(1024, 100);
+		assertNull(cache.get("/a.css\"6-1\";gzip;6"));
+		final OffHeapBuffer put = cache.put("/a.css\"6-1\";gzip;6", bytes("12345xxx"), 5);
+		assertTrue(put.buffer().isDirect());
+		assertTrue(put.buffer().isReadOnly());
+		assertEquals("12345", toString(put));
+		put.release();
+		final OffHeapBuffer content = cache.get("/a.css\"6-1\";gzip;6");
+		assertEquals("12345", toString(content));
+		//the buffer is not consumed by the reader.
+		assertEquals("12345", toString(content));
+		content.release();
+		assertEquals(1, cache.getHits());
+		assertEquals(5, cache.getTotalBytes());
+
+		cache.put("/a.css\"6-1\";gzip;6", bytes("123"), 3).release();
+		assertEquals(1, cache.size());
+		assertEquals(3, cache.getTotalBytes());
+		//the replaced content is freed.
+		assertTrue(content.isReleased());
+	}
+
+	@Test
+	public void testMaxBytes() {
+		final CompressedContentCache cache = new CompressedContentCache(10, 100);
+		final OffHeapBuffer first = cache.put("0", bytes("12345"), 5);
+		cache.put("1", bytes("12345"), 5).release();
+		cache.get("0").release();
+		cache.put("2", bytes("12345"), 5).release(); //evict 1
+		assertEquals(2, cache.size());
+		assertEquals(10, cache.getTotalBytes());
+		assertEquals(1, cache.getEvictions());
+		assertNull(cache.get("1"));
+
+		//larger than the budget, not cached.
+		final OffHeapBuffer large = cache.put("large", bytes("12345678901"), 11);
+		assertEquals("12345678901", toString(large));
+		assertNull(cache.get("large"));
+		assertEquals(2, cache.size());
+		large.release();
+		assertTrue(large.isReleased());
+
+		//the evicted content is freed by the last reader.
+		cache.clear();
+		assertFalse(first.isReleased());
+		first.release();
+		assertTrue(first.isReleased());
+	}
+
+	@Test
+	public void testCompress() throws Exception {
+		final CompressedContentCache cache = new CompressedContentCache(1024, 100);
+		final OffHeapBuffer content = cache.compress("key", 4, out -> out.write(bytes("12345")));
+		assertEquals("12345", toString(content));
+		content.release();
+		assertEquals(1, cache.getMisses());
+		final OffHeapBuffer cached = cache.get("key");
+		assertSame(content, cached);
+		cached.release();
+
+		//the failure is not cached.
+		assertThrows(IOException.class, () -> cache.compress("error", 4, out -> {
+			throw new IOException("error");
+		}));
+		assertNull(cache.get("error"));
+		assertTrue(cache.flights.isEmpty());
+	}
+
+	@Test
+	public void testSingleFlight() throws Exception {
+		final CompressedContentCache cache = new CompressedContentCache(1024, 100);
+		final AtomicInteger compressions = new AtomicInteger();
+		final ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			final List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < 4; i++) {
+				futures.add(executor.submit(() -> {
+					final OffHeapBuffer content = cache.compress("key", 4, out -> {
+						compressions.incrementAndGet();
+						//the followers wait for the leader.
+						final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+						while (cache.flights.get("key").getNumberOfDependents() < 3 && System.nanoTime() < deadline) {
+							LockSupport.parkNanos(1_000_000L);
+						}
+						out.write(bytes("12345"));
+					});
+					try {
+						return toString(content);
+					} finally {
+						content.release();
+					}
+				}));
+			}
+			for (final Future<String> future : futures) {
+				assertEquals("12345", future.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, compressions.get());
+		assertEquals(1, cache.getMisses());
+		assertEquals(3, cache.getCoalesced());
+		assertEquals(1, cache.size());
+	}
+
+	static byte[] bytes(final String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	static String toString(final OffHeapBuffer content) {
+		final ByteBuffer buffer = content.buffer();
+		return StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cloud.tamacat2.httpd.io.DirectBufferEntity;
+import cloud.tamacat2.httpd.io.OffHeapBuffer;
+
+public class FileContentCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testGet() throws Exception {
+		Files.writeString(tempDir.resolve("style.css"), "body{}");
+		final FileContentCache cache = new FileContentCache(1024, 100);
+		final OffHeapBuffer content = cache.get(load("/style.css"));
+		assertTrue(content.buffer().isDirect());
+		assertTrue(content.buffer().isReadOnly());
+		assertEquals("body{}", toString(content.buffer()));
+		content.release();
+		assertEquals("body{}", read(cache, load("/style.css")));
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+		assertEquals(6, cache.getTotalBytes());
+	}
+
+	@Test
+	public void testModified() throws Exception {
+		final Path file = Files.writeString(tempDir.resolve("app.js"), "var a;");
+		final FileContentCache cache = new FileContentCache(1024, 100);
+		final FileMetadata metadata = load("/app.js");
+		assertEquals("var a;", read(cache, metadata));
+
+		Files.writeString(file, "var abc;");
+		final FileMetadata modified = load("/app.js");
+		assertNotEquals(metadata.getETag(), modified.getETag());
+		assertEquals("var abc;", read(cache, modified));
+		assertEquals(2, cache.getMisses());
+		assertEquals(1, cache.size());
+		assertEquals(8, cache.getTotalBytes());
+
+		//the stale metadata (modified while reading) is not cached.
+		assertNull(cache.get(metadata));
+	}
+
+	@Test
+	public void testMaxBytes() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Files.writeString(tempDir.resolve(i + ".txt"), "12345");
+		}
+		Files.writeString(tempDir.resolve("large.txt"), "12345678901");
+		final FileContentCache cache = new FileContentCache(10, 10);
+		read(cache, load("/0.txt"));
+		read(cache, load("/1.txt"));
+		read(cache, load("/0.txt"));
+		read(cache, load("/2.txt")); //evict 1.txt
+		assertEquals(2, cache.size());
+		assertEquals(10, cache.getTotalBytes());
+		assertEquals(1, cache.getEvictions());
+		assertEquals("12345", read(cache, load("/0.txt")));
+		assertEquals(2, cache.getHits());
+
+		assertNull(cache.get(load("/large.txt")));
+		assertNull(cache.get(load("/not-found.txt")));
+		assertNull(cache.get(load("/")));
+	}
+
+	@Test
+	public void testRelease() throws Exception {
+		Files.writeString(tempDir.resolve("0.txt"), "12345");
+		Files.writeString(tempDir.resolve("1.txt"), "67890");
+		final FileContentCache cache = new FileContentCache(5, 10);
+		final OffHeapBuffer content = cache.get(load("/0.txt"));
+		final OffHeapBuffer other = cache.get(load("/1.txt")); //evict 0.txt
+		assertEquals(1, cache.getEvictions());
+
+		//the evicted content is freed by the last reader.
+		assertFalse(content.isReleased());
+		assertEquals("12345", toString(content.buffer()));
+		content.release();
+		assertTrue(content.isReleased());
+		assertFalse(content.retain());
+		assertThrows(IllegalStateException.class, () -> content.buffer().get());
+
+		other.release();
+		assertFalse(other.isReleased());
+		cache.clear();
+		assertTrue(other.isReleased());
+	}
+
+	@Test
+	public void testDirectBufferEntity() throws Exception {
+		Files.writeString(tempDir.resolve("index.html"), "<html></html>");
+		final FileContentCache cache = new FileContentCache(1024, 100);
+		final OffHeapBuffer content = cache.get(load("/index.html"));
+		final DirectBufferEntity entity = new DirectBufferEntity(content, ContentType.TEXT_HTML);
+		assertEquals(13, entity.getContentLength());
+		assertTrue(entity.isRepeatable());
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			assertEquals("<html></html>", out.toString(StandardCharsets.UTF_8));
+		}
+		assertEquals("<html></html>", new String(entity.getContent().readAllBytes(), StandardCharsets.UTF_8));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(13, entity.transferTo(Channels.newChannel(out)));
+		assertEquals("<html></html>", out.toString(StandardCharsets.UTF_8));
+
+		//the reference of the entity is released once.
+		entity.close();
+		entity.close();
+		assertFalse(content.isReleased());
+		cache.clear();
+		assertTrue(content.isReleased());
+	}
+
+	FileMetadata load(final String key) {
+		return FileMetadata.load(tempDir, key, 0);
+	}
+
+	/**
+	 * @return content of the file, null if not cacheable.
+	 */
+	static String read(final FileContentCache cache, final FileMetadata metadata) {
+		final OffHeapBuffer content = cache.get(metadata);
+		if (content == null) {
+			return null;
+		}
+		try {
+			return toString(content.buffer());
+		} finally {
+			content.release();
+		}
+	}
+
+	static String toString(final ByteBuffer buffer) {
+		return StandardCharsets.UTF_8.decode(buffer).toString();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.cache;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cloud.tamacat2.httpd.config.FileCacheConfig;
+
+public class FileMetadataCacheTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testGet() throws Exception {
+		Files.writeString(tempDir.resolve("index.html"), "<html></html>");
+		try (FileMetadataCache cache = new FileMetadataCache(tempDir, FileCacheConfig.create())) {
+			final FileMetadata metadata = cache.get("/index.html");
+			assertTrue(metadata.exists());
+			assertTrue(metadata.canRead());
+			assertFalse(metadata.isDirectory());
+			assertEquals(13, metadata.getLength());
+			assertEquals(ContentType.TEXT_HTML.getMimeType(), metadata.getContentType().getMimeType());
+			assertEquals(tempDir.resolve("index.html").toFile(), metadata.getFile());
+
+			assertSame(metadata, cache.get("/index.html"));
+			assertEquals(1, cache.getHits());
+			assertEquals(1, cache.getMisses());
+		}
+	}
+
+	@Test
+	public void testNotFound() throws Exception {
+		try (FileMetadataCache cache = new FileMetadataCache(tempDir, FileCacheConfig.create())) {
+			final FileMetadata metadata = cache.get("/wp-admin/index.php");
+			assertFalse(metadata.exists());
+			assertSame(metadata, cache.get("/wp-admin/index.php"));
+
+			//the parent directory is created after the negative lookup.
+			Files.createDirectories(tempDir.resolve("wp-admin"));
+			Files.writeString(tempDir.resolve("wp-admin/index.php"), "test");
+			await(() -> cache.get("/wp-admin/index.php").exists());
+			assertEquals(4, cache.get("/wp-admin/index.php").getLength());
+		}
+	}
+
+	@Test
+	public void testModify() throws Exception {
+		final Path file = Files.writeString(tempDir.resolve("test.css"), "a");
+		try (FileMetadataCache cache = new FileMetadataCache(tempDir, FileCacheConfig.create())) {
+			assertEquals(1, cache.get("/test.css").getLength());
+			Files.writeString(file, "abc");
+			await(() -> cache.get("/test.css").getLength() == 3);
+
+			Files.delete(file);
+			await(() -> !cache.get("/test.css").exists());
+		}
+	}
+
+	@Test
+	public void testTtl() throws Exception {
+		final Path file = Files.writeString(tempDir.resolve("test.js"), "a");
+		final FileCacheConfig config = FileCacheConfig.create().watchService(false).ttl(TimeValue.ofMilliseconds(200));
+		try (FileMetadataCache cache = new FileMetadataCache(tempDir, config)) {
+			assertEquals(1, cache.get("/test.js").getLength());
+			Files.writeString(file, "abc");
+			assertEquals(1, cache.get("/test.js").getLength());
+			Thread.sleep(300);
+			assertEquals(3, cache.get("/test.js").getLength());
+		}
+	}
+
+	@Test
+	public void testMaxEntries() throws Exception {
+		for (int i = 0; i < 3; i++) {
+			Files.writeString(tempDir.resolve(i + ".txt"), "test");
+		}
+		final FileCacheConfig config = FileCacheConfig.create().maxEntries(2).maxNotFoundEntries(1);
+		try (FileMetadataCache cache = new FileMetadataCache(tempDir, config)) {
+			final FileMetadata metadata = cache.get("/0.txt");
+			cache.get("/1.txt");
+			cache.get("/0.txt");
+			cache.get("/2.txt"); //evict 1.txt
+			cache.get("/a.txt");
+			cache.get("/b.txt"); //evict a.txt (not found)
+			assertEquals(3, cache.size());
+			assertSame(metadata, cache.get("/0.txt"));
+		}
+	}
+
+	@Test
+	public void testNotCached() throws Exception {
+		final Path docsRoot = Files.createDirectories(tempDir.resolve("htdocs"));
+		Files.writeString(docsRoot.resolve("index.html"), "test");
+		Files.writeString(tempDir.resolve("secret.txt"), "test");
+		try (FileMetadataCache cache = new FileMetadataCache(docsRoot, FileCacheConfig.create())) {
+			assertTrue(cache.get("//index.html").exists());
+			//outside of the docsRoot.
+			assertFalse(cache.get("/../secret.txt").exists());
+			assertEquals(0, cache.size());
+		}
+	}
+
+	static void await(final BooleanSupplier condition) throws InterruptedException {
+		//the polling WatchService (macOS) notifies after a few seconds.
+		for (int i = 0; i < 300 && !condition.getAsBoolean(); i++) {
+			Thread.sleep(50);
+		}
+		assertTrue(condition.getAsBoolean());
+	}
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.http2;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequestInterceptor;
+import org.apache.hc.core5.http.HttpResponseInterceptor;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.io.HttpServerRequestHandler.ResponseTrigger;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.apache.hc.core5.http.protocol.HttpProcessorBuilder;
+import org.junit.jupiter.api.Test;
+
+public class Http2ServerRequestHandlerTest {
+
+	@Test
+	public void testHandle() throws Exception {
+		final AtomicBoolean requestIntercepted = new AtomicBoolean();
+		final Http2ServerRequestHandler handler = new Http2ServerRequestHandler((request, trigger, context) -> {
+			assertTrue(requestIntercepted.get());
+			final ClassicHttpResponse response = new BasicClassicHttpResponse(200);
+			response.setHeader(HttpHeaders.CONNECTION, "keep-alive");
+			response.setHeader(HttpHeaders.CONTENT_LENGTH, "2");
+			response.setEntity(new StringEntity("OK", ContentType.TEXT_PLAIN));
+			trigger.submitResponse(response);
+		}, HttpProcessorBuilder.create()
+			.add((HttpRequestInterceptor)(request, entity, context) -> requestIntercepted.set(true))
+			.add((HttpResponseInterceptor)(response, entity, context) -> response.setHeader("X-Content-Type", response.getFirstHeader(HttpHeaders.CONTENT_TYPE).getValue()))
+			.build());
+
+		final HttpCoreContext context = HttpCoreContext.create();
+		context.setProtocolVersion(HttpVersion.HTTP_2);
+		final ClassicHttpResponse response = handle(handler, context);
+		assertEquals(200, response.getCode());
+		assertEquals("text/plain; charset=UTF-8", response.getFirstHeader("X-Content-Type").getValue());
+		assertFalse(response.containsHeader(HttpHeaders.CONNECTION));
+		assertFalse(response.containsHeader(HttpHeaders.CONTENT_LENGTH));
+		assertNotNull(response.getEntity());
+		assertEquals(2, response.getEntity().getContentLength());
+	}
+
+	@Test
+	public void testHandleHttp11() throws Exception {
+		final Http2ServerRequestHandler handler = new Http2ServerRequestHandler((request, trigger, context) -> {
+			final ClassicHttpResponse response = new BasicClassicHttpResponse(200);
+			response.setHeader(HttpHeaders.CONNECTION, "keep-alive");
+			trigger.submitResponse(response);
+		}, HttpProcessorBuilder.create().build());
+
+		final HttpCoreContext context = HttpCoreContext.create();
+		context.setProtocolVersion(HttpVersion.HTTP_1_1);
+		final ClassicHttpResponse response = handle(handler, context);
+		assertTrue(response.containsHeader(HttpHeaders.CONNECTION));
+	}
+
+	@Test
+	public void testEndOfStreamEntity() throws Exception {
+		final AtomicBoolean closed = new AtomicBoolean();
+		final ByteArrayOutputStream out = new ByteArrayOutputStream() {
+			@Override
+			public void close() throws IOException {
+				closed.set(true);
+			}
+		};
+		new Http2ServerRequestHandler.EndOfStreamEntity(new StringEntity("OK")).writeTo(out);
+		assertEquals("OK", out.toString());
+		assertTrue(closed.get());
+	}
+
+	static ClassicHttpResponse handle(final Http2ServerRequestHandler handler, final HttpCoreContext context)
+			throws HttpException, IOException {
+		final AtomicReference<ClassicHttpResponse> result = new AtomicReference<>();
+		handler.handle(new BasicClassicHttpRequest("GET", "/"), new ResponseTrigger() {
+
+			@Override
+			public void sendInformation(final ClassicHttpResponse response) {
+			}
+
+			@Override
+			public void submitResponse(final ClassicHttpResponse response) {
+				result.set(response);
+			}
+		}, context);
+		return result.get();
+	}
+}
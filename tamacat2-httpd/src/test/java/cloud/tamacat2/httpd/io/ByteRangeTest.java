@@ -0,0 +1,125 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.hc.core5.http.ContentType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ByteRangeTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testParse() {
+		assertEquals("[0-499]", ByteRange.parse("bytes=0-499", 10000, 32).toString());
+		assertEquals("[9500-9999]", ByteRange.parse("bytes=9500-", 10000, 32).toString());
+		assertEquals("[9500-9999]", ByteRange.parse("bytes=-500", 10000, 32).toString());
+		assertEquals("[0-99]", ByteRange.parse("bytes=-500", 100, 32).toString());
+		assertEquals("[9500-9999]", ByteRange.parse("bytes=9500-99999999999999999999", 10000, 32).toString());
+		assertEquals("[0-0, 9999-9999]", ByteRange.parse("Bytes= 0-0 , -1", 10000, 32).toString());
+		assertEquals("[0-1]", ByteRange.parse("bytes=0-1,20000-", 10000, 32).toString());
+		assertEquals("bytes 0-499/10000", ByteRange.parse("bytes=0-499", 10000, 32).get(0).getContentRange(10000));
+		assertEquals(500, ByteRange.parse("bytes=0-499", 10000, 32).get(0).getLength());
+
+		//not satisfiable
+		assertTrue(ByteRange.parse("bytes=10000-", 10000, 32).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-0", 10000, 32).isEmpty());
+		assertTrue(ByteRange.parse("bytes=-1", 0, 32).isEmpty());
+
+		//ignored
+		assertNull(ByteRange.parse(null, 10000, 32));
+		assertNull(ByteRange.parse("items=0-1", 10000, 32));
+		assertNull(ByteRange.parse("bytes=", 10000, 32));
+		assertNull(ByteRange.parse("bytes=1", 10000, 32));
+		assertNull(ByteRange.parse("bytes=5-1", 10000, 32));
+		assertNull(ByteRange.parse("bytes=a-1", 10000, 32));
+		assertNull(ByteRange.parse("bytes=0-1,2-3,4-5", 10000, 2));
+	}
+
+	@Test
+	public void testCoalesce() {
+		//overlapping or adjacent
+		assertEquals("[0-149]", ByteRange.parse("bytes=0-99,50-149", 10000, 32).toString());
+		assertEquals("[0-199]", ByteRange.parse("bytes=100-199,0-99", 10000, 32).toString());
+		assertEquals("[0-299, 500-599]", ByteRange.parse("bytes=500-599,200-299,0-99,50-249", 10000, 32).toString());
+		assertEquals("[0-99, 9900-9999]", ByteRange.parse("bytes=0-49,-100,40-99", 10000, 32).toString());
+		//not coalesced: the requested order
+		assertEquals("[500-599, 0-99]", ByteRange.parse("bytes=500-599,0-99", 10000, 32).toString());
+
+		//repeated whole representation
+		assertNull(ByteRange.parse("bytes=0-,0-", 10000, 32));
+		assertNull(ByteRange.parse("bytes=" + String.join(",", Collections.nCopies(32, "0-")), 10000, 32));
+		assertNull(ByteRange.parse("bytes=0-,-1", 10000, 32));
+		//total length exceeds the representation
+		assertNull(ByteRange.parse("bytes=0-5999,4000-", 10000, 32));
+		//overlapping more than twice
+		assertEquals("[0-9]", ByteRange.parse("bytes=0-9,0-9,0-9", 10000, 32).toString());
+		assertNull(ByteRange.parse("bytes=0-9,0-9,0-9,0-9", 10000, 32));
+	}
+
+	@Test
+	public void testFileChannelEntity() throws Exception {
+		final File file = Files.writeString(tempDir.resolve("test.txt"), "0123456789").toFile();
+		final FileChannelEntity entity = new FileChannelEntity(file, 2, 5, ContentType.TEXT_PLAIN);
+		assertEquals(5, entity.getContentLength());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertEquals("23456", out.toString(StandardCharsets.ISO_8859_1));
+		assertEquals("23456", new String(entity.getContent().readAllBytes(), StandardCharsets.ISO_8859_1));
+	}
+
+	@Test
+	public void testByteRangesEntity() throws Exception {
+		final File file = Files.writeString(tempDir.resolve("test.txt"), "0123456789").toFile();
+		final List<ByteRange> ranges = ByteRange.parse("bytes=0-1,-2", 10, 32);
+		final ByteRangesEntity entity = new ByteRangesEntity(file, 10, ranges, ContentType.TEXT_PLAIN, "BOUNDARY");
+		assertEquals("multipart/byteranges; boundary=BOUNDARY", entity.getContentType());
+		final String expected = "--BOUNDARY\r\n"
+			+ "Content-Type: text/plain; charset=UTF-8\r\n"
+			+ "Content-Range: bytes 0-1/10\r\n\r\n"
+			+ "01\r\n"
+			+ "--BOUNDARY\r\n"
+			+ "Content-Type: text/plain; charset=UTF-8\r\n"
+			+ "Content-Range: bytes 8-9/10\r\n\r\n"
+			+ "89\r\n"
+			+ "--BOUNDARY--\r\n";
+		assertEquals(expected.length(), entity.getContentLength());
+		assertTrue(entity.isRepeatable());
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			assertEquals(expected, out.toString(StandardCharsets.ISO_8859_1));
+		}
+		try (final InputStream in = entity.getContent()) {
+			assertEquals(expected, new String(in.readAllBytes(), StandardCharsets.ISO_8859_1));
+		}
+	}
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.io;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.impl.bootstrap.CustomServerBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpServer;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ZeroCopyHttpServerConnectionTest {
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testTransferTo() throws Exception {
+		assertTransferTo(false);
+	}
+
+	@Test
+	public void testTransferToVirtualThreads() throws Exception {
+		//The socket of the virtual thread is non-blocking, transferTo stops when the send buffer is full.
+		assertTransferTo(true);
+	}
+
+	void assertTransferTo(final boolean virtualThreads) throws Exception {
+		final byte[] data = new byte[8 * 1024 * 1024 + 123];
+		new Random(0).nextBytes(data);
+		final File file = Files.write(tempDir.resolve("test.bin"), data).toFile();
+
+		final AtomicInteger transferred = new AtomicInteger();
+		final HttpServer server = CustomServerBootstrap.bootstrap()
+			.setLocalAddress(InetAddress.getLoopbackAddress())
+			.setVirtualThreads(virtualThreads)
+			.setServerSocketFactory(ServerSocketChannelFactory.INSTANCE)
+			.setConnectionFactory(new ZeroCopyHttpServerConnectionFactory() {
+				@Override
+				protected ZeroCopyHttpServerConnection createDetached(final String scheme) {
+					return new ZeroCopyHttpServerConnection(scheme, null, null, null) {
+						@Override
+						protected SocketChannel getSocketChannel() throws IOException {
+							final SocketChannel channel = super.getSocketChannel();
+							if (channel != null) {
+								transferred.incrementAndGet();
+							}
+							return channel;
+						}
+					};
+				}
+			})
+			.register("*", (request, response, context) -> {
+				response.setEntity(new FileChannelEntity(file, ContentType.APPLICATION_OCTET_STREAM));
+			}).create();
+		server.start();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+			final OutputStream out = socket.getOutputStream();
+			final DataInputStream in = new DataInputStream(socket.getInputStream());
+			//2 requests on the keep-alive connection.
+			for (int i = 0; i < 2; i++) {
+				out.write("GET /test.bin HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+				assertEquals("HTTP/1.1 200 OK", readLine(in));
+				long contentLength = -1;
+				String line;
+				while (!(line = readLine(in)).isEmpty()) {
+					if (line.toLowerCase().startsWith("content-length:")) {
+						contentLength = Long.parseLong(line.substring(15).trim());
+					}
+				}
+				assertEquals(data.length, contentLength);
+				final byte[] body = new byte[data.length];
+				in.readFully(body);
+				assertArrayEquals(data, body);
+			}
+		} finally {
+			server.close(CloseMode.IMMEDIATE);
+		}
+		assertEquals(2, transferred.get());
+	}
+
+	@Test
+	public void testWriteTo() throws Exception {
+		final byte[] data = new byte[FileChannelEntity.BUFFER_SIZE * 2 + 1];
+		new Random(0).nextBytes(data);
+		final File file = Files.write(tempDir.resolve("test.bin"), data).toFile();
+		final FileChannelEntity entity = new FileChannelEntity(file, ContentType.APPLICATION_OCTET_STREAM);
+		assertEquals(data.length, entity.getContentLength());
+		assertTrue(entity.isRepeatable());
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			entity.writeTo(out);
+			assertArrayEquals(data, out.toByteArray());
+		}
+	}
+
+	static String readLine(final InputStream in) throws IOException {
+		final StringBuilder line = new StringBuilder();
+		int c;
+		while ((c = in.read()) != -1 && c != '\n') {
+			if (c != '\r') {
+				line.append((char) c);
+			}
+		}
+		return line.toString();
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.log;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.impl.BasicEndpointDetails;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class AccessLogWriterTest {
+
+	@TempDir
+	Path tempDir;
+
+	BasicClassicHttpRequest request;
+	BasicClassicHttpResponse response;
+	HttpContext context;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		request = new BasicClassicHttpRequest("GET", "/index.html?q=\"a\"");
+		request.setVersion(HttpVersion.HTTP_1_1);
+		request.setHeader(HttpHeaders.USER_AGENT, "curl/8.0");
+		response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		response.setEntity(new StringEntity("<html></html>", ContentType.TEXT_HTML));
+		context = HttpCoreContext.create();
+		HttpCoreContext.cast(context).setEndpointDetails(new BasicEndpointDetails(
+			new InetSocketAddress("127.0.0.1", 50000), new InetSocketAddress("127.0.0.1", 8080), null, null));
+	}
+
+	@Test
+	public void testCombined() throws Exception {
+		final AccessLogRecord record = new AccessLogRecord().set(request, response, context, 12);
+		final String line = write(AccessLogFormat.COMBINED, record);
+		assertTrue(line.startsWith("127.0.0.1 - - ["), line);
+		assertTrue(line.endsWith("] \"GET /index.html?q=\\\"a\\\" HTTP/1.1\" 200 13 \"-\" \"curl/8.0\"\n"), line);
+	}
+
+	@Test
+	public void testJson() throws Exception {
+		final AccessLogRecord record = new AccessLogRecord().set(request, response, context, 12);
+		final String line = write(AccessLogFormat.JSON, record);
+		assertTrue(line.startsWith("{\"time\":\""), line);
+		assertTrue(line.endsWith(",\"remote\":\"127.0.0.1\",\"method\":\"GET\",\"uri\":\"/index.html?q=\\\"a\\\"\""
+			+ ",\"protocol\":\"HTTP/1.1\",\"status\":200,\"bytes\":13,\"referer\":null,\"userAgent\":\"curl/8.0\""
+			+ ",\"responseTime\":12}\n"), line);
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		final AccessLogRecord record = new AccessLogRecord().set(request, response, context, 12);
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		AccessLogFormat.BINARY.write(record, new DataOutputStream(out));
+		AccessLogFormat.BINARY.write(record, new DataOutputStream(out));
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+		for (int i = 0; i < 2; i++) {
+			final AccessLogRecord read = AccessLogFormat.read(in);
+			assertEquals(record.getTime(), read.getTime());
+			assertEquals("127.0.0.1", read.getRemoteHost());
+			assertEquals("/index.html?q=\"a\"", read.getUri());
+			assertEquals("HTTP/1.1", read.getProtocol());
+			assertEquals(200, read.getStatus());
+			assertEquals(13, read.getBytes());
+			assertNull(read.getReferer());
+			assertEquals("curl/8.0", read.getUserAgent());
+			assertEquals(12, read.getResponseTime());
+		}
+		assertNull(AccessLogFormat.read(in));
+	}
+
+	@Test
+	public void testRingBuffer() {
+		final AccessLogRingBuffer buffer = new AccessLogRingBuffer(3);
+		assertEquals(4, buffer.capacity());
+		for (int i = 0; i < 4; i++) {
+			final long position = buffer.claim();
+			assertEquals(i, position);
+			buffer.get(position).set(request, response, context, i);
+			buffer.publish(position);
+		}
+		assertEquals(-1, buffer.claim()); //full
+		assertEquals(0, buffer.peek().getResponseTime());
+		buffer.release();
+		assertEquals(4, buffer.claim()); //the next lap
+		assertEquals(1, buffer.peek().getResponseTime());
+		buffer.release();
+		assertEquals(3, buffer.size());
+	}
+
+	@Test
+	public void testWriter() throws Exception {
+		final Path file = tempDir.resolve("logs/access.log");
+		final int threads = 4;
+		final int records = 5000;
+		try (AccessLogWriter writer = new AccessLogWriter(file, AccessLogFormat.COMBINED, 256).maxWait(1000).start()) {
+			final CountDownLatch latch = new CountDownLatch(threads);
+			for (int t = 0; t < threads; t++) {
+				new Thread(() -> {
+					for (int i = 0; i < records; i++) {
+						writer.log(request, response, context, i);
+					}
+					latch.countDown();
+				}).start();
+			}
+			assertTrue(latch.await(30, TimeUnit.SECONDS));
+			writer.close();
+			assertEquals(threads * records, writer.getWritten());
+			assertEquals(0, writer.getDropped());
+			assertTrue(writer.getBatches() > 0 && writer.getBatches() <= writer.getWritten());
+			assertEquals(threads * records, Files.readAllLines(file).size());
+
+			//closed
+			writer.log(request, response, context, 0);
+			assertEquals(1, writer.getDropped());
+		}
+	}
+
+	@Test
+	public void testDropped() throws Exception {
+		final Path file = tempDir.resolve("access.log");
+		//the writer is not started, the buffer is not drained.
+		final AccessLogWriter writer = new AccessLogWriter(file, AccessLogFormat.JSON, 2).maxWait(0);
+		writer.running = true;
+		for (int i = 0; i < 3; i++) {
+			writer.log(request, response, context, i);
+		}
+		assertEquals(1, writer.getDropped());
+		assertEquals(1, writer.getBackpressure());
+		assertEquals(2, writer.getPending());
+		writer.close();
+	}
+
+	@Test
+	public void testWriteError() throws Exception {
+		final AtomicBoolean failing = new AtomicBoolean(true);
+		final ByteArrayOutputStream sink = new ByteArrayOutputStream();
+		final AccessLogWriter writer = new AccessLogWriter(tempDir.resolve("access.log"), AccessLogFormat.COMBINED) {
+			@Override
+			protected void open() {
+				counter = new CountingOutputStream(new BufferedOutputStream(new OutputStream() {
+					@Override
+					public void write(final int b) throws IOException {
+						write(new byte[] { (byte) b }, 0, 1);
+					}
+
+					@Override
+					public void write(final byte[] b, final int off, final int len) throws IOException {
+						if (failing.get()) {
+							throw new IOException("No space left on device");
+						}
+						sink.write(b, off, len);
+					}
+				}), 0);
+				out = new DataOutputStream(counter);
+				fileDate = LocalDate.now(AccessLogFormat.COMBINED_DATE.getZone());
+			}
+		};
+		try (writer) {
+			writer.start();
+			//the batches failed to flush are dropped, not written.
+			for (int i = 0; i < 3; i++) {
+				writer.log(request, response, context, i);
+			}
+			for (int n = 0; writer.getDropped() < 3 && n < 1000; n++) {
+				Thread.sleep(5);
+			}
+			assertEquals(3, writer.getDropped());
+			assertEquals(0, writer.getWritten());
+
+			failing.set(false);
+			writer.log(request, response, context, 0);
+			writer.log(request, response, context, 0);
+		}
+		assertEquals(2, writer.getWritten());
+		assertEquals(3, writer.getDropped());
+		assertEquals(2, sink.toString(StandardCharsets.UTF_8).lines().count());
+	}
+
+	@Test
+	public void testClosedWhileAppending() throws Exception {
+		final AccessLogWriter writer = new AccessLogWriter(tempDir.resolve("access.log"), AccessLogFormat.COMBINED).start();
+		//the writer stopped, and a record appended after the last drain.
+		writer.running = false;
+		writer.thread.join(10000);
+		final long position = writer.buffer.claim();
+		writer.buffer.get(position).set(request, response, context, 0);
+		writer.buffer.publish(position);
+		writer.close();
+		assertEquals(1, writer.getDropped());
+		assertEquals(0, writer.getPending());
+	}
+
+	@Test
+	public void testRotate() throws Exception {
+		final Path file = tempDir.resolve("access.log");
+		try (AccessLogWriter writer = new AccessLogWriter(file, AccessLogFormat.COMBINED).maxFileBytes(1).maxHistory(2)
+				.batchSize(1).flushInterval(1).start()) {
+			for (int i = 0; i < 4; i++) {
+				writer.log(request, response, context, i);
+				final long written = i + 1;
+				for (int n = 0; writer.getWritten() < written && n < 1000; n++) {
+					Thread.sleep(5);
+				}
+			}
+		}
+		try (Stream<Path> files = Files.list(tempDir)) {
+			final List<Path> rotated = files.filter(p -> !p.equals(file)).toList();
+			assertEquals(2, rotated.size(), rotated.toString());
+		}
+		assertEquals(0, Files.size(file));
+	}
+
+	static String write(final AccessLogFormat format, final AccessLogRecord record) throws Exception {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		format.write(record, new DataOutputStream(out));
+		return out.toString(StandardCharsets.UTF_8);
+	}
+}
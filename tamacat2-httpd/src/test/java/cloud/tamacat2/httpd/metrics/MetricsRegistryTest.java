@@ -0,0 +1,163 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+	@Test
+	public void testHistogramBuckets() {
+		for (int i = 0; i < LatencyHistogram.BUCKETS; i++) {
+			final long lower = LatencyHistogram.lowerBound(i);
+			assertEquals(i, LatencyHistogram.index(lower));
+			assertEquals(i, LatencyHistogram.index(LatencyHistogram.upperBound(i)));
+		}
+		assertEquals(15, LatencyHistogram.index(15));
+		assertEquals(16, LatencyHistogram.index(16));
+		assertEquals(LatencyHistogram.BUCKETS - 1, LatencyHistogram.index(Long.MAX_VALUE));
+	}
+
+	@Test
+	public void testHistogramPercentiles() {
+		final LatencyHistogram histogram = new LatencyHistogram();
+		assertEquals(-1, histogram.snapshot().getValue(0.5));
+		//1us to 1000us
+		for (int i = 1; i <= 1000; i++) {
+			histogram.record(i * 1000L);
+		}
+		histogram.record(-1);
+		final LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+		assertEquals(1001, snapshot.getCount());
+		assertEquals(500500000L, snapshot.getSum());
+		assertNear(500000, snapshot.getValue(0.5));
+		assertNear(990000, snapshot.getValue(0.99));
+		assertNear(1000000, snapshot.getMax());
+		assertEquals(0, snapshot.getValue(0));
+		assertEquals(2, snapshot.getCountBelow(1024));
+		assertEquals(1001, snapshot.getCountBelow(1L << 20));
+	}
+
+	static void assertNear(final long expected, final long actual) {
+		assertTrue(Math.abs(actual - expected) <= expected / 8, "expected " + expected + " but " + actual);
+	}
+
+	@Test
+	public void testWriter() {
+		final MetricsWriter writer = new MetricsWriter();
+		writer.counter("requests_total", "Requests.", 3, "route", "/a/");
+		writer.gauge("up", "Up.", 1);
+		writer.counter("requests_total", "Requests.", 5, "route", "x\"\\\ny");
+		writer.gauge("load", "Load.", 0.25);
+		assertEquals("# HELP requests_total Requests.\n"
+			+ "# TYPE requests_total counter\n"
+			+ "requests_total{route=\"/a/\"} 3\n"
+			+ "requests_total{route=\"x\\\"\\\\\\ny\"} 5\n"
+			+ "# HELP up Up.\n"
+			+ "# TYPE up gauge\n"
+			+ "up 1\n"
+			+ "# HELP load Load.\n"
+			+ "# TYPE load gauge\n"
+			+ "load 0.25\n", writer.toString());
+
+		final LatencyHistogram histogram = new LatencyHistogram();
+		histogram.record(1_000_000_000L);
+		histogram.record(1_000L);
+		final String text = new MetricsWriter().histogram("latency_seconds", "Latency.", histogram.snapshot(), "route", "/").toString();
+		assertTrue(text.contains("# TYPE latency_seconds histogram\n"), text);
+		//the powers of two nanoseconds.
+		assertTrue(text.contains("latency_seconds_bucket{route=\"/\",le=\"1.024E-6\"} 1\n"), text);
+		assertTrue(text.contains("latency_seconds_bucket{route=\"/\",le=\"0.536870912\"} 1\n"), text);
+		assertTrue(text.contains("latency_seconds_bucket{route=\"/\",le=\"1.073741824\"} 2\n"), text);
+		assertTrue(text.contains("latency_seconds_bucket{route=\"/\",le=\"+Inf\"} 2\n"), text);
+		assertTrue(text.contains("latency_seconds_sum{route=\"/\"} 1.000001\n"), text);
+		assertTrue(text.contains("latency_seconds_count{route=\"/\"} 2\n"), text);
+		assertEquals(MetricsWriter.MAX_BUCKET_EXPONENT - MetricsWriter.MIN_BUCKET_EXPONENT + 2, text.split("_bucket").length - 1);
+		assertTrue(new MetricsWriter().histogram("empty", "Empty.", new LatencyHistogram().snapshot()).toString()
+			.contains("empty_bucket{le=\"+Inf\"} 0\n"));
+	}
+
+	@Test
+	public void testMeteredRequestHandler() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		final RequestMetrics metrics = registry.getRequestMetrics("/app/");
+		final MeteredRequestHandler handler = new MeteredRequestHandler((request, response, context) -> {
+			assertEquals(1, metrics.getActive());
+			if (request.getPath().endsWith("/error")) {
+				throw new IOException("error");
+			}
+			response.setCode(request.getPath().endsWith("/missing") ? HttpStatus.SC_NOT_FOUND : HttpStatus.SC_OK);
+			response.setEntity(new StringEntity("hello", ContentType.TEXT_PLAIN));
+		}, metrics);
+
+		final BasicClassicHttpRequest post = new BasicClassicHttpRequest("POST", "/app/");
+		post.setEntity(new StringEntity("abc", ContentType.TEXT_PLAIN));
+		handler.handle(post, new BasicClassicHttpResponse(HttpStatus.SC_OK), HttpCoreContext.create());
+		handler.handle(new BasicClassicHttpRequest("GET", "/app/missing"), new BasicClassicHttpResponse(HttpStatus.SC_OK), HttpCoreContext.create());
+		assertThrows(IOException.class, () -> handler.handle(new BasicClassicHttpRequest("GET", "/app/error"),
+			new BasicClassicHttpResponse(HttpStatus.SC_OK), HttpCoreContext.create()));
+
+		assertEquals(3, metrics.getRequests());
+		assertEquals(1, metrics.getRequests(2));
+		assertEquals(1, metrics.getRequests(4));
+		assertEquals(1, metrics.getRequests(5));
+		assertEquals(0, metrics.getActive());
+		assertEquals(3, metrics.getBytesIn());
+		assertEquals(10, metrics.getBytesOut());
+		assertEquals(3, metrics.getLatency().snapshot().getCount());
+		assertEquals(metrics, registry.getRequestMetrics("/app/"));
+
+		final String text = registry.scrape();
+		assertTrue(text.contains("tamacat2_http_requests_total{route=\"/app/\",status=\"2xx\"} 1\n"), text);
+		assertTrue(text.contains("tamacat2_http_requests_total{route=\"/app/\",status=\"3xx\"} 0\n"), text);
+		assertTrue(text.contains("tamacat2_http_response_bytes_total{route=\"/app/\"} 10\n"), text);
+		assertTrue(text.contains("tamacat2_http_request_duration_seconds_count{route=\"/app/\"} 3\n"), text);
+		assertTrue(text.contains("tamacat2_jvm_memory_used_bytes{area=\"heap\"}"), text);
+	}
+
+	@Test
+	public void testMetricsHandler() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.register(writer -> writer.gauge("queue_size", "Size of the queue.", 7));
+		final MetricsHandler handler = new MetricsHandler(registry);
+
+		BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		handler.handle(new BasicClassicHttpRequest("GET", "/metrics"), response, HttpCoreContext.create());
+		assertEquals(HttpStatus.SC_OK, response.getCode());
+		assertEquals("text/plain; version=0.0.4; charset=utf-8", response.getEntity().getContentType());
+		final String text = new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8);
+		assertTrue(text.startsWith("# HELP queue_size Size of the queue.\n# TYPE queue_size gauge\nqueue_size 7\n"), text);
+
+		response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		handler.handle(new BasicClassicHttpRequest("POST", "/metrics"), response, HttpCoreContext.create());
+		assertEquals(HttpStatus.SC_METHOD_NOT_ALLOWED, response.getCode());
+		assertEquals("GET, HEAD", response.getFirstHeader(HttpHeaders.ALLOW).getValue());
+	}
+}
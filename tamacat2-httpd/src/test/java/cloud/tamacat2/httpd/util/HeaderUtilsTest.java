@@ -176,4 +176,15 @@ public class HeaderUtilsTest {
 		assertFalse(HeaderUtils.isMultipart("application/x-www-form-urlencoded"));
 		assertFalse(HeaderUtils.isMultipart(null));
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void testGetQValue() {
+		assertEquals(1f, HeaderUtils.getQValue("gzip, deflate, br", "gzip"));
+		assertEquals(0.8f, HeaderUtils.getQValue("br;q=1.0, GZIP;Q=0.8, *;q=0.1", "gzip"));
+		assertEquals(0.1f, HeaderUtils.getQValue("br;q=1.0, gzip;q=0.8, *;q=0.1", "zstd"));
+		assertEquals(0f, HeaderUtils.getQValue("br, gzip;q=0", "gzip"));
+		assertEquals(0f, HeaderUtils.getQValue("br, gzip;q=NaN", "gzip"));
+		assertEquals(0f, HeaderUtils.getQValue("br", "gzip"));
+		assertEquals(0f, HeaderUtils.getQValue(null, "gzip"));
+	}
+}
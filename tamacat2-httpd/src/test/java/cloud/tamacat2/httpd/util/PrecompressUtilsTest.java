@@ -0,0 +1,119 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cloud.tamacat2.httpd.config.UrlConfig;
+import cloud.tamacat2.httpd.web.WebServerHandler;
+
+public class PrecompressUtilsTest {
+
+	static final String CSS = "body { margin: 0; padding: 0; }\n".repeat(100);
+
+	@TempDir
+	Path tempDir;
+
+	@Test
+	public void testPrecompress() throws Exception {
+		final Path css = Files.writeString(tempDir.resolve("style.css"), CSS);
+		Files.writeString(tempDir.resolve("small.css"), "body{}");
+		Files.write(tempDir.resolve("image.png"), CSS.getBytes(StandardCharsets.UTF_8));
+
+		assertEquals(1, PrecompressUtils.precompress(tempDir, PrecompressUtils.DEFAULT_CONTENT_TYPES, 256));
+		final Path gz = tempDir.resolve("style.css.gz");
+		assertEquals(Files.getLastModifiedTime(css), Files.getLastModifiedTime(gz));
+		assertTrue(Files.size(gz) < Files.size(css));
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(Files.readAllBytes(gz)))) {
+			assertEquals(CSS, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+		}
+		assertFalse(Files.exists(tempDir.resolve("small.css.gz")));
+		assertFalse(Files.exists(tempDir.resolve("image.png.gz")));
+
+		//up-to-date
+		assertEquals(0, PrecompressUtils.precompress(tempDir, PrecompressUtils.DEFAULT_CONTENT_TYPES, 256));
+		//stale
+		Files.setLastModifiedTime(css, FileTime.fromMillis(Files.getLastModifiedTime(css).toMillis() + 2000));
+		assertEquals(1, PrecompressUtils.precompress(tempDir, "css", 256));
+		assertEquals(Files.getLastModifiedTime(css), Files.getLastModifiedTime(gz));
+	}
+
+	@Test
+	public void testPrecompressedFile() throws Exception {
+		final Path css = Files.writeString(tempDir.resolve("style.css"), CSS);
+		PrecompressUtils.precompress(tempDir, "css", 256);
+		Files.write(tempDir.resolve("style.css.br"), new byte[] { 1, 2, 3 });
+		Files.setLastModifiedTime(tempDir.resolve("style.css.br"), Files.getLastModifiedTime(css));
+
+		try (WebServerHandler handler = new WebServerHandler(
+				UrlConfig.create().path("/").docsRoot(tempDir.toString()).precompressed("br, gzip"))) {
+			BasicClassicHttpResponse response = handle(handler, "gzip, deflate, br");
+			assertEquals(HttpStatus.SC_OK, response.getCode());
+			assertEquals("br", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+			assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getFirstHeader(HttpHeaders.VARY).getValue());
+			assertEquals(3, response.getEntity().getContentLength());
+			assertTrue(response.getEntity().getContentType().startsWith("text/css"));
+
+			response = handle(handler, "gzip;q=1.0, br;q=0.5");
+			assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+			assertEquals(Files.size(tempDir.resolve("style.css.gz")), response.getEntity().getContentLength());
+			final String etag = response.getFirstHeader(HttpHeaders.ETAG).getValue();
+
+			response = handle(handler, null);
+			assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+			assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getFirstHeader(HttpHeaders.VARY).getValue());
+			assertEquals(CSS.length(), response.getEntity().getContentLength());
+			assertFalse(etag.equals(response.getFirstHeader(HttpHeaders.ETAG).getValue()));
+
+			//the stale precompressed files are not used.
+			Files.setLastModifiedTime(css, FileTime.fromMillis(Files.getLastModifiedTime(css).toMillis() + 2000));
+			final WebServerHandler nocache = new WebServerHandler(UrlConfig.create().path("/")
+				.docsRoot(tempDir.toString()).fileCache(null).precompressed("br,gzip"));
+			response = handle(nocache, "gzip, br");
+			assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+			assertNull(response.getFirstHeader(HttpHeaders.VARY));
+			assertEquals(CSS.length(), response.getEntity().getContentLength());
+		}
+	}
+
+	static BasicClassicHttpResponse handle(final WebServerHandler handler, final String acceptEncoding) throws Exception {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/style.css");
+		if (acceptEncoding != null) {
+			request.setHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		}
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		handler.handle(request, response, HttpCoreContext.create());
+		return response;
+	}
+}
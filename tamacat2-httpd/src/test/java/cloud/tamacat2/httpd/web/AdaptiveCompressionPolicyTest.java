@@ -0,0 +1,195 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.cache.CompressedContentCache;
+import cloud.tamacat2.httpd.io.IdentifiableEntityWrapper;
+import cloud.tamacat2.httpd.web.AdaptiveCompressionPolicy.Mode;
+
+public class AdaptiveCompressionPolicyTest {
+
+	static class TestPolicy extends AdaptiveCompressionPolicy {
+		double load;
+
+		TestPolicy() {
+			intervalMillis(0);
+		}
+
+		@Override
+		protected double getProcessCpuLoad() {
+			return load;
+		}
+
+		Mode sample(final double load) {
+			this.load = load;
+			return getMode();
+		}
+	}
+
+	@Test
+	public void testMode() {
+		final TestPolicy policy = new TestPolicy();
+		assertEquals(Mode.NORMAL, policy.sample(0.6));
+		assertEquals(Mode.REDUCED, policy.sample(0.8));
+		//hysteresis
+		assertEquals(Mode.REDUCED, policy.sample(0.6));
+		assertEquals(Mode.MINIMAL, policy.sample(0.95));
+		assertEquals(Mode.MINIMAL, policy.sample(0.8));
+		//restored one step
+		assertEquals(Mode.REDUCED, policy.sample(0.1));
+		assertEquals(Mode.NORMAL, policy.sample(0.1));
+		assertEquals(4, policy.getModeChanges());
+
+		//latency
+		policy.record(600_000_000L);
+		assertEquals(Mode.REDUCED, policy.sample(0.1));
+		assertEquals(600d, policy.getLatencyMillis());
+		policy.record(1_500_000_000L);
+		assertEquals(Mode.MINIMAL, policy.sample(0.1));
+		policy.record(300_000_000L);
+		assertEquals(Mode.MINIMAL, policy.sample(0.1));
+		policy.record(1_000_000L);
+		assertEquals(Mode.REDUCED, policy.sample(0.1));
+	}
+
+	@Test
+	public void testIsCompressible() {
+		final AdaptiveCompressionPolicy policy = new AdaptiveCompressionPolicy().maxSizeUnderLoad(1000);
+		assertTrue(policy.isCompressible("application/json", 1000));
+		assertFalse(policy.isCompressible("application/json", 1001));
+		assertFalse(policy.isCompressible("application/json", -1));
+		assertFalse(policy.isCompressible("font/woff2", 100));
+		assertFalse(policy.lowRatioTypes("application/json").isCompressible("application/json; charset=UTF-8", 100));
+	}
+
+	@Test
+	public void testInterceptor() throws Exception {
+		final TestPolicy policy = new TestPolicy();
+		policy.maxSizeUnderLoad(1024);
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().level(9).policy(policy);
+		final String json = GzipContentEncodingInterceptorTest.JSON;
+
+		policy.load = 0.8;
+		BasicClassicHttpResponse response = GzipContentEncodingInterceptorTest.process(gzip, "gzip", json);
+		assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+		//the latency is recorded after the compressed body is written.
+		assertEquals(0, policy.latencyCount.sum());
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.getEntity().writeTo(out);
+		assertEquals(1, policy.latencyCount.sum());
+		response.getEntity().writeTo(new ByteArrayOutputStream());
+		assertEquals(1, policy.latencyCount.sum());
+		assertEquals(json, GzipContentEncodingInterceptorTest.gunzip(out.toByteArray()));
+		assertEquals(1, policy.getCompressed(Mode.REDUCED));
+
+		//skip the large content.
+		policy.load = 0.95;
+		response = GzipContentEncodingInterceptorTest.process(gzip, "gzip", json);
+		assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getFirstHeader(HttpHeaders.VARY).getValue());
+		assertEquals(1, policy.getSkipped());
+		assertEquals(Mode.MINIMAL, policy.getMode());
+	}
+
+	@Test
+	public void testSlowClient() throws Exception {
+		final TestPolicy policy = new TestPolicy();
+		policy.intervalMillis(60_000);
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().policy(policy);
+		final BasicClassicHttpResponse response = GzipContentEncodingInterceptorTest.process(gzip, "gzip", GzipContentEncodingInterceptorTest.JSON);
+		response.getEntity().writeTo(new OutputStream() {
+			@Override
+			public void write(final int b) throws IOException {
+				write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			@Override
+			public void write(final byte[] b, final int off, final int len) throws IOException {
+				try {
+					Thread.sleep(100);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		//the time to send the compressed body is not the latency.
+		assertEquals(1, policy.latencyCount.sum());
+		assertTrue(policy.latencySum.sum() < 100_000_000L);
+		assertEquals(Mode.NORMAL, policy.getCurrentMode());
+	}
+
+	@Test
+	public void testCached() throws Exception {
+		final TestPolicy policy = new TestPolicy();
+		policy.intervalMillis(60_000);
+		final CompressedContentCache cache = new CompressedContentCache(1024 * 1024, 64 * 1024);
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().policy(policy).contentCache(cache);
+		for (int i = 0; i < 3; i++) {
+			process(gzip).close();
+		}
+		//the cache hits are not compressed.
+		assertEquals(1, policy.getCompressed(Mode.NORMAL));
+		assertEquals(2, policy.getCached());
+		assertEquals(3, policy.latencyCount.sum());
+	}
+
+	@Test
+	public void testCachedLevel() throws Exception {
+		final TestPolicy policy = new TestPolicy();
+		final CompressedContentCache cache = new CompressedContentCache(1024 * 1024, 64 * 1024);
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().level(9).policy(policy).contentCache(cache);
+		//compressed with the fastest level under load.
+		policy.load = 0.8;
+		process(gzip).close();
+		assertEquals(Mode.REDUCED, policy.getMode());
+		//not served after the load drops.
+		policy.load = 0.1;
+		process(gzip).close();
+		assertEquals(Mode.NORMAL, policy.getMode());
+		assertEquals(2, cache.getMisses());
+		assertEquals(2, cache.size());
+		//the configured level is preferred under load.
+		policy.load = 0.8;
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final BasicClassicHttpResponse response = process(gzip);
+		response.getEntity().writeTo(out);
+		response.close();
+		assertEquals(1, cache.getHits());
+		assertEquals(GzipContentEncodingInterceptorTest.JSON, GzipContentEncodingInterceptorTest.gunzip(out.toByteArray()));
+	}
+
+	static BasicClassicHttpResponse process(final GzipContentEncodingInterceptor gzip) throws Exception {
+		final BasicClassicHttpResponse response = GzipContentEncodingInterceptorTest.process(gzip, "gzip",
+			new IdentifiableEntityWrapper(new StringEntity(GzipContentEncodingInterceptorTest.JSON, ContentType.APPLICATION_JSON), "/api \"v1\""));
+		assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+		return response;
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.cache.CompressedContentCache;
+import cloud.tamacat2.httpd.io.DeflaterPool;
+import cloud.tamacat2.httpd.io.GzipCompressingOutputStream;
+import cloud.tamacat2.httpd.io.IdentifiableEntityWrapper;
+
+public class GzipContentEncodingInterceptorTest {
+
+	static final String JSON = "{\"id\":1,\"name\":\"tamacat\",\"tags\":[\"httpd\",\"reverse\"]},".repeat(100);
+
+	@Test
+	public void testCompress() throws Exception {
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().level(9);
+		final BasicClassicHttpResponse response = process(gzip, "br;q=1.0, gzip;q=0.5", JSON);
+		assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getFirstHeader(HttpHeaders.VARY).getValue());
+		assertEquals(-1, response.getEntity().getContentLength());
+		for (int i = 0; i < 2; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			response.getEntity().writeTo(out);
+			assertTrue(out.size() < JSON.length() / 10);
+			assertEquals(JSON, gunzip(out.toByteArray()));
+		}
+	}
+
+	@Test
+	public void testNotCompressed() throws Exception {
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor();
+		//Accept-Encoding
+		BasicClassicHttpResponse response = process(gzip, "gzip;q=0, br", JSON);
+		assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+		assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getFirstHeader(HttpHeaders.VARY).getValue());
+		response = process(gzip, "x-gzip-not", JSON);
+		assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+
+		//minimum size
+		response = process(gzip, "gzip", "{\"id\":1}");
+		assertNull(response.getFirstHeader(HttpHeaders.CONTENT_ENCODING));
+		assertNull(response.getFirstHeader(HttpHeaders.VARY));
+		response = process(gzip.minSize(0), "gzip", "{\"id\":1}");
+		assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+	}
+
+	@Test
+	public void testVary() {
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		response.setHeader(HttpHeaders.VARY, "Origin");
+		GzipContentEncodingInterceptor.addVary(response);
+		assertEquals("Origin, Accept-Encoding", response.getFirstHeader(HttpHeaders.VARY).getValue());
+		GzipContentEncodingInterceptor.addVary(response);
+		assertEquals("Origin, Accept-Encoding", response.getFirstHeader(HttpHeaders.VARY).getValue());
+	}
+
+	@Test
+	public void testDeflaterPool() throws Exception {
+		final DeflaterPool pool = new DeflaterPool(1, 2);
+		for (int i = 0; i < 3; i++) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			try (GzipCompressingOutputStream gzip = new GzipCompressingOutputStream(out, pool)) {
+				gzip.write(JSON.getBytes(StandardCharsets.UTF_8));
+				//flush point of the streaming content.
+				gzip.flush();
+				assertFalse(out.size() == 10);
+				gzip.write('!');
+			}
+			assertEquals(JSON + "!", gunzip(out.toByteArray()));
+			assertEquals(1, pool.size());
+		}
+		pool.close();
+		assertEquals(0, pool.size());
+	}
+
+	@Test
+	public void testContentCache() throws Exception {
+		final CompressedContentCache cache = new CompressedContentCache(1024 * 1024, 64 * 1024);
+		final GzipContentEncodingInterceptor gzip = new GzipContentEncodingInterceptor().contentCache(cache);
+		for (int i = 0; i < 2; i++) {
+			final HttpEntity entity = new IdentifiableEntityWrapper(
+				new StringEntity(JSON, ContentType.APPLICATION_JSON), "/api \"v1\"");
+			final BasicClassicHttpResponse response = process(gzip, "gzip", entity);
+			assertEquals("gzip", response.getFirstHeader(HttpHeaders.CONTENT_ENCODING).getValue());
+			assertNull(response.getFirstHeader(HttpHeaders.TRANSFER_ENCODING));
+			//exact Content-Length
+			final long length = response.getEntity().getContentLength();
+			assertTrue(length > 0 && length < JSON.length() / 10);
+			assertEquals(Long.toString(length), response.getFirstHeader(HttpHeaders.CONTENT_LENGTH).getValue());
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			response.getEntity().writeTo(out);
+			assertEquals(length, out.size());
+			assertEquals(JSON, gunzip(out.toByteArray()));
+			response.close();
+		}
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+
+		//without the identity, or larger than the maximum entry size.
+		BasicClassicHttpResponse response = process(gzip, "gzip", JSON);
+		assertEquals(-1, response.getEntity().getContentLength());
+		response = process(gzip, "gzip", new IdentifiableEntityWrapper(
+			new StringEntity(JSON.repeat(20), ContentType.APPLICATION_JSON), "/large \"v1\""));
+		assertEquals("chunked", response.getFirstHeader(HttpHeaders.TRANSFER_ENCODING).getValue());
+		assertEquals(1, cache.size());
+	}
+
+	static BasicClassicHttpResponse process(final GzipContentEncodingInterceptor gzip, final String acceptEncoding,
+			final String json) throws Exception {
+		return process(gzip, acceptEncoding, new StringEntity(json, ContentType.APPLICATION_JSON));
+	}
+
+	static BasicClassicHttpResponse process(final GzipContentEncodingInterceptor gzip, final String acceptEncoding,
+			final HttpEntity entity) throws Exception {
+		final HttpContext context = HttpCoreContext.create();
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/api");
+		request.setVersion(HttpVersion.HTTP_1_1);
+		request.setHeader(HttpHeaders.ACCEPT_ENCODING, acceptEncoding);
+		gzip.process(request, null, context);
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		response.setEntity(entity);
+		response.setHeader(HttpHeaders.CONTENT_TYPE, entity.getContentType());
+		gzip.process(response, entity, context);
+		return response;
+	}
+
+	static String gunzip(final byte[] data) throws Exception {
+		try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(data))) {
+			return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+}
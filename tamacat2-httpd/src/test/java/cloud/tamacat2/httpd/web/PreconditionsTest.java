@@ -0,0 +1,210 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.httpd.web;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import cloud.tamacat2.httpd.cache.FileContentCache;
+import cloud.tamacat2.httpd.cache.FileMetadata;
+import cloud.tamacat2.httpd.config.UrlConfig;
+import cloud.tamacat2.httpd.io.ByteRangesEntity;
+import cloud.tamacat2.httpd.io.FileChannelEntity;
+import cloud.tamacat2.httpd.util.DateUtils;
+
+public class PreconditionsTest {
+
+	//Sun, 06 Nov 1994 08:49:37 GMT
+	static final long MTIME = 784111777000L;
+
+	@TempDir
+	Path tempDir;
+
+	FileMetadata metadata;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		final Path file = Files.writeString(tempDir.resolve("index.html"), "<html></html>");
+		Files.setLastModifiedTime(file, FileTime.fromMillis(MTIME + 123));
+		metadata = FileMetadata.load(tempDir, "/index.html", 0);
+	}
+
+	@Test
+	public void testValidators() {
+		assertEquals("\"d-" + Long.toHexString(MTIME + 123) + "\"", metadata.getETag());
+		assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", metadata.getLastModifiedDate());
+		assertEquals(MTIME, DateUtils.parseHttpDate(metadata.getLastModifiedDate()));
+		//obsolete RFC 850 and asctime formats.
+		assertEquals(MTIME, DateUtils.parseHttpDate("Sunday, 06-Nov-94 08:49:37 GMT"));
+		assertEquals(MTIME, DateUtils.parseHttpDate("Sun Nov  6 08:49:37 1994"));
+		assertEquals(-1L, DateUtils.parseHttpDate("invalid"));
+		assertEquals(-1L, DateUtils.parseHttpDate("Monday, 06-Nov-94 08:49:37 GMT"));
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+		final String etag = metadata.getETag();
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_NONE_MATCH, etag));
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("HEAD", HttpHeaders.IF_NONE_MATCH, "\"x\", W/" + etag));
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_NONE_MATCH, "*"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_NONE_MATCH, "\"x\""));
+		assertEquals(HttpStatus.SC_PRECONDITION_FAILED, evaluate("POST", HttpHeaders.IF_NONE_MATCH, etag));
+
+		final String gzip = GzipContentEncodingInterceptor.getGzipETag(etag);
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_NONE_MATCH, gzip));
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/index.html");
+		request.setHeader(HttpHeaders.IF_NONE_MATCH, gzip);
+		assertEquals(gzip, Preconditions.getNotModifiedETag(request, metadata));
+	}
+
+	@Test
+	public void testIfModifiedSince() {
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:37 GMT"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:36 GMT"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "invalid"));
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sunday, 06-Nov-94 08:49:37 GMT"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sunday, 06-Nov-94 08:49:36 GMT"));
+		assertEquals(HttpStatus.SC_NOT_MODIFIED, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sun Nov  6 08:49:37 1994"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_MODIFIED_SINCE, "Sun Nov  6 08:49:36 1994"));
+
+		//If-None-Match takes precedence.
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/index.html");
+		request.setHeader(HttpHeaders.IF_NONE_MATCH, "\"x\"");
+		request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:37 GMT");
+		assertEquals(HttpStatus.SC_OK, Preconditions.evaluate(request, metadata));
+	}
+
+	@Test
+	public void testIfMatch() {
+		assertEquals(HttpStatus.SC_OK, evaluate("PUT", HttpHeaders.IF_MATCH, metadata.getETag()));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_MATCH, "*"));
+		//strong comparison.
+		assertEquals(HttpStatus.SC_PRECONDITION_FAILED, evaluate("GET", HttpHeaders.IF_MATCH, "W/" + metadata.getETag()));
+		assertEquals(HttpStatus.SC_PRECONDITION_FAILED, evaluate("GET", HttpHeaders.IF_UNMODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:36 GMT"));
+		assertEquals(HttpStatus.SC_OK, evaluate("GET", HttpHeaders.IF_UNMODIFIED_SINCE, "Sun, 06 Nov 1994 08:49:37 GMT"));
+		assertEquals(HttpStatus.SC_PRECONDITION_FAILED, evaluate("GET", HttpHeaders.IF_UNMODIFIED_SINCE, "Sun Nov  6 08:49:36 1994"));
+		assertNull(Preconditions.matchETag("\"x\"", metadata, false));
+	}
+
+	@Test
+	public void testWebServerHandler() throws Exception {
+		try (WebServerHandler handler = new WebServerHandler(UrlConfig.create().path("/").docsRoot(tempDir.toString()))) {
+			final FileContentCache contentCache = new FileContentCache(1024, 1024);
+			handler.setContentCache(contentCache);
+
+			BasicClassicHttpResponse response = handle(handler, "GET", null, null);
+			assertEquals(HttpStatus.SC_OK, response.getCode());
+			assertEquals(metadata.getETag(), response.getFirstHeader(HttpHeaders.ETAG).getValue());
+			assertEquals(metadata.getLastModifiedDate(), response.getFirstHeader(HttpHeaders.LAST_MODIFIED).getValue());
+			assertEquals(13, response.getEntity().getContentLength());
+
+			response = handle(handler, "GET", HttpHeaders.IF_NONE_MATCH, metadata.getETag());
+			assertEquals(HttpStatus.SC_NOT_MODIFIED, response.getCode());
+			assertNull(response.getEntity());
+			assertEquals(metadata.getETag(), response.getFirstHeader(HttpHeaders.ETAG).getValue());
+
+			response = handle(handler, "GET", HttpHeaders.IF_MATCH, "\"x\"");
+			assertEquals(HttpStatus.SC_PRECONDITION_FAILED, response.getCode());
+
+			//HEAD does not read the file into the content cache.
+			contentCache.clear();
+			response = handle(handler, "HEAD", null, null);
+			assertEquals(HttpStatus.SC_OK, response.getCode());
+			assertTrue(response.getEntity() instanceof FileChannelEntity);
+			assertEquals(13, response.getEntity().getContentLength());
+			assertEquals(0, contentCache.size());
+		}
+	}
+
+	@Test
+	public void testRange() throws Exception {
+		try (WebServerHandler handler = new WebServerHandler(UrlConfig.create().path("/").docsRoot(tempDir.toString()))) {
+			BasicClassicHttpResponse response = handle(handler, "GET", HttpHeaders.RANGE, "bytes=1-4");
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getCode());
+			assertEquals("bytes 1-4/13", response.getFirstHeader(HttpHeaders.CONTENT_RANGE).getValue());
+			assertEquals("bytes", response.getFirstHeader(HttpHeaders.ACCEPT_RANGES).getValue());
+			assertEquals("html", new String(response.getEntity().getContent().readAllBytes(), StandardCharsets.UTF_8));
+
+			response = handle(handler, "GET", HttpHeaders.RANGE, "bytes=0-0,-1");
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getCode());
+			assertTrue(response.getEntity() instanceof ByteRangesEntity);
+
+			//overlapping ranges are coalesced, and the repeated ranges are ignored.
+			response = handle(handler, "GET", HttpHeaders.RANGE, "bytes=3-6,1-4");
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, response.getCode());
+			assertEquals("bytes 1-6/13", response.getFirstHeader(HttpHeaders.CONTENT_RANGE).getValue());
+			response = handle(handler, "GET", HttpHeaders.RANGE, "bytes=" + "0-,".repeat(31) + "0-");
+			assertEquals(HttpStatus.SC_OK, response.getCode());
+			assertNull(response.getFirstHeader(HttpHeaders.CONTENT_RANGE));
+
+			response = handle(handler, "GET", HttpHeaders.RANGE, "bytes=13-");
+			assertEquals(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getCode());
+			assertEquals("bytes */13", response.getFirstHeader(HttpHeaders.CONTENT_RANGE).getValue());
+
+			//ignored on HEAD and the invalid Range header.
+			assertEquals(HttpStatus.SC_OK, handle(handler, "HEAD", HttpHeaders.RANGE, "bytes=1-4").getCode());
+			assertEquals(HttpStatus.SC_OK, handle(handler, "GET", HttpHeaders.RANGE, "bytes=4-1").getCode());
+
+			//If-Range
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, handleRange(handler, metadata.getETag()).getCode());
+			assertEquals(HttpStatus.SC_PARTIAL_CONTENT, handleRange(handler, metadata.getLastModifiedDate()).getCode());
+			assertEquals(HttpStatus.SC_OK, handleRange(handler, "W/" + metadata.getETag()).getCode());
+			assertEquals(HttpStatus.SC_OK, handleRange(handler, "\"x\"").getCode());
+			assertEquals(HttpStatus.SC_OK, handleRange(handler, "Sun, 06 Nov 1994 08:49:36 GMT").getCode());
+		}
+	}
+
+	static BasicClassicHttpResponse handleRange(final WebServerHandler handler, final String ifRange) throws Exception {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/index.html");
+		request.setHeader(HttpHeaders.RANGE, "bytes=1-4");
+		request.setHeader(HttpHeaders.IF_RANGE, ifRange);
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		handler.handle(request, response, HttpCoreContext.create());
+		return response;
+	}
+
+	int evaluate(final String method, final String name, final String value) {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest(method, "/index.html");
+		request.setHeader(name, value);
+		return Preconditions.evaluate(request, metadata);
+	}
+
+	static BasicClassicHttpResponse handle(final WebServerHandler handler, final String method,
+			final String name, final String value) throws Exception {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest(method, "/index.html");
+		if (name != null) {
+			request.setHeader(name, value);
+		}
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(HttpStatus.SC_OK);
+		handler.handle(request, response, HttpCoreContext.create());
+		return response;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hc.core5.http.impl.bootstrap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpRequestMapper;
+import org.apache.hc.core5.http.MisdirectedRequestException;
+import org.apache.hc.core5.http.impl.routing.RequestRouter;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.protocol.UriPatternType;
+import org.apache.hc.core5.net.URIAuthority;
+import org.junit.jupiter.api.Test;
+
+public class CompiledRequestRouterTest {
+
+	@Test
+	public void testPath() throws Exception {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		entries.add(new RequestRouter.Entry<>("/docs/*", "docs"));
+		entries.add(new RequestRouter.Entry<>("/docs/api/*", "api"));
+		entries.add(new RequestRouter.Entry<>("/docs/index.html", "index"));
+		entries.add(new RequestRouter.Entry<>("/examples/*", "examples"));
+		final CompiledRequestRouter<String> router = CompiledRequestRouter.create("localhost", entries, null);
+
+		assertEquals("docs", resolve(router, "localhost", "/docs/"));
+		assertEquals("docs", resolve(router, "localhost", "/docs/test.html?q=/docs/api/"));
+		assertEquals("api", resolve(router, "localhost", "/docs/api/"));
+		assertEquals("api", resolve(router, "localhost", "/docs/api/test.html"));
+		assertEquals("docs", resolve(router, "localhost", "/docs/ap"));
+		assertEquals("index", resolve(router, "localhost", "/docs/index.html"));
+		assertEquals("index", resolve(router, "localhost", "/docs/index.html?id=1"));
+		assertEquals("docs", resolve(router, "localhost", "/docs/index.html5"));
+		assertEquals("examples", resolve(router, "LocalHost:8080", "/examples/"));
+		assertNull(resolve(router, "localhost", "/docs"));
+		assertNull(resolve(router, "localhost", "/"));
+		assertNull(resolve(router, "localhost", "/exam"));
+	}
+
+	@Test
+	public void testDefaultPattern() throws Exception {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		entries.add(new RequestRouter.Entry<>("*", "default"));
+		entries.add(new RequestRouter.Entry<>("/docs/*", "docs"));
+		final CompiledRequestRouter<String> router = CompiledRequestRouter.create(null, entries, null);
+		assertEquals("default", resolve(router, "localhost", "/"));
+		assertEquals("default", resolve(router, "localhost", "/doc"));
+		assertEquals("docs", resolve(router, "localhost", "/docs/"));
+	}
+
+	@Test
+	public void testVirtualHost() throws Exception {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		entries.add(new RequestRouter.Entry<>("/docs/*", "default"));
+		entries.add(new RequestRouter.Entry<>("www.example.com", "/docs/*", "www"));
+		entries.add(new RequestRouter.Entry<>("*.example.com", "/docs/*", "wildcard"));
+		entries.add(new RequestRouter.Entry<>("*.api.example.com", "/docs/*", "api"));
+		final CompiledRequestRouter<String> router = CompiledRequestRouter.create("www.tamacat.org", entries, null);
+
+		assertEquals("default", resolve(router, "www.tamacat.org", "/docs/"));
+		assertEquals("www", resolve(router, "WWW.Example.com:443", "/docs/"));
+		assertEquals("wildcard", resolve(router, "test.example.com", "/docs/"));
+		assertEquals("wildcard", resolve(router, "a.test.example.com", "/docs/"));
+		assertEquals("api", resolve(router, "v1.API.example.com", "/docs/"));
+		assertThrows(MisdirectedRequestException.class, () -> resolve(router, "example.com", "/docs/"));
+		assertThrows(MisdirectedRequestException.class, () -> resolve(router, "localhost", "/docs/"));
+		assertThrows(MisdirectedRequestException.class, () -> resolve(router, null, "/docs/"));
+	}
+
+	@Test
+	public void testDownstream() throws Exception {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		entries.add(new RequestRouter.Entry<>("www.example.com", "/docs/*", "www"));
+		final CompiledRequestRouter<String> router = CompiledRequestRouter.create("localhost", entries,
+			(request, context) -> "downstream");
+		assertEquals("www", resolve(router, "www.example.com", "/docs/"));
+		assertNull(resolve(router, "www.example.com", "/"));
+		assertEquals("downstream", resolve(router, "localhost", "/docs/"));
+		assertEquals("downstream", resolve(router, null, "/docs/"));
+	}
+
+	@Test
+	public void testSameAsRequestRouter() throws Exception {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		for (final String pattern : new String[] {"*", "/", "/a*", "/a/*", "/a/b", "/a/b/*", "/ab/*", "/b/*", "/a/b/c/*"}) {
+			entries.add(new RequestRouter.Entry<>(pattern, pattern));
+			entries.add(new RequestRouter.Entry<>("www.example.com", pattern, "www" + pattern));
+		}
+		final CompiledRequestRouter<String> router = CompiledRequestRouter.create("localhost", entries, null);
+		final RequestRouter<String> requestRouter = RequestRouter.create(new URIAuthority("localhost"),
+			UriPatternType.URI_PATTERN, entries, RequestRouter.IGNORE_PORT_AUTHORITY_RESOLVER, null);
+		for (final String host : new String[] {"localhost", "www.example.com:8080"}) {
+			for (final String path : new String[] {"/", "/a", "/a/", "/a/b", "/a/b/", "/a/b/c", "/a/b/c/d", "/ab", "/ab/", "/b", "/b/c", "/c", "/a/b?c"}) {
+				assertEquals(resolve(requestRouter, host, path), resolve(router, host, path), host + path);
+			}
+		}
+	}
+
+	@Test
+	public void testIsSupported() {
+		final List<RequestRouter.Entry<String>> entries = new ArrayList<>();
+		entries.add(new RequestRouter.Entry<>("*", "default"));
+		entries.add(new RequestRouter.Entry<>("/docs/*", "docs"));
+		entries.add(new RequestRouter.Entry<>("/docs/index.html", "index"));
+		assertTrue(CompiledRequestRouter.isSupported(entries));
+		entries.add(new RequestRouter.Entry<>("*.html", "html"));
+		assertFalse(CompiledRequestRouter.isSupported(entries));
+		assertThrows(IllegalArgumentException.class, () -> CompiledRequestRouter.create("localhost", entries, null));
+	}
+
+	static <T> T resolve(final HttpRequestMapper<T> router, final String authority, final String path)
+			throws HttpException, URISyntaxException {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", path);
+		if (authority != null) {
+			request.setAuthority(URIAuthority.create(authority));
+		}
+		return router.resolve(request, null);
+	}
+}
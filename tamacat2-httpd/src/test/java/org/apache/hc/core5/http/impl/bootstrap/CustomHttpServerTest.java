@@ -0,0 +1,113 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.hc.core5.http.impl.bootstrap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.StandardSocketOptions;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.Test;
+
+public class CustomHttpServerTest {
+
+	@Test
+	public void testVirtualThreads() throws Exception {
+		final AtomicBoolean virtual = new AtomicBoolean();
+		final HttpServer server = CustomServerBootstrap.bootstrap()
+			.setLocalAddress(InetAddress.getLoopbackAddress())
+			.setVirtualThreads(true)
+			.register("*", (request, response, context) -> {
+				virtual.set(Thread.currentThread().isVirtual());
+				response.setEntity(new StringEntity("OK", ContentType.TEXT_PLAIN));
+			}).create();
+		assertTrue(server instanceof CustomHttpServer);
+		server.start();
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+			final OutputStream out = socket.getOutputStream();
+			final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+			//2 requests on the keep-alive connection.
+			for (int i = 0; i < 2; i++) {
+				out.write("GET / HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+				out.flush();
+				assertEquals("HTTP/1.1 200 OK", in.readLine());
+				String line;
+				while ((line = in.readLine()) != null && !line.isEmpty()) {
+				}
+				final char[] body = new char[2];
+				assertEquals(2, in.read(body));
+				assertEquals("OK", new String(body));
+			}
+		} finally {
+			server.close(CloseMode.IMMEDIATE);
+		}
+		assertTrue(virtual.get());
+	}
+
+	@Test
+	public void testPlatformThreads() throws Exception {
+		final HttpServer server = CustomServerBootstrap.bootstrap()
+			.register("*", (request, response, context) -> {}).create();
+		assertEquals(HttpServer.class, server.getClass());
+	}
+
+	@Test
+	public void testAcceptors() throws Exception {
+		try (ServerSocket socket = new ServerSocket()) {
+			assumeTrue(socket.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT), "SO_REUSEPORT is not supported");
+		}
+		final Set<String> threads = ConcurrentHashMap.newKeySet();
+		final HttpServer server = CustomServerBootstrap.bootstrap()
+			.setLocalAddress(InetAddress.getLoopbackAddress())
+			.setAcceptors(4)
+			.register("*", (request, response, context) -> {
+				threads.add(Thread.currentThread().getName());
+				response.setEntity(new StringEntity("OK", ContentType.TEXT_PLAIN));
+			}).create();
+		assertTrue(server instanceof CustomHttpServer);
+		server.start();
+		try {
+			assertEquals(4, ((CustomHttpServer)server).getAcceptors());
+			for (int i = 0; i < 20; i++) {
+				try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort())) {
+					final OutputStream out = socket.getOutputStream();
+					final BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.ISO_8859_1));
+					out.write("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+					out.flush();
+					assertEquals("HTTP/1.1 200 OK", in.readLine());
+				}
+			}
+		} finally {
+			server.close(CloseMode.IMMEDIATE);
+		}
+		assertFalse(threads.isEmpty());
+	}
+}
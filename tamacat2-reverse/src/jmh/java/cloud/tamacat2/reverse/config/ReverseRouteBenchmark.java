@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import java.net.URI;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cloud.tamacat2.httpd.config.UrlConfig;
+
+/**
+ * Per-request cost of the path conversion of {@link ReverseRoute}
+ * and the URL parsing and regular expressions before the ReverseRoute.
+ * <pre>mvn -Pjmh -pl tamacat2-reverse install exec:exec -Djmh.args=ReverseRouteBenchmark</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReverseRouteBenchmark {
+
+	final String requestPath = "/examples/servlet/index.jsp?id=12345&name=tamacat";
+	final String location = "http://localhost:8080/examples2/servlet/login.jsp?next=index.jsp";
+	final String requestedOrigin = "https://www.example.com";
+
+	ReverseConfig reverse;
+	ReverseRoute route;
+
+	@Setup
+	public void setup() {
+		reverse = ReverseConfig.create().url("http://localhost:8080/examples2/");
+		reverse.setUrlConfig(UrlConfig.create().path("/examples/"));
+		route = reverse.getRoute();
+	}
+
+	@Benchmark
+	public String targetPath() {
+		return route.getTargetPath(requestPath);
+	}
+
+	@Benchmark
+	public String targetPathLegacy() throws Exception {
+		final URL reverseUrl = new URI(reverse.getUrl()).toURL();
+		final String distUrl = requestPath.replaceFirst(reverse.getUrlConfig().getPath(), reverseUrl.getPath());
+		int port = reverseUrl.getPort();
+		if (port == -1) {
+			port = reverseUrl.getDefaultPort();
+		}
+		final URI dist = new URI(distUrl);
+		return new URI(reverseUrl.getProtocol(), null, reverseUrl.getHost(), port,
+			dist.getPath(), dist.getQuery(), dist.getFragment()).toURL().getFile();
+	}
+
+	@Benchmark
+	public String requestedUrl() {
+		return route.getRequestedUrl(location, requestedOrigin);
+	}
+
+	@Benchmark
+	public String requestedUrlLegacy() throws Exception {
+		final URL reverseUrl = new URI(reverse.getUrl()).toURL();
+		final URL host = new URI(requestedOrigin).toURL();
+		return location.replaceFirst(reverseUrl.getProtocol() + "://" + reverseUrl.getAuthority(), host.toString())
+			.replace(reverseUrl.getPath(), reverse.getUrlConfig().getPath());
+	}
+}
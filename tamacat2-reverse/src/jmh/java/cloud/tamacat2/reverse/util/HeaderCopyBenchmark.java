@@ -0,0 +1,141 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.util;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.util.TextUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import cloud.tamacat2.httpd.config.HttpConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+
+/**
+ * Header copy of the request and response with {@link HeaderTable},
+ * and the lower case HashSet lookup and the rewrite helpers before the HeaderTable.
+ * <pre>mvn -Pjmh -pl tamacat2-reverse install exec:exec -Djmh.args="HeaderCopyBenchmark -prof gc"</pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeaderCopyBenchmark {
+
+	static final Set<String> HOP_BY_HOP = new HashSet<>(Arrays.asList(
+		"host", "content-length", "connection", "keep-alive", "proxy-authenticate", "proxy-authorization",
+		"te", "trailer", "transfer-encoding", "upgrade", "accept-encoding"));
+
+	HttpRequest request;
+	HttpResponse response;
+	RewriteContext rewriteContext;
+	ReverseConfig reverse;
+
+	@Setup
+	public void setup() {
+		final ReverseUrlConfig urlConfig = ReverseUrlConfig.create().path("/examples/");
+		urlConfig.httpConfig(HttpConfig.create().port(80));
+		reverse = ReverseConfig.create().url("http://localhost:8080/examples2/");
+		reverse.setUrlConfig(urlConfig);
+
+		request = new BasicHttpRequest("GET", "/examples/index.html");
+		request.addHeader(HttpHeaders.HOST, "www.example.com");
+		request.addHeader(HttpHeaders.USER_AGENT, "Mozilla/5.0 (X11; Linux x86_64) Gecko/20100101 Firefox/130.0");
+		request.addHeader(HttpHeaders.ACCEPT, "text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8");
+		request.addHeader(HttpHeaders.ACCEPT_LANGUAGE, "ja,en-US;q=0.7,en;q=0.3");
+		request.addHeader(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate, br");
+		request.addHeader(HttpHeaders.CONNECTION, "keep-alive");
+		request.addHeader("Cookie", "SID=1234567890");
+		request.addHeader("Upgrade-Insecure-Requests", "1");
+		rewriteContext = RewriteContext.create(request, reverse);
+
+		response = new BasicHttpResponse(200);
+		response.addHeader(HttpHeaders.DATE, "Sat, 17 Oct 2026 00:00:00 GMT");
+		response.addHeader(HttpHeaders.SERVER, "Apache");
+		response.addHeader(HttpHeaders.CONTENT_TYPE, "text/html; charset=UTF-8");
+		response.addHeader(HttpHeaders.CONTENT_LENGTH, "1024");
+		response.addHeader(HttpHeaders.CACHE_CONTROL, "no-cache");
+		response.addHeader(HttpHeaders.KEEP_ALIVE, "timeout=5, max=100");
+		response.addHeader(HttpHeaders.CONNECTION, "Keep-Alive");
+		response.addHeader("Set-Cookie", "SID=1234567890; Path=/examples2; HttpOnly");
+	}
+
+	@Benchmark
+	public HttpRequest copyRequestHeaders() {
+		final HttpRequest outgoing = new BasicHttpRequest("GET", "/examples2/index.html");
+		ReverseUtils.copyRequestHeaders(request, outgoing, "192.168.1.1", "http");
+		return outgoing;
+	}
+
+	@Benchmark
+	public HttpRequest copyRequestHeadersLegacy() {
+		final HttpRequest outgoing = new BasicHttpRequest("GET", "/examples2/index.html");
+		for (final Iterator<Header> it = request.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			if (!HOP_BY_HOP.contains(TextUtils.toLowerCase(header.getName()))) {
+				outgoing.addHeader(header);
+			}
+		}
+		outgoing.setHeader("X-Forwarded-For", "192.168.1.1");
+		outgoing.setHeader("X-Forwarded-Proto", "http");
+		return outgoing;
+	}
+
+	@Benchmark
+	public HttpResponse copyResponseHeaders() {
+		final HttpResponse outgoing = new BasicHttpResponse(200);
+		ReverseUtils.copyResponseHeaders(response, outgoing, rewriteContext);
+		return outgoing;
+	}
+
+	@Benchmark
+	@SuppressWarnings("deprecation")
+	public HttpResponse copyResponseHeadersLegacy() {
+		final HttpResponse outgoing = new BasicHttpResponse(200);
+		for (final Iterator<Header> it = response.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			if (!HOP_BY_HOP.contains(TextUtils.toLowerCase(header.getName()))) {
+				outgoing.addHeader(header);
+			}
+		}
+		ReverseUtils.rewriteContentLocationHeader(request, outgoing, reverse);
+		ReverseUtils.rewriteServerHeader(outgoing, reverse);
+		ReverseUtils.rewriteLocationHeader(request, outgoing, reverse);
+		ReverseUtils.rewriteSetCookieHeader(request, outgoing, reverse);
+		return outgoing;
+	}
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse;
+
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.ExecutionException;
+
+import javax.net.ssl.SSLContext;
+
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.URIScheme;
+import org.apache.hc.core5.http.impl.HttpProcessors;
+import org.apache.hc.core5.http.impl.bootstrap.AsyncRequesterBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.AsyncServerBootstrap;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncRequester;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncServer;
+import org.apache.hc.core5.http.nio.ssl.BasicServerTlsStrategy;
+import org.apache.hc.core5.http.protocol.HttpProcessorBuilder;
+import org.apache.hc.core5.http.ssl.TLS;
+import org.apache.hc.core5.http.ssl.TlsCiphers;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.config.HttpConfig;
+import cloud.tamacat2.httpd.config.HttpsConfig;
+import cloud.tamacat2.httpd.config.UrlConfig;
+import cloud.tamacat2.httpd.filter.TraceHttp1StreamListener;
+import cloud.tamacat2.httpd.metrics.AsyncMetricsHandler;
+import cloud.tamacat2.httpd.ssl.SSLContextCreator;
+import cloud.tamacat2.httpd.util.StringUtils;
+import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+import cloud.tamacat2.reverse.listener.TraceConnPoolListener;
+import cloud.tamacat2.reverse.metrics.BackendMetricsCollector;
+import cloud.tamacat2.reverse.pool.IdleConnectionEvictor;
+
+/**
+ * <p>Reverse proxy server using non-blocking I/O. ({@link HttpAsyncServer} and {@link HttpAsyncRequester})<br>
+ * The in-flight requests are held by a few I/O reactor threads instead of a worker thread per request.
+ * <ul>
+ *   <li>Only the {@link ReverseUrlConfig} is served. (Use {@link ReverseProxy} for the static contents.)</li>
+ *   <li>The HttpFilters of the {@link UrlConfig} are not applied.</li>
+ *   <li>The HttpRequestInterceptors/HttpResponseInterceptors are applied to the message headers.
+ *   The interceptors that replace a classic HttpEntity (gzip, link conversion) are skipped.</li>
+ * </ul>
+ */
+public class AsyncReverseProxy extends ReverseProxy {
+
+	static final Logger LOG = LoggerFactory.getLogger(AsyncReverseProxy.class);
+
+	protected final TraceConnPoolListener connPoolListener = new TraceConnPoolListener();
+	protected HttpAsyncRequester requester;
+
+	@Override
+	public void startup(final HttpConfig config) {
+		final int port = config.getPort();
+		final HttpAsyncServer server = createHttpAsyncServer(config);
+
+		startPluginServers();
+
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			@Override
+			public void run() {
+				LOG.info(config.getServerName() + ":" + port + " shutting down");
+				server.close(CloseMode.GRACEFUL);
+				closeResources();
+			}
+		});
+
+		try {
+			server.start();
+			server.listen(new InetSocketAddress(port), config.useHttps() ? URIScheme.HTTPS : URIScheme.HTTP).get();
+			LOG.info("Listening on port " + port + " (async)");
+			server.awaitShutdown(TimeValue.MAX_VALUE);
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	public HttpAsyncServer createHttpAsyncServer(final HttpConfig config) {
+		if (config.useHttp2()) {
+			LOG.warn("HTTP/2 is not supported by AsyncReverseProxy (HTTP/1.1 only)");
+		}
+		if (config.useReusePort()) {
+			LOG.warn("reusePort is not supported by AsyncReverseProxy (one listener socket)");
+		}
+		final Collection<ReverseUrlConfig> reverseConfigs = new ArrayList<>();
+		for (final UrlConfig urlConfig : config.getUrlConfigs()) {
+			urlConfig.httpConfig(config);
+			if (urlConfig instanceof ReverseUrlConfig) {
+				reverseConfigs.add((ReverseUrlConfig)urlConfig);
+			} else {
+				LOG.warn("register: path="+urlConfig.getPath()+"* is not supported by AsyncReverseProxy (skipped)");
+			}
+			if (urlConfig.getHttpFilters().size() > 0) {
+				LOG.warn("register: path="+urlConfig.getPath()+"* HttpFilters are not supported by AsyncReverseProxy (skipped)");
+			}
+		}
+		requester = createRequesterBootstrap(config, reverseConfigs).create();
+		requester.start();
+		resources.add(() -> requester.close(CloseMode.GRACEFUL));
+		final IdleConnectionEvictor connectionEvictor = createConnectionEvictor(requester, reverseConfigs);
+		if (connectionEvictor != null) {
+			resources.add(connectionEvictor.start());
+		}
+
+		final AsyncServerBootstrap bootstrap = AsyncServerBootstrap.bootstrap()
+				.setCanonicalHostName(config.getCanonicalHostName()) //Not authoritative
+				.setIOReactorConfig(ioReactorConfig(config));
+
+		// HTTPS
+		if (config.useHttps()) {
+			final HttpsConfig https = config.getHttpsConfig();
+			final SSLContext sslContext = new SSLContextCreator(https).getSSLContext();
+			bootstrap.setTlsStrategy(new BasicServerTlsStrategy(sslContext, (endpoint, sslEngine) -> {
+				sslEngine.setEnabledProtocols(TLS.excludeWeak(sslEngine.getEnabledProtocols()));
+				sslEngine.setEnabledCipherSuites(TlsCiphers.excludeWeak(sslEngine.getEnabledCipherSuites()));
+				if (https.useClientAuth()) {
+					sslEngine.setNeedClientAuth(true);
+				}
+			}, null));
+		}
+
+		getMetrics(config);
+		for (final ReverseUrlConfig urlConfig : reverseConfigs) {
+			registerAsyncReverseProxy(urlConfig, bootstrap);
+		}
+		if (metrics != null) {
+			registerMetricsCollectors();
+			LOG.info("register: path=" + config.getMetrics() + " Metrics");
+			bootstrap.register(config.getMetrics(), new AsyncMetricsHandler(metrics));
+		}
+
+		final HttpProcessorBuilder httpProcessorBuilder = HttpProcessors.customServer(config.getServerName());
+		httpRequestInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+		httpResponseInterceptors.forEach(i-> httpProcessorBuilder.add(i));
+
+		bootstrap.setHttpProcessor(httpProcessorBuilder.build());
+		bootstrap.setStreamListener(new TraceHttp1StreamListener())
+				 .setExceptionCallback(e -> LOG.debug(e.getMessage()));
+		return bootstrap.create();
+	}
+
+	protected void registerAsyncReverseProxy(final ReverseUrlConfig urlConfig, final AsyncServerBootstrap bootstrap) {
+		try {
+			final HttpHost targetHost = HttpHost.create(urlConfig.getReverse().getTarget().toURI());
+			final AsyncReverseProxyHandler handler = new AsyncReverseProxyHandler(targetHost, urlConfig, requester);
+			handler.setAccessLog(getAccessLog(urlConfig.getHttpConfig()));
+			if (metrics != null) {
+				handler.setMetrics(metrics.getRequestMetrics(getRouteName(urlConfig)));
+				metrics.register(new BackendMetricsCollector(getRouteName(urlConfig), handler.getBackends(), requester));
+			}
+			resources.add(handler);
+			LOG.info("register: VirtualHost="+getVirtualHost(urlConfig)+", path="+urlConfig.getPath()+"* AsyncReverseProxy to "+getTargets(handler.getBackends()));
+			if (StringUtils.isNotEmpty(urlConfig.getHostname())) {
+				bootstrap.register(urlConfig.getHostname(), urlConfig.getPath() + "*", handler);
+			} else {
+				bootstrap.register(urlConfig.getPath() + "*", handler);
+			}
+		} catch (Exception e) {
+			LOG.error(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * One backend connection pool is shared by all routes. (pooled per target host)
+	 */
+	protected AsyncRequesterBootstrap createRequesterBootstrap(final HttpConfig config, final Collection<ReverseUrlConfig> reverseConfigs) {
+		Timeout timeToLive = null;
+		for (final ReverseUrlConfig urlConfig : reverseConfigs) {
+			final Timeout ttl = urlConfig.getConnectionTimeToLive();
+			if (ttl != null && (timeToLive == null || ttl.compareTo(timeToLive) < 0)) {
+				timeToLive = ttl;
+			}
+		}
+		return AsyncRequesterBootstrap.bootstrap()
+				.setIOReactorConfig(ioReactorConfig(config))
+				.setConnPoolListener(connPoolListener)
+				.setMaxTotal(config.getMaxTotal())
+				.setDefaultMaxPerRoute(config.getMaxParRoute())
+				.setTimeToLive(timeToLive);
+	}
+
+	/**
+	 * The idle connections are evicted with the shortest idle timeout of the routes.
+	 */
+	protected IdleConnectionEvictor createConnectionEvictor(final HttpAsyncRequester requester, final Collection<ReverseUrlConfig> reverseConfigs) {
+		ReverseUrlConfig shortest = null;
+		for (final ReverseUrlConfig urlConfig : reverseConfigs) {
+			final TimeValue idleTimeout = urlConfig.getConnectionIdleTimeout();
+			if (idleTimeout != null && (shortest == null || idleTimeout.compareTo(shortest.getConnectionIdleTimeout()) < 0)) {
+				shortest = urlConfig;
+			}
+		}
+		return shortest != null ? new IdleConnectionEvictor(requester,
+				shortest.getConnectionIdleTimeout(), shortest.getConnectionEvictInterval()) : null;
+	}
+
+	public HttpAsyncRequester getRequester() {
+		return requester;
+	}
+
+	public TraceConnPoolListener getConnPoolListener() {
+		return connPoolListener;
+	}
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse;
+
+import java.io.Closeable;
+import java.util.List;
+
+import org.apache.hc.core5.function.Supplier;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.impl.bootstrap.HttpAsyncRequester;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncServerExchangeHandler;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.util.Timeout;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.log.AccessLogWriter;
+import cloud.tamacat2.httpd.metrics.RequestMetrics;
+import cloud.tamacat2.httpd.util.AccessLogUtils;
+import cloud.tamacat2.reverse.balancer.Backend;
+import cloud.tamacat2.reverse.balancer.HealthChecker;
+import cloud.tamacat2.reverse.balancer.LoadBalancer;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+import cloud.tamacat2.reverse.nio.IncomingExchangeHandler;
+import cloud.tamacat2.reverse.util.ReverseUtils;
+import cloud.tamacat2.reverse.util.RewriteContext;
+
+/**
+ * HTTP/1.1 reverse proxy using non-blocking I/O.
+ * <p>Creates a pair of exchange handlers for each request. The request and response bodies are
+ * streamed through a bounded buffer, so no thread is held while waiting for the origin server.
+ * The backend connection pool ({@link HttpAsyncRequester}) is shared by all routes of the {@link AsyncReverseProxy}.
+ * <p>The backends that are down or ejected by the circuit breaker are skipped as {@link ReverseProxyHandler}.
+ *
+ * @see
+ * https://github.com/apache/httpcomponents-core/blob/5.1.x/httpcore5/src/test/java/org/apache/hc/core5/http/examples/AsyncReverseProxyExample.java
+ */
+public class AsyncReverseProxyHandler implements Supplier<AsyncServerExchangeHandler>, Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(AsyncReverseProxyHandler.class);
+
+	protected final HttpHost targetHost;
+	protected final ReverseUrlConfig urlConfig;
+	protected final ReverseConfig reverseConfig;
+	protected final List<Backend> backends;
+	protected final LoadBalancer loadBalancer;
+	protected final HttpAsyncRequester requester;
+	protected final HealthChecker healthChecker;
+	protected AccessLogWriter accessLog;
+	protected RequestMetrics metrics;
+
+	public AsyncReverseProxyHandler(final HttpHost targetHost, final ReverseUrlConfig urlConfig, final HttpAsyncRequester requester) {
+		this.targetHost = targetHost;
+		this.urlConfig = urlConfig;
+		this.reverseConfig = urlConfig.getReverse();
+		this.backends = Backend.create(urlConfig.getReverses(), urlConfig.getCircuitBreaker());
+		this.loadBalancer = urlConfig.getLoadBalancer();
+		this.requester = requester;
+		this.healthChecker = urlConfig.getHealthCheck() != null
+			? new HealthChecker(urlConfig.getHealthCheck(), backends).start() : null;
+	}
+
+	@Override
+	public AsyncServerExchangeHandler get() {
+		return new IncomingExchangeHandler(this);
+	}
+
+	/**
+	 * Select the backend of this request.
+	 * @return null if no backend is available.
+	 */
+	public Backend selectBackend(final HttpRequest incomingRequest, final HttpContext serverContext) {
+		return loadBalancer.acquire(backends);
+	}
+
+	/**
+	 * Create the request to the origin server. (without the request body)
+	 */
+	public HttpRequest createOutgoingRequest(final HttpRequest incomingRequest, final HttpContext serverContext, final Backend backend) {
+		final ReverseConfig reverseConfig = backend.getReverseConfig();
+		final HttpHost targetHost = backend.getTarget();
+		serverContext.setAttribute(ReverseConfig.class.getName(), reverseConfig);
+		final String reverseTargetPath = ReverseUtils.getReverseTargetPath(reverseConfig, incomingRequest.getPath());
+		final HttpRequest outgoingRequest = new BasicHttpRequest(incomingRequest.getMethod(), targetHost, reverseTargetPath);
+		outgoingRequest.setVersion(HttpVersion.HTTP_1_1); //force HTTP/1.1
+		//Delete Hop-by-hop Headers and add X-Forwarded headers
+		ReverseUtils.copyRequestHeaders(incomingRequest, outgoingRequest,
+			AccessLogUtils.getRemoteAddress(serverContext), incomingRequest.getScheme());
+		final RewriteContext rewriteContext = RewriteContext.create(incomingRequest, serverContext, reverseConfig);
+		ReverseUtils.appendHostHeader(outgoingRequest, reverseConfig);
+		ReverseUtils.rewriteHostHeader(outgoingRequest, rewriteContext);
+		return outgoingRequest;
+	}
+
+	/**
+	 * Create the response to the client. (without the response body)
+	 */
+	public HttpResponse createOutgoingResponse(final HttpRequest incomingRequest, final HttpResponse incomingResponse,
+			final HttpContext serverContext) {
+		final RewriteContext rewriteContext = RewriteContext.getContext(serverContext);
+		final HttpResponse outgoingResponse = new BasicHttpResponse(incomingResponse.getCode());
+		//Copy and rewrite response headers
+		ReverseUtils.copyResponseHeaders(incomingResponse, outgoingResponse, rewriteContext);
+		ReverseUtils.rewriteStatusLine(incomingRequest, outgoingResponse);
+		return outgoingResponse;
+	}
+
+	/**
+	 * Write the access log of the completed exchange.
+	 */
+	public void log(final HttpRequest request, final HttpResponse response, final HttpContext context, final long startTime) {
+		if (request != null && response != null) {
+			AccessLogUtils.log(accessLog, request, response, context, (System.currentTimeMillis() - startTime));
+		}
+	}
+
+	/**
+	 * Notify the start of the exchange to the request metrics of this route.
+	 */
+	public void begin() {
+		if (metrics != null) {
+			metrics.begin();
+		}
+	}
+
+	/**
+	 * Record the completed exchange that was started by {@link #begin()}.
+	 * @param response null if no response was sent. (counted as 5xx)
+	 */
+	public void end(final HttpRequest request, final HttpResponse response, final long latencyNanos) {
+		if (metrics != null) {
+			metrics.end(request, response, latencyNanos);
+		}
+	}
+
+	/**
+	 * Set the access log writer of the completed exchanges.
+	 * @param accessLog null to log with the "Access" logger. (default)
+	 */
+	public void setAccessLog(final AccessLogWriter accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Set the request metrics of this route.
+	 * @param metrics null if the metrics are disabled. (default)
+	 */
+	public void setMetrics(final RequestMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	public HttpHost getTargetHost() {
+		return targetHost;
+	}
+
+	public List<Backend> getBackends() {
+		return backends;
+	}
+
+	public Timeout getConnectTimeout() {
+		return reverseConfig.getConnectTimeout();
+	}
+
+	public HttpAsyncRequester getRequester() {
+		return requester;
+	}
+
+	public ReverseUrlConfig getUrlConfig() {
+		return urlConfig;
+	}
+
+	/**
+	 * Stop the health check. (The shared connection pool is closed by the {@link AsyncReverseProxy}.)
+	 */
+	@Override
+	public void close() {
+		if (healthChecker != null) {
+			healthChecker.close();
+		}
+	}
+}
@@ -15,17 +15,26 @@
  */
 package cloud.tamacat2.reverse;
 
+import java.util.Collection;
+import java.util.StringJoiner;
+
 import org.apache.hc.core5.http.HttpHost;
 import org.apache.hc.core5.http.HttpRequestInterceptor;
 import org.apache.hc.core5.http.HttpResponseInterceptor;
 import org.apache.hc.core5.http.impl.bootstrap.CustomServerBootstrap;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import cloud.tamacat2.httpd.WebServer;
 import cloud.tamacat2.httpd.config.UrlConfig;
+import cloud.tamacat2.reverse.balancer.Backend;
+import cloud.tamacat2.reverse.cache.RequestCoalescingHandler;
+import cloud.tamacat2.reverse.cache.ResponseCache;
+import cloud.tamacat2.reverse.cache.ResponseCacheHandler;
 import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+import cloud.tamacat2.reverse.metrics.BackendMetricsCollector;
 
 public class ReverseProxy extends WebServer {
 
@@ -42,13 +51,69 @@ public class ReverseProxy extends WebServer {
 	protected void registerReverseProxy(final ReverseUrlConfig urlConfig, final CustomServerBootstrap bootstrap) {
 		try {
 			final HttpHost targetHost = HttpHost.create(urlConfig.getReverse().getTarget().toURI());
-			LOG.info("register: VirtualHost="+getVirtualHost(urlConfig)+", path="+urlConfig.getPath()+"* ReverseProxy to "+targetHost);
-			register(urlConfig, bootstrap, new ReverseProxyHandler(targetHost, urlConfig));
+			final ReverseProxyHandler handler = new ReverseProxyHandler(targetHost, urlConfig);
+			handler.setAccessLog(getAccessLog(urlConfig.getHttpConfig()));
+			if (metrics != null) {
+				metrics.register(new BackendMetricsCollector(getRouteName(urlConfig), handler.getBackends(), handler.getConnPoolControl()));
+			}
+			LOG.info("register: VirtualHost="+getVirtualHost(urlConfig)+", path="+urlConfig.getPath()+"* ReverseProxy to "+getTargets(handler.getBackends())
+				+ (urlConfig.getCache() != null ? " (cache)" : "") + (urlConfig.getCoalescing() != null ? " (coalescing)" : ""));
+			register(urlConfig, bootstrap, createRouteHandler(urlConfig, handler));
 		} catch (Exception e) {
 			LOG.error(e.getMessage(), e);
 		}
 	}
 	
+	/**
+	 * Wrap the handler with the response cache and the request coalescing, if configured.
+	 * (ResponseCacheHandler -&gt; RequestCoalescingHandler -&gt; ReverseProxyHandler)
+	 */
+	protected HttpRequestHandler createRouteHandler(final ReverseUrlConfig urlConfig, final ReverseProxyHandler handler) {
+		HttpRequestHandler routeHandler = handler;
+		if (urlConfig.getCoalescing() != null) {
+			final RequestCoalescingHandler coalescingHandler = new RequestCoalescingHandler(routeHandler, urlConfig.getCoalescing());
+			coalescingHandler.setAccessLog(getAccessLog(urlConfig.getHttpConfig()));
+			if (metrics != null) {
+				final String route = getRouteName(urlConfig);
+				metrics.register(writer -> {
+					writer.counter("tamacat2_coalescing_leaders_total", "Requests sent to the backend for the coalesced requests.",
+						coalescingHandler.getLeaders(), "route", route);
+					writer.counter("tamacat2_coalescing_coalesced_total", "Requests served by the response of the leader.",
+						coalescingHandler.getCoalesced(), "route", route);
+					writer.counter("tamacat2_coalescing_timeouts_total", "Requests timed out waiting for the leader.",
+						coalescingHandler.getTimeouts(), "route", route);
+				});
+			}
+			routeHandler = coalescingHandler;
+		}
+		if (urlConfig.getCache() != null) {
+			final ResponseCacheHandler cacheHandler = new ResponseCacheHandler(routeHandler, new ResponseCache(urlConfig.getCache()));
+			cacheHandler.setAccessLog(getAccessLog(urlConfig.getHttpConfig()));
+			if (metrics != null) {
+				final String route = getRouteName(urlConfig);
+				final ResponseCache cache = cacheHandler.getResponseCache();
+				metrics.register(writer -> {
+					writer.counter("tamacat2_response_cache_hits_total", "Hits of the response cache.", cache.getHits(), "route", route);
+					writer.counter("tamacat2_response_cache_misses_total", "Misses of the response cache.", cache.getMisses(), "route", route);
+					writer.counter("tamacat2_response_cache_revalidations_total", "Revalidated responses of the response cache.",
+						cache.getRevalidations(), "route", route);
+					writer.counter("tamacat2_response_cache_evictions_total", "Evictions of the response cache.", cache.getEvictions(), "route", route);
+					writer.gauge("tamacat2_response_cache_bytes", "Bytes of the response cache.", cache.getTotalBytes(), "route", route);
+				});
+			}
+			routeHandler = cacheHandler;
+		}
+		return routeHandler;
+	}
+	
+	protected String getTargets(final Collection<Backend> backends) {
+		final StringJoiner targets = new StringJoiner(", ");
+		for (final Backend backend : backends) {
+			targets.add(backend.getTarget().toString() + (backends.size() > 1 ? "(weight="+backend.getWeight()+")" : ""));
+		}
+		return targets.toString();
+	}
+	
 	public ReverseProxy addHttpRequestInterceptor(final HttpRequestInterceptor interceptor) {
 		httpRequestInterceptors.add(interceptor);
 		return this;
@@ -15,16 +15,14 @@
  */
 package cloud.tamacat2.reverse;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.List;
 
 import org.apache.hc.core5.http.ClassicHttpRequest;
 import org.apache.hc.core5.http.ClassicHttpResponse;
-import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.ConnectionRequestTimeoutException;
+import org.apache.hc.core5.http.ContentType;
 import org.apache.hc.core5.http.HttpException;
 import org.apache.hc.core5.http.HttpHeaders;
 import org.apache.hc.core5.http.HttpHost;
@@ -32,57 +30,74 @@ import org.apache.hc.core5.http.HttpVersion;
 import org.apache.hc.core5.http.impl.bootstrap.HttpRequester;
 import org.apache.hc.core5.http.impl.bootstrap.RequesterBootstrap;
 import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.entity.StringEntity;
 import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.apache.hc.core5.http.protocol.HttpCoreContext;
-import org.apache.hc.core5.util.TextUtils;
-import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.ConnPoolControl;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import cloud.tamacat2.httpd.error.ErrorPageTemplate;
+import cloud.tamacat2.httpd.error.HttpStatusException;
+import cloud.tamacat2.httpd.error.ServiceUnavailableException;
+import cloud.tamacat2.httpd.log.AccessLogWriter;
 import cloud.tamacat2.httpd.util.AccessLogUtils;
+import cloud.tamacat2.httpd.util.HeaderUtils;
+import cloud.tamacat2.reverse.balancer.Backend;
+import cloud.tamacat2.reverse.balancer.HealthChecker;
+import cloud.tamacat2.reverse.balancer.LoadBalancer;
 import cloud.tamacat2.reverse.config.ReverseConfig;
 import cloud.tamacat2.reverse.config.ReverseUrlConfig;
 import cloud.tamacat2.reverse.listener.TraceConnPoolListener;
+import cloud.tamacat2.reverse.pool.IdleConnectionEvictor;
 import cloud.tamacat2.reverse.util.ReverseUtils;
+import cloud.tamacat2.reverse.util.RewriteContext;
 
 /**
  * HTTP/1.1 reverse proxy using classic I/O.
+ * <p>The backend connection pool ({@link HttpRequester}) is created once per route
+ * and shared by all worker threads, so keep-alive connections to the origin are reused.
+ * <p>When the route has multiple backends, the {@link LoadBalancer} of the {@link ReverseUrlConfig}
+ * selects the backend for each request. (The connections are pooled per backend host.)
+ * <p>A backend that is down ({@link HealthChecker}) or ejected by the circuit breaker is skipped.
+ * If no backend is available, or the connection to the backend fails, 503 Service Unavailable is returned.
+ * <p>No monitor is held while waiting for the backend connection and response
+ * (the connection pool uses the ReentrantLock), so the virtual threads are not pinned. ({@link cloud.tamacat2.httpd.config.HttpConfig#virtualThreads(boolean)})
  * 
  * @see
  * https://github.com/apache/httpcomponents-core/blob/5.1.x/httpcore5/src/test/java/org/apache/hc/core5/http/examples/ClassicReverseProxyExample.java
  */
-public class ReverseProxyHandler implements HttpRequestHandler {
+public class ReverseProxyHandler implements HttpRequestHandler, Closeable {
 
 	static final Logger LOG = LoggerFactory.getLogger(ReverseProxyHandler.class);
 
-	//https://datatracker.ietf.org/doc/html/rfc2616#section-13.5.1
-	final static Set<String> HOP_BY_HOP = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
-		TextUtils.toLowerCase(HttpHeaders.HOST),
-		TextUtils.toLowerCase(HttpHeaders.CONTENT_LENGTH),
-		TextUtils.toLowerCase(HttpHeaders.CONNECTION),
-		TextUtils.toLowerCase(HttpHeaders.KEEP_ALIVE),
-		TextUtils.toLowerCase(HttpHeaders.PROXY_AUTHENTICATE),
-		TextUtils.toLowerCase(HttpHeaders.PROXY_AUTHORIZATION),
-		TextUtils.toLowerCase(HttpHeaders.TE),
-		TextUtils.toLowerCase(HttpHeaders.TRAILER),
-		TextUtils.toLowerCase(HttpHeaders.TRANSFER_ENCODING),
-		TextUtils.toLowerCase(HttpHeaders.UPGRADE),
-		
-		TextUtils.toLowerCase(HttpHeaders.ACCEPT_ENCODING) //uncompress
-	)));
-
 	protected final HttpHost targetHost;
 	protected final ReverseUrlConfig urlConfig;
 	protected final ReverseConfig reverseConfig;
+	protected final List<Backend> backends;
+	protected final LoadBalancer loadBalancer;
+	protected final TraceConnPoolListener connPoolListener = new TraceConnPoolListener();
 	protected final RequesterBootstrap requesterBootstrap;
+	protected final HttpRequester requester;
+	protected final IdleConnectionEvictor connectionEvictor;
+	protected final HealthChecker healthChecker;
+	protected AccessLogWriter accessLog;
 	
 	public ReverseProxyHandler(final HttpHost targetHost, final ReverseUrlConfig urlConfig) {
 		this.targetHost = targetHost;
 		this.urlConfig = urlConfig;
 		this.reverseConfig = urlConfig.getReverse();
+		this.backends = Backend.create(urlConfig.getReverses(), urlConfig.getCircuitBreaker());
+		this.loadBalancer = urlConfig.getLoadBalancer();
 		this.requesterBootstrap = createRequesterBootstrap();
+		this.requester = requesterBootstrap.create();
+		this.connectionEvictor = new IdleConnectionEvictor(requester,
+			urlConfig.getConnectionIdleTimeout(), urlConfig.getConnectionEvictInterval()).start();
+		this.healthChecker = urlConfig.getHealthCheck() != null
+			? new HealthChecker(urlConfig.getHealthCheck(), backends).start() : null;
 	}
 
 	@Override
@@ -90,37 +105,52 @@ public class ReverseProxyHandler implements HttpRequestHandler {
 			final HttpContext serverContext) throws HttpException, IOException {
 		final long startTime = System.currentTimeMillis();
 		final HttpCoreContext clientContext = HttpCoreContext.create();
+		final Backend backend = selectBackend(incomingRequest, serverContext);
+		if (backend == null) {
+			LOG.debug("[proxy->origin] no available backend. path="+urlConfig.getPath());
+			handleException(incomingRequest, outgoingResponse, new ServiceUnavailableException());
+			AccessLogUtils.log(accessLog, incomingRequest, outgoingResponse, serverContext, (System.currentTimeMillis()-startTime));
+			return;
+		}
+		final ReverseConfig reverseConfig = backend.getReverseConfig();
+		final HttpHost targetHost = backend.getTarget();
 		serverContext.setAttribute(ReverseConfig.class.getName(), reverseConfig);
 		final String reverseTargetPath = ReverseUtils.getReverseTargetPath(reverseConfig, incomingRequest.getPath());
 		final ClassicHttpRequest outgoingRequest = new BasicClassicHttpRequest(
 				incomingRequest.getMethod(), targetHost, reverseTargetPath);
 		outgoingRequest.setVersion(HttpVersion.HTTP_1_1); //force HTTP/1.1
-		for (final Iterator<Header> it = incomingRequest.headerIterator(); it.hasNext();) {
-			final Header header = it.next();
-			//Delete End-to-end and Hop-by-hop Headers
-			if (!HOP_BY_HOP.contains(TextUtils.toLowerCase(header.getName()))) {
-				outgoingRequest.addHeader(header);
-			}
-		}
+		//Delete Hop-by-hop Headers and add X-Forwarded headers
+		ReverseUtils.copyRequestHeaders(incomingRequest, outgoingRequest,
+			AccessLogUtils.getRemoteAddress(serverContext), incomingRequest.getScheme());
 		
+		final RewriteContext rewriteContext = RewriteContext.create(incomingRequest, serverContext, reverseConfig);
 		ReverseUtils.appendHostHeader(outgoingRequest, reverseConfig);
-		ReverseUtils.rewriteHostHeader(outgoingRequest, serverContext, reverseConfig);
-		
-		//Add X-Forwarded headers
-		outgoingRequest.setHeader("X-Forwarded-For", AccessLogUtils.getRemoteAddress(serverContext));
-		outgoingRequest.setHeader("X-Forwarded-Proto", incomingRequest.getScheme());
+		ReverseUtils.rewriteHostHeader(outgoingRequest, rewriteContext);
 		
 		outgoingRequest.setEntity(incomingRequest.getEntity());
-		final HttpRequester requester = requesterBootstrap.create();
-		LOG.debug("[proxy->origin] ConnPool: "+requester.getConnPoolControl().getTotalStats());
-		//Runtime.getRuntime().addShutdownHook(new Thread() {
-		//	@Override
-		//	public void run() {
-		//		requester.close(CloseMode.GRACEFUL);
-		//	}
-		//});
-		final ClassicHttpResponse incomingResponse = requester.execute(targetHost, outgoingRequest,
-			reverseConfig.getConnectTimeout(), clientContext);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("[proxy->origin] ConnPool: "+requester.getStats(targetHost));
+		}
+		final ClassicHttpResponse incomingResponse;
+		final long backendStartTime = System.nanoTime();
+		backend.begin();
+		try {
+			incomingResponse = requester.execute(targetHost, outgoingRequest,
+				reverseConfig.getConnectTimeout(), clientContext);
+			backend.response(incomingResponse.getCode());
+		} catch (IOException e) {
+			if (isConnectFailure(e, clientContext)) {
+				backend.connectFailure();
+			} else {
+				backend.failure();
+			}
+			LOG.warn("[proxy->origin] " + targetHost + " " + e.getMessage());
+			handleException(incomingRequest, outgoingResponse, new ServiceUnavailableException(e));
+			AccessLogUtils.log(accessLog, incomingRequest, outgoingResponse, serverContext, (System.currentTimeMillis()-startTime));
+			return;
+		} finally {
+			backend.endNanos(System.nanoTime()-backendStartTime);
+		}
 		
 		outgoingResponse.setCode(incomingResponse.getCode());
 		outgoingResponse.setVersion(incomingRequest.getVersion());
@@ -130,39 +160,88 @@ public class ReverseProxyHandler implements HttpRequestHandler {
 		} else {
 			AccessLogUtils.debug(LOG, outgoingRequest, outgoingResponse, clientContext, (System.currentTimeMillis()-startTime));
 		}
-		//Copy response headers
-		for (final Iterator<Header> it = incomingResponse.headerIterator(); it.hasNext();) {
-			final Header header = it.next();
-			//Delete End-to-end and Hop-by-hop Headers
-			if (!HOP_BY_HOP.contains(TextUtils.toLowerCase(header.getName()))) {
-				outgoingResponse.addHeader(header);
-			}
-		}
-		
-		//Rewite Response
-		rewriteResponseHeaders(outgoingRequest, outgoingResponse);
+		//Copy and rewrite response headers
+		copyResponseHeaders(incomingResponse, outgoingResponse, rewriteContext);
 		ReverseUtils.rewriteStatusLine(outgoingRequest, outgoingResponse);
 
 		outgoingResponse.setEntity(incomingResponse.getEntity());
-		AccessLogUtils.log(incomingRequest, incomingResponse, clientContext, (System.currentTimeMillis()-startTime));
-		
-		requester.closeIdle(TimeValue.ofMilliseconds(3000));
+		AccessLogUtils.log(accessLog, incomingRequest, outgoingResponse, serverContext, (System.currentTimeMillis()-startTime));
+	}
+	
+	/**
+	 * Select the backend of this request.
+	 * @return null if no backend is available.
+	 */
+	protected Backend selectBackend(final ClassicHttpRequest incomingRequest, final HttpContext serverContext) {
+		return loadBalancer.acquire(backends);
 	}
 	
-	protected void rewriteResponseHeaders(final ClassicHttpRequest outgoingRequest, final ClassicHttpResponse outgoingResponse) {
-		ReverseUtils.rewriteContentLocationHeader(outgoingRequest, outgoingResponse, reverseConfig);
-		ReverseUtils.rewriteServerHeader(outgoingResponse, reverseConfig);
+	/**
+	 * Whether the connection to the backend could not be established. (refused, unreachable, unknown host or connect timeout)
+	 * <p>The request executor sets the endpoint of the connection to the context before sending the request,
+	 * so the failure without the endpoint is of the connect phase, except the timeout of the connection pool.
+	 */
+	protected boolean isConnectFailure(final IOException e, final HttpCoreContext clientContext) {
+		return clientContext.getEndpointDetails() == null && e instanceof ConnectionRequestTimeoutException == false;
+	}
 	
-		//Location Header convert.
-		ReverseUtils.rewriteLocationHeader(outgoingRequest, outgoingResponse, reverseConfig);
+	protected void handleException(final ClassicHttpRequest req, final ClassicHttpResponse resp, final HttpStatusException e) {
+		final String accept = HeaderUtils.getHeader(req, HttpHeaders.ACCEPT);
+		if (accept != null && accept.startsWith(ContentType.APPLICATION_JSON.getMimeType())) {
+			resp.setEntity(new StringEntity(ErrorPageTemplate.create().getJson(e), ContentType.APPLICATION_JSON));
+		} else {
+			resp.setEntity(new StringEntity(ErrorPageTemplate.create().getHtml(e), ContentType.TEXT_HTML));
+		}
+		resp.setCode(e.getHttpStatus());
+	}
 	
-		//Set-Cookie Header convert.
-		ReverseUtils.rewriteSetCookieHeader(outgoingRequest, outgoingResponse, reverseConfig);
+	/**
+	 * Copy the response headers of the backend, and rewrite them with the {@link RewriteContext} of this request.
+	 */
+	protected void copyResponseHeaders(final ClassicHttpResponse incomingResponse, final ClassicHttpResponse outgoingResponse,
+			final RewriteContext rewriteContext) {
+		ReverseUtils.copyResponseHeaders(incomingResponse, outgoingResponse, rewriteContext);
 	}
 	
 	protected RequesterBootstrap createRequesterBootstrap() {
-		return RequesterBootstrap.bootstrap().setConnPoolListener(new TraceConnPoolListener())
+		return RequesterBootstrap.bootstrap().setConnPoolListener(connPoolListener)
 				.setStreamListener(urlConfig.getStreamListener()).setMaxTotal(urlConfig.getHttpConfig().getMaxTotal())
-				.setDefaultMaxPerRoute(urlConfig.getHttpConfig().getMaxParRoute());
-	}	
+				.setDefaultMaxPerRoute(urlConfig.getHttpConfig().getMaxParRoute())
+				.setTimeToLive(urlConfig.getConnectionTimeToLive());
+	}
+	
+	/**
+	 * Set the asynchronous access log writer. (shared by the handlers of the server)
+	 * @param accessLog null to log with the "Access" logger. (default)
+	 */
+	public void setAccessLog(final AccessLogWriter accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Get the backend connection pool of this route.
+	 */
+	public ConnPoolControl<HttpHost> getConnPoolControl() {
+		return requester.getConnPoolControl();
+	}
+	
+	public List<Backend> getBackends() {
+		return backends;
+	}
+	
+	public TraceConnPoolListener getConnPoolListener() {
+		return connPoolListener;
+	}
+	
+	/**
+	 * Stop the connection eviction and health check, and shutdown the backend connection pool.
+	 */
+	@Override
+	public void close() {
+		connectionEvictor.close();
+		if (healthChecker != null) {
+			healthChecker.close();
+		}
+		requester.close(CloseMode.GRACEFUL);
+	}
 }
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hc.core5.http.HttpHost;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.metrics.LatencyHistogram;
+import cloud.tamacat2.reverse.config.CircuitBreakerConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+/**
+ * <p>A backend (origin server) of the route, with the statistics used by the {@link LoadBalancer}.<br>
+ * All counters are updated without locks.
+ * <p>A backend is available while it is healthy ({@link HealthChecker}) and its {@link CircuitBreaker} is not open.
+ */
+public class Backend {
+
+	static final Logger LOG = LoggerFactory.getLogger(Backend.class);
+
+	//weight of the latest sample in the moving average.
+	protected static final double EWMA_ALPHA = 0.2;
+
+	protected final ReverseConfig reverseConfig;
+	protected final HttpHost target;
+	protected final AtomicInteger outstanding = new AtomicInteger();
+	protected final AtomicLong latencyEwma = new AtomicLong(Double.doubleToLongBits(0d));
+	protected final LatencyHistogram latency = new LatencyHistogram();
+	protected final LongAdder failures = new LongAdder();
+	protected final LongAdder connectFailures = new LongAdder();
+	protected final CircuitBreaker circuitBreaker;
+	protected volatile boolean healthy = true;
+
+	public Backend(final ReverseConfig reverseConfig) {
+		this(reverseConfig, CircuitBreakerConfig.create());
+	}
+
+	public Backend(final ReverseConfig reverseConfig, final CircuitBreakerConfig circuitBreakerConfig) {
+		this.reverseConfig = reverseConfig;
+		this.target = reverseConfig.getTarget();
+		this.circuitBreaker = new CircuitBreaker(circuitBreakerConfig);
+	}
+
+	/**
+	 * Create the backends of the route.
+	 */
+	public static List<Backend> create(final Collection<ReverseConfig> reverses) {
+		return create(reverses, CircuitBreakerConfig.create());
+	}
+
+	/**
+	 * Create the backends of the route with the circuit breaker settings.
+	 */
+	public static List<Backend> create(final Collection<ReverseConfig> reverses, final CircuitBreakerConfig circuitBreakerConfig) {
+		final List<Backend> backends = new ArrayList<>(reverses.size());
+		for (final ReverseConfig reverse : reverses) {
+			backends.add(new Backend(reverse, circuitBreakerConfig));
+		}
+		return Collections.unmodifiableList(backends);
+	}
+
+	/**
+	 * Whether this backend can be selected. (without the state transition)
+	 */
+	public boolean isAvailable() {
+		return healthy && circuitBreaker.isAvailable();
+	}
+
+	/**
+	 * Acquire the permission to send a request to this backend.
+	 * @see CircuitBreaker#tryAcquire()
+	 */
+	public boolean tryAcquire() {
+		return healthy && circuitBreaker.tryAcquire();
+	}
+
+	/**
+	 * Notify that the backend returned a response.
+	 * @param status HTTP status code of the response.
+	 */
+	public void response(final int status) {
+		if (circuitBreaker.response(status)) {
+			LOG.warn("circuit open: " + target + " (" + status + " responses)");
+		}
+	}
+
+	/**
+	 * Notify a connect or I/O error of the backend.
+	 */
+	public void failure() {
+		failures.increment();
+		if (circuitBreaker.failure()) {
+			LOG.warn("circuit open: " + target);
+		}
+	}
+
+	/**
+	 * Notify that the connection to the backend could not be established. (also counted as {@link #failure()})
+	 */
+	public void connectFailure() {
+		connectFailures.increment();
+		failure();
+	}
+
+	/**
+	 * Notify that a request was sent to this backend.
+	 */
+	public void begin() {
+		outstanding.incrementAndGet();
+	}
+
+	/**
+	 * Notify that the response of this backend was received.
+	 * @param latencyMillis elapsed time of the request.
+	 */
+	public void end(final long latencyMillis) {
+		endNanos(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+	}
+
+	/**
+	 * Notify that the response of this backend was received.
+	 * @param latencyNanos elapsed time of the request in nanoseconds.
+	 */
+	public void endNanos(final long latencyNanos) {
+		outstanding.decrementAndGet();
+		latency.record(latencyNanos);
+		updateLatency(TimeUnit.NANOSECONDS.toMillis(latencyNanos));
+	}
+
+	protected void updateLatency(final long latencyMillis) {
+		for (;;) {
+			final long current = latencyEwma.get();
+			final double ewma = Double.longBitsToDouble(current);
+			final double next = ewma == 0d ? latencyMillis : (EWMA_ALPHA * latencyMillis) + ((1d - EWMA_ALPHA) * ewma);
+			if (latencyEwma.compareAndSet(current, Double.doubleToLongBits(Math.max(next, Double.MIN_NORMAL)))) {
+				return;
+			}
+		}
+	}
+
+	public ReverseConfig getReverseConfig() {
+		return reverseConfig;
+	}
+
+	public HttpHost getTarget() {
+		return target;
+	}
+
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	/**
+	 * Update the result of the active health check.
+	 */
+	public void setHealthy(final boolean healthy) {
+		this.healthy = healthy;
+	}
+
+	public CircuitBreaker getCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public int getWeight() {
+		return reverseConfig.getWeight();
+	}
+
+	/**
+	 * Number of the in-flight requests.
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * Exponentially weighted moving average of the latency. (milliseconds)
+	 * @return 0 if no response was received yet.
+	 */
+	public double getLatencyEwma() {
+		return Double.longBitsToDouble(latencyEwma.get());
+	}
+
+	/**
+	 * Histogram of the latency of the requests to this backend.
+	 */
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	/**
+	 * Number of the connect and I/O errors.
+	 */
+	public long getFailures() {
+		return failures.sum();
+	}
+
+	/**
+	 * Number of the errors to establish the connection.
+	 */
+	public long getConnectFailures() {
+		return connectFailures.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "Backend [target=" + target + ", weight=" + getWeight() + ", outstanding=" + getOutstanding()
+			+ ", latency=" + String.format("%.1f", getLatencyEwma()) + "ms, healthy=" + healthy
+			+ ", circuit=" + circuitBreaker.getState() + "]";
+	}
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import cloud.tamacat2.reverse.config.CircuitBreakerConfig;
+
+/**
+ * <p>Circuit breaker of a backend. (CLOSED -&gt; OPEN -&gt; HALF_OPEN -&gt; CLOSED or OPEN)<br>
+ * While the circuit is open, {@link #tryAcquire()} is a volatile read and a clock read,
+ * so the requests to a dead backend are rejected without a connect attempt.
+ * The state is updated without locks.
+ */
+public class CircuitBreaker {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	protected final boolean enabled;
+	protected final int failureThreshold;
+	protected final long openDurationNanos;
+	protected final boolean serverErrors;
+	protected final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+	protected final AtomicInteger consecutiveFailures = new AtomicInteger();
+	//System.nanoTime() of the last transition to OPEN or HALF_OPEN.
+	protected volatile long openedAt;
+
+	public CircuitBreaker(final CircuitBreakerConfig config) {
+		this.enabled = config.isEnabled();
+		this.failureThreshold = config.getFailureThreshold();
+		this.openDurationNanos = config.getOpenDuration().toNanoseconds();
+		this.serverErrors = config.isServerErrors();
+	}
+
+	/**
+	 * Whether a request can be sent now. (without the state transition)
+	 */
+	public boolean isAvailable() {
+		return state.get() == State.CLOSED || System.nanoTime() - openedAt >= openDurationNanos;
+	}
+
+	/**
+	 * Acquire the permission to send a request.
+	 * When the open duration has elapsed, only one caller gets the trial request (half-open).
+	 * A trial that has not completed within the open duration is given to the next caller.
+	 */
+	public boolean tryAcquire() {
+		final State current = state.get();
+		if (current == State.CLOSED) {
+			return true;
+		}
+		final long now = System.nanoTime();
+		if (now - openedAt < openDurationNanos) {
+			return false;
+		}
+		if (state.compareAndSet(current, State.HALF_OPEN)) {
+			openedAt = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Notify a successful request.
+	 * The circuit is closed only by the trial request of half-open,
+	 * a late success of a request sent before the circuit was opened does not close it.
+	 */
+	public void success() {
+		final State current = state.get();
+		if (current == State.CLOSED) {
+			if (consecutiveFailures.get() != 0) {
+				consecutiveFailures.set(0);
+			}
+		} else if (current == State.HALF_OPEN && state.compareAndSet(State.HALF_OPEN, State.CLOSED)) {
+			consecutiveFailures.set(0);
+		}
+	}
+
+	/**
+	 * Notify a failed request.
+	 * @return true if the circuit was opened by this failure.
+	 */
+	public boolean failure() {
+		if (!enabled) {
+			return false;
+		}
+		final State current = state.get();
+		if (current == State.HALF_OPEN) {
+			return open(current);
+		} else if (current == State.CLOSED && consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			return open(current);
+		}
+		return false;
+	}
+
+	/**
+	 * Notify the response status of a request.
+	 * @return true if the circuit was opened by this response.
+	 */
+	public boolean response(final int status) {
+		if (serverErrors && status >= 500) {
+			return failure();
+		}
+		success();
+		return false;
+	}
+
+	protected boolean open(final State expected) {
+		openedAt = System.nanoTime();
+		if (state.compareAndSet(expected, State.OPEN)) {
+			consecutiveFailures.set(0);
+			return true;
+		}
+		return false;
+	}
+
+	public State getState() {
+		return state.get();
+	}
+
+	public int getConsecutiveFailures() {
+		return consecutiveFailures.get();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.io.Closeable;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.impl.bootstrap.HttpRequester;
+import org.apache.hc.core5.http.impl.bootstrap.RequesterBootstrap;
+import org.apache.hc.core5.http.io.SocketConfig;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.apache.hc.core5.io.CloseMode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.reverse.config.HealthCheckConfig;
+
+/**
+ * <p>Background task that probes the backends of a route and updates {@link Backend#setHealthy(boolean)}.<br>
+ * All health checkers share one daemon thread, and the probes of a route are sent in turn,
+ * so a probe of a dead backend delays the others at most the probe timeout.
+ * The probes use their own small connection pool, not the connection pool of the route.
+ */
+public class HealthChecker implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(HealthChecker.class);
+
+	static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread t = new Thread(r, "HealthChecker");
+		t.setDaemon(true);
+		return t;
+	});
+
+	protected final HealthCheckConfig config;
+	protected final List<Backend> backends;
+	protected final HttpRequester requester;
+	//consecutive results of each backend. (accessed by the scheduler thread only)
+	protected final int[] successes;
+	protected final int[] failures;
+	protected ScheduledFuture<?> future;
+
+	public HealthChecker(final HealthCheckConfig config, final List<Backend> backends) {
+		this.config = config;
+		this.backends = backends;
+		this.successes = new int[backends.size()];
+		this.failures = new int[backends.size()];
+		this.requester = RequesterBootstrap.bootstrap()
+				.setSocketConfig(SocketConfig.custom().setSoTimeout(config.getTimeout()).build())
+				.setMaxTotal(backends.size())
+				.setDefaultMaxPerRoute(1)
+				.create();
+	}
+
+	public synchronized HealthChecker start() {
+		if (future == null) {
+			final long millis = Math.max(config.getInterval().toMilliseconds(), 100L);
+			future = SCHEDULER.scheduleWithFixedDelay(this::check, 0L, millis, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	protected void check() {
+		for (int i = 0; i < backends.size(); i++) {
+			final Backend backend = backends.get(i);
+			if (probe(backend)) {
+				failures[i] = 0;
+				if (++successes[i] >= config.getHealthyThreshold() && !backend.isHealthy()) {
+					backend.setHealthy(true);
+					LOG.info("health check: " + backend.getTarget() + " is up");
+				}
+			} else {
+				successes[i] = 0;
+				if (++failures[i] >= config.getUnhealthyThreshold() && backend.isHealthy()) {
+					backend.setHealthy(false);
+					LOG.warn("health check: " + backend.getTarget() + " is down");
+				}
+			}
+		}
+	}
+
+	/**
+	 * Send the probe request to the backend.
+	 * @return true if the backend returned a 2xx or 3xx response.
+	 */
+	protected boolean probe(final Backend backend) {
+		final HttpHost target = backend.getTarget();
+		final ClassicHttpRequest request = new BasicClassicHttpRequest(Method.GET, target, config.getPath());
+		request.setHeader(HttpHeaders.USER_AGENT, "HealthChecker");
+		try (ClassicHttpResponse response = requester.execute(target, request, config.getTimeout(), HttpCoreContext.create())) {
+			EntityUtils.consume(response.getEntity());
+			final int status = response.getCode();
+			LOG.trace("health check: " + target + config.getPath() + " " + status);
+			return status >= 200 && status < 400;
+		} catch (Exception e) {
+			LOG.debug("health check: " + target + config.getPath() + " " + e.getMessage());
+			return false;
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (future != null) {
+			future.cancel(false);
+			future = null;
+		}
+		requester.close(CloseMode.IMMEDIATE);
+	}
+}
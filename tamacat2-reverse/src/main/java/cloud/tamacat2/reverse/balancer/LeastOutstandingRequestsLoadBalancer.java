@@ -0,0 +1,52 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Select the backend with the fewest in-flight requests.<br>
+ * The scan starts at a rotating offset, so the ties are distributed in turn.
+ */
+public class LeastOutstandingRequestsLoadBalancer implements LoadBalancer {
+
+	protected final AtomicInteger index = new AtomicInteger();
+
+	@Override
+	public Backend select(final List<Backend> backends) {
+		final int size = backends.size();
+		if (size == 1) {
+			final Backend backend = backends.get(0);
+			return backend.isAvailable() ? backend : null;
+		}
+		final int start = Math.floorMod(index.getAndIncrement(), size);
+		Backend selected = null;
+		int min = Integer.MAX_VALUE;
+		for (int i = 0; i < size; i++) {
+			final Backend backend = backends.get((start + i) % size);
+			if (!backend.isAvailable()) {
+				continue;
+			}
+			final int outstanding = backend.getOutstanding();
+			if (outstanding < min) {
+				min = outstanding;
+				selected = backend;
+			}
+		}
+		return selected;
+	}
+}
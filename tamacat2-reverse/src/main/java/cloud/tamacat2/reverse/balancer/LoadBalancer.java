@@ -0,0 +1,57 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.List;
+
+/**
+ * <p>Strategy to select a backend of the route for each request.<br>
+ * Implementations are called concurrently by the worker threads, so they must be thread-safe,
+ * and must not select a backend that is not {@link Backend#isAvailable() available}.
+ * <pre>{@code
+ * ReverseUrlConfig.create().path("/app/")
+ *     .reverse(ReverseConfig.create().url("http://app1:8080/app/").weight(2))
+ *     .reverse(ReverseConfig.create().url("http://app2:8080/app/"))
+ *     .loadBalancer(new WeightedRoundRobinLoadBalancer());
+ * }</pre>
+ */
+public interface LoadBalancer {
+
+	/**
+	 * Select a backend.
+	 * @param backends backends of the route. (not empty)
+	 * @return selected backend, or null if no backend is available.
+	 */
+	Backend select(List<Backend> backends);
+
+	/**
+	 * Select a backend and acquire the permission to send a request.
+	 * @param backends backends of the route. (not empty)
+	 * @return acquired backend, or null if no backend is available.
+	 */
+	default Backend acquire(final List<Backend> backends) {
+		final int size = backends.size();
+		for (int i = 0; i < size; i++) {
+			final Backend backend = size == 1 ? backends.get(0) : select(backends);
+			if (backend == null) {
+				return null;
+			} else if (backend.tryAcquire()) {
+				return backend;
+			}
+		}
+		return null;
+	}
+}
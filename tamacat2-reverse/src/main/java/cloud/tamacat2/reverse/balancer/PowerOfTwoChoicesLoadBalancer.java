@@ -0,0 +1,67 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * <p>Pick two backends at random and select the one with the lower load.<br>
+ * The load is the latency EWMA multiplied by the in-flight requests (+1),
+ * so a slow backend receives less traffic without a global scan.
+ * A backend that has not responded yet is preferred.
+ * If both are unavailable, the first available backend is selected.
+ */
+public class PowerOfTwoChoicesLoadBalancer implements LoadBalancer {
+
+	@Override
+	public Backend select(final List<Backend> backends) {
+		final int size = backends.size();
+		if (size == 1) {
+			final Backend backend = backends.get(0);
+			return backend.isAvailable() ? backend : null;
+		}
+		final ThreadLocalRandom random = ThreadLocalRandom.current();
+		final int first = random.nextInt(size);
+		int second = random.nextInt(size - 1);
+		if (second >= first) {
+			second++;
+		}
+		final Backend a = backends.get(first);
+		final Backend b = backends.get(second);
+		if (!a.isAvailable()) {
+			return b.isAvailable() ? b : firstAvailable(backends, first);
+		} else if (!b.isAvailable()) {
+			return a;
+		}
+		return getLoad(a) <= getLoad(b) ? a : b;
+	}
+
+	protected Backend firstAvailable(final List<Backend> backends, final int start) {
+		final int size = backends.size();
+		for (int i = 1; i < size; i++) {
+			final Backend backend = backends.get((start + i) % size);
+			if (backend.isAvailable()) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+	protected double getLoad(final Backend backend) {
+		return backend.getLatencyEwma() * (backend.getOutstanding() + 1);
+	}
+}
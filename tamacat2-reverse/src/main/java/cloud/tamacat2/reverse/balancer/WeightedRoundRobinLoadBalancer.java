@@ -0,0 +1,93 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Select the backends in turn in proportion to {@link cloud.tamacat2.reverse.config.ReverseConfig#weight(int)}.<br>
+ * The interleaved order (ex. weights 5,1,1 =&gt; A,A,B,A,C,A,A) is computed once,
+ * so a selection is an array lookup.
+ */
+public class WeightedRoundRobinLoadBalancer implements LoadBalancer {
+
+	protected final AtomicInteger index = new AtomicInteger();
+	protected volatile Schedule schedule;
+
+	@Override
+	public Backend select(final List<Backend> backends) {
+		final int size = backends.size();
+		if (size == 1) {
+			final Backend backend = backends.get(0);
+			return backend.isAvailable() ? backend : null;
+		}
+		Schedule s = schedule;
+		if (s == null || s.backends != backends) {
+			s = new Schedule(backends);
+			schedule = s;
+		}
+		final int start = index.getAndIncrement();
+		for (int i = 0; i < s.order.length; i++) {
+			final Backend backend = s.order[Math.floorMod(start + i, s.order.length)];
+			if (backend.isAvailable()) {
+				return backend;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Smooth weighted round-robin order of the backends.
+	 */
+	static class Schedule {
+		final List<Backend> backends;
+		final Backend[] order;
+
+		Schedule(final List<Backend> backends) {
+			this.backends = backends;
+			final int size = backends.size();
+			final int[] weights = new int[size];
+			int gcd = 0;
+			for (int i = 0; i < size; i++) {
+				weights[i] = Math.max(1, backends.get(i).getWeight());
+				gcd = gcd(gcd, weights[i]);
+			}
+			int total = 0;
+			for (int i = 0; i < size; i++) {
+				weights[i] /= gcd;
+				total += weights[i];
+			}
+			this.order = new Backend[total];
+			final int[] current = new int[size];
+			for (int n = 0; n < total; n++) {
+				int selected = 0;
+				for (int i = 0; i < size; i++) {
+					current[i] += weights[i];
+					if (current[i] > current[selected]) {
+						selected = i;
+					}
+				}
+				current[selected] -= total;
+				order[n] = backends.get(selected);
+			}
+		}
+
+		static int gcd(final int a, final int b) {
+			return b == 0 ? a : gcd(b, a % b);
+		}
+	}
+}
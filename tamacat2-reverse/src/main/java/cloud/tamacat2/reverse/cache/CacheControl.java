@@ -0,0 +1,135 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import java.util.Iterator;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.MessageHeaders;
+
+/**
+ * <p>Directives of the Cache-Control header. (RFC 9111 Section 5.2)<br>
+ * The unknown directives are ignored, and the qualified forms
+ * (ex. {@code no-cache="Set-Cookie"}) are handled as the unqualified directive.
+ */
+public class CacheControl {
+
+	protected long maxAge = -1;
+	protected long sMaxAge = -1;
+	protected boolean noStore;
+	protected boolean noCache;
+	protected boolean isPrivate;
+	protected boolean isPublic;
+	protected boolean mustRevalidate;
+
+	/**
+	 * Parse the Cache-Control headers (and "Pragma: no-cache") of the message.
+	 */
+	public static CacheControl parse(final MessageHeaders message) {
+		final CacheControl cacheControl = new CacheControl();
+		for (final Iterator<Header> it = message.headerIterator(HttpHeaders.CACHE_CONTROL); it.hasNext();) {
+			cacheControl.parse(it.next().getValue());
+		}
+		if (!message.containsHeader(HttpHeaders.CACHE_CONTROL)) {
+			final Header pragma = message.getFirstHeader(HttpHeaders.PRAGMA);
+			if (pragma != null && pragma.getValue().toLowerCase().contains("no-cache")) {
+				cacheControl.noCache = true;
+			}
+		}
+		return cacheControl;
+	}
+
+	protected void parse(final String value) {
+		if (value == null) {
+			return;
+		}
+		for (final String directive : value.split(",")) {
+			final int idx = directive.indexOf('=');
+			final String name = (idx >= 0 ? directive.substring(0, idx) : directive).trim().toLowerCase();
+			final String arg = idx >= 0 ? directive.substring(idx + 1).trim().replace("\"", "") : null;
+			switch (name) {
+			case "max-age":
+				maxAge = parseSeconds(arg);
+				break;
+			case "s-maxage":
+				sMaxAge = parseSeconds(arg);
+				break;
+			case "no-store":
+				noStore = true;
+				break;
+			case "no-cache":
+				noCache = true;
+				break;
+			case "private":
+				isPrivate = true;
+				break;
+			case "public":
+				isPublic = true;
+				break;
+			case "must-revalidate":
+			case "proxy-revalidate":
+				mustRevalidate = true;
+				break;
+			default:
+				break;
+			}
+		}
+	}
+
+	static long parseSeconds(final String arg) {
+		try {
+			return arg != null ? Math.max(0L, Long.parseLong(arg)) : -1L;
+		} catch (NumberFormatException e) {
+			//invalid value is handled as stale. (RFC 9111 Section 4.2.1)
+			return 0L;
+		}
+	}
+
+	/**
+	 * @return seconds, or -1 if not present.
+	 */
+	public long getMaxAge() {
+		return maxAge;
+	}
+
+	/**
+	 * @return seconds, or -1 if not present.
+	 */
+	public long getSMaxAge() {
+		return sMaxAge;
+	}
+
+	public boolean isNoStore() {
+		return noStore;
+	}
+
+	public boolean isNoCache() {
+		return noCache;
+	}
+
+	public boolean isPrivate() {
+		return isPrivate;
+	}
+
+	public boolean isPublic() {
+		return isPublic;
+	}
+
+	public boolean isMustRevalidate() {
+		return mustRevalidate;
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.MessageHeaders;
+import org.apache.hc.core5.http.message.HeaderGroup;
+
+import cloud.tamacat2.httpd.util.HeaderUtils;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+/**
+ * <p>A cached response. (status, headers and body)<br>
+ * The entry is immutable, a revalidated response replaces the entry with {@link #update(HttpResponse, long)}.
+ */
+public class CacheEntry {
+
+	protected final int status;
+	protected final Header[] headers;
+	protected final byte[] body;
+	protected final ContentType contentType;
+	protected final ReverseConfig reverseConfig;
+	protected final String[] varyNames;
+	protected final long responseTime;
+	protected final long initialAge;
+	protected final long freshnessLifetime;
+	protected final String etag;
+	protected final String lastModified;
+	protected final long size;
+
+	/**
+	 * @param status status code of the response.
+	 * @param headers response headers to the client. (the Age header is removed)
+	 * @param body response body.
+	 * @param reverseConfig backend of the response.
+	 * @param varyNames request header names of the Vary header. (lower case, sorted)
+	 * @param responseTime time of the response received. (milliseconds)
+	 */
+	public CacheEntry(final int status, final Header[] headers, final byte[] body, final ReverseConfig reverseConfig,
+			final String[] varyNames, final long responseTime) {
+		final HeaderGroup group = new HeaderGroup();
+		group.setHeaders(headers);
+		this.initialAge = Math.max(0L, CacheControl.parseSeconds(getHeader(group, HttpHeaders.AGE))) * 1000L;
+		group.removeHeaders(HttpHeaders.AGE);
+		this.status = status;
+		this.headers = group.getHeaders();
+		this.body = body;
+		final String type = getHeader(group, HttpHeaders.CONTENT_TYPE);
+		this.contentType = type != null ? ContentType.parseLenient(type) : null;
+		this.reverseConfig = reverseConfig;
+		this.varyNames = varyNames;
+		this.responseTime = responseTime;
+		this.freshnessLifetime = getFreshnessLifetime(group, CacheControl.parse(group), responseTime);
+		this.etag = getHeader(group, HttpHeaders.ETAG);
+		this.lastModified = getHeader(group, HttpHeaders.LAST_MODIFIED);
+		long headerSize = 0;
+		for (final Header header : this.headers) {
+			headerSize += header.getName().length() + header.getValue().length();
+		}
+		this.size = body.length + (headerSize * 2) + 256;
+	}
+
+	/**
+	 * Freshness lifetime of the response. (RFC 9111 Section 4.2.1)
+	 * @return milliseconds, 0 if the response must be revalidated.
+	 */
+	static long getFreshnessLifetime(final HeaderGroup headers, final CacheControl cacheControl, final long responseTime) {
+		if (cacheControl.isNoCache()) {
+			return 0L;
+		} else if (cacheControl.getSMaxAge() >= 0) {
+			return cacheControl.getSMaxAge() * 1000L;
+		} else if (cacheControl.getMaxAge() >= 0) {
+			return cacheControl.getMaxAge() * 1000L;
+		}
+		final String expires = getHeader(headers, HttpHeaders.EXPIRES);
+		if (expires != null) {
+			final long date = parseDate(getHeader(headers, HttpHeaders.DATE));
+			return Math.max(0L, parseDate(expires) - (date > 0 ? date : responseTime));
+		}
+		return 0L;
+	}
+
+	static String getHeader(final MessageHeaders headers, final String name) {
+		final Header header = headers.getFirstHeader(name);
+		return header != null ? header.getValue() : null;
+	}
+
+	/**
+	 * Parse the HTTP-date. (IMF-fixdate)
+	 * @return milliseconds, or -1 if the date is invalid.
+	 */
+	static long parseDate(final String date) {
+		if (date == null) {
+			return -1L;
+		}
+		try {
+			return ZonedDateTime.parse(date.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1L;
+		}
+	}
+
+	/**
+	 * Create the entry refreshed by the 304 (Not Modified) response. (RFC 9111 Section 4.3.4)
+	 */
+	public CacheEntry update(final HttpResponse notModified, final long now) {
+		final HeaderGroup group = new HeaderGroup();
+		group.setHeaders(headers);
+		for (final Iterator<Header> it = notModified.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+				group.removeHeaders(header.getName());
+			}
+		}
+		final List<Header> merged = new ArrayList<>(List.of(group.getHeaders()));
+		for (final Iterator<Header> it = notModified.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			if (!HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(header.getName())) {
+				merged.add(header);
+			}
+		}
+		return new CacheEntry(status, merged.toArray(new Header[0]), body, reverseConfig, varyNames, now);
+	}
+
+	/**
+	 * @return true if the conditional request of the client matches this entry. (304 Not Modified)
+	 */
+	public boolean isNotModified(final HttpRequest request) {
+		final String ifNoneMatch = HeaderUtils.getHeader(request, HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			if (etag == null) {
+				return false;
+			}
+			final String tag = weak(etag);
+			for (final String value : ifNoneMatch.split(",")) {
+				final String v = value.trim();
+				if ("*".equals(v) || tag.equals(weak(v))) {
+					return true;
+				}
+			}
+			return false;
+		}
+		final long ifModifiedSince = parseDate(HeaderUtils.getHeader(request, HttpHeaders.IF_MODIFIED_SINCE));
+		final long modified = parseDate(lastModified);
+		return ifModifiedSince > 0 && modified > 0 && modified <= ifModifiedSince;
+	}
+
+	//weak comparison. (RFC 9110 Section 8.8.3.2)
+	static String weak(final String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	public boolean isFresh(final long now) {
+		return freshnessLifetime > getAgeMillis(now);
+	}
+
+	public long getAgeMillis(final long now) {
+		return initialAge + Math.max(0L, now - responseTime);
+	}
+
+	/**
+	 * @return value of the Age header. (seconds)
+	 */
+	public long getAge(final long now) {
+		return getAgeMillis(now) / 1000L;
+	}
+
+	public boolean hasValidator() {
+		return etag != null || lastModified != null;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public Header[] getHeaders() {
+		return headers;
+	}
+
+	public byte[] getBody() {
+		return body;
+	}
+
+	public ContentType getContentType() {
+		return contentType;
+	}
+
+	public ReverseConfig getReverseConfig() {
+		return reverseConfig;
+	}
+
+	public String[] getVaryNames() {
+		return varyNames;
+	}
+
+	public String getETag() {
+		return etag;
+	}
+
+	public String getLastModified() {
+		return lastModified;
+	}
+
+	public long getFreshnessLifetime() {
+		return freshnessLifetime;
+	}
+
+	/**
+	 * Estimated memory size of this entry. (bytes)
+	 */
+	public long size() {
+		return size;
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.log.AccessLogWriter;
+import cloud.tamacat2.httpd.util.AccessLogUtils;
+import cloud.tamacat2.reverse.config.CoalescingConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+/**
+ * <p>Request coalescing (single-flight) in front of the reverse proxy handler.<br>
+ * The first GET request of a key is sent to the backend (leader), and the identical requests
+ * that arrive while it is in flight (followers) wait for it and are answered with the same response bytes.
+ * <ul>
+ *   <li>The key is the method, host, path+query and the conditional headers. (If-None-Match, If-Modified-Since)
+ *   The Cookie header is added if the uncacheable responses are shared.</li>
+ *   <li>A follower is answered only if it selects the same variant of the Vary header as the leader.</li>
+ *   <li>If the response is not shareable, or the wait exceeds {@link CoalescingConfig#maxWait(org.apache.hc.core5.util.Timeout)},
+ *   the follower is sent to the backend.</li>
+ * </ul>
+ */
+public class RequestCoalescingHandler implements HttpRequestHandler, Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(RequestCoalescingHandler.class);
+
+	protected final HttpRequestHandler handler;
+	protected final CoalescingConfig config;
+	protected final ConcurrentHashMap<String, CompletableFuture<Shared>> flights = new ConcurrentHashMap<>();
+	protected AccessLogWriter accessLog;
+
+	protected final LongAdder leaders = new LongAdder();
+	protected final LongAdder coalesced = new LongAdder();
+	protected final LongAdder timeouts = new LongAdder();
+
+	public RequestCoalescingHandler(final HttpRequestHandler handler, final CoalescingConfig config) {
+		this.handler = handler;
+		this.config = config;
+	}
+
+	@Override
+	public void handle(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context)
+			throws HttpException, IOException {
+		if (!Method.GET.isSame(request.getMethod()) || request.containsHeader(HttpHeaders.AUTHORIZATION)
+				|| request.containsHeader(HttpHeaders.RANGE)) {
+			handler.handle(request, response, context);
+			return;
+		}
+		final String key = getKey(request);
+		final CompletableFuture<Shared> flight = new CompletableFuture<>();
+		final CompletableFuture<Shared> leader = flights.putIfAbsent(key, flight);
+		if (leader == null) {
+			leaders.increment();
+			Shared shared = null;
+			try {
+				handler.handle(request, response, context);
+				shared = share(request, response, context);
+			} finally {
+				flights.remove(key, flight);
+				flight.complete(shared);
+			}
+		} else {
+			final long startTime = System.currentTimeMillis();
+			final Shared shared = await(leader);
+			if (shared != null && shared.variantKey.equals(
+					ResponseCache.getVariantKey(shared.primaryKey, shared.entry.getVaryNames(), request))) {
+				coalesced.increment();
+				serve(request, response, context, shared.entry);
+				AccessLogUtils.log(accessLog, request, response, context, (System.currentTimeMillis()-startTime));
+			} else {
+				handler.handle(request, response, context);
+			}
+		}
+	}
+
+	protected Shared await(final CompletableFuture<Shared> leader) {
+		try {
+			return leader.get(config.getMaxWait().toMilliseconds(), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			timeouts.increment();
+			return null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Key of the identical requests.
+	 * An uncacheable response may depend on the cookies, it is shared only with the same Cookie header.
+	 */
+	protected String getKey(final ClassicHttpRequest request) {
+		final StringBuilder key = new StringBuilder(ResponseCache.getPrimaryKey(request));
+		final String ifNoneMatch = CacheEntry.getHeader(request, HttpHeaders.IF_NONE_MATCH);
+		final String ifModifiedSince = CacheEntry.getHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		if (ifNoneMatch != null || ifModifiedSince != null) {
+			key.append('\n').append(ifNoneMatch).append('\n').append(ifModifiedSince);
+		}
+		if (config.isShareUncacheable()) {
+			for (final Iterator<Header> it = request.headerIterator(HttpHeaders.COOKIE); it.hasNext();) {
+				key.append("\ncookie=").append(it.next().getValue());
+			}
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Buffer the response of the leader for the followers.
+	 * @return null if the response is not shareable.
+	 */
+	protected Shared share(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context)
+			throws IOException {
+		if (!isShareable(request, response)) {
+			return null;
+		}
+		final String[] varyNames = ResponseCache.getVaryNames(response);
+		final HttpEntity entity = response.getEntity();
+		if (varyNames == null || (entity != null && (entity.getContentLength() < 0
+				|| entity.getContentLength() > config.getMaxBytes()))) {
+			return null;
+		}
+		final byte[] body;
+		if (entity != null) {
+			try {
+				body = EntityUtils.toByteArray(entity, config.getMaxBytes());
+			} finally {
+				entity.close();
+			}
+			response.setEntity(new ByteArrayEntity(body, ContentType.parseLenient(entity.getContentType())));
+		} else {
+			body = new byte[0];
+		}
+		final ReverseConfig reverseConfig = (ReverseConfig)context.getAttribute(ReverseConfig.class.getName());
+		final CacheEntry entry = new CacheEntry(response.getCode(), response.getHeaders(), body, reverseConfig,
+			varyNames, System.currentTimeMillis());
+		final String primaryKey = ResponseCache.getPrimaryKey(request);
+		return new Shared(primaryKey, ResponseCache.getVariantKey(primaryKey, varyNames, request), entry);
+	}
+
+	/**
+	 * The cacheable responses and 304 (Not Modified) are shared.
+	 * The uncacheable responses are shared if {@link CoalescingConfig#isShareUncacheable()}.
+	 * The no-store and private responses and the responses with Set-Cookie are never shared.
+	 */
+	protected boolean isShareable(final ClassicHttpRequest request, final ClassicHttpResponse response) {
+		final CacheControl responseCacheControl = CacheControl.parse(response);
+		if (responseCacheControl.isNoStore() || responseCacheControl.isPrivate()
+				|| response.containsHeader(HttpHeaders.SET_COOKIE)) {
+			return false;
+		} else if (response.getCode() == HttpStatus.SC_NOT_MODIFIED || config.isShareUncacheable()) {
+			return response.getCode() < HttpStatus.SC_INTERNAL_SERVER_ERROR;
+		}
+		return ResponseCache.isStorable(request, CacheControl.parse(request), response, responseCacheControl);
+	}
+
+	protected void serve(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context,
+			final CacheEntry entry) {
+		context.setAttribute(ReverseConfig.class.getName(), entry.getReverseConfig());
+		response.setVersion(request.getVersion());
+		response.setCode(entry.getStatus());
+		response.setHeaders(entry.getHeaders());
+		if (entry.getStatus() != HttpStatus.SC_NOT_MODIFIED && entry.getStatus() != HttpStatus.SC_NO_CONTENT) {
+			response.setEntity(new ByteArrayEntity(entry.getBody(), entry.getContentType()));
+		}
+	}
+
+	/**
+	 * Set the access log writer of the coalesced responses. (same as the {@link cloud.tamacat2.reverse.ReverseProxyHandler})
+	 */
+	public void setAccessLog(final AccessLogWriter accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	/**
+	 * Number of the requests sent to the backend as a leader.
+	 */
+	public long getLeaders() {
+		return leaders.sum();
+	}
+
+	/**
+	 * Number of the requests answered with the response of the leader.
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	/**
+	 * Number of the requests that exceeded the wait limit.
+	 */
+	public long getTimeouts() {
+		return timeouts.sum();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (handler instanceof Closeable) {
+			((Closeable)handler).close();
+		}
+	}
+
+	/**
+	 * Response of the leader.
+	 */
+	static class Shared {
+		final String primaryKey;
+		final String variantKey;
+		final CacheEntry entry;
+
+		Shared(final String primaryKey, final String variantKey, final CacheEntry entry) {
+			this.primaryKey = primaryKey;
+			this.variantKey = variantKey;
+			this.entry = entry;
+		}
+	}
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.net.URIAuthority;
+
+import cloud.tamacat2.httpd.cache.ClockCache;
+import cloud.tamacat2.reverse.config.CacheConfig;
+
+/**
+ * <p>In-memory store of the cached responses with the byte budget.<br>
+ * The entries are keyed on the method, host, path+query and the request headers of the Vary header,
+ * and the resources not recently used are evicted when the total size exceeds the budget. ({@link ClockCache})
+ * <p>The variants of a resource are stored together in an immutable {@link Resource} weighted by the body bytes,
+ * the lookups do not lock and an update replaces the resource.
+ * (a variant stored concurrently for the same resource may be lost, it is stored again by the next miss)
+ */
+public class ResponseCache {
+
+	//heuristically cacheable status codes. (RFC 9110 Section 15.1)
+	static final Set<Integer> CACHEABLE_STATUS = Set.of(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501);
+
+	protected final long maxBytes;
+	protected final int maxEntryBytes;
+	//primary key -> variants of the resource.
+	protected final ClockCache<String, Resource> entries;
+	//number of the variants.
+	protected final AtomicInteger size = new AtomicInteger();
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder revalidations = new LongAdder();
+	protected final LongAdder stores = new LongAdder();
+
+	public ResponseCache(final CacheConfig config) {
+		this.maxBytes = config.getMaxBytes();
+		this.maxEntryBytes = config.getMaxEntryBytes();
+		this.entries = new ClockCache<>(maxBytes, Resource::size, r -> size.addAndGet(-r.variants.size()));
+	}
+
+	/**
+	 * Key of the resource. (GET and HEAD share the entry)
+	 */
+	public static String getPrimaryKey(final HttpRequest request) {
+		final URIAuthority authority = request.getAuthority();
+		final String host;
+		if (authority != null) {
+			host = authority.toString();
+		} else {
+			final Header header = request.getFirstHeader(HttpHeaders.HOST);
+			host = header != null ? header.getValue() : "";
+		}
+		return Method.GET + " " + host.toLowerCase() + request.getPath();
+	}
+
+	/**
+	 * Key of the variant selected by the request headers of the Vary header.
+	 */
+	static String getVariantKey(final String primaryKey, final String[] varyNames, final HttpRequest request) {
+		final StringBuilder key = new StringBuilder(primaryKey).append('\n');
+		for (final String name : varyNames) {
+			key.append(name).append('=');
+			for (final Iterator<Header> it = request.headerIterator(name); it.hasNext();) {
+				key.append(it.next().getValue().trim()).append(',');
+			}
+			key.append('\n');
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Get the request header names of the Vary header. (lower case, sorted)
+	 * @return null if the response varies on "*". (not cacheable)
+	 */
+	public static String[] getVaryNames(final HttpResponse response) {
+		final Set<String> names = new TreeSet<>();
+		for (final Iterator<Header> it = response.headerIterator(HttpHeaders.VARY); it.hasNext();) {
+			for (final String name : it.next().getValue().split(",")) {
+				final String n = name.trim().toLowerCase();
+				if ("*".equals(n)) {
+					return null;
+				} else if (!n.isEmpty()) {
+					names.add(n);
+				}
+			}
+		}
+		return names.toArray(new String[0]);
+	}
+
+	/**
+	 * Whether the response to the request can be stored. (RFC 9111 Section 3)
+	 * The body size is checked by the caller.
+	 */
+	public static boolean isStorable(final HttpRequest request, final CacheControl requestCacheControl,
+			final HttpResponse response, final CacheControl responseCacheControl) {
+		if (!Method.GET.isSame(request.getMethod()) || requestCacheControl.isNoStore()
+				|| !CACHEABLE_STATUS.contains(response.getCode())) {
+			return false;
+		}
+		if (responseCacheControl.isNoStore() || responseCacheControl.isPrivate()) {
+			return false;
+		}
+		//shared cache: do not store the personalized responses.
+		if (response.containsHeader(HttpHeaders.SET_COOKIE)
+				|| (request.containsHeader(HttpHeaders.AUTHORIZATION) && !responseCacheControl.isPublic()
+					&& responseCacheControl.getSMaxAge() < 0 && !responseCacheControl.isMustRevalidate())) {
+			return false;
+		}
+		return responseCacheControl.getSMaxAge() >= 0 || responseCacheControl.getMaxAge() >= 0
+			|| response.containsHeader(HttpHeaders.EXPIRES)
+			|| response.containsHeader(HttpHeaders.ETAG) || response.containsHeader(HttpHeaders.LAST_MODIFIED);
+	}
+
+	/**
+	 * Get the entry of the request.
+	 * @return null if not cached.
+	 */
+	public CacheEntry get(final HttpRequest request) {
+		final String primaryKey = getPrimaryKey(request);
+		final Resource resource = entries.get(primaryKey);
+		return resource != null ? resource.variants.get(getVariantKey(primaryKey, resource.varyNames, request)) : null;
+	}
+
+	/**
+	 * Store the entry, and evict the resources not recently used over the byte budget.
+	 */
+	public void put(final HttpRequest request, final CacheEntry entry) {
+		if (entry.size() > maxBytes) {
+			return;
+		}
+		final String primaryKey = getPrimaryKey(request);
+		final String key = getVariantKey(primaryKey, entry.getVaryNames(), request);
+		final Resource old = entries.get(primaryKey);
+		final Map<String, CacheEntry> variants = new HashMap<>();
+		//the old variants cannot be selected if the Vary header was changed.
+		if (old != null && Arrays.equals(old.varyNames, entry.getVaryNames())
+				&& old.size() - sizeOf(old.variants.get(key)) + entry.size() <= maxBytes) {
+			variants.putAll(old.variants);
+		}
+		variants.put(key, entry);
+		final Resource resource = new Resource(entry.getVaryNames(), variants);
+		size.addAndGet(resource.variants.size());
+		entries.put(primaryKey, resource);
+		stores.increment();
+	}
+
+	/**
+	 * Remove all variants of the resource. (ex. after an unsafe method)
+	 */
+	public void invalidate(final HttpRequest request) {
+		entries.remove(getPrimaryKey(request));
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	static long sizeOf(final CacheEntry entry) {
+		return entry != null ? entry.size() : 0L;
+	}
+
+	public void hit() {
+		hits.increment();
+	}
+
+	public void miss() {
+		misses.increment();
+	}
+
+	public void revalidated() {
+		revalidations.increment();
+	}
+
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	/**
+	 * Number of the stale entries refreshed by 304 (Not Modified).
+	 */
+	public long getRevalidations() {
+		return revalidations.sum();
+	}
+
+	public long getStores() {
+		return stores.sum();
+	}
+
+	/**
+	 * Number of the resources evicted. (with all the variants)
+	 */
+	public long getEvictions() {
+		return entries.getEvictions();
+	}
+
+	/**
+	 * Number of the variants.
+	 */
+	public int size() {
+		return size.get();
+	}
+
+	public long getTotalBytes() {
+		return entries.getWeight();
+	}
+
+	@Override
+	public String toString() {
+		return "ResponseCache [entries=" + size() + ", bytes=" + getTotalBytes() + "/" + maxBytes
+			+ ", hits=" + getHits() + ", misses=" + getMisses() + ", revalidations=" + getRevalidations()
+			+ ", stores=" + getStores() + ", evictions=" + getEvictions() + "]";
+	}
+
+	/**
+	 * The variants of a resource selected by the Vary header names. (immutable)
+	 */
+	protected static final class Resource {
+		final String[] varyNames;
+		final Map<String, CacheEntry> variants;
+		final long size;
+
+		Resource(final String[] varyNames, final Map<String, CacheEntry> variants) {
+			this.varyNames = varyNames;
+			this.variants = Map.copyOf(variants);
+			long size = 0;
+			for (final CacheEntry entry : this.variants.values()) {
+				size += entry.size();
+			}
+			this.size = size;
+		}
+
+		long size() {
+			return size;
+		}
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import org.apache.hc.core5.http.ClassicHttpRequest;
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpEntity;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpStatus;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.entity.ByteArrayEntity;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.io.IdentifiableEntityWrapper;
+import cloud.tamacat2.httpd.log.AccessLogWriter;
+import cloud.tamacat2.httpd.util.AccessLogUtils;
+import cloud.tamacat2.reverse.ReverseProxyHandler;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+/**
+ * <p>HTTP response cache in front of the {@link ReverseProxyHandler}. (RFC 9111 shared cache)
+ * <ul>
+ *   <li>A fresh response is served from the cache without the backend connection.</li>
+ *   <li>A stale response with the validators (ETag, Last-Modified) is revalidated with
+ *   If-None-Match/If-Modified-Since, and 304 (Not Modified) refreshes the cached response.</li>
+ *   <li>The conditional requests of the client are answered with 304 from the cache.</li>
+ *   <li>The unsafe methods (POST, PUT, DELETE...) invalidate the cached responses of the URI.</li>
+ * </ul>
+ * The responses without Content-Length or larger than {@link cloud.tamacat2.reverse.config.CacheConfig#maxEntryBytes(int)}
+ * are streamed and not cached.
+ */
+public class ResponseCacheHandler implements HttpRequestHandler, Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(ResponseCacheHandler.class);
+
+	//headers of the 304 response. (RFC 9110 Section 15.4.5)
+	static final String[] NOT_MODIFIED_HEADERS = {
+		HttpHeaders.CACHE_CONTROL, HttpHeaders.CONTENT_LOCATION, HttpHeaders.DATE,
+		HttpHeaders.ETAG, HttpHeaders.EXPIRES, HttpHeaders.VARY, HttpHeaders.LAST_MODIFIED
+	};
+
+	protected final HttpRequestHandler handler;
+	protected final ResponseCache cache;
+	protected AccessLogWriter accessLog;
+
+	public ResponseCacheHandler(final HttpRequestHandler handler, final ResponseCache cache) {
+		this.handler = handler;
+		this.cache = cache;
+	}
+
+	@Override
+	public void handle(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context)
+			throws HttpException, IOException {
+		final long startTime = System.currentTimeMillis();
+		final String method = request.getMethod();
+		if (!Method.GET.isSame(method) && !Method.HEAD.isSame(method)) {
+			handler.handle(request, response, context);
+			if (!Method.isSafe(method) && response.getCode() < HttpStatus.SC_BAD_REQUEST) {
+				cache.invalidate(request);
+			}
+			return;
+		}
+		final CacheControl requestCacheControl = CacheControl.parse(request);
+		if (requestCacheControl.isNoStore() || request.containsHeader(HttpHeaders.AUTHORIZATION)) {
+			handler.handle(request, response, context);
+			return;
+		}
+		final CacheEntry entry = cache.get(request);
+		if (entry != null && isFresh(entry, requestCacheControl, startTime)) {
+			cache.hit();
+			serve(request, response, context, entry, startTime);
+			AccessLogUtils.log(accessLog, request, response, context, (System.currentTimeMillis()-startTime));
+			return;
+		}
+		//miss or stale: revalidate with the validators of the cached response.
+		final boolean revalidate = entry != null && entry.hasValidator()
+			&& !request.containsHeader(HttpHeaders.IF_NONE_MATCH) && !request.containsHeader(HttpHeaders.IF_MODIFIED_SINCE);
+		if (revalidate) {
+			if (entry.getETag() != null) {
+				request.setHeader(HttpHeaders.IF_NONE_MATCH, entry.getETag());
+			}
+			if (entry.getLastModified() != null) {
+				request.setHeader(HttpHeaders.IF_MODIFIED_SINCE, entry.getLastModified());
+			}
+		}
+		handler.handle(request, response, context);
+		if (revalidate) {
+			//the conditional request was not sent by the client.
+			request.removeHeaders(HttpHeaders.IF_NONE_MATCH);
+			request.removeHeaders(HttpHeaders.IF_MODIFIED_SINCE);
+		}
+
+		final long now = System.currentTimeMillis();
+		if (revalidate && response.getCode() == HttpStatus.SC_NOT_MODIFIED) {
+			cache.revalidated();
+			final CacheEntry updated = entry.update(response, now);
+			cache.put(request, updated);
+			serve(request, response, context, updated, now);
+			return;
+		}
+		cache.miss();
+		store(request, requestCacheControl, response, context, now);
+	}
+
+	protected boolean isFresh(final CacheEntry entry, final CacheControl requestCacheControl, final long now) {
+		if (requestCacheControl.isNoCache() || !entry.isFresh(now)) {
+			return false;
+		}
+		return requestCacheControl.getMaxAge() < 0 || entry.getAge(now) <= requestCacheControl.getMaxAge();
+	}
+
+	/**
+	 * Send the cached response. (or 304 for the matched conditional request)
+	 */
+	protected void serve(final ClassicHttpRequest request, final ClassicHttpResponse response, final HttpContext context,
+			final CacheEntry entry, final long now) {
+		context.setAttribute(ReverseConfig.class.getName(), entry.getReverseConfig());
+		response.setVersion(request.getVersion());
+		if (entry.getStatus() == HttpStatus.SC_OK && entry.isNotModified(request)) {
+			response.setCode(HttpStatus.SC_NOT_MODIFIED);
+			response.setHeaders();
+			for (final Header header : entry.getHeaders()) {
+				for (final String name : NOT_MODIFIED_HEADERS) {
+					if (name.equalsIgnoreCase(header.getName())) {
+						response.addHeader(header);
+					}
+				}
+			}
+			response.setEntity(null);
+		} else {
+			response.setCode(entry.getStatus());
+			response.setHeaders(entry.getHeaders());
+			response.setEntity(getEntity(request, entry));
+		}
+		response.setHeader(HttpHeaders.AGE, Long.toString(entry.getAge(now)));
+	}
+
+	/**
+	 * Buffer the response body and store it, if the response is cacheable.
+	 */
+	protected void store(final ClassicHttpRequest request, final CacheControl requestCacheControl,
+			final ClassicHttpResponse response, final HttpContext context, final long now) throws IOException {
+		final CacheControl responseCacheControl = CacheControl.parse(response);
+		if (!ResponseCache.isStorable(request, requestCacheControl, response, responseCacheControl)) {
+			return;
+		}
+		final String[] varyNames = ResponseCache.getVaryNames(response);
+		final HttpEntity entity = response.getEntity();
+		if (varyNames == null || (entity != null && (entity.getContentLength() < 0
+				|| entity.getContentLength() > cache.getMaxEntryBytes()))) {
+			return;
+		}
+		final byte[] body;
+		if (entity != null) {
+			try {
+				body = EntityUtils.toByteArray(entity, cache.getMaxEntryBytes());
+			} finally {
+				entity.close();
+			}
+		} else {
+			body = new byte[0];
+		}
+		final ReverseConfig reverseConfig = (ReverseConfig)context.getAttribute(ReverseConfig.class.getName());
+		final CacheEntry entry = new CacheEntry(response.getCode(), response.getHeaders(), body, reverseConfig, varyNames, now);
+		if (entity != null) {
+			response.setEntity(getEntity(request, entry));
+		}
+		cache.put(request, entry);
+		if (LOG.isTraceEnabled()) {
+			LOG.trace("store: " + ResponseCache.getPrimaryKey(request) + " " + cache);
+		}
+	}
+
+	/**
+	 * Entity of the cached body. The body of the strong ETag has the identity of the compressed representation cache.
+	 * ({@link cloud.tamacat2.httpd.cache.CompressedContentCache})
+	 */
+	protected HttpEntity getEntity(final ClassicHttpRequest request, final CacheEntry entry) {
+		final HttpEntity entity = new ByteArrayEntity(entry.getBody(), entry.getContentType());
+		final String etag = entry.getETag();
+		if (entry.getStatus() == HttpStatus.SC_OK && etag != null && etag.startsWith("\"")) {
+			return new IdentifiableEntityWrapper(entity, ResponseCache.getPrimaryKey(request) + " " + etag);
+		}
+		return entity;
+	}
+
+	/**
+	 * Set the access log writer of the responses served from the cache.
+	 */
+	public void setAccessLog(final AccessLogWriter accessLog) {
+		this.accessLog = accessLog;
+	}
+
+	public ResponseCache getResponseCache() {
+		return cache;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (handler instanceof Closeable) {
+			((Closeable)handler).close();
+		}
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+/**
+ * <p>In-memory HTTP response cache of the route. (RFC 9111 shared cache)<br>
+ * The cached responses are evicted in LRU order when the total size exceeds {@link #maxBytes(long)}.
+ * <pre>{@code
+ * ReverseUrlConfig.create().path("/app/")
+ *     .reverse(ReverseConfig.create().url("http://app1:8080/app/"))
+ *     .cache(CacheConfig.create().maxBytes(256L * 1024 * 1024));
+ * }</pre>
+ */
+public class CacheConfig {
+
+	protected long maxBytes = 64L * 1024 * 1024;
+	protected int maxEntryBytes = 1024 * 1024;
+
+	public static CacheConfig create() {
+		return new CacheConfig();
+	}
+
+	/**
+	 * Total size of the cached responses.
+	 * @param maxBytes default 64MB.
+	 */
+	public CacheConfig maxBytes(final long maxBytes) {
+		if (maxBytes > 0) {
+			this.maxBytes = maxBytes;
+		}
+		return this;
+	}
+
+	public long getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Maximum size of a response body to cache.
+	 * The larger responses (and the responses without Content-Length) are not cached.
+	 * @param maxEntryBytes default 1MB.
+	 */
+	public CacheConfig maxEntryBytes(final int maxEntryBytes) {
+		if (maxEntryBytes > 0) {
+			this.maxEntryBytes = maxEntryBytes;
+		}
+		return this;
+	}
+
+	public int getMaxEntryBytes() {
+		return maxEntryBytes;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import org.apache.hc.core5.util.TimeValue;
+
+/**
+ * <p>Passive outlier detection of the backends.<br>
+ * A backend is ejected (circuit open) after {@link #failureThreshold(int)} consecutive failures,
+ * and the requests to it fail fast with 503 Service Unavailable for {@link #openDuration(TimeValue)}.
+ * After that, one trial request is sent (half-open): the circuit is closed if it succeeds,
+ * or opened again if it fails.
+ * <p>A failure is a connect or I/O error or a 5xx response of the backend.
+ * Disable {@link #serverErrors(boolean)} if the 5xx responses of the application should not eject the backend.
+ */
+public class CircuitBreakerConfig {
+
+	protected boolean enabled = true;
+	protected int failureThreshold = 5;
+	protected TimeValue openDuration = TimeValue.ofSeconds(30L);
+	protected boolean serverErrors = true;
+
+	public static CircuitBreakerConfig create() {
+		return new CircuitBreakerConfig();
+	}
+
+	/**
+	 * @param enabled default true.
+	 */
+	public CircuitBreakerConfig enabled(final boolean enabled) {
+		this.enabled = enabled;
+		return this;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param failureThreshold consecutive failures to open the circuit. (default 5)
+	 */
+	public CircuitBreakerConfig failureThreshold(final int failureThreshold) {
+		if (failureThreshold > 0) {
+			this.failureThreshold = failureThreshold;
+		}
+		return this;
+	}
+
+	public int getFailureThreshold() {
+		return failureThreshold;
+	}
+
+	/**
+	 * @param openDuration time to reject the requests before the trial request. (default 30 seconds)
+	 */
+	public CircuitBreakerConfig openDuration(final TimeValue openDuration) {
+		if (openDuration != null) {
+			this.openDuration = openDuration;
+		}
+		return this;
+	}
+
+	public TimeValue getOpenDuration() {
+		return openDuration;
+	}
+
+	/**
+	 * Count the 5xx responses of the backend as failures.
+	 * @param serverErrors default true.
+	 */
+	public CircuitBreakerConfig serverErrors(final boolean serverErrors) {
+		this.serverErrors = serverErrors;
+		return this;
+	}
+
+	public boolean isServerErrors() {
+		return serverErrors;
+	}
+}
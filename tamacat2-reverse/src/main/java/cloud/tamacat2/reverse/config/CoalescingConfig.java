@@ -0,0 +1,87 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * <p>Request coalescing (single-flight) of the route.<br>
+ * While a GET request is in flight to the backend, the identical requests wait for it
+ * and are answered with the same response, instead of sending the requests to the backend.
+ * <pre>{@code
+ * ReverseUrlConfig.create().path("/app/")
+ *     .reverse(ReverseConfig.create().url("http://app1:8080/app/"))
+ *     .cache(CacheConfig.create())
+ *     .coalescing(CoalescingConfig.create().maxWait(Timeout.ofSeconds(3)));
+ * }</pre>
+ */
+public class CoalescingConfig {
+
+	protected Timeout maxWait = Timeout.ofSeconds(5L);
+	protected int maxBytes = 1024 * 1024;
+	protected boolean shareUncacheable;
+
+	public static CoalescingConfig create() {
+		return new CoalescingConfig();
+	}
+
+	/**
+	 * Maximum time to wait for the response of the first request.
+	 * After that, the waiting request is sent to the backend.
+	 * @param maxWait default 5 seconds.
+	 */
+	public CoalescingConfig maxWait(final Timeout maxWait) {
+		if (maxWait != null) {
+			this.maxWait = maxWait;
+		}
+		return this;
+	}
+
+	public Timeout getMaxWait() {
+		return maxWait;
+	}
+
+	/**
+	 * Maximum size of a response body to share.
+	 * The larger responses (and the responses without Content-Length) are not shared.
+	 * @param maxBytes default 1MB.
+	 */
+	public CoalescingConfig maxBytes(final int maxBytes) {
+		if (maxBytes > 0) {
+			this.maxBytes = maxBytes;
+		}
+		return this;
+	}
+
+	public int getMaxBytes() {
+		return maxBytes;
+	}
+
+	/**
+	 * Share the responses that are not cacheable. (ex. no-cache, or without the freshness and validators)
+	 * The no-store and private responses and the responses with Set-Cookie are never shared,
+	 * and the requests with the different Cookie headers are not coalesced.
+	 * @param shareUncacheable default false.
+	 */
+	public CoalescingConfig shareUncacheable(final boolean shareUncacheable) {
+		this.shareUncacheable = shareUncacheable;
+		return this;
+	}
+
+	public boolean isShareUncacheable() {
+		return shareUncacheable;
+	}
+}
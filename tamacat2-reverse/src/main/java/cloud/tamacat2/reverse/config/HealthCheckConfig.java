@@ -0,0 +1,115 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+/**
+ * <p>Active health check of the backends. (periodic GET request to each backend)<br>
+ * A backend is marked down after {@link #unhealthyThreshold(int)} consecutive failed probes,
+ * and marked up again after {@link #healthyThreshold(int)} consecutive successful probes.
+ * A 2xx or 3xx response is a successful probe.
+ * <pre>{@code
+ * ReverseUrlConfig.create().path("/app/")
+ *     .reverse(ReverseConfig.create().url("http://app1:8080/app/"))
+ *     .healthCheck(HealthCheckConfig.create().path("/app/health").interval(TimeValue.ofSeconds(5)));
+ * }</pre>
+ */
+public class HealthCheckConfig {
+
+	protected String path = "/";
+	protected TimeValue interval = TimeValue.ofSeconds(10L);
+	protected Timeout timeout = Timeout.ofSeconds(2L);
+	protected int healthyThreshold = 2;
+	protected int unhealthyThreshold = 3;
+
+	public static HealthCheckConfig create() {
+		return new HealthCheckConfig();
+	}
+
+	/**
+	 * Request path of the probe. (absolute path on the backend host)
+	 * @param path default "/"
+	 */
+	public HealthCheckConfig path(final String path) {
+		if (path != null && path.startsWith("/")) {
+			this.path = path;
+		}
+		return this;
+	}
+
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @param interval default 10 seconds.
+	 */
+	public HealthCheckConfig interval(final TimeValue interval) {
+		if (interval != null) {
+			this.interval = interval;
+		}
+		return this;
+	}
+
+	public TimeValue getInterval() {
+		return interval;
+	}
+
+	/**
+	 * Connect and socket timeout of the probe.
+	 * @param timeout default 2 seconds.
+	 */
+	public HealthCheckConfig timeout(final Timeout timeout) {
+		if (timeout != null) {
+			this.timeout = timeout;
+		}
+		return this;
+	}
+
+	public Timeout getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * @param healthyThreshold default 2.
+	 */
+	public HealthCheckConfig healthyThreshold(final int healthyThreshold) {
+		if (healthyThreshold > 0) {
+			this.healthyThreshold = healthyThreshold;
+		}
+		return this;
+	}
+
+	public int getHealthyThreshold() {
+		return healthyThreshold;
+	}
+
+	/**
+	 * @param unhealthyThreshold default 3.
+	 */
+	public HealthCheckConfig unhealthyThreshold(final int unhealthyThreshold) {
+		if (unhealthyThreshold > 0) {
+			this.unhealthyThreshold = unhealthyThreshold;
+		}
+		return this;
+	}
+
+	public int getUnhealthyThreshold() {
+		return unhealthyThreshold;
+	}
+}
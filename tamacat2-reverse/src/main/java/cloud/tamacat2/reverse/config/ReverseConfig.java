@@ -37,7 +37,9 @@ public class ReverseConfig {
 	UrlConfig urlConfig;
 	
 	private URL host;
+	private volatile ReverseRoute route;
 	private Timeout connectTimeout = Timeout.ofSeconds(180L);
+	private int weight = 1;
 	
 	public static ReverseConfig create() {
 		return new ReverseConfig();
@@ -49,6 +51,7 @@ public class ReverseConfig {
 	
 	public void setUrlConfig(final UrlConfig urlConfig) {
 		this.urlConfig = urlConfig;
+		this.route = null;
 	}
 	
 	public UrlConfig getUrlConfig() {
@@ -60,6 +63,7 @@ public class ReverseConfig {
 			final URL targetUrl = new URI(url).toURL();
 			this.target = new HttpHost(targetUrl.getProtocol(), targetUrl.getHost(), targetUrl.getPort());
 			this.url = url;
+			this.route = null;
 		} catch (Exception e) {
 			LOG.warn(e.getMessage());
 		}
@@ -81,10 +85,19 @@ public class ReverseConfig {
 		return target;
 	}
 	
+	/**
+	 * @deprecated The requested host is kept per request by the RewriteContext.
+	 */
+	@Deprecated
 	public URL getHost() {
 		return host;
 	}
 	
+	/**
+	 * @deprecated This ReverseConfig is shared by the concurrent requests.
+	 *   Use the RewriteContext of the request.
+	 */
+	@Deprecated
 	public void setHost(final URL host) {
 		if (host != null) {
 			try {
@@ -104,19 +117,33 @@ public class ReverseConfig {
 		return null;
 	}
 	
-	public URL getReverseUrl(final String path) {
-		final String p = urlConfig.getPath();
-		if (path != null && p != null && path.startsWith(p)) {
+	/**
+	 * Get the immutable snapshot of this backend and the route.
+	 * (created on the first call, and recreated after {@link #setUrl(String)} or {@link #setUrlConfig(UrlConfig)})
+	 */
+	public ReverseRoute getRoute() {
+		ReverseRoute route = this.route;
+		if (route == null) {
 			final URL reverseUrl = getReverse();
-			final String distUrl = path.replaceFirst(urlConfig.getPath(), reverseUrl.getPath());
+			if (reverseUrl == null) {
+				return null;
+			}
+			route = new ReverseRoute(reverseUrl, urlConfig);
+			this.route = route;
+		}
+		return route;
+	}
+	
+	/**
+	 * path: /examples/servlet => http://localhost:8080/examples2/servlet
+	 * @see ReverseRoute#getTargetPath(String)
+	 */
+	public URL getReverseUrl(final String path) {
+		final ReverseRoute route = getRoute();
+		final String targetPath = route != null ? route.getTargetPath(path) : null;
+		if (targetPath != null) {
 			try {
-				int port = reverseUrl.getPort();
-				if (port == -1) {
-					port = reverseUrl.getDefaultPort();
-				}
-				final URI dist = new URI(distUrl);
-				return new URI(reverseUrl.getProtocol(), null, reverseUrl.getHost(), port,
-						dist.getPath(), dist.getQuery(), dist.getFragment()).toURL();
+				return new URI(route.getBackendOrigin() + targetPath).toURL();
 			} catch (Exception e) {
 				LOG.warn(e.getMessage());
 			}
@@ -127,7 +154,9 @@ public class ReverseConfig {
 	/**
 	 * path: http://localhost:8080/examples/servlet
 	 *   =>  http://localhost/examples2/servlet
+	 * @deprecated Use the RewriteContext of the request.
 	 */
+	@Deprecated
 	public String getConvertRequestedUrl(final String path) {
 		final URL reverseUrl = getReverse();
 		final URL host = getHost(); // requested URL (path is deleted)
@@ -157,6 +186,21 @@ public class ReverseConfig {
 		return connectTimeout;
 	}
 	
+	/**
+	 * Weight of this backend for the WeightedRoundRobinLoadBalancer.
+	 * @param weight default 1.
+	 */
+	public ReverseConfig weight(final int weight) {
+		if (weight > 0) {
+			this.weight = weight;
+		}
+		return this;
+	}
+	
+	public int getWeight() {
+		return weight;
+	}
+	
 	@Override
 	public String toString() {
 		return "ReverseConfig [url=" + url + "]";
@@ -0,0 +1,249 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import java.net.URL;
+
+import cloud.tamacat2.httpd.config.HttpConfig;
+import cloud.tamacat2.httpd.config.UrlConfig;
+
+/**
+ * <p>Immutable snapshot of the {@link ReverseConfig} and the route ({@link UrlConfig}).<br>
+ * The backend URL is parsed once, and shared by all requests.
+ * <pre>
+ *   url:  http://localhost:8080/test2/  (backend)
+ *   path: /test/                        (reverse proxy)
+ * </pre>
+ * <p>The request path and the URL of the response headers are converted by the prefix splicing.
+ * (no regular expressions and no URI objects per request)
+ * @see ReverseConfig#getRoute()
+ */
+public final class ReverseRoute {
+
+	private final String backendOrigin;    //http://localhost:8080
+	private final String[] backendOrigins; //with and without the default port
+	private final String backendAuthority; //localhost:8080
+	private final String backendHost;      //localhost
+	private final String backendPath;      //ex. /test2/
+	private final String path;             //ex. /test/
+	private final String scheme;           //scheme of the reverse proxy
+	private final int port;                //port of the reverse proxy
+	private final String defaultHost;      //virtual host of the route
+	private final String serverName;       //Server response header
+	private final String cookiePath;       //ex. /test2
+	private final String cookiePathReplacement; //ex. /test
+
+	ReverseRoute(final URL backendUrl, final UrlConfig urlConfig) {
+		this.backendOrigin = backendUrl.getProtocol() + "://" + backendUrl.getAuthority();
+		this.backendHost = backendUrl.getHost();
+		final int backendPort = backendUrl.getPort();
+		if (backendPort < 0) {
+			this.backendOrigins = new String[] {
+				backendOrigin, backendOrigin + ":" + backendUrl.getDefaultPort()
+			};
+		} else if (backendPort == backendUrl.getDefaultPort()) {
+			this.backendOrigins = new String[] {
+				backendOrigin, backendUrl.getProtocol() + "://" + backendHost
+			};
+		} else {
+			this.backendOrigins = new String[] { backendOrigin };
+		}
+		this.backendAuthority = backendPort != 80 && backendPort > 0 ? backendHost + ":" + backendPort : backendHost;
+		this.backendPath = backendUrl.getPath().isEmpty() ? "/" : backendUrl.getPath();
+		this.path = urlConfig != null ? urlConfig.getPath() : null;
+
+		final URL host = urlConfig != null ? urlConfig.getHost() : null;
+		final HttpConfig httpConfig = urlConfig != null ? urlConfig.getHttpConfig() : null;
+		String scheme = host != null ? host.getProtocol() : "http";
+		if (httpConfig != null && httpConfig.useHttps()) {
+			scheme = "https";
+		}
+		this.scheme = scheme;
+		this.port = httpConfig != null ? httpConfig.getPort() : -1;
+		this.defaultHost = host != null ? host.getHost() : null;
+		this.serverName = httpConfig != null ? httpConfig.getServerName() : null;
+
+		this.cookiePath = stripEnd(backendPath);
+		this.cookiePathReplacement = stripEnd(path != null ? path : "");
+	}
+
+	/**
+	 * Convert the request path to the path of the backend.
+	 * <pre>
+	 *   /test/abc.html?q=1 => /test2/abc.html?q=1
+	 * </pre>
+	 * @param requestPath path and query of the request.
+	 * @return null if the request path does not start with the path of the route.
+	 */
+	public String getTargetPath(final String requestPath) {
+		if (requestPath == null || path == null || !requestPath.startsWith(path)) {
+			return null;
+		}
+		return splice(backendPath, requestPath, path.length());
+	}
+
+	/**
+	 * Convert the URL of the backend to the URL of the reverse proxy.
+	 * <pre>
+	 *   http://localhost:8080/test2/abc.html => http://www.example.com/test/abc.html
+	 *   http://localhost:8080/test2/abc.html => /test/abc.html (requestedOrigin is null)
+	 *   /test2/abc.html                      => /test/abc.html
+	 * </pre>
+	 * @param url value of the Location/Content-Location header.
+	 * @param requestedOrigin scheme, host and port of the client request. (nullable)
+	 * @return the converted URL, or the url as is when it is not the URL of the backend.
+	 */
+	public String getRequestedUrl(final String url, final String requestedOrigin) {
+		if (url == null || path == null) {
+			return null;
+		}
+		for (final String origin : backendOrigins) {
+			if (url.startsWith(origin)) {
+				final int end = origin.length();
+				if (url.startsWith(backendPath, end)) {
+					final String converted = splice(path, url, end + backendPath.length());
+					return requestedOrigin != null ? requestedOrigin + converted : converted;
+				} else if (url.length() == end || url.charAt(end) == '/') {
+					return requestedOrigin != null ? splice(requestedOrigin, url, end) : url;
+				}
+			}
+		}
+		if (url.startsWith(backendPath)) {
+			return splice(path, url, backendPath.length());
+		}
+		return url;
+	}
+
+	static String splice(final String prefix, final String str, final int start) {
+		return new StringBuilder(prefix.length() + str.length() - start)
+			.append(prefix).append(str, start, str.length()).toString();
+	}
+
+	/**
+	 * Get the origin of the backend. (ex. "http://localhost:8080")
+	 */
+	public String getBackendOrigin() {
+		return backendOrigin;
+	}
+
+	/**
+	 * Get the value of the Host request header to the backend. (The port 80 is omitted.)
+	 */
+	public String getBackendAuthority() {
+		return backendAuthority;
+	}
+
+	public String getBackendHost() {
+		return backendHost;
+	}
+
+	public String getBackendPath() {
+		return backendPath;
+	}
+
+	/**
+	 * Get the path of the reverse proxy. ({@link UrlConfig#getPath()})
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	public String getScheme() {
+		return scheme;
+	}
+
+	public int getPort() {
+		return port;
+	}
+
+	/**
+	 * Get the host name of the route when the request has no Host header.
+	 */
+	public String getDefaultHost() {
+		return defaultHost;
+	}
+
+	/**
+	 * Get the server name of the reverse proxy. (null when the route has no HttpConfig)
+	 */
+	public String getServerName() {
+		return serverName;
+	}
+
+	/**
+	 * Convert the domain and path attributes of the Set-Cookie header line.
+	 * <pre>
+	 *   BEFORE: JSESSIONID=1234567890ABCDEFGHIJKLMNOPQRSTUV; Path=/test2; domain=localhost
+	 *   AFTER : JSESSIONID=1234567890ABCDEFGHIJKLMNOPQRSTUV; Path=/test; domain=www.example.com
+	 * </pre>
+	 * @param line Set-Cookie header value.
+	 * @param requestedHost host name of the client request. (not converted the domain when null)
+	 */
+	public String getConvertedSetCookieHeader(final String line, final String requestedHost) {
+		if (line == null) {
+			return "";
+		}
+		final int length = line.length();
+		StringBuilder converted = null;
+		int copied = 0;
+		int i = line.indexOf(';');
+		while (i >= 0) {
+			int start = i + 1;
+			while (start < length && Character.isWhitespace(line.charAt(start))) {
+				start++;
+			}
+			final int end = line.indexOf(';', start);
+			if (line.regionMatches(true, start, "Path=", 0, 5)
+					&& line.regionMatches(true, start + 5, cookiePath, 0, cookiePath.length())) {
+				//prefix of the path: "; Path=/test2/abc" => "; Path=/test/abc"
+				converted = append(converted, line, copied, i).append("; Path=").append(cookiePathReplacement);
+				copied = start + 5 + cookiePath.length();
+			} else if (requestedHost != null && line.regionMatches(true, start, "Domain=", 0, 7)
+					&& isDomain(line, start + 7, end < 0 ? length : end)) {
+				converted = append(converted, line, copied, start + 7).append(requestedHost);
+				copied = start + 7 + backendHost.length();
+			}
+			i = end;
+		}
+		return converted != null ? converted.append(line, copied, length).toString() : line;
+	}
+
+	boolean isDomain(final String line, final int start, final int end) {
+		int e = end;
+		while (e > start && Character.isWhitespace(line.charAt(e - 1))) {
+			e--;
+		}
+		return e - start == backendHost.length() && line.regionMatches(true, start, backendHost, 0, backendHost.length());
+	}
+
+	static StringBuilder append(final StringBuilder converted, final String line, final int start, final int end) {
+		final StringBuilder sb = converted != null ? converted : new StringBuilder(line.length() + 16);
+		return sb.append(line, start, end);
+	}
+
+	static String stripEnd(final String str) {
+		int end = str.length();
+		while (end > 0 && str.charAt(end - 1) == '/') {
+			end--;
+		}
+		return str.substring(0, end);
+	}
+
+	@Override
+	public String toString() {
+		return "ReverseRoute [backend=" + backendOrigin + backendPath + ", path=" + path + "]";
+	}
+}
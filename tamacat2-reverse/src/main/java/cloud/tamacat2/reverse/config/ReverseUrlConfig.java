@@ -17,18 +17,33 @@ package cloud.tamacat2.reverse.config;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 
 import org.apache.hc.core5.http.impl.Http1StreamListener;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 
 import cloud.tamacat2.httpd.config.UrlConfig;
+import cloud.tamacat2.reverse.balancer.LoadBalancer;
+import cloud.tamacat2.reverse.balancer.RoundRobinLoadBalancer;
 import cloud.tamacat2.reverse.listener.TraceHttp1StreamListener;
 
 public class ReverseUrlConfig extends UrlConfig {
 
 	protected ReverseConfig reverse = new ReverseConfig();
 	protected Collection<ReverseConfig> reverses = new ArrayList<>();
+	protected LoadBalancer loadBalancer = new RoundRobinLoadBalancer();
+	protected HealthCheckConfig healthCheck;
+	protected CircuitBreakerConfig circuitBreaker = CircuitBreakerConfig.create();
+	protected CacheConfig cache;
+	protected CoalescingConfig coalescing;
 	protected Http1StreamListener streamListener = new TraceHttp1StreamListener();
 	
+	//backend connection pool
+	protected TimeValue connectionIdleTimeout = TimeValue.ofSeconds(3L);
+	protected TimeValue connectionEvictInterval = TimeValue.ofSeconds(1L);
+	protected Timeout connectionTimeToLive;
+	
 	public static ReverseUrlConfig create() {
 		return new ReverseUrlConfig();
 	}
@@ -40,13 +55,104 @@ public class ReverseUrlConfig extends UrlConfig {
 		return reverse;
 	}
 	
+	/**
+	 * Add the backend of this route. The first backend is the primary ({@link #getReverse()}).
+	 * @param reverse
+	 */
 	public ReverseUrlConfig reverse(final ReverseConfig reverse) {
 		if (reverse != null) {
-			this.reverse = reverse;
+			if (reverses.isEmpty()) {
+				this.reverse = reverse;
+			}
+			reverses.add(reverse);
+		}
+		return this;
+	}
+	
+	/**
+	 * Get all backends of this route.
+	 */
+	public Collection<ReverseConfig> getReverses() {
+		if (reverses.isEmpty()) {
+			return Collections.singletonList(getReverse());
+		}
+		for (final ReverseConfig r : reverses) {
+			if (r.getUrlConfig() == null) {
+				r.setUrlConfig(this);
+			}
+		}
+		return Collections.unmodifiableCollection(reverses);
+	}
+	
+	/**
+	 * Strategy to select the backend for each request.
+	 * @param loadBalancer default RoundRobinLoadBalancer.
+	 */
+	public ReverseUrlConfig loadBalancer(final LoadBalancer loadBalancer) {
+		if (loadBalancer != null) {
+			this.loadBalancer = loadBalancer;
+		}
+		return this;
+	}
+	
+	public LoadBalancer getLoadBalancer() {
+		return loadBalancer;
+	}
+	
+	/**
+	 * Active health check of the backends.
+	 * @param healthCheck default null. (disabled)
+	 */
+	public ReverseUrlConfig healthCheck(final HealthCheckConfig healthCheck) {
+		this.healthCheck = healthCheck;
+		return this;
+	}
+	
+	public HealthCheckConfig getHealthCheck() {
+		return healthCheck;
+	}
+	
+	/**
+	 * Passive outlier detection of the backends.
+	 * @param circuitBreaker default: open after 5 consecutive connect/I/O failures for 30 seconds.
+	 */
+	public ReverseUrlConfig circuitBreaker(final CircuitBreakerConfig circuitBreaker) {
+		if (circuitBreaker != null) {
+			this.circuitBreaker = circuitBreaker;
 		}
 		return this;
 	}
 	
+	public CircuitBreakerConfig getCircuitBreaker() {
+		return circuitBreaker;
+	}
+	
+	/**
+	 * In-memory HTTP response cache of this route.
+	 * @param cache default null. (disabled)
+	 */
+	public ReverseUrlConfig cache(final CacheConfig cache) {
+		this.cache = cache;
+		return this;
+	}
+	
+	public CacheConfig getCache() {
+		return cache;
+	}
+	
+	/**
+	 * Request coalescing (single-flight) of the identical GET requests of this route.
+	 * @param coalescing default null. (disabled)
+	 */
+	public ReverseUrlConfig coalescing(final CoalescingConfig coalescing) {
+		this.coalescing = coalescing;
+		return this;
+	}
+	
+	public CoalescingConfig getCoalescing() {
+		return coalescing;
+	}
+	
 	@Override
 	public ReverseUrlConfig path(final String path) {
 		this.path = path;
@@ -61,4 +167,45 @@ public class ReverseUrlConfig extends UrlConfig {
     public Http1StreamListener getStreamListener() {
         return streamListener;
     }
+    
+	/**
+	 * Close the pooled backend connections that have been idle longer than this time.
+	 * @param connectionIdleTimeout default 3 seconds.
+	 */
+	public ReverseUrlConfig connectionIdleTimeout(final TimeValue connectionIdleTimeout) {
+		this.connectionIdleTimeout = connectionIdleTimeout;
+		return this;
+	}
+	
+	public TimeValue getConnectionIdleTimeout() {
+		return connectionIdleTimeout;
+	}
+	
+	/**
+	 * Interval of the background eviction of idle and expired backend connections.
+	 * @param connectionEvictInterval default 1 second.
+	 */
+	public ReverseUrlConfig connectionEvictInterval(final TimeValue connectionEvictInterval) {
+		if (connectionEvictInterval != null) {
+			this.connectionEvictInterval = connectionEvictInterval;
+		}
+		return this;
+	}
+	
+	public TimeValue getConnectionEvictInterval() {
+		return connectionEvictInterval;
+	}
+	
+	/**
+	 * Total time to live of the pooled backend connections. (default unlimited)
+	 * @param connectionTimeToLive
+	 */
+	public ReverseUrlConfig connectionTimeToLive(final Timeout connectionTimeToLive) {
+		this.connectionTimeToLive = connectionTimeToLive;
+		return this;
+	}
+	
+	public Timeout getConnectionTimeToLive() {
+		return connectionTimeToLive;
+	}
 }
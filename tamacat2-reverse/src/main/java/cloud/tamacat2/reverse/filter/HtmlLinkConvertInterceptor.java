@@ -22,6 +22,8 @@ import org.slf4j.LoggerFactory;
 import cloud.tamacat2.httpd.util.HeaderUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
 import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseRoute;
+import cloud.tamacat2.reverse.util.RewriteContext;
 
 public class HtmlLinkConvertInterceptor implements HttpResponseInterceptor {
 
@@ -52,12 +54,12 @@ public class HtmlLinkConvertInterceptor implements HttpResponseInterceptor {
 			throw new IllegalArgumentException("HTTP context may not be null");
 		}
 		
-		final ReverseConfig reverseConfig = (ReverseConfig)context.getAttribute(ReverseConfig.class.getName());
-		if (reverseConfig != null) {
+		final ReverseRoute route = getReverseRoute(context);
+		if (route != null) {
 			final Header header = response.getFirstHeader(HttpHeaders.CONTENT_TYPE);
 			if (header != null && HeaderUtils.inContentType(contentTypes, header)) {
-				final String before = reverseConfig.getReverse().getPath();
-				final String after = reverseConfig.getUrlConfig().getPath();
+				final String before = route.getBackendPath();
+				final String after = route.getPath();
 				LOG.debug(before + "->" + after);
 				if (before.equals(after)) {
 					//none
@@ -76,6 +78,18 @@ public class HtmlLinkConvertInterceptor implements HttpResponseInterceptor {
 		}
 	}
 
+	/**
+	 * Get the route of the request. (The cached responses have no RewriteContext.)
+	 */
+	protected ReverseRoute getReverseRoute(final HttpContext context) {
+		final RewriteContext rewriteContext = RewriteContext.getContext(context);
+		if (rewriteContext != null) {
+			return rewriteContext.getRoute();
+		}
+		final ReverseConfig reverseConfig = (ReverseConfig)context.getAttribute(ReverseConfig.class.getName());
+		return reverseConfig != null ? reverseConfig.getRoute() : null;
+	}
+
 	/**
 	 * <p>
 	 * Set the content type of the link convertion.<br>
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -36,7 +38,9 @@ import cloud.tamacat2.httpd.util.IOUtils;
 import cloud.tamacat2.reverse.util.HtmlUtils;
 
 /**
- * <p>HttpEntity for Link convert.
+ * <p>HttpEntity for Link convert.<br>
+ * The default links are rewritten by the streaming {@link LinkRewriter} with the fixed size buffer.
+ * The custom link patterns are applied to each line by the regular expressions.
  */
 public class LinkConvertingEntity extends HttpEntityWrapper {
 
@@ -92,24 +96,41 @@ public class LinkConvertingEntity extends HttpEntityWrapper {
 		return contentLength;
 	}
 
+	/**
+	 * The default link pattern is rewritten by the {@link LinkRewriter}.
+	 */
+	protected boolean useLinkRewriter() {
+		return linkPatterns.size() == 1 && linkPatterns.get(0) == LINK_PATTERN;
+	}
+
 	@Override
 	public void writeTo(final OutputStream outstream) throws IOException {
 		if (outstream == null) {
 			throw new IllegalArgumentException("Output stream may not be null");
 		}
+		final String contentType = getContentType();
+		String charset = EncodeUtils.getJavaEncoding(HtmlUtils.getCharSet(contentType));
+		if (charset == null) {
+			charset = defaultCharset;
+		}
+		if (useLinkRewriter()) {
+			Writer writer = null;
+			Reader reader = null;
+			try {
+				writer = new OutputStreamWriter(outstream, charset);
+				reader = new InputStreamReader(getContent(), charset);
+				new LinkRewriter(before, after).bufferSize(bufferSize).rewrite(reader, writer);
+			} finally {
+				IOUtils.close(reader);
+				IOUtils.close(writer);
+			}
+			return;
+		}
 		BufferedWriter writer = null;
 		BufferedReader reader = null;
 		try {
-			this.contentLength = getContentLength();
-			final String contentType = getContentType();
-			String charset = EncodeUtils.getJavaEncoding(HtmlUtils.getCharSet(contentType));
-			if (charset == null) {
-				charset = defaultCharset;
-			}
 			writer = new BufferedWriter(new OutputStreamWriter(outstream, charset));
 			reader = new BufferedReader(new InputStreamReader(getContent(), charset));
-
-			int length = 0;
 			String line;
 			while ((line = reader.readLine()) != null) {
 				line = line + "\r\n";
@@ -120,10 +141,6 @@ public class LinkConvertingEntity extends HttpEntityWrapper {
 					}
 				}
 				writer.write(line);
-				length += line.getBytes(charset).length;
-			}
-			if (before.length() != after.length()) {
-				contentLength = length;
 			}
 			writer.flush();
 		} finally {
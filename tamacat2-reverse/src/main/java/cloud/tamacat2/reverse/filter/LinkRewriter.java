@@ -0,0 +1,354 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.filter;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+/**
+ * <p>Streaming link rewriter of the HTML/CSS contents.<br>
+ * The value of the href/src/action/background attributes and the url of {@code url(...)} / {@code url=...}
+ * is rewritten when it starts with the {@code before} path.
+ * <ul>
+ *   <li>A small state machine scans the characters with a fixed size buffer,
+ *   so the memory is constant for any size of the content. (no line buffering, no regular expressions)</li>
+ *   <li>The matching state is kept across the buffer boundaries.</li>
+ *   <li>The absolute URLs (http://, https://, //host) and the relative paths are not rewritten.</li>
+ *   <li>The other characters (line separators, etc.) are written as is.</li>
+ * </ul>
+ * This class is not thread safe. (an instance per stream)
+ */
+public class LinkRewriter {
+
+	static final int TEXT = 0;
+	static final int TAG = 1;
+	static final int ATTR_NAME = 2;
+	static final int AFTER_NAME = 3;
+	static final int AFTER_EQ = 4;
+	static final int VALUE = 5;
+	static final int URL_START = 6;
+	static final int PREFIX = 7;
+	static final int PREFIX_END = 8;
+
+	//the last 4 characters (lower case ASCII) of "url(" and "url="
+	static final int URL_PAREN = ('u' << 24) | ('r' << 16) | ('l' << 8) | '(';
+	static final int URL_EQ = ('u' << 24) | ('r' << 16) | ('l' << 8) | '=';
+
+	static final String[] LINK_ATTRIBUTES = { "href", "src", "action", "background" };
+	static final int MAX_NAME_LENGTH = 10;
+
+	protected final char[] before;
+	protected final char[] after;
+	protected int bufferSize = 8192; //8KB
+
+	protected int state = TEXT;
+	protected int returnState = TEXT;
+	protected char quote;
+	protected int window;
+	protected final char[] name = new char[MAX_NAME_LENGTH];
+	protected int nameLength;
+	protected int matched;
+
+	protected Writer writer;
+	protected char[] out;
+	protected int outLength;
+
+	/**
+	 * @param before path of the backend. (ex. "/app/")
+	 * @param after path of the reverse proxy. (ex. "/examples/")
+	 */
+	public LinkRewriter(final String before, final String after) {
+		if (before == null || before.length() == 0 || after == null) {
+			throw new IllegalArgumentException("before/after path may not be empty");
+		}
+		this.before = before.toCharArray();
+		this.after = after.toCharArray();
+	}
+
+	/**
+	 * Size of the read/write buffers.
+	 * @param bufferSize default 8192.
+	 */
+	public LinkRewriter bufferSize(final int bufferSize) {
+		if (bufferSize > 0) {
+			this.bufferSize = bufferSize;
+		}
+		return this;
+	}
+
+	/**
+	 * Read the contents to the end of the stream and write the rewritten contents.
+	 * The writer is flushed but not closed.
+	 */
+	public void rewrite(final Reader reader, final Writer writer) throws IOException {
+		this.writer = writer;
+		//a character may write the held prefix and the replacement.
+		this.out = new char[bufferSize + before.length + after.length + 1];
+		this.outLength = 0;
+		final char[] in = new char[bufferSize];
+		int n;
+		while ((n = reader.read(in)) != -1) {
+			rewrite(in, 0, n);
+		}
+		end();
+		writer.flush();
+	}
+
+	/**
+	 * Rewrite the chunk of the contents.
+	 * The incomplete match of the link is held until the next chunk or {@link #end()}.
+	 */
+	protected void rewrite(final char[] chars, final int offset, final int length) throws IOException {
+		final int end = offset + length;
+		for (int i=offset; i<end; i++) {
+			if (outLength >= bufferSize) {
+				flushBuffer();
+			}
+			next(chars[i]);
+		}
+	}
+
+	/**
+	 * Write the held characters at the end of the stream.
+	 */
+	protected void end() throws IOException {
+		if (state == PREFIX || state == PREFIX_END) {
+			flushMatched();
+		}
+		state = TEXT;
+		flushBuffer();
+	}
+
+	protected void next(final char c) {
+		switch (state) {
+		case TEXT:
+			append(c);
+			if (c == '<') {
+				state = TAG;
+			} else if (isUrl(c)) {
+				startUrl(TEXT);
+			}
+			break;
+		case TAG:
+			append(c);
+			if (c == '>') {
+				toText();
+			} else if (isNameChar(c)) {
+				nameLength = 0;
+				addName(c);
+				state = ATTR_NAME;
+			}
+			break;
+		case ATTR_NAME:
+			if (isNameChar(c)) {
+				append(c);
+				addName(c);
+			} else if (c == '=') {
+				append(c);
+				state = AFTER_EQ;
+			} else if (isWhitespace(c)) {
+				append(c);
+				state = AFTER_NAME;
+			} else {
+				state = TAG;
+				next(c);
+			}
+			break;
+		case AFTER_NAME:
+			if (isWhitespace(c)) {
+				append(c);
+			} else if (c == '=') {
+				append(c);
+				state = AFTER_EQ;
+			} else {
+				state = TAG;
+				next(c);
+			}
+			break;
+		case AFTER_EQ:
+			if (isWhitespace(c)) {
+				append(c);
+			} else if (c == '"' || c == '\'') {
+				append(c);
+				quote = c;
+				startValue();
+			} else if (c == '>') {
+				append(c);
+				toText();
+			} else {
+				quote = 0;
+				startValue();
+				next(c);
+			}
+			break;
+		case VALUE:
+			if (isValueEnd(c)) {
+				state = TAG;
+				if (quote != 0) {
+					append(c);
+				} else {
+					next(c);
+				}
+			} else {
+				append(c);
+				if (isUrl(c)) {
+					startUrl(VALUE);
+				}
+			}
+			break;
+		case URL_START:
+			if (returnState == VALUE && isValueEnd(c)) {
+				state = VALUE;
+				next(c);
+			} else if (isWhitespace(c) || c == '"' || c == '\'') {
+				append(c);
+			} else {
+				state = PREFIX;
+				matched = 0;
+				next(c);
+			}
+			break;
+		case PREFIX:
+			if (c == before[matched]) {
+				matched++;
+				if (matched == before.length) {
+					if (matched == 1) {
+						//"/" -> check the next character of "//host"
+						state = PREFIX_END;
+					} else {
+						replace();
+					}
+				}
+			} else {
+				flushMatched();
+				next(c);
+			}
+			break;
+		case PREFIX_END:
+			if (c == '/') {
+				flushMatched();
+			} else {
+				replace();
+			}
+			next(c);
+			break;
+		default:
+			append(c);
+		}
+	}
+
+	protected void toText() {
+		state = TEXT;
+		window = 0;
+	}
+
+	protected void startValue() {
+		window = 0;
+		state = VALUE;
+		if (isLinkAttribute()) {
+			returnState = VALUE;
+			state = PREFIX;
+			matched = 0;
+		}
+	}
+
+	protected void startUrl(final int returnState) {
+		this.returnState = returnState;
+		this.state = URL_START;
+		window = 0;
+	}
+
+	protected void replace() {
+		for (int i=0; i<after.length; i++) {
+			append(after[i]);
+		}
+		matched = 0;
+		state = returnState;
+	}
+
+	protected void flushMatched() {
+		for (int i=0; i<matched; i++) {
+			append(before[i]);
+		}
+		matched = 0;
+		state = returnState;
+	}
+
+	protected boolean isValueEnd(final char c) {
+		return quote != 0 ? c == quote : (c == '>' || isWhitespace(c));
+	}
+
+	/**
+	 * Keep the last 4 characters and check "url(" or "url=". (case insensitive)
+	 */
+	protected boolean isUrl(final char c) {
+		window = (window << 8) | toLowerAscii(c);
+		return window == URL_PAREN || window == URL_EQ;
+	}
+
+	protected void addName(final char c) {
+		if (nameLength < MAX_NAME_LENGTH) {
+			name[nameLength] = (char)toLowerAscii(c);
+		}
+		nameLength++;
+	}
+
+	protected boolean isLinkAttribute() {
+		for (final String attr : LINK_ATTRIBUTES) {
+			if (attr.length() == nameLength) {
+				boolean equals = true;
+				for (int i=0; i<nameLength; i++) {
+					if (attr.charAt(i) != name[i]) {
+						equals = false;
+						break;
+					}
+				}
+				if (equals) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	protected void append(final char c) {
+		out[outLength++] = c;
+	}
+
+	protected void flushBuffer() throws IOException {
+		if (outLength > 0) {
+			writer.write(out, 0, outLength);
+			outLength = 0;
+		}
+	}
+
+	static int toLowerAscii(final char c) {
+		if (c >= 'A' && c <= 'Z') {
+			return c + ('a' - 'A');
+		}
+		return c < 0x80 ? c : 0;
+	}
+
+	static boolean isNameChar(final char c) {
+		return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+			|| c == '-' || c == '_' || c == ':';
+	}
+
+	static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+	}
+}
@@ -22,29 +22,65 @@ import org.apache.hc.core5.pool.PoolStats;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * <p>ConnPoolListener for the backend connection pool.<br>
+ * Keeps the latest {@link ConnPoolStats}, so the leased/available connections can be read at any time.
+ */
 public class TraceConnPoolListener implements ConnPoolListener<HttpHost> {
 	
 	static final Logger LOG = LoggerFactory.getLogger(TraceConnPoolListener.class);
 	
+	protected volatile ConnPoolStats<HttpHost> connPoolStats;
+	
 	@Override
 	public void onLease(HttpHost route, ConnPoolStats<HttpHost> connPoolStats) {
+		this.connPoolStats = connPoolStats;
 		if (LOG.isTraceEnabled()) {
 			StringBuilder buf = new StringBuilder();
 			buf.append("[proxy->origin] connection leased ").append(route);
+			append(buf, route, connPoolStats);
 			LOG.trace(buf.toString());
 		}
 	}
 
 	@Override
 	public void onRelease(HttpHost route, ConnPoolStats<HttpHost> connPoolStats) {
+		this.connPoolStats = connPoolStats;
 		if (LOG.isTraceEnabled()) {
 			StringBuilder buf = new StringBuilder();
 			buf.append("[httpd->origin] connection released ").append(route);
-			PoolStats totals = connPoolStats.getTotalStats();
-			buf.append("; total kept alive: ").append(totals.getAvailable()).append("; ");
-			buf.append("total allocated: ").append(totals.getLeased() + totals.getAvailable());
-			buf.append(" of ").append(totals.getMax());
+			append(buf, route, connPoolStats);
 			LOG.trace(buf.toString());
 		}
 	}
+	
+	void append(StringBuilder buf, HttpHost route, ConnPoolStats<HttpHost> connPoolStats) {
+		PoolStats stats = connPoolStats.getStats(route);
+		buf.append("; route leased: ").append(stats.getLeased());
+		buf.append(", available: ").append(stats.getAvailable());
+		buf.append(", pending: ").append(stats.getPending());
+		PoolStats totals = connPoolStats.getTotalStats();
+		buf.append("; total kept alive: ").append(totals.getAvailable()).append("; ");
+		buf.append("total allocated: ").append(totals.getLeased() + totals.getAvailable());
+		buf.append(" of ").append(totals.getMax());
+	}
+	
+	/**
+	 * Get the total statistics of the connection pool.
+	 * @return null if no connection has been leased yet.
+	 */
+	public PoolStats getTotalStats() {
+		final ConnPoolStats<HttpHost> stats = connPoolStats;
+		return stats != null ? stats.getTotalStats() : null;
+	}
+	
+	/**
+	 * Get the statistics of the route (target host).
+	 * @param route
+	 * @return null if no connection has been leased yet.
+	 */
+	public PoolStats getStats(HttpHost route) {
+		final ConnPoolStats<HttpHost> stats = connPoolStats;
+		return stats != null ? stats.getStats(route) : null;
+	}
 }
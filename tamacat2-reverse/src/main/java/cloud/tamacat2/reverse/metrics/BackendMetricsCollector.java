@@ -0,0 +1,77 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.metrics;
+
+import java.util.List;
+
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.pool.PoolStats;
+
+import cloud.tamacat2.httpd.metrics.MetricsCollector;
+import cloud.tamacat2.httpd.metrics.MetricsWriter;
+import cloud.tamacat2.reverse.balancer.Backend;
+
+/**
+ * <p>Metrics of the backends of a route.
+ * <ul>
+ *   <li>latency histogram, in-flight requests and availability of each backend</li>
+ *   <li>connect failures and all I/O failures</li>
+ *   <li>leased, available and pending connections of the backend connection pool ({@link PoolStats})</li>
+ * </ul>
+ * The connections are pooled per target host, so the routes of the {@link cloud.tamacat2.reverse.AsyncReverseProxy}
+ * (one pool shared by all routes) report the same pool of the same backend.
+ */
+public class BackendMetricsCollector implements MetricsCollector {
+
+	protected final String route;
+	protected final List<Backend> backends;
+	protected final ConnPoolControl<HttpHost> connPool;
+
+	public BackendMetricsCollector(final String route, final List<Backend> backends, final ConnPoolControl<HttpHost> connPool) {
+		this.route = route;
+		this.backends = backends;
+		this.connPool = connPool;
+	}
+
+	@Override
+	public void collect(final MetricsWriter writer) {
+		for (final Backend backend : backends) {
+			final String target = backend.getTarget().toString();
+			writer.histogram("tamacat2_backend_request_duration_seconds", "Latency of the requests to the backend.",
+				backend.getLatency().snapshot(), "route", route, "backend", target);
+			writer.gauge("tamacat2_backend_requests_active", "Number of the in-flight requests to the backend.",
+				backend.getOutstanding(), "route", route, "backend", target);
+			writer.gauge("tamacat2_backend_up", "Whether the backend is healthy and its circuit is not open.",
+				backend.isAvailable() ? 1 : 0, "route", route, "backend", target);
+			writer.counter("tamacat2_backend_failures_total", "Connect and I/O failures of the backend.",
+				backend.getFailures(), "route", route, "backend", target);
+			writer.counter("tamacat2_backend_connect_failures_total", "Failures to connect to the backend.",
+				backend.getConnectFailures(), "route", route, "backend", target);
+			if (connPool != null) {
+				final PoolStats stats = connPool.getStats(backend.getTarget());
+				writer.gauge("tamacat2_backend_pool_connections", "Connections of the backend connection pool.",
+					stats.getLeased(), "route", route, "backend", target, "state", "leased");
+				writer.gauge("tamacat2_backend_pool_connections", "Connections of the backend connection pool.",
+					stats.getAvailable(), "route", route, "backend", target, "state", "available");
+				writer.gauge("tamacat2_backend_pool_pending", "Requests waiting for a connection of the backend.",
+					stats.getPending(), "route", route, "backend", target);
+				writer.gauge("tamacat2_backend_pool_max", "Maximum connections to the backend.",
+					stats.getMax(), "route", route, "backend", target);
+			}
+		}
+	}
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.impl.BasicEntityDetails;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.apache.hc.core5.http.nio.AsyncClientEndpoint;
+import org.apache.hc.core5.http.nio.AsyncServerExchangeHandler;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.ResponseChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.error.ErrorPageTemplate;
+import cloud.tamacat2.httpd.error.HttpStatusException;
+import cloud.tamacat2.httpd.error.ServiceUnavailableException;
+import cloud.tamacat2.httpd.util.HeaderUtils;
+import cloud.tamacat2.reverse.AsyncReverseProxyHandler;
+import cloud.tamacat2.reverse.balancer.Backend;
+
+/**
+ * <p>Client side of the asynchronous reverse proxy.<br>
+ * Consumes the request body from the client and produces the response body of the origin server.
+ * The reading side is suspended while the buffer of the other side is full (backpressure).
+ */
+public class IncomingExchangeHandler implements AsyncServerExchangeHandler {
+
+	static final Logger LOG = LoggerFactory.getLogger(IncomingExchangeHandler.class);
+
+	protected final AsyncReverseProxyHandler route;
+	protected final ProxyExchangeState state = new ProxyExchangeState();
+
+	public IncomingExchangeHandler(final AsyncReverseProxyHandler route) {
+		this.route = route;
+	}
+
+	@Override
+	public void handleRequest(final HttpRequest request, final EntityDetails entityDetails,
+			final ResponseChannel responseChannel, final HttpContext context) throws HttpException, IOException {
+		synchronized (state) {
+			state.serverContext = context;
+			state.request = request;
+			state.responseMessageChannel = responseChannel;
+			state.requestEntityDetails = entityDetails;
+			state.inputEnd = entityDetails == null;
+		}
+		//ended by releaseResources() with the request, even if the backend cannot be selected.
+		route.begin();
+		final Backend backend = route.selectBackend(request, context);
+		if (backend != null) {
+			synchronized (state) {
+				state.outgoingRequest = route.createOutgoingRequest(request, context, backend);
+				backend.begin();
+				state.backend = backend;
+			}
+		}
+		if (backend == null) {
+			LOG.debug("[proxy->origin] no available backend. path=" + route.getUrlConfig().getPath());
+			sendError(new ServiceUnavailableException());
+			return;
+		}
+		route.getRequester().connect(backend.getTarget(), backend.getReverseConfig().getConnectTimeout(), null,
+				new FutureCallback<AsyncClientEndpoint>() {
+
+			@Override
+			public void completed(final AsyncClientEndpoint clientEndpoint) {
+				synchronized (state) {
+					if (state.closed) {
+						clientEndpoint.releaseAndReuse();
+						return;
+					}
+					state.clientEndpoint = clientEndpoint;
+				}
+				clientEndpoint.execute(new OutgoingExchangeHandler(route, IncomingExchangeHandler.this, state),
+					state.clientContext);
+			}
+
+			@Override
+			public void failed(final Exception cause) {
+				LOG.warn("[proxy->origin] " + backend.getTarget() + " connect failed. " + cause.getMessage());
+				backend.connectFailure();
+				sendError(new ServiceUnavailableException(cause));
+			}
+
+			@Override
+			public void cancelled() {
+				sendError(new ServiceUnavailableException());
+			}
+		});
+	}
+
+	/**
+	 * Send the error page to the client, or abort the response if it was already committed.
+	 */
+	public void sendError(final HttpStatusException e) {
+		final ResponseChannel responseChannel;
+		final HttpResponse response;
+		final EntityDetails entityDetails;
+		synchronized (state) {
+			state.endBackend();
+			if (state.closed) {
+				return;
+			}
+			if (state.response != null) {
+				state.failure = e;
+				if (state.responseDataChannel != null) {
+					state.responseDataChannel.requestOutput();
+				}
+				return;
+			}
+			final String accept = HeaderUtils.getHeader(state.request, HttpHeaders.ACCEPT);
+			final byte[] content;
+			final ContentType contentType;
+			if (accept != null && accept.startsWith(ContentType.APPLICATION_JSON.getMimeType())) {
+				content = ErrorPageTemplate.create().getJson(e).getBytes(StandardCharsets.UTF_8);
+				contentType = ContentType.APPLICATION_JSON;
+			} else {
+				content = ErrorPageTemplate.create().getHtml(e).getBytes(ContentType.TEXT_HTML.getCharset());
+				contentType = ContentType.TEXT_HTML;
+			}
+			response = new BasicHttpResponse(e.getHttpStatus());
+			entityDetails = new BasicEntityDetails(content.length, contentType);
+			state.response = response;
+			state.outBuf.put(ByteBuffer.wrap(content));
+			state.outputEnd = true;
+			responseChannel = state.responseMessageChannel;
+		}
+		try {
+			responseChannel.sendResponse(response, entityDetails, state.serverContext);
+		} catch (HttpException | IOException ex) {
+			LOG.warn(ex.getMessage());
+		}
+	}
+
+	@Override
+	public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+		synchronized (state) {
+			state.requestCapacityChannel = capacityChannel;
+			final int increment = state.inBuf.capacityIncrement();
+			if (increment > 0) {
+				capacityChannel.update(increment);
+			}
+		}
+	}
+
+	@Override
+	public void consume(final ByteBuffer src) throws IOException {
+		synchronized (state) {
+			state.inBuf.consumed(src.remaining());
+			final DataStreamChannel dataChannel = state.requestDataChannel;
+			if (dataChannel != null && !state.inBuf.hasData()) {
+				dataChannel.write(src);
+			}
+			if (src.hasRemaining()) {
+				state.inBuf.put(src);
+			}
+			if (dataChannel != null) {
+				dataChannel.requestOutput();
+			}
+		}
+	}
+
+	@Override
+	public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+		synchronized (state) {
+			state.inputEnd = true;
+			if (state.requestDataChannel != null) {
+				state.requestDataChannel.requestOutput();
+			}
+		}
+	}
+
+	@Override
+	public int available() {
+		synchronized (state) {
+			if (state.failure != null || (state.outputEnd && !state.responseEndStream)) {
+				return Math.max(1, state.outBuf.length());
+			}
+			return state.outBuf.length();
+		}
+	}
+
+	@Override
+	public void produce(final DataStreamChannel channel) throws IOException {
+		synchronized (state) {
+			state.responseDataChannel = channel;
+			if (state.failure != null) {
+				throw new IOException("Origin response aborted: " + state.failure.getMessage(), state.failure);
+			}
+			if (state.outBuf.hasData()) {
+				state.outBuf.write(channel);
+			}
+			if (state.outputEnd) {
+				if (!state.outBuf.hasData() && !state.responseEndStream) {
+					state.responseEndStream = true;
+					channel.endStream();
+				}
+			} else if (state.responseCapacityChannel != null) {
+				final int increment = state.outBuf.capacityIncrement();
+				if (increment > 0) {
+					state.responseCapacityChannel.update(increment);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void failed(final Exception cause) {
+		LOG.debug("[client<-proxy] " + cause.getMessage());
+	}
+
+	@Override
+	public void releaseResources() {
+		final HttpRequest request;
+		final HttpResponse response;
+		synchronized (state) {
+			if (state.closed) {
+				return;
+			}
+			state.closed = true;
+			request = state.request;
+			response = state.response;
+			state.responseMessageChannel = null;
+			state.responseDataChannel = null;
+			state.requestCapacityChannel = null;
+			state.endBackend();
+			if (!state.responseEndStream && state.clientEndpoint != null) {
+				//client has gone away, the origin response will not be consumed.
+				state.releaseEndpoint(false);
+			}
+		}
+		route.log(request, response, state.serverContext, state.startTime);
+		if (request != null) {
+			route.end(request, response, System.nanoTime() - state.startNanos);
+		}
+	}
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.impl.BasicEntityDetails;
+import org.apache.hc.core5.http.nio.AsyncClientExchangeHandler;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.RequestChannel;
+import org.apache.hc.core5.http.nio.ResponseChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import cloud.tamacat2.httpd.error.ServiceUnavailableException;
+import cloud.tamacat2.httpd.util.AccessLogUtils;
+import cloud.tamacat2.reverse.AsyncReverseProxyHandler;
+
+/**
+ * <p>Origin side of the asynchronous reverse proxy.<br>
+ * Produces the request body of the client and consumes the response body from the origin server.
+ */
+public class OutgoingExchangeHandler implements AsyncClientExchangeHandler {
+
+	static final Logger LOG = LoggerFactory.getLogger(OutgoingExchangeHandler.class);
+
+	protected final AsyncReverseProxyHandler route;
+	protected final IncomingExchangeHandler incoming;
+	protected final ProxyExchangeState state;
+	protected boolean responseComplete;
+
+	public OutgoingExchangeHandler(final AsyncReverseProxyHandler route, final IncomingExchangeHandler incoming,
+			final ProxyExchangeState state) {
+		this.route = route;
+		this.incoming = incoming;
+		this.state = state;
+	}
+
+	@Override
+	public void produceRequest(final RequestChannel channel, final HttpContext context) throws HttpException, IOException {
+		final HttpRequest outgoingRequest;
+		final EntityDetails entityDetails;
+		synchronized (state) {
+			outgoingRequest = state.outgoingRequest;
+			entityDetails = state.requestEntityDetails;
+		}
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("[proxy->origin] ConnPool: " + route.getRequester().getStats(state.backend.getTarget()));
+		}
+		channel.sendRequest(outgoingRequest, entityDetails, context);
+	}
+
+	@Override
+	public int available() {
+		synchronized (state) {
+			if (state.inputEnd && !state.requestEndStream) {
+				return Math.max(1, state.inBuf.length());
+			}
+			return state.inBuf.length();
+		}
+	}
+
+	@Override
+	public void produce(final DataStreamChannel channel) throws IOException {
+		synchronized (state) {
+			state.requestDataChannel = channel;
+			if (state.inBuf.hasData()) {
+				state.inBuf.write(channel);
+			}
+			if (state.inputEnd) {
+				if (!state.inBuf.hasData() && !state.requestEndStream) {
+					state.requestEndStream = true;
+					channel.endStream();
+				}
+			} else if (state.requestCapacityChannel != null) {
+				final int increment = state.inBuf.capacityIncrement();
+				if (increment > 0) {
+					state.requestCapacityChannel.update(increment);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void consumeInformation(final HttpResponse response, final HttpContext context) throws HttpException, IOException {
+		//ignore 1xx informational responses.
+	}
+
+	@Override
+	public void consumeResponse(final HttpResponse incomingResponse, final EntityDetails entityDetails,
+			final HttpContext context) throws HttpException, IOException {
+		final ResponseChannel responseChannel;
+		final HttpResponse outgoingResponse;
+		EntityDetails responseEntityDetails = entityDetails;
+		synchronized (state) {
+			state.endBackend();
+			state.backend.response(incomingResponse.getCode());
+			outgoingResponse = route.createOutgoingResponse(state.request, incomingResponse, state.serverContext);
+			//Backend access log
+			if (LOG.isTraceEnabled()) {
+				AccessLogUtils.trace(LOG, state.outgoingRequest, incomingResponse, context, (System.currentTimeMillis()-state.startTime));
+			} else {
+				AccessLogUtils.debug(LOG, state.outgoingRequest, incomingResponse, context, (System.currentTimeMillis()-state.startTime));
+			}
+			if (entityDetails == null) {
+				responseComplete = true;
+				state.outputEnd = true;
+				state.responseEndStream = true;
+				if (Method.HEAD.isSame(state.request.getMethod())) {
+					//keep the Content-Length of the origin server.
+					responseEntityDetails = getHeadEntityDetails(incomingResponse);
+				}
+			}
+			state.response = outgoingResponse;
+			responseChannel = state.responseMessageChannel;
+		}
+		if (responseChannel != null) {
+			responseChannel.sendResponse(outgoingResponse, responseEntityDetails, state.serverContext);
+		}
+	}
+
+	protected EntityDetails getHeadEntityDetails(final HttpResponse incomingResponse) {
+		final Header contentLength = incomingResponse.getFirstHeader(HttpHeaders.CONTENT_LENGTH);
+		if (contentLength != null) {
+			try {
+				final Header contentType = incomingResponse.getFirstHeader(HttpHeaders.CONTENT_TYPE);
+				return new BasicEntityDetails(Long.parseLong(contentLength.getValue().trim()),
+					contentType != null ? ContentType.parseLenient(contentType.getValue()) : null);
+			} catch (NumberFormatException e) {
+				LOG.debug(e.getMessage());
+			}
+		}
+		return null;
+	}
+
+	@Override
+	public void updateCapacity(final CapacityChannel capacityChannel) throws IOException {
+		synchronized (state) {
+			state.responseCapacityChannel = capacityChannel;
+			final int increment = state.outBuf.capacityIncrement();
+			if (increment > 0) {
+				capacityChannel.update(increment);
+			}
+		}
+	}
+
+	@Override
+	public void consume(final ByteBuffer src) throws IOException {
+		synchronized (state) {
+			state.outBuf.consumed(src.remaining());
+			final DataStreamChannel dataChannel = state.responseDataChannel;
+			if (dataChannel != null && !state.outBuf.hasData()) {
+				dataChannel.write(src);
+			}
+			if (src.hasRemaining()) {
+				state.outBuf.put(src);
+			}
+			if (dataChannel != null) {
+				dataChannel.requestOutput();
+			}
+		}
+	}
+
+	@Override
+	public void streamEnd(final List<? extends Header> trailers) throws HttpException, IOException {
+		synchronized (state) {
+			responseComplete = true;
+			state.outputEnd = true;
+			if (state.responseDataChannel != null) {
+				state.responseDataChannel.requestOutput();
+			}
+		}
+	}
+
+	@Override
+	public void cancel() {
+		failed(new IOException("Origin exchange cancelled"));
+	}
+
+	@Override
+	public void failed(final Exception cause) {
+		LOG.warn("[proxy->origin] " + state.backend.getTarget() + " " + cause.getMessage());
+		final boolean clientClosed;
+		synchronized (state) {
+			clientClosed = state.closed;
+			state.releaseEndpoint(false);
+		}
+		if (!clientClosed) {
+			state.backend.failure();
+		}
+		incoming.sendError(new ServiceUnavailableException(cause));
+	}
+
+	@Override
+	public void releaseResources() {
+		synchronized (state) {
+			state.requestDataChannel = null;
+			state.responseCapacityChannel = null;
+			state.releaseEndpoint(responseComplete && (state.requestEndStream || state.requestEntityDetails == null));
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.apache.hc.core5.http.impl.nio.ExpandableBuffer;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+
+/**
+ * <p>Buffer between the consumer side and the producer side of a proxied message body.<br>
+ * The buffer keeps track of the capacity granted to the consumer side,
+ * so the sender is never allowed to push more than {@code window} bytes ahead of the receiver.
+ */
+public class ProxyBuffer extends ExpandableBuffer {
+
+	public static final int INIT_BUFFER_SIZE = 8 * 1024;
+	public static final int DEFAULT_WINDOW_SIZE = 64 * 1024;
+
+	protected final int window;
+	protected int granted;
+
+	public ProxyBuffer() {
+		this(INIT_BUFFER_SIZE, DEFAULT_WINDOW_SIZE);
+	}
+
+	public ProxyBuffer(final int bufferSize, final int window) {
+		super(bufferSize);
+		this.window = window;
+	}
+
+	/**
+	 * Store the remaining bytes of the source buffer.
+	 */
+	public void put(final ByteBuffer src) {
+		setInputMode();
+		ensureAdjustedCapacity(buffer().position() + src.remaining());
+		buffer().put(src);
+	}
+
+	/**
+	 * Write the buffered bytes to the data channel.
+	 * @return number of bytes written.
+	 */
+	public int write(final DataStreamChannel channel) throws IOException {
+		setOutputMode();
+		if (buffer().hasRemaining()) {
+			return channel.write(buffer());
+		}
+		return 0;
+	}
+
+	/**
+	 * Notify that the bytes were received from the consumer side.
+	 */
+	public void consumed(final int bytes) {
+		granted = Math.max(0, granted - bytes);
+	}
+
+	/**
+	 * Get the capacity to be granted to the consumer side, and count it as granted.
+	 * @return 0 if the window is full.
+	 */
+	public int capacityIncrement() {
+		final int increment = window - length() - granted;
+		if (increment > 0) {
+			granted += increment;
+			return increment;
+		}
+		return 0;
+	}
+
+	@Override
+	public boolean hasData() {
+		return super.hasData();
+	}
+
+	@Override
+	public int length() {
+		return super.length();
+	}
+}
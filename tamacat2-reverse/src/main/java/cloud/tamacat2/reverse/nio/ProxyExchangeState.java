@@ -0,0 +1,92 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.nio;
+
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.nio.AsyncClientEndpoint;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.ResponseChannel;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+
+import cloud.tamacat2.reverse.balancer.Backend;
+
+/**
+ * <p>State of one proxied exchange, shared by the client side ({@link IncomingExchangeHandler})
+ * and the origin side ({@link OutgoingExchangeHandler}).<br>
+ * Both sides run on different I/O reactor threads, so all access is synchronized on this object.
+ */
+public class ProxyExchangeState {
+
+	final long startTime = System.currentTimeMillis();
+	final long startNanos = System.nanoTime();
+
+	HttpContext serverContext;
+	final HttpCoreContext clientContext = HttpCoreContext.create();
+
+	// client -> origin
+	HttpRequest request;
+	HttpRequest outgoingRequest;
+	EntityDetails requestEntityDetails;
+	final ProxyBuffer inBuf = new ProxyBuffer();
+	CapacityChannel requestCapacityChannel;
+	DataStreamChannel requestDataChannel;
+	boolean inputEnd;
+	boolean requestEndStream;
+
+	// origin -> client
+	HttpResponse response;
+	ResponseChannel responseMessageChannel;
+	final ProxyBuffer outBuf = new ProxyBuffer();
+	CapacityChannel responseCapacityChannel;
+	DataStreamChannel responseDataChannel;
+	boolean outputEnd;
+	boolean responseEndStream;
+
+	Backend backend;
+	boolean backendEnd;
+	AsyncClientEndpoint clientEndpoint;
+	Exception failure;
+	boolean closed;
+
+	/**
+	 * Notify the end of the origin request to the backend statistics. (only once)
+	 */
+	void endBackend() {
+		if (backend != null && !backendEnd) {
+			backendEnd = true;
+			backend.endNanos(System.nanoTime() - startNanos);
+		}
+	}
+
+	/**
+	 * Return the origin connection to the pool (or close it if the exchange was not completed).
+	 */
+	void releaseEndpoint(final boolean reuse) {
+		final AsyncClientEndpoint endpoint = clientEndpoint;
+		if (endpoint != null) {
+			clientEndpoint = null;
+			if (reuse) {
+				endpoint.releaseAndReuse();
+			} else {
+				endpoint.releaseAndDiscard();
+			}
+		}
+	}
+}
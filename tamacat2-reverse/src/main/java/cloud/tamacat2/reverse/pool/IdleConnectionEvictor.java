@@ -0,0 +1,80 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.pool;
+
+import java.io.Closeable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hc.core5.pool.ConnPoolControl;
+import org.apache.hc.core5.util.TimeValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>Background task that closes expired and idle backend connections.<br>
+ * All evictors share one daemon thread, so a route costs a scheduled task instead of a thread.
+ */
+public class IdleConnectionEvictor implements Closeable {
+
+	static final Logger LOG = LoggerFactory.getLogger(IdleConnectionEvictor.class);
+
+	static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+		final Thread t = new Thread(r, "ConnectionEvictor");
+		t.setDaemon(true);
+		return t;
+	});
+
+	protected final ConnPoolControl<?> connPool;
+	protected final TimeValue maxIdleTime;
+	protected final TimeValue interval;
+	protected ScheduledFuture<?> future;
+
+	public IdleConnectionEvictor(final ConnPoolControl<?> connPool, final TimeValue maxIdleTime, final TimeValue interval) {
+		this.connPool = connPool;
+		this.maxIdleTime = maxIdleTime;
+		this.interval = interval;
+	}
+
+	public synchronized IdleConnectionEvictor start() {
+		if (future == null) {
+			final long millis = Math.max(interval.toMilliseconds(), 100L);
+			future = SCHEDULER.scheduleWithFixedDelay(this::evict, millis, millis, TimeUnit.MILLISECONDS);
+		}
+		return this;
+	}
+
+	protected void evict() {
+		try {
+			connPool.closeExpired();
+			if (maxIdleTime != null) {
+				connPool.closeIdle(maxIdleTime);
+			}
+		} catch (Exception e) {
+			LOG.warn(e.getMessage());
+		}
+	}
+
+	@Override
+	public synchronized void close() {
+		if (future != null) {
+			future.cancel(false);
+			future = null;
+		}
+	}
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.util;
+
+import java.util.Arrays;
+
+import org.apache.hc.core5.http.HttpHeaders;
+
+/**
+ * <p>Classification of the header names for the reverse proxy. (case insensitive)<br>
+ * The names are looked up by the length and compared with {@link String#regionMatches(boolean, int, String, int, int)},
+ * so no lower case copy of the header name is created.
+ */
+public final class HeaderTable {
+
+	/** End-to-end header. (forwarded as is) */
+	public static final int OTHER = 0;
+
+	/** Hop-by-hop header or the header that is recreated by the proxy. (not forwarded) */
+	public static final int HOP_BY_HOP = 1;
+
+	/** Connection header. (The listed headers are also hop-by-hop.) */
+	public static final int CONNECTION = 1 << 1;
+
+	/** Location and Content-Location response header. (rewritten to the URL of the reverse proxy) */
+	public static final int LOCATION = 1 << 2;
+
+	/** Set-Cookie response header. (rewritten the domain and path) */
+	public static final int SET_COOKIE = 1 << 3;
+
+	/** Server response header. (replaced with the server name of the reverse proxy) */
+	public static final int SERVER = 1 << 4;
+
+	/** X-Forwarded-For, X-Forwarded-Proto request header. (set by the reverse proxy) */
+	public static final int X_FORWARDED = 1 << 5;
+
+	static final String X_FORWARDED_FOR = "X-Forwarded-For";
+	static final String X_FORWARDED_PROTO = "X-Forwarded-Proto";
+
+	//https://www.rfc-editor.org/rfc/rfc9110#section-7.6.1
+	static final String[] NAMES = {
+		HttpHeaders.CONNECTION, HttpHeaders.KEEP_ALIVE, "Proxy-Connection",
+		HttpHeaders.PROXY_AUTHENTICATE, HttpHeaders.PROXY_AUTHORIZATION,
+		HttpHeaders.TE, HttpHeaders.TRAILER, HttpHeaders.TRANSFER_ENCODING, HttpHeaders.UPGRADE,
+		HttpHeaders.HOST, HttpHeaders.CONTENT_LENGTH,
+		HttpHeaders.ACCEPT_ENCODING, //uncompress
+		HttpHeaders.LOCATION, HttpHeaders.CONTENT_LOCATION, "Set-Cookie", HttpHeaders.SERVER,
+		X_FORWARDED_FOR, X_FORWARDED_PROTO
+	};
+
+	static final int[] TYPES = {
+		HOP_BY_HOP | CONNECTION, HOP_BY_HOP, HOP_BY_HOP,
+		HOP_BY_HOP, HOP_BY_HOP,
+		HOP_BY_HOP, HOP_BY_HOP, HOP_BY_HOP, HOP_BY_HOP,
+		HOP_BY_HOP, HOP_BY_HOP,
+		HOP_BY_HOP,
+		LOCATION, LOCATION, SET_COOKIE, SERVER,
+		X_FORWARDED, X_FORWARDED
+	};
+
+	//names and types by the length of the name.
+	private static final String[][] NAMES_BY_LENGTH;
+	private static final int[][] TYPES_BY_LENGTH;
+
+	static {
+		int max = 0;
+		for (final String name : NAMES) {
+			max = Math.max(max, name.length());
+		}
+		NAMES_BY_LENGTH = new String[max + 1][0];
+		TYPES_BY_LENGTH = new int[max + 1][0];
+		for (int i=0; i<NAMES.length; i++) {
+			final int len = NAMES[i].length();
+			final String[] names = Arrays.copyOf(NAMES_BY_LENGTH[len], NAMES_BY_LENGTH[len].length + 1);
+			final int[] types = Arrays.copyOf(TYPES_BY_LENGTH[len], TYPES_BY_LENGTH[len].length + 1);
+			names[names.length - 1] = NAMES[i];
+			types[types.length - 1] = TYPES[i];
+			NAMES_BY_LENGTH[len] = names;
+			TYPES_BY_LENGTH[len] = types;
+		}
+	}
+
+	private HeaderTable() {}
+
+	/**
+	 * Get the type of the header name.
+	 * @return {@link #OTHER} or the bit flags.
+	 */
+	public static int getType(final String name) {
+		return name != null ? getType(name, 0, name.length()) : OTHER;
+	}
+
+	/**
+	 * Get the type of the header name in the region of the string. (ex. the token of the Connection header)
+	 */
+	public static int getType(final String str, final int start, final int end) {
+		final int len = end - start;
+		if (len <= 0 || len >= NAMES_BY_LENGTH.length) {
+			return OTHER;
+		}
+		final String[] names = NAMES_BY_LENGTH[len];
+		for (int i=0; i<names.length; i++) {
+			if (names[i].regionMatches(true, 0, str, start, len)) {
+				return TYPES_BY_LENGTH[len][i];
+			}
+		}
+		return OTHER;
+	}
+
+	public static boolean isHopByHop(final String name) {
+		return (getType(name) & HOP_BY_HOP) != 0;
+	}
+
+	/**
+	 * Check the Connection header value has the tokens of the other headers than the hop-by-hop headers.
+	 * (ex. "keep-alive", "close", "Upgrade" are false, "close, X-Custom" is true)
+	 */
+	public static boolean hasConnectionOptions(final String value) {
+		if (value == null) {
+			return false;
+		}
+		final int length = value.length();
+		int start = 0;
+		while (start < length) {
+			int end = value.indexOf(',', start);
+			if (end < 0) {
+				end = length;
+			}
+			int s = start;
+			int e = end;
+			while (s < e && isWhitespace(value.charAt(s))) {
+				s++;
+			}
+			while (e > s && isWhitespace(value.charAt(e - 1))) {
+				e--;
+			}
+			if (e > s && (getType(value, s, e) & HOP_BY_HOP) == 0 && !(e - s == 5 && "close".regionMatches(true, 0, value, s, 5))) {
+				return true;
+			}
+			start = end + 1;
+		}
+		return false;
+	}
+
+	static boolean isWhitespace(final char c) {
+		return c == ' ' || c == '\t';
+	}
+}
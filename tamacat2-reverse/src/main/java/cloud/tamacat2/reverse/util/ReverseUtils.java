@@ -18,6 +18,7 @@ package cloud.tamacat2.reverse.util;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 import java.util.Set;
@@ -25,9 +26,11 @@ import java.util.regex.Pattern;
 
 import org.apache.hc.core5.http.Header;
 import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpMessage;
 import org.apache.hc.core5.http.HttpRequest;
 import org.apache.hc.core5.http.HttpResponse;
 import org.apache.hc.core5.http.HttpVersion;
+import org.apache.hc.core5.http.MessageHeaders;
 import org.apache.hc.core5.http.message.BasicHeader;
 import org.apache.hc.core5.http.protocol.HttpContext;
 import org.slf4j.Logger;
@@ -40,6 +43,7 @@ import cloud.tamacat2.httpd.util.PropertyUtils;
 import cloud.tamacat2.httpd.util.RequestUtils;
 import cloud.tamacat2.httpd.util.StringUtils;
 import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseRoute;
 
 /**
  * <p>The utility class for reverse proxy.<br>
@@ -99,8 +103,119 @@ public class ReverseUtils {
 		}
 	}
 	
+	/**
+	 * <p>Get the request path to the backend. (The path of the route is replaced with the path of the backend.)
+	 * @param reverseConfig
+	 * @param incomingRequestPath path and query of the client request.
+	 */
 	public static String getReverseTargetPath(final ReverseConfig reverseConfig, final String incomingRequestPath) {
-		return reverseConfig != null ? reverseConfig.getReverseUrl(incomingRequestPath).getFile() : incomingRequestPath;
+		final ReverseRoute route = reverseConfig != null ? reverseConfig.getRoute() : null;
+		final String targetPath = route != null ? route.getTargetPath(incomingRequestPath) : null;
+		return targetPath != null ? targetPath : incomingRequestPath;
+	}
+
+	/**
+	 * <p>Copy the request headers of the client to the request to the backend in a single pass.
+	 * <ul>
+	 *   <li>The hop-by-hop headers and the headers listed in the Connection header are removed.</li>
+	 *   <li>X-Forwarded-For and X-Forwarded-Proto are set by the reverse proxy.</li>
+	 * </ul>
+	 * @param incomingRequest request of the client.
+	 * @param outgoingRequest request to the backend.
+	 * @param remoteAddress X-Forwarded-For (nullable)
+	 * @param scheme X-Forwarded-Proto (nullable)
+	 * @see HeaderTable
+	 */
+	public static void copyRequestHeaders(final HttpRequest incomingRequest, final HttpRequest outgoingRequest,
+			final String remoteAddress, final String scheme) {
+		boolean connectionOptions = false;
+		for (final Iterator<Header> it = incomingRequest.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			final int type = HeaderTable.getType(header.getName());
+			if ((type & (HeaderTable.HOP_BY_HOP | HeaderTable.X_FORWARDED)) == 0) {
+				outgoingRequest.addHeader(header);
+			} else if ((type & HeaderTable.CONNECTION) != 0) {
+				connectionOptions |= HeaderTable.hasConnectionOptions(header.getValue());
+			}
+		}
+		if (connectionOptions) {
+			removeConnectionOptions(incomingRequest, outgoingRequest);
+		}
+		if (remoteAddress != null) {
+			outgoingRequest.addHeader(HeaderTable.X_FORWARDED_FOR, remoteAddress);
+		}
+		if (scheme != null) {
+			outgoingRequest.addHeader(HeaderTable.X_FORWARDED_PROTO, scheme);
+		}
+	}
+
+	/**
+	 * <p>Copy the response headers of the backend to the response to the client in a single pass.
+	 * <ul>
+	 *   <li>The hop-by-hop headers and the headers listed in the Connection header are removed.</li>
+	 *   <li>Location, Content-Location and Set-Cookie headers are rewritten with the {@link RewriteContext}.</li>
+	 *   <li>Server header is replaced with the server name of the reverse proxy.</li>
+	 * </ul>
+	 * The unchanged headers are copied without creating new headers.
+	 * @param incomingResponse response of the backend.
+	 * @param outgoingResponse response to the client.
+	 * @param rewriteContext
+	 */
+	public static void copyResponseHeaders(final HttpResponse incomingResponse, final HttpResponse outgoingResponse,
+			final RewriteContext rewriteContext) {
+		final String serverName = rewriteContext.getRoute().getServerName();
+		boolean connectionOptions = false;
+		for (final Iterator<Header> it = incomingResponse.headerIterator(); it.hasNext();) {
+			final Header header = it.next();
+			final int type = HeaderTable.getType(header.getName());
+			if (type == HeaderTable.OTHER || type == HeaderTable.X_FORWARDED) {
+				outgoingResponse.addHeader(header);
+			} else if (type == HeaderTable.LOCATION) {
+				final String value = header.getValue();
+				final String convertUrl = rewriteContext.getConvertRequestedUrl(deleteCRLF(value));
+				if (convertUrl != null) {
+					outgoingResponse.addHeader(convertUrl.equals(value) ? header : new BasicHeader(header.getName(), convertUrl));
+				}
+			} else if (type == HeaderTable.SET_COOKIE) {
+				final String value = header.getValue();
+				final String newValue = rewriteContext.getConvertedSetCookieHeader(value);
+				if (StringUtils.isEmpty(newValue) || newValue.equals(value)) {
+					outgoingResponse.addHeader(header);
+				} else {
+					outgoingResponse.addHeader(new BasicHeader(header.getName(), newValue));
+					LOG.trace("[after] Set-Cookie: "+newValue);
+				}
+			} else if (type == HeaderTable.SERVER) {
+				if (serverName == null) {
+					outgoingResponse.addHeader(header);
+				}
+			} else if ((type & HeaderTable.CONNECTION) != 0) {
+				connectionOptions |= HeaderTable.hasConnectionOptions(header.getValue());
+			}
+		}
+		if (connectionOptions) {
+			removeConnectionOptions(incomingResponse, outgoingResponse);
+		}
+		if (serverName != null) {
+			outgoingResponse.addHeader(HttpHeaders.SERVER, serverName);
+		}
+	}
+
+	/**
+	 * Remove the headers listed in the Connection header. (RFC 9110 Section 7.6.1)
+	 */
+	static void removeConnectionOptions(final MessageHeaders incoming, final HttpMessage outgoing) {
+		for (final Iterator<Header> it = incoming.headerIterator(HttpHeaders.CONNECTION); it.hasNext();) {
+			final String value = it.next().getValue();
+			if (value != null) {
+				for (final String token : value.split(",")) {
+					final String name = token.trim();
+					if (name.length() > 0) {
+						outgoing.removeHeaders(name);
+					}
+				}
+			}
+		}
 	}
 
 	/**
@@ -146,11 +261,65 @@ public class ReverseUtils {
 		response.setVersion(request.getVersion());
 	}
 
+	/**
+	 * <p>Rewrite the Content-Location response headers.
+	 * @param response
+	 * @param rewriteContext
+	 */
+	public static void rewriteContentLocationHeader(final HttpResponse response, final RewriteContext rewriteContext) {
+		rewriteUrlHeader(response, HttpHeaders.CONTENT_LOCATION, rewriteContext);
+	}
+
+	/**
+	 * <p>Rewrite the Location response headers.
+	 * @param response
+	 * @param rewriteContext
+	 */
+	public static void rewriteLocationHeader(final HttpResponse response, final RewriteContext rewriteContext) {
+		rewriteUrlHeader(response, HttpHeaders.LOCATION, rewriteContext);
+	}
+
+	static void rewriteUrlHeader(final HttpResponse response, final String name, final RewriteContext rewriteContext) {
+		final Header[] headers = response.getHeaders(name);
+		if (headers.length == 0) {
+			return;
+		}
+		response.removeHeaders(name);
+		for (final Header header : headers) {
+			final String convertUrl = rewriteContext.getConvertRequestedUrl(deleteCRLF(header.getValue()));
+			if (convertUrl != null) {
+				response.addHeader(name, convertUrl);
+			}
+		}
+	}
+
+	/**
+	 * <p>Rewrite the Set-Cookie response headers.
+	 * @param response
+	 * @param rewriteContext
+	 */
+	public static void rewriteSetCookieHeader(final HttpResponse response, final RewriteContext rewriteContext) {
+		final Header[] cookies = response.getHeaders("Set-Cookie");
+		if (cookies.length == 0) {
+			return;
+		}
+		response.removeHeaders("Set-Cookie");
+		for (final Header h : cookies) {
+			final String newValue = rewriteContext.getConvertedSetCookieHeader(h.getValue());
+			if (StringUtils.isNotEmpty(newValue)) {
+				response.addHeader("Set-Cookie", newValue);
+				LOG.trace("[after] Set-Cookie: "+newValue);
+			}
+		}
+	}
+
 	/**
 	 * <p>Rewrite the Content-Location response headers.
 	 * @param response
 	 * @param reverseUrl
+	 * @deprecated Use {@link #rewriteContentLocationHeader(HttpResponse, RewriteContext)}
 	 */
+	@Deprecated
 	public static void rewriteContentLocationHeader(
 			final HttpRequest request, final HttpResponse response, final ReverseConfig reverseUrl) {
 		final Header[] locationHeaders = response.getHeaders("Content-Location");
@@ -168,7 +337,9 @@ public class ReverseUtils {
 	 * <p>Rewrite the Location response headers.
 	 * @param response
 	 * @param reverseUrl
+	 * @deprecated Use {@link #rewriteLocationHeader(HttpResponse, RewriteContext)}
 	 */
+	@Deprecated
 	public static void rewriteLocationHeader(
 			final HttpRequest request, final HttpResponse response, final ReverseConfig reverseUrl) {
 		final Header[] locationHeaders = response.getHeaders("Location");
@@ -186,7 +357,9 @@ public class ReverseUtils {
 	 * <p>Rewrite the Set-Cookie response headers.
 	 * @param response
 	 * @param reverseUrl
+	 * @deprecated Use {@link #rewriteSetCookieHeader(HttpResponse, RewriteContext)}
 	 */
+	@Deprecated
 	public static void rewriteSetCookieHeader(
 			final HttpRequest request, final HttpResponse response, final ReverseConfig reverseUrl) {
 		final Header[] cookies = response.getHeaders("Set-Cookie");
@@ -301,29 +474,31 @@ public class ReverseUtils {
 		}
 	}
 	
-	//rewrite Host Header
-	public static void rewriteHostHeader(final HttpRequest request, final HttpContext context, final ReverseConfig reverseConfig) {
-		final Header[] hostHeaders = request.getHeaders(HttpHeaders.HOST);
-		for (final Header hostHeader : hostHeaders) {
-			final String value = hostHeader.getValue();
-			final URL host = RequestUtils.getRequestURL(request, context, reverseConfig.getUrlConfig());
-			reverseConfig.setHost(host);
-			String before = host.getAuthority();
-			final int beforePort = host.getPort();
-			if (beforePort != 80 && beforePort > 0) {
-				before = before + ":" + beforePort;
-			}
-			String after = reverseConfig.getReverse().getHost();
-			final int afterPort = reverseConfig.getReverse().getPort();
-			if (afterPort != 80 && afterPort > 0) {
-				after = after + ":" + afterPort;
-			}
-			final String newValue = value.replace(before, after);
+	/**
+	 * <p>Rewrite the Host header to the backend, and set the {@link RewriteContext} of this request
+	 * to the HttpContext.
+	 * @param request request to the backend. (with the Host header of the client request)
+	 * @param context
+	 * @param reverseConfig
+	 * @return the RewriteContext of this request.
+	 */
+	public static RewriteContext rewriteHostHeader(final HttpRequest request, final HttpContext context, final ReverseConfig reverseConfig) {
+		final RewriteContext rewriteContext = RewriteContext.create(request, context, reverseConfig);
+		rewriteHostHeader(request, rewriteContext);
+		return rewriteContext;
+	}
 
-			LOG.trace("Host: " + value + " >> " + newValue);
-			final Header newHeader = new BasicHeader(hostHeader.getName(), newValue);
-			request.removeHeader(hostHeader);
-			request.addHeader(newHeader);
+	/**
+	 * <p>Rewrite the Host header to the backend.
+	 * @param request
+	 * @param rewriteContext
+	 */
+	public static void rewriteHostHeader(final HttpRequest request, final RewriteContext rewriteContext) {
+		final Header hostHeader = request.getFirstHeader(HttpHeaders.HOST);
+		if (hostHeader != null) {
+			final String newValue = rewriteContext.getRoute().getBackendAuthority();
+			LOG.trace("Host: " + hostHeader.getValue() + " >> " + newValue);
+			request.setHeader(HttpHeaders.HOST, newValue);
 		}
 	}
 
@@ -332,7 +507,9 @@ public class ReverseUtils {
 	 * @param reverseUrl
 	 * @param line cookie header line.
 	 * @return converted Set-Cookie response header line.
+	 * @deprecated Use {@link RewriteContext#getConvertedSetCookieHeader(String)}
 	 */
+	@Deprecated
 	public static String getConvertedSetCookieHeader(
 			final HttpRequest request, final ReverseConfig reverseUrl, final String line) {
 		if (line == null) return "";
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.util;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.protocol.HttpContext;
+
+import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseRoute;
+
+/**
+ * <p>Request scoped context of the URL rewriting. (immutable)<br>
+ * Created once per request from the Host header of the client request and the {@link ReverseRoute},
+ * and stored in the HttpContext. ({@link #getContext(HttpContext)})
+ * <p>The Host, Location, Content-Location, Set-Cookie headers and the links in HTML
+ * are rewritten by this context instead of the shared {@link ReverseConfig}.
+ */
+public final class RewriteContext {
+
+	public static final String ATTRIBUTE = RewriteContext.class.getName();
+
+	private final ReverseConfig reverseConfig;
+	private final ReverseRoute route;
+	private final String requestedHost;   //www.example.com
+	private final String requestedOrigin; //https://www.example.com:8443
+
+	RewriteContext(final ReverseConfig reverseConfig, final ReverseRoute route, final String requestedHost, final int requestedPort) {
+		this.reverseConfig = reverseConfig;
+		this.route = route;
+		this.requestedHost = requestedHost;
+		if (requestedHost != null) {
+			final String scheme = route.getScheme();
+			final StringBuilder origin = new StringBuilder(scheme).append("://").append(requestedHost);
+			if (requestedPort > 0 && !("http".equalsIgnoreCase(scheme) && requestedPort == 80)
+					&& !("https".equalsIgnoreCase(scheme) && requestedPort == 443)) {
+				origin.append(':').append(requestedPort);
+			}
+			this.requestedOrigin = origin.toString();
+		} else {
+			this.requestedOrigin = null;
+		}
+	}
+
+	/**
+	 * Create the context of the client request.
+	 * The host name is the Host header of the request (or the virtual host of the route),
+	 * and the port is the port of the reverse proxy server.
+	 * @param request client request.
+	 * @param reverseConfig selected backend.
+	 */
+	public static RewriteContext create(final HttpRequest request, final ReverseConfig reverseConfig) {
+		final ReverseRoute route = reverseConfig.getRoute();
+		String host = null;
+		final Header hostHeader = request.getFirstHeader(HttpHeaders.HOST);
+		if (hostHeader != null) {
+			host = hostHeader.getValue();
+			final int idx = host.lastIndexOf(':');
+			if (idx >= 0 && host.indexOf(']', idx) < 0) {
+				host = host.substring(0, idx);
+			}
+		}
+		if (host == null || host.isEmpty()) {
+			host = route.getDefaultHost();
+		}
+		return new RewriteContext(reverseConfig, route, host, route.getPort());
+	}
+
+	/**
+	 * Create the context and set it to the HttpContext.
+	 */
+	public static RewriteContext create(final HttpRequest request, final HttpContext context, final ReverseConfig reverseConfig) {
+		final RewriteContext rewriteContext = create(request, reverseConfig);
+		if (context != null) {
+			context.setAttribute(ATTRIBUTE, rewriteContext);
+		}
+		return rewriteContext;
+	}
+
+	/**
+	 * Get the context of the request. (null when not created)
+	 */
+	public static RewriteContext getContext(final HttpContext context) {
+		return context != null ? (RewriteContext)context.getAttribute(ATTRIBUTE) : null;
+	}
+
+	public ReverseConfig getReverseConfig() {
+		return reverseConfig;
+	}
+
+	public ReverseRoute getRoute() {
+		return route;
+	}
+
+	/**
+	 * Get the host name of the client request. (ex. "www.example.com")
+	 */
+	public String getRequestedHost() {
+		return requestedHost;
+	}
+
+	/**
+	 * Get the scheme, host and port of the client request. (ex. "https://www.example.com:8443")
+	 */
+	public String getRequestedOrigin() {
+		return requestedOrigin;
+	}
+
+	/**
+	 * Convert the backend URL to the requested URL.
+	 * <pre>
+	 *   http://localhost:8080/test2/abc.html => http://localhost/test/abc.html
+	 *   /test2/abc.html                      => /test/abc.html
+	 * </pre>
+	 */
+	public String getConvertRequestedUrl(final String url) {
+		return route.getRequestedUrl(url, requestedOrigin);
+	}
+
+	/**
+	 * Convert the domain and path of the Set-Cookie header line.
+	 */
+	public String getConvertedSetCookieHeader(final String line) {
+		return route.getConvertedSetCookieHeader(line, requestedHost);
+	}
+
+	@Override
+	public String toString() {
+		return "RewriteContext [requested=" + requestedOrigin + ", " + route + "]";
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hc.core5.util.TimeValue;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.reverse.balancer.CircuitBreaker.State;
+import cloud.tamacat2.reverse.config.CircuitBreakerConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+class CircuitBreakerTest {
+
+	@Test
+	void testOpenAndHalfOpen() throws Exception {
+		final CircuitBreaker cb = new CircuitBreaker(CircuitBreakerConfig.create()
+			.failureThreshold(3).openDuration(TimeValue.ofMilliseconds(50)));
+		cb.failure();
+		cb.failure();
+		cb.success();
+		cb.failure();
+		cb.failure();
+		assertEquals(State.CLOSED, cb.getState());
+		assertTrue(cb.failure());
+		assertEquals(State.OPEN, cb.getState());
+		assertFalse(cb.tryAcquire());
+
+		Thread.sleep(60);
+		assertTrue(cb.isAvailable());
+		assertTrue(cb.tryAcquire()); //trial request
+		assertEquals(State.HALF_OPEN, cb.getState());
+		assertFalse(cb.tryAcquire());
+		assertTrue(cb.failure());
+		assertEquals(State.OPEN, cb.getState());
+
+		Thread.sleep(60);
+		assertTrue(cb.tryAcquire());
+		cb.success();
+		assertEquals(State.CLOSED, cb.getState());
+		assertTrue(cb.tryAcquire());
+	}
+
+	@Test
+	void testServerErrors() {
+		final CircuitBreaker count = new CircuitBreaker(CircuitBreakerConfig.create().failureThreshold(1));
+		assertTrue(count.response(503));
+		assertEquals(State.OPEN, count.getState());
+
+		final CircuitBreaker ignore = new CircuitBreaker(CircuitBreakerConfig.create().failureThreshold(1).serverErrors(false));
+		assertFalse(ignore.response(503));
+		assertEquals(State.CLOSED, ignore.getState());
+	}
+
+	@Test
+	void testLateSuccess() {
+		final CircuitBreaker cb = new CircuitBreaker(CircuitBreakerConfig.create()
+			.failureThreshold(1).openDuration(TimeValue.ofSeconds(60)));
+		assertTrue(cb.failure());
+		cb.success(); //slow request sent before the circuit was opened
+		assertEquals(State.OPEN, cb.getState());
+		assertFalse(cb.tryAcquire());
+		assertFalse(cb.response(200));
+		assertEquals(State.OPEN, cb.getState());
+	}
+
+	@Test
+	void testSkipUnavailableBackends() {
+		final List<Backend> backends = Backend.create(Arrays.asList(
+			ReverseConfig.create().url("http://app1:8080/"),
+			ReverseConfig.create().url("http://app2:8080/")
+		), CircuitBreakerConfig.create().failureThreshold(1));
+		backends.get(0).failure();
+		for (final LoadBalancer lb : Arrays.asList(new RoundRobinLoadBalancer(), new WeightedRoundRobinLoadBalancer(),
+				new LeastOutstandingRequestsLoadBalancer(), new PowerOfTwoChoicesLoadBalancer())) {
+			for (int i = 0; i < 4; i++) {
+				assertEquals("app2", lb.acquire(backends).getTarget().getHostName());
+			}
+		}
+		backends.get(1).setHealthy(false);
+		assertNull(new RoundRobinLoadBalancer().acquire(backends));
+	}
+}
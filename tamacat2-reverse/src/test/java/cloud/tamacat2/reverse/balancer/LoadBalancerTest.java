@@ -0,0 +1,105 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.balancer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+class LoadBalancerTest {
+
+	List<Backend> backends;
+
+	@BeforeEach
+	public void setUp() throws Exception {
+		backends = Backend.create(Arrays.asList(
+			ReverseConfig.create().url("http://app1:8080/").weight(5),
+			ReverseConfig.create().url("http://app2:8080/"),
+			ReverseConfig.create().url("http://app3:8080/")
+		));
+	}
+
+	@Test
+	void testRoundRobin() {
+		final LoadBalancer lb = new RoundRobinLoadBalancer();
+		assertEquals("app1", lb.select(backends).getTarget().getHostName());
+		assertEquals("app2", lb.select(backends).getTarget().getHostName());
+		assertEquals("app3", lb.select(backends).getTarget().getHostName());
+		assertEquals("app1", lb.select(backends).getTarget().getHostName());
+	}
+
+	@Test
+	void testWeightedRoundRobin() {
+		final LoadBalancer lb = new WeightedRoundRobinLoadBalancer();
+		final StringBuilder order = new StringBuilder();
+		for (int i = 0; i < 7; i++) {
+			order.append(lb.select(backends).getTarget().getHostName().charAt(3));
+		}
+		assertEquals("1121311", order.toString());
+	}
+
+	@Test
+	void testLeastOutstandingRequests() {
+		final LoadBalancer lb = new LeastOutstandingRequestsLoadBalancer();
+		backends.get(0).begin();
+		backends.get(2).begin();
+		for (int i = 0; i < 3; i++) {
+			assertSame(backends.get(1), lb.select(backends));
+		}
+		backends.get(0).end(10L);
+		backends.get(1).begin();
+		backends.get(1).begin();
+		assertSame(backends.get(0), lb.select(backends));
+	}
+
+	@Test
+	void testPowerOfTwoChoices() {
+		final LoadBalancer lb = new PowerOfTwoChoicesLoadBalancer();
+		for (final Backend backend : backends) {
+			backend.begin();
+			backend.end(backend == backends.get(2) ? 1000L : 10L);
+		}
+		final Map<Backend, Integer> counts = new HashMap<>();
+		for (int i = 0; i < 3000; i++) {
+			counts.merge(lb.select(backends), 1, Integer::sum);
+		}
+		//the slow backend wins only when it is not picked. (never)
+		assertNull(counts.get(backends.get(2)));
+		assertTrue(counts.get(backends.get(0)) > 0);
+		assertTrue(counts.get(backends.get(1)) > 0);
+	}
+
+	@Test
+	void testLatencyEwma() {
+		final Backend backend = backends.get(0);
+		assertEquals(0d, backend.getLatencyEwma());
+		backend.begin();
+		backend.end(100L);
+		assertEquals(100d, backend.getLatencyEwma(), 0.001);
+		backend.begin();
+		backend.end(200L);
+		assertEquals(120d, backend.getLatencyEwma(), 0.001);
+		assertEquals(0, backend.getOutstanding());
+	}
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.hc.core5.http.ClassicHttpResponse;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.io.HttpRequestHandler;
+import org.apache.hc.core5.http.io.entity.EntityUtils;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.HttpCoreContext;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.reverse.config.CoalescingConfig;
+
+class RequestCoalescingHandlerTest {
+
+	static HttpRequestHandler origin(final AtomicInteger count, final String cacheControl) {
+		return (request, response, context) -> {
+			count.incrementAndGet();
+			try {
+				Thread.sleep(300);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			response.setCode(200);
+			response.setHeader("Cache-Control", cacheControl);
+			final Header cookie = request.getFirstHeader("Cookie");
+			response.setEntity(new StringEntity(cookie != null ? "hello " + cookie.getValue() : "hello"));
+		};
+	}
+
+	static List<String> request(final RequestCoalescingHandler handler, final int concurrency) throws Exception {
+		return request(handler, concurrency, new String[0]);
+	}
+
+	/**
+	 * @param cookies Cookie header of the requests in turn.
+	 */
+	static List<String> request(final RequestCoalescingHandler handler, final int concurrency, final String... cookies) throws Exception {
+		final ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		try {
+			final List<Future<String>> futures = new ArrayList<>();
+			for (int i = 0; i < concurrency; i++) {
+				final String cookie = cookies.length > 0 ? cookies[i % cookies.length] : null;
+				futures.add(executor.submit(() -> {
+					final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/popular");
+					request.setHeader("Host", "www.example.com");
+					if (cookie != null) {
+						request.setHeader("Cookie", cookie);
+					}
+					final ClassicHttpResponse response = new BasicClassicHttpResponse(200);
+					handler.handle(request, response, HttpCoreContext.create());
+					return EntityUtils.toString(response.getEntity());
+				}));
+				Thread.sleep(10);
+			}
+			final List<String> bodies = new ArrayList<>();
+			for (final Future<String> future : futures) {
+				bodies.add(future.get());
+			}
+			return bodies;
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	void testCoalesceCacheable() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		final RequestCoalescingHandler handler = new RequestCoalescingHandler(
+			origin(count, "max-age=60"), CoalescingConfig.create());
+		for (final String body : request(handler, 8)) {
+			assertEquals("hello", body);
+		}
+		assertEquals(1, count.get());
+		assertEquals(7L, handler.getCoalesced());
+	}
+
+	@Test
+	void testUncacheable() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		request(new RequestCoalescingHandler(origin(count, "no-store"), CoalescingConfig.create()), 4);
+		assertEquals(4, count.get());
+
+		count.set(0);
+		request(new RequestCoalescingHandler(origin(count, "no-cache"), CoalescingConfig.create().shareUncacheable(true)), 4);
+		assertEquals(1, count.get());
+
+		//never shared
+		count.set(0);
+		request(new RequestCoalescingHandler(origin(count, "no-store"), CoalescingConfig.create().shareUncacheable(true)), 4);
+		assertEquals(4, count.get());
+	}
+
+	@Test
+	void testUncacheableCookie() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		final RequestCoalescingHandler handler = new RequestCoalescingHandler(
+			origin(count, "no-cache"), CoalescingConfig.create().shareUncacheable(true));
+		final List<String> bodies = request(handler, 6, "session=alice", "session=bob");
+		for (int i = 0; i < bodies.size(); i++) {
+			assertEquals(i % 2 == 0 ? "hello session=alice" : "hello session=bob", bodies.get(i));
+		}
+		assertEquals(2, count.get());
+		assertEquals(4L, handler.getCoalesced());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.cache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HttpRequest;
+import org.apache.hc.core5.http.message.BasicHeader;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.reverse.config.CacheConfig;
+
+class ResponseCacheTest {
+
+	static HttpRequest get(final String path, final Header... headers) {
+		final HttpRequest request = new BasicHttpRequest("GET", path);
+		request.setHeader("Host", "www.example.com");
+		for (final Header header : headers) {
+			request.addHeader(header);
+		}
+		return request;
+	}
+
+	static CacheEntry entry(final int bodySize, final String[] varyNames, final Header... headers) {
+		return new CacheEntry(200, headers, new byte[bodySize], null, varyNames, System.currentTimeMillis());
+	}
+
+	@Test
+	void testFreshness() {
+		final long now = System.currentTimeMillis();
+		assertTrue(entry(10, new String[0], new BasicHeader("Cache-Control", "max-age=60")).isFresh(now));
+		assertFalse(entry(10, new String[0], new BasicHeader("Cache-Control", "max-age=60"), new BasicHeader("Age", "61")).isFresh(now));
+		assertEquals(120000L, entry(10, new String[0], new BasicHeader("Cache-Control", "max-age=60, s-maxage=120")).getFreshnessLifetime());
+		assertEquals(0L, entry(10, new String[0], new BasicHeader("Cache-Control", "no-cache, max-age=60")).getFreshnessLifetime());
+		assertEquals(3600000L, entry(10, new String[0],
+			new BasicHeader("Date", "Sun, 06 Nov 1994 08:49:37 GMT"),
+			new BasicHeader("Expires", "Sun, 06 Nov 1994 09:49:37 GMT")).getFreshnessLifetime());
+	}
+
+	@Test
+	void testVary() {
+		final ResponseCache cache = new ResponseCache(CacheConfig.create());
+		final BasicHttpResponse response = new BasicHttpResponse(200);
+		response.addHeader("Vary", "Accept-Language, accept");
+		final String[] varyNames = ResponseCache.getVaryNames(response);
+		assertArrayEquals(new String[] {"accept", "accept-language"}, varyNames);
+
+		cache.put(get("/a?q=1", new BasicHeader("Accept-Language", "ja")), entry(10, varyNames));
+		assertNotNull(cache.get(get("/a?q=1", new BasicHeader("Accept-Language", "ja"))));
+		assertNull(cache.get(get("/a?q=1", new BasicHeader("Accept-Language", "en"))));
+		assertNull(cache.get(get("/a?q=2", new BasicHeader("Accept-Language", "ja"))));
+		cache.put(get("/a?q=1", new BasicHeader("Accept-Language", "en")), entry(20, varyNames));
+		assertNotNull(cache.get(get("/a?q=1", new BasicHeader("Accept-Language", "ja"))));
+		assertNotNull(cache.get(get("/a?q=1", new BasicHeader("Accept-Language", "en"))));
+		assertEquals(2, cache.size());
+
+		//the Vary header was changed.
+		cache.put(get("/a?q=1", new BasicHeader("Accept", "text/html")), entry(30, new String[] {"accept"}));
+		assertNull(cache.get(get("/a?q=1", new BasicHeader("Accept-Language", "ja"))));
+		assertEquals(1, cache.size());
+		assertEquals(entry(30, new String[0]).size(), cache.getTotalBytes());
+
+		response.setHeader("Vary", "*");
+		assertNull(ResponseCache.getVaryNames(response));
+
+		cache.invalidate(get("/a?q=1"));
+		assertEquals(0, cache.size());
+		assertEquals(0L, cache.getTotalBytes());
+	}
+
+	@Test
+	void testEvictLeastRecentlyUsed() {
+		final CacheEntry e = entry(1000, new String[0]);
+		final ResponseCache cache = new ResponseCache(CacheConfig.create().maxBytes(e.size() * 3));
+		cache.put(get("/1"), e);
+		cache.put(get("/2"), e);
+		cache.put(get("/3"), e);
+		cache.get(get("/1"));
+		cache.put(get("/4"), e);
+		assertEquals(3, cache.size());
+		assertEquals(1L, cache.getEvictions());
+		assertNotNull(cache.get(get("/1")));
+		assertNull(cache.get(get("/2")));
+		assertEquals(e.size() * 3, cache.getTotalBytes());
+	}
+
+	@Test
+	void testConditional() {
+		final CacheEntry e = entry(10, new String[0], new BasicHeader("ETag", "\"abc\""),
+			new BasicHeader("Last-Modified", "Sun, 06 Nov 1994 08:49:37 GMT"));
+		assertTrue(e.isNotModified(get("/", new BasicHeader("If-None-Match", "W/\"abc\""))));
+		assertFalse(e.isNotModified(get("/", new BasicHeader("If-None-Match", "\"xyz\""))));
+		assertTrue(e.isNotModified(get("/", new BasicHeader("If-Modified-Since", "Sun, 06 Nov 1994 08:49:37 GMT"))));
+		assertFalse(e.isNotModified(get("/", new BasicHeader("If-Modified-Since", "Sun, 06 Nov 1994 08:49:36 GMT"))));
+
+		final BasicHttpResponse notModified = new BasicHttpResponse(304);
+		notModified.addHeader("Cache-Control", "max-age=10");
+		final CacheEntry updated = e.update(notModified, System.currentTimeMillis());
+		assertEquals(10000L, updated.getFreshnessLifetime());
+		assertEquals("\"abc\"", updated.getETag());
+	}
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.config;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.config.UrlConfig;
+
+class ReverseRouteTest {
+
+	static ReverseRoute route(final String path, final String url) {
+		final ReverseConfig reverse = ReverseConfig.create().url(url);
+		reverse.setUrlConfig(UrlConfig.create().path(path));
+		return reverse.getRoute();
+	}
+
+	@Test
+	void testGetTargetPath() {
+		final ReverseRoute route = route("/test/", "http://localhost:8080/test2/");
+		assertEquals("/test2/abc.html", route.getTargetPath("/test/abc.html"));
+		assertEquals("/test2/a%20b.html?q=a%26b&x=/test/", route.getTargetPath("/test/a%20b.html?q=a%26b&x=/test/"));
+		assertEquals("/test2/", route.getTargetPath("/test/"));
+		assertNull(route.getTargetPath("/other/abc.html"));
+		assertNull(route.getTargetPath(null));
+
+		assertEquals("/abc.html", route("/test/", "http://localhost:8080").getTargetPath("/test/abc.html"));
+		assertEquals("/app/test/abc.html", route("/", "http://localhost:8080/app/").getTargetPath("/test/abc.html"));
+	}
+
+	@Test
+	void testGetRequestedUrl() {
+		final ReverseRoute route = route("/test/", "http://localhost:8080/test2/");
+		assertEquals("https://www.example.com/test/abc.html?next=/test2/",
+			route.getRequestedUrl("http://localhost:8080/test2/abc.html?next=/test2/", "https://www.example.com"));
+		assertEquals("/test/abc.html", route.getRequestedUrl("http://localhost:8080/test2/abc.html", null));
+		assertEquals("https://www.example.com/other/", route.getRequestedUrl("http://localhost:8080/other/", "https://www.example.com"));
+		assertEquals("/test/abc.html", route.getRequestedUrl("/test2/abc.html", "https://www.example.com"));
+		assertEquals("http://localhost:80801/test2/", route.getRequestedUrl("http://localhost:80801/test2/", "https://www.example.com"));
+		assertEquals("http://example.org/test2/", route.getRequestedUrl("http://example.org/test2/", "https://www.example.com"));
+
+		final ReverseRoute defaultPort = route("/test/", "http://localhost/test2/");
+		assertEquals("/test/a", defaultPort.getRequestedUrl("http://localhost:80/test2/a", null));
+		assertEquals("/test/a", defaultPort.getRequestedUrl("http://localhost/test2/a", null));
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.filter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.io.entity.StringEntity;
+import org.junit.jupiter.api.Test;
+
+class LinkRewriterTest {
+
+	static String rewrite(final String before, final String after, final String html, final int bufferSize) throws Exception {
+		final StringWriter writer = new StringWriter();
+		new LinkRewriter(before, after).bufferSize(bufferSize).rewrite(new StringReader(html), writer);
+		return writer.toString();
+	}
+
+	@Test
+	void testRewrite() throws Exception {
+		final String html = "<html>\r\n<head><link rel=\"stylesheet\" href=\"/app/css/main.css\">\n"
+			+ "<meta http-equiv=\"refresh\" content=\"0; URL=/app/next\">"
+			+ "<style>body { background: url('/app/img/bg.png') }</style></head>\n"
+			+ "<body background=/app/img/bg.png><a HREF='/app/index.html'>/app/</a>"
+			+ "<img alt=\"/app/\" src=\"/app/img/a.png\"/><form action=\"/app/post\" method=\"post\">"
+			+ "<a href=\"http://example.com/app/\">x</a><a href=\"/other/app/\">y</a><a href=\"app/z\">z</a>"
+			+ "<div style=\"background:url( /app/b.png )\"></div></body></html>";
+		final String expected = "<html>\r\n<head><link rel=\"stylesheet\" href=\"/examples/css/main.css\">\n"
+			+ "<meta http-equiv=\"refresh\" content=\"0; URL=/examples/next\">"
+			+ "<style>body { background: url('/examples/img/bg.png') }</style></head>\n"
+			+ "<body background=/examples/img/bg.png><a HREF='/examples/index.html'>/app/</a>"
+			+ "<img alt=\"/app/\" src=\"/examples/img/a.png\"/><form action=\"/examples/post\" method=\"post\">"
+			+ "<a href=\"http://example.com/app/\">x</a><a href=\"/other/app/\">y</a><a href=\"app/z\">z</a>"
+			+ "<div style=\"background:url( /examples/b.png )\"></div></body></html>";
+		assertEquals(expected, rewrite("/app/", "/examples/", html, 8192));
+
+		//every chunk boundary
+		for (int size=1; size<=16; size++) {
+			assertEquals(expected, rewrite("/app/", "/examples/", html, size), "bufferSize=" + size);
+		}
+	}
+
+	@Test
+	void testRewriteRoot() throws Exception {
+		final String html = "<a href=\"/index.html\">a</a><a href=\"//cdn.example.com/x.js\">b</a><img src=/>";
+		assertEquals("<a href=\"/app/index.html\">a</a><a href=\"//cdn.example.com/x.js\">b</a><img src=/app/>",
+			rewrite("/", "/app/", html, 3));
+		//incomplete prefix at the end of the stream.
+		assertEquals("<a href=\"/ap", rewrite("/app/", "/", "<a href=\"/ap", 2));
+	}
+
+	@Test
+	void testLinkConvertingEntity() throws Exception {
+		final String html = "<p>あ</p>\n<a href=\"/app/い.html\">う</a>";
+		final LinkConvertingEntity entity = new LinkConvertingEntity(
+			new StringEntity(html, ContentType.create("text/html", StandardCharsets.UTF_8)), "/app/", "/examples/");
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		entity.writeTo(out);
+		assertEquals("<p>あ</p>\n<a href=\"/examples/い.html\">う</a>", out.toString(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.metrics;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.hc.core5.http.impl.bootstrap.HttpRequester;
+import org.apache.hc.core5.http.impl.bootstrap.RequesterBootstrap;
+import org.apache.hc.core5.io.CloseMode;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.metrics.MetricsWriter;
+import cloud.tamacat2.reverse.balancer.Backend;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+
+public class BackendMetricsCollectorTest {
+
+	@Test
+	public void testCollect() {
+		final List<Backend> backends = Backend.create(Arrays.asList(
+			ReverseConfig.create().url("http://app1:8080/"),
+			ReverseConfig.create().url("http://app2:8080/")
+		));
+		final Backend app1 = backends.get(0);
+		app1.begin();
+		app1.endNanos(2_000_000L);
+		app1.begin();
+		app1.connectFailure();
+		app1.failure();
+		assertEquals(2, app1.getFailures());
+		assertEquals(1, app1.getConnectFailures());
+		assertEquals(1, app1.getOutstanding());
+		assertEquals(2d, app1.getLatencyEwma());
+		assertEquals(1, app1.getLatency().snapshot().getCount());
+
+		final HttpRequester requester = RequesterBootstrap.bootstrap().setDefaultMaxPerRoute(5).create();
+		try {
+			final MetricsWriter writer = new MetricsWriter();
+			new BackendMetricsCollector("/app/", backends, requester).collect(writer);
+			final String text = writer.toString();
+			assertTrue(text.contains("tamacat2_backend_request_duration_seconds_count{route=\"/app/\",backend=\"http://app1:8080\"} 1\n"), text);
+			assertTrue(text.contains("tamacat2_backend_request_duration_seconds_bucket{route=\"/app/\",backend=\"http://app1:8080\",le=\"0.002097152\"} 1\n"), text);
+			assertTrue(text.contains("tamacat2_backend_connect_failures_total{route=\"/app/\",backend=\"http://app1:8080\"} 1\n"), text);
+			assertTrue(text.contains("tamacat2_backend_failures_total{route=\"/app/\",backend=\"http://app2:8080\"} 0\n"), text);
+			assertTrue(text.contains("tamacat2_backend_requests_active{route=\"/app/\",backend=\"http://app1:8080\"} 1\n"), text);
+			assertTrue(text.contains("tamacat2_backend_pool_connections{route=\"/app/\",backend=\"http://app2:8080\",state=\"leased\"} 0\n"), text);
+			assertTrue(text.contains("tamacat2_backend_pool_max{route=\"/app/\",backend=\"http://app1:8080\"} 5\n"), text);
+			assertTrue(text.contains("tamacat2_backend_up{route=\"/app/\",backend=\"http://app1:8080\"} 1\n"), text);
+		} finally {
+			requester.close(CloseMode.IMMEDIATE);
+		}
+	}
+}
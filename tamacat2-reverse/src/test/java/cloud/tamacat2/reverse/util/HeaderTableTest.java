@@ -0,0 +1,96 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.BasicHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.config.HttpConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+
+class HeaderTableTest {
+
+	@Test
+	void testGetType() {
+		assertEquals(HeaderTable.HOP_BY_HOP | HeaderTable.CONNECTION, HeaderTable.getType("connection"));
+		assertEquals(HeaderTable.HOP_BY_HOP, HeaderTable.getType("TRANSFER-ENCODING"));
+		assertEquals(HeaderTable.HOP_BY_HOP, HeaderTable.getType("Keep-Alive"));
+		assertEquals(HeaderTable.LOCATION, HeaderTable.getType("content-location"));
+		assertEquals(HeaderTable.SET_COOKIE, HeaderTable.getType("set-cookie"));
+		assertEquals(HeaderTable.X_FORWARDED, HeaderTable.getType("x-forwarded-for"));
+		assertEquals(HeaderTable.OTHER, HeaderTable.getType("Content-Type"));
+		assertEquals(HeaderTable.OTHER, HeaderTable.getType("X-Connection"));
+		assertEquals(HeaderTable.OTHER, HeaderTable.getType(""));
+		assertEquals(HeaderTable.OTHER, HeaderTable.getType(null));
+
+		assertFalse(HeaderTable.hasConnectionOptions("keep-alive"));
+		assertFalse(HeaderTable.hasConnectionOptions(" Close , Upgrade"));
+		assertTrue(HeaderTable.hasConnectionOptions("close, X-Custom"));
+		assertTrue(HeaderTable.hasConnectionOptions("clo"));
+	}
+
+	@Test
+	void testCopyRequestHeaders() {
+		final BasicClassicHttpRequest incoming = new BasicClassicHttpRequest("GET", "/test/");
+		incoming.addHeader(HttpHeaders.HOST, "www.example.com");
+		incoming.addHeader(HttpHeaders.CONNECTION, "keep-alive, X-Secret");
+		incoming.addHeader("X-Secret", "1");
+		incoming.addHeader("x-forwarded-for", "10.0.0.1");
+		incoming.addHeader(HttpHeaders.ACCEPT, "text/html");
+		incoming.addHeader(HttpHeaders.TRANSFER_ENCODING, "chunked");
+
+		final BasicHttpRequest outgoing = new BasicHttpRequest("GET", "/test2/");
+		ReverseUtils.copyRequestHeaders(incoming, outgoing, "127.0.0.1", "https");
+		assertEquals(3, outgoing.getHeaders().length);
+		assertEquals("text/html", outgoing.getFirstHeader(HttpHeaders.ACCEPT).getValue());
+		assertEquals("127.0.0.1", outgoing.getFirstHeader("X-Forwarded-For").getValue());
+		assertEquals("https", outgoing.getFirstHeader("X-Forwarded-Proto").getValue());
+	}
+
+	@Test
+	void testCopyResponseHeaders() {
+		final ReverseUrlConfig urlConfig = ReverseUrlConfig.create().path("/test/");
+		urlConfig.httpConfig(HttpConfig.create().port(80));
+		final ReverseConfig reverse = ReverseConfig.create().url("http://localhost:8080/test2/");
+		reverse.setUrlConfig(urlConfig);
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/test/");
+		request.addHeader(HttpHeaders.HOST, "www.example.com");
+		final RewriteContext rewriteContext = RewriteContext.create(request, reverse);
+
+		final BasicClassicHttpResponse incoming = new BasicClassicHttpResponse(302);
+		incoming.addHeader(HttpHeaders.SERVER, "Backend");
+		incoming.addHeader(HttpHeaders.LOCATION, "http://localhost:8080/test2/login");
+		incoming.addHeader("Set-Cookie", "SID=1; Path=/test2");
+		incoming.addHeader(HttpHeaders.CONTENT_TYPE, "text/html");
+		incoming.addHeader(HttpHeaders.CONTENT_LENGTH, "0");
+		incoming.addHeader(HttpHeaders.KEEP_ALIVE, "timeout=5");
+
+		final BasicHttpResponse outgoing = new BasicHttpResponse(302);
+		ReverseUtils.copyResponseHeaders(incoming, outgoing, rewriteContext);
+		assertEquals(4, outgoing.getHeaders().length);
+		assertEquals("http://www.example.com/test/login", outgoing.getFirstHeader(HttpHeaders.LOCATION).getValue());
+		assertEquals("SID=1; Path=/test", outgoing.getFirstHeader("Set-Cookie").getValue());
+		assertSame(incoming.getFirstHeader(HttpHeaders.CONTENT_TYPE), outgoing.getFirstHeader(HttpHeaders.CONTENT_TYPE));
+		assertEquals(HttpConfig.create().getServerName(), outgoing.getFirstHeader(HttpHeaders.SERVER).getValue());
+	}
+}
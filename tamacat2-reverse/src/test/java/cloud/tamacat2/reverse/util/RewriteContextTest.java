@@ -0,0 +1,82 @@
+/*
+ * Copyright 2023 tamacat.org
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package cloud.tamacat2.reverse.util;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import org.apache.hc.core5.http.HttpHeaders;
+import org.apache.hc.core5.http.message.BasicClassicHttpRequest;
+import org.apache.hc.core5.http.message.BasicClassicHttpResponse;
+import org.apache.hc.core5.http.protocol.BasicHttpContext;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import cloud.tamacat2.httpd.config.HttpConfig;
+import cloud.tamacat2.reverse.config.ReverseConfig;
+import cloud.tamacat2.reverse.config.ReverseUrlConfig;
+
+class RewriteContextTest {
+
+	ReverseConfig reverse;
+
+	@BeforeEach
+	void setUp() {
+		final ReverseUrlConfig urlConfig = ReverseUrlConfig.create().path("/test/");
+		urlConfig.httpConfig(HttpConfig.create().port(80));
+		reverse = ReverseConfig.create().url("http://localhost:8080/test2/");
+		urlConfig.reverse(reverse);
+		reverse.setUrlConfig(urlConfig);
+	}
+
+	static BasicClassicHttpRequest request(final String host) {
+		final BasicClassicHttpRequest request = new BasicClassicHttpRequest("GET", "/test2/abc.html");
+		request.setHeader(HttpHeaders.HOST, host);
+		return request;
+	}
+
+	@Test
+	void testRewriteHostHeader() {
+		final HttpContext context = new BasicHttpContext();
+		final BasicClassicHttpRequest request = request("www.example.com");
+		final RewriteContext rewriteContext = ReverseUtils.rewriteHostHeader(request, context, reverse);
+		assertSame(rewriteContext, RewriteContext.getContext(context));
+		assertEquals("localhost:8080", request.getFirstHeader(HttpHeaders.HOST).getValue());
+		assertEquals("www.example.com", rewriteContext.getRequestedHost());
+		assertEquals("http://www.example.com", rewriteContext.getRequestedOrigin());
+		assertSame(reverse.getRoute(), rewriteContext.getRoute());
+	}
+
+	@Test
+	void testGetConvertRequestedUrl() {
+		final RewriteContext ctx1 = RewriteContext.create(request("www.example.com"), reverse);
+		final RewriteContext ctx2 = RewriteContext.create(request("api.example.com:80"), reverse);
+		assertEquals("http://www.example.com/test/abc.html?abc=123&test=true",
+			ctx1.getConvertRequestedUrl("http://localhost:8080/test2/abc.html?abc=123&test=true"));
+		assertEquals("http://api.example.com/test/abc.html",
+			ctx2.getConvertRequestedUrl("http://localhost:8080/test2/abc.html"));
+		assertEquals("/test/abc.html", ctx1.getConvertRequestedUrl("/test2/abc.html"));
+		assertNull(ctx1.getConvertRequestedUrl(null));
+
+		final BasicClassicHttpResponse response = new BasicClassicHttpResponse(302);
+		response.addHeader(HttpHeaders.LOCATION, "http://localhost:8080/test2/login");
+		response.addHeader("Set-Cookie", "SID=1; Path=/test2; domain=localhost");
+		ReverseUtils.rewriteLocationHeader(response, ctx2);
+		ReverseUtils.rewriteSetCookieHeader(response, ctx2);
+		assertEquals("http://api.example.com/test/login", response.getFirstHeader(HttpHeaders.LOCATION).getValue());
+		assertEquals("SID=1; Path=/test; domain=api.example.com", response.getFirstHeader("Set-Cookie").getValue());
+	}
+}